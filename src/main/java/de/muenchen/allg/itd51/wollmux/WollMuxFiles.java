@@ -49,6 +49,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Properties;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
@@ -78,8 +79,11 @@ import com.sun.star.util.XStringSubstitution;
 import de.muenchen.allg.afid.UNO;
 import de.muenchen.allg.afid.UnoDictionary;
 import de.muenchen.allg.afid.UnoProps;
+import de.muenchen.allg.itd51.wollmux.config.ConfigSnapshot;
 import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
+import de.muenchen.allg.itd51.wollmux.config.ConfigWatcher;
 import de.muenchen.allg.itd51.wollmux.config.NodeNotFoundException;
+import de.muenchen.allg.itd51.wollmux.db.DatasourceJoinerFactory;
 import de.muenchen.allg.itd51.wollmux.util.L;
 import de.muenchen.allg.itd51.wollmux.util.LogConfig;
 import de.muenchen.allg.itd51.wollmux.util.Utils;
@@ -140,6 +144,27 @@ public class WollMuxFiles
    */
   private static File losCacheFile;
 
+  /**
+   * Name of the snapshot of the parsed configuration in {@link #getWollMuxDir()}.
+   */
+  private static final String CONF_SNAPSHOT = "wollmux.conf.snapshot";
+
+  /**
+   * The URLs of all files {@link #wollmuxConf} has been read from or null if the
+   * configuration doesn't come from local files.
+   */
+  private static List<URL> wollmuxConfSources;
+
+  /**
+   * The URL {@link #wollmuxConf} has been read from.
+   */
+  private static URL wollmuxConfURL;
+
+  /**
+   * Watches {@link #wollmuxConf} for changes.
+   */
+  private static ConfigWatcher configWatcher;
+
   private WollMuxFiles()
   {
     // nothing to initialize.
@@ -169,7 +194,9 @@ public class WollMuxFiles
   }
 
   /**
-   * Load a configuration.
+   * Load a configuration. If the configuration and its included files haven't changed
+   * since the last start, the snapshot in {@link #getWollMuxDir()} is used instead of
+   * parsing the files.
    *
    * @param wollMuxConfigFile
    *          The configuration file.
@@ -178,12 +205,18 @@ public class WollMuxFiles
   protected static ConfigThingy parseWollMuxConf(File wollMuxConfigFile)
   {
     wollmuxConf = new ConfigThingy("");
+    wollmuxConfSources = null;
 
     if (wollMuxConfigFile != null && wollMuxConfigFile.exists() && wollMuxConfigFile.isFile())
     {
       try
       {
-        wollmuxConf = new ConfigThingy("", wollMuxConfigFile.toURI().toURL());
+        URL url = wollMuxConfigFile.toURI().toURL();
+        List<URL> sources = new ArrayList<>();
+        wollmuxConf = ConfigSnapshot.load("", url, new File(getWollMuxDir(), CONF_SNAPSHOT),
+            sources);
+        wollmuxConfURL = url;
+        wollmuxConfSources = sources;
 	String serverURI = wollmuxConf.getString("CONF_SERVER", null);
         if (serverURI != null)
         {
@@ -197,6 +230,7 @@ public class WollMuxFiles
           HttpResponse<String> response = client.send(request, BodyHandlers.ofString());
 
           wollmuxConf = new ConfigThingy("", response.body());
+          wollmuxConfSources = null;
         }
       } catch (HttpTimeoutException ex) {
         LOGGER.error("Serverrespond takes more than 5 seconds", ex);
@@ -212,6 +246,36 @@ public class WollMuxFiles
     return wollmuxConf;
   }
 
+  /**
+   * Watch the files of the configuration returned by {@link #getWollmuxConf()}. Changes
+   * are applied to this configuration while WollMux is running. Watching can be
+   * disabled with CONF_WATCH "false" in wollmux.conf. Configurations from CONF_SERVER
+   * aren't watched. The snapshot of the configuration is updated after changes.
+   *
+   * @param listener
+   *          Called with the changed files after the configuration has been updated.
+   */
+  public static synchronized void watchWollmuxConf(Consumer<List<URL>> listener)
+  {
+    ConfigThingy conf = getWollmuxConf();
+    if (configWatcher != null || wollmuxConfSources == null
+        || !Boolean.parseBoolean(conf.getString("CONF_WATCH", "true")))
+    {
+      return;
+    }
+
+    try
+    {
+      configWatcher = new ConfigWatcher(conf, wollmuxConfURL, wollmuxConfSources,
+          new File(getWollMuxDir(), CONF_SNAPSHOT));
+      configWatcher.start(listener);
+    } catch (IOException e)
+    {
+      LOGGER.error("Die Konfiguration kann nicht auf Änderungen überwacht werden.", e);
+      configWatcher = null;
+    }
+  }
+
   /**
    * Initialize localization.
    *
@@ -562,10 +626,18 @@ public class WollMuxFiles
       out.write("===================== END wollmux.conf ==================\n");
 
       out.write("===================== START losCacheFile ==================\n");
-      out.flush();
-      copyFile(getLosCacheFile(), outStream);
-      outStream.flush();
-      out.write("\n");
+      // the cache file is only written on reset, the current state is in snapshot and journal
+      ConfigThingy losCache = DatasourceJoinerFactory.getCacheAndLOS();
+      if (losCache != null)
+      {
+        out.write(losCache.stringRepresentation());
+      } else
+      {
+        out.flush();
+        copyFile(getLosCacheFile(), outStream);
+        outStream.flush();
+        out.write("\n");
+      }
       out.write("===================== END losCacheFile ==================\n");
 
       out.write("===================== START OOo-Configuration dump ==================\n");
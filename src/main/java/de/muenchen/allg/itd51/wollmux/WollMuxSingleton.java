@@ -45,6 +45,7 @@ import de.muenchen.allg.itd51.wollmux.db.DatasourceJoinerFactory;
 import de.muenchen.allg.itd51.wollmux.document.DocumentManager;
 import de.muenchen.allg.itd51.wollmux.event.LibreOfficeEventListener;
 import de.muenchen.allg.itd51.wollmux.event.WollMuxEventHandler;
+import de.muenchen.allg.itd51.wollmux.event.handlers.OnConfigChanged;
 import de.muenchen.allg.itd51.wollmux.former.Common;
 import de.muenchen.allg.itd51.wollmux.util.L;
 import de.muenchen.allg.itd51.wollmux.util.LogConfig;
@@ -140,6 +141,9 @@ public class WollMuxSingleton
       // Initialisiere EventProcessor
       WollMuxEventHandler.getInstance().setAcceptEvents(successfulStartup);
 
+      // Änderungen an der Konfiguration ohne Neustart übernehmen
+      WollMuxFiles.watchWollmuxConf(changed -> new OnConfigChanged(changed).emit());
+
       // register global EventListener
       try
       {
@@ -0,0 +1,407 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2020 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.config;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Binary snapshot of a completely parsed configuration including all included files.
+ *
+ * A snapshot stores the URL of the configuration, the path, modification time and size
+ * of every file read while parsing, a table of all distinct node names and the tree
+ * itself. It is only valid as long as none of these files has changed. Loading a valid
+ * snapshot reads the file in one go and rebuilds the tree without tokenizing
+ * anything. Every distinct name exists only once in the loaded tree.
+ *
+ * Snapshots are only written if all files of the configuration are local (file:)
+ * URLs, because for other URLs there's no cheap way to detect changes.
+ */
+public final class ConfigSnapshot
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(ConfigSnapshot.class);
+
+  private static final int MAGIC = 0x574d4358;
+
+  private static final int FORMAT_VERSION = 1;
+
+  /**
+   * Size of magic number, format version and header length.
+   */
+  private static final int PREAMBLE_LENGTH = 12;
+
+  /**
+   * Files modified less than this many milliseconds before parsing started aren't
+   * snapshotted. Otherwise a change during parsing or a coarse file system timestamp
+   * could produce a snapshot which looks valid but contains outdated data.
+   */
+  static final long MODIFICATION_TOLERANCE = 2000;
+
+  private ConfigSnapshot()
+  {
+    // nothing to initialize
+  }
+
+  /**
+   * Load the configuration at url. If snapshot is a valid snapshot of this
+   * configuration it's used, otherwise the configuration is parsed and a new snapshot
+   * is written.
+   *
+   * @param name
+   *          The name of the root node.
+   * @param url
+   *          The URL of the configuration.
+   * @param snapshot
+   *          The snapshot file.
+   * @return The configuration.
+   * @throws IOException
+   *           The configuration or an included file can't be read.
+   * @throws SyntaxErrorException
+   *           The configuration is invalid.
+   */
+  public static ConfigThingy load(String name, URL url, File snapshot)
+      throws IOException, SyntaxErrorException
+  {
+    return load(name, url, snapshot, new ArrayList<>());
+  }
+
+  /**
+   * Load the configuration at url like {@link #load(String, URL, File)} and collect
+   * the files it has been read from.
+   *
+   * @param name
+   *          The name of the root node.
+   * @param url
+   *          The URL of the configuration.
+   * @param snapshot
+   *          The snapshot file.
+   * @param sources
+   *          The URLs of all files read for the configuration are added. If the
+   *          snapshot is used, these are only the local files.
+   * @return The configuration.
+   * @throws IOException
+   *           The configuration or an included file can't be read.
+   * @throws SyntaxErrorException
+   *           The configuration is invalid.
+   */
+  public static ConfigThingy load(String name, URL url, File snapshot,
+      Collection<URL> sources) throws IOException, SyntaxErrorException
+  {
+    ConfigThingy conf = read(snapshot, name, url, sources);
+    if (conf != null)
+    {
+      LOGGER.debug("Konfiguration aus Snapshot {} geladen", snapshot);
+      return conf;
+    }
+
+    long start = System.currentTimeMillis();
+    List<URL> parsed = new ArrayList<>();
+    conf = new ConfigThingy(name, url, parsed);
+    sources.addAll(parsed);
+    try
+    {
+      write(snapshot, conf, url, parsed, start - MODIFICATION_TOLERANCE);
+    } catch (IOException e)
+    {
+      LOGGER.debug("Snapshot {} konnte nicht geschrieben werden", snapshot, e);
+    }
+    return conf;
+  }
+
+  /**
+   * Write a snapshot of conf.
+   *
+   * @param snapshot
+   *          The snapshot file. It's replaced atomically if possible.
+   * @param conf
+   *          The configuration.
+   * @param url
+   *          The URL conf was parsed from.
+   * @param sources
+   *          The URLs of all files read while parsing conf, see
+   *          {@link ConfigThingy#ConfigThingy(String, URL, Collection)}.
+   * @param notModifiedSince
+   *          No snapshot is written if a file has been modified after this time.
+   * @return True if the snapshot has been written, false if the configuration can't
+   *         be snapshotted.
+   * @throws IOException
+   *           The snapshot can't be written.
+   */
+  public static boolean write(File snapshot, ConfigThingy conf, URL url,
+      Collection<URL> sources, long notModifiedSince) throws IOException
+  {
+    Set<File> files = new LinkedHashSet<>();
+    for (URL source : sources)
+    {
+      File file = toFile(source);
+      if (file == null)
+      {
+        LOGGER.debug("Kein Snapshot für {}, da {} keine lokale Datei ist", url, source);
+        return false;
+      }
+      files.add(file);
+    }
+
+    ByteArrayOutputStream header = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(header))
+    {
+      out.writeUTF(url.toExternalForm());
+      out.writeUTF(conf.getName());
+      out.writeInt(files.size());
+      for (File file : files)
+      {
+        long lastModified = file.lastModified();
+        if (lastModified > notModifiedSince)
+        {
+          LOGGER.debug("Kein Snapshot für {}, da {} gerade geändert wurde", url, file);
+          return false;
+        }
+        out.writeUTF(file.getPath());
+        out.writeLong(lastModified);
+        out.writeLong(file.length());
+      }
+    }
+
+    Map<String, Integer> strings = new LinkedHashMap<>();
+    collectStrings(conf, strings);
+
+    File tmp = new File(snapshot.getPath() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(tmp))))
+    {
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      out.writeInt(header.size());
+      header.writeTo(out);
+      out.writeInt(strings.size());
+      for (String str : strings.keySet())
+      {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+      }
+      writeNode(out, conf, strings);
+    }
+
+    try
+    {
+      Files.move(tmp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e)
+    {
+      Files.move(tmp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+    return true;
+  }
+
+  /**
+   * Read a snapshot.
+   *
+   * @param snapshot
+   *          The snapshot file.
+   * @param name
+   *          The expected name of the root node.
+   * @param url
+   *          The expected URL of the configuration.
+   * @return The configuration or null if there's no valid snapshot of the
+   *         configuration at url.
+   */
+  public static ConfigThingy read(File snapshot, String name, URL url)
+  {
+    return read(snapshot, name, url, new ArrayList<>());
+  }
+
+  private static ConfigThingy read(File snapshot, String name, URL url,
+      Collection<URL> sources)
+  {
+    if (!snapshot.isFile())
+    {
+      return null;
+    }
+
+    try (FileChannel channel = FileChannel.open(snapshot.toPath(), StandardOpenOption.READ))
+    {
+      ByteBuffer preamble = ByteBuffer.allocate(PREAMBLE_LENGTH);
+      readFully(channel, preamble);
+      preamble.flip();
+      if (preamble.getInt() != MAGIC || preamble.getInt() != FORMAT_VERSION)
+      {
+        return null;
+      }
+      int headerLength = preamble.getInt();
+      ByteBuffer header = ByteBuffer.allocate(headerLength);
+      readFully(channel, header);
+      List<URL> files = new ArrayList<>();
+      if (!isValid(header.array(), name, url, files))
+      {
+        return null;
+      }
+
+      // read into the heap instead of mapping the file, because a mapped file can't be
+      // replaced on some platforms until the mapping is garbage collected.
+      long offset = (long) PREAMBLE_LENGTH + headerLength;
+      ByteBuffer body = ByteBuffer.allocate(Math.toIntExact(channel.size() - offset));
+      readFully(channel, body);
+      body.flip();
+      String[] strings = new String[body.getInt()];
+      byte[] bytes = new byte[256];
+      for (int i = 0; i < strings.length; i++)
+      {
+        int length = body.getInt();
+        if (bytes.length < length)
+        {
+          bytes = new byte[length];
+        }
+        body.get(bytes, 0, length);
+        strings[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+      }
+      ConfigThingy conf = readNode(body, strings);
+      if (body.hasRemaining())
+      {
+        return null;
+      }
+      sources.addAll(files);
+      return conf;
+    } catch (IOException | RuntimeException e)
+    {
+      LOGGER.debug("Snapshot {} konnte nicht gelesen werden", snapshot, e);
+      return null;
+    }
+  }
+
+  private static boolean isValid(byte[] header, String name, URL url,
+      Collection<URL> files) throws IOException
+  {
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(header)))
+    {
+      if (!in.readUTF().equals(url.toExternalForm()) || !in.readUTF().equals(name))
+      {
+        return false;
+      }
+      int count = in.readInt();
+      for (int i = 0; i < count; i++)
+      {
+        File file = new File(in.readUTF());
+        if (file.lastModified() != in.readLong() || file.length() != in.readLong())
+        {
+          LOGGER.debug("Snapshot veraltet, da {} geändert wurde", file);
+          return false;
+        }
+        files.add(file.toURI().toURL());
+      }
+      return true;
+    }
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException
+  {
+    while (buffer.hasRemaining())
+    {
+      if (channel.read(buffer) < 0)
+      {
+        throw new IOException("Unerwartetes Dateiende");
+      }
+    }
+  }
+
+  private static File toFile(URL url)
+  {
+    if (!"file".equals(url.getProtocol()))
+    {
+      return null;
+    }
+    try
+    {
+      return new File(url.toURI());
+    } catch (URISyntaxException | IllegalArgumentException e)
+    {
+      return null;
+    }
+  }
+
+  private static void collectStrings(ConfigThingy conf, Map<String, Integer> strings)
+  {
+    strings.putIfAbsent(conf.getName(), strings.size());
+    for (ConfigThingy child : conf)
+    {
+      collectStrings(child, strings);
+    }
+  }
+
+  private static void writeNode(DataOutputStream out, ConfigThingy conf,
+      Map<String, Integer> strings) throws IOException
+  {
+    out.writeInt(strings.get(conf.getName()));
+    out.writeInt(conf.count());
+    for (ConfigThingy child : conf)
+    {
+      writeNode(out, child, strings);
+    }
+  }
+
+  private static ConfigThingy readNode(ByteBuffer buffer, String[] strings)
+  {
+    String name = strings[buffer.getInt()];
+    int count = buffer.getInt();
+    if (count == 0)
+    {
+      return new ConfigThingy(name);
+    }
+    if (count == 1)
+    {
+      return new ConfigThingy(name, Collections.singletonList(readNode(buffer, strings)));
+    }
+    List<ConfigThingy> children = new ArrayList<>(count);
+    for (int i = 0; i < count; i++)
+    {
+      children.add(readNode(buffer, strings));
+    }
+    return new ConfigThingy(name, children);
+  }
+}
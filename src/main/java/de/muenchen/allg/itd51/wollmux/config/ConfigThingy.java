@@ -28,15 +28,31 @@ import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.InvocationTargetException;
 import java.net.URL;
 import java.net.URLEncoder;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -100,12 +116,63 @@ public class ConfigThingy implements Iterable<ConfigThingy>
 
   private static final int ST_OTHER = 2;
 
-  /** Die Kindknoten. */
-  private List<ConfigThingy> children;
+  /**
+   * Mindestanzahl an Knoten im Teilbaum, ab der sich für einen Knoten der Aufbau
+   * eines {@link Index} lohnt.
+   */
+  private static final int INDEX_MIN_NODES = 64;
+
+  /**
+   * Synchronisiert den Zugriff auf {@link #indexRefs} aller Knoten.
+   */
+  private static final Object INDEX_LOCK = new Object();
+
+  /**
+   * Maximale Anzahl an Dateien, die gleichzeitig per %include gelesen werden.
+   */
+  private static final int INCLUDE_THREADS = 8;
+
+  /**
+   * Thread-Pool zum Lesen includeter Dateien. Wird erst beim ersten %include
+   * erzeugt.
+   */
+  private static ExecutorService includeExecutor;
+
+  /**
+   * Gemeinsame Kindliste aller Knoten ohne Kinder.
+   */
+  private static final List<ConfigThingy> NO_CHILDREN = Collections.emptyList();
+
+  /**
+   * Die Kindknoten. Um Speicher zu sparen, ist dies bei Blättern
+   * {@link #NO_CHILDREN} und bei Knoten mit genau einem Kind eine unveränderliche
+   * Liste. Erst beim Hinzufügen eines zweiten Kindes oder beim Entfernen wird über
+   * {@link #mutableChildren()} eine {@link ArrayList} erzeugt. Beim Neuladen durch
+   * den {@link ConfigWatcher} wird die Liste nicht verändert, sondern durch eine
+   * fertig aufgebaute neue ersetzt, die über das volatile-Feld auch für andere
+   * Threads vollständig sichtbar ist.
+   */
+  private volatile List<ConfigThingy> children;
 
   /** Der Name des Knotens. Bei Blättern ist dies der (String-)Wert des Knotens. */
   private String name;
 
+  /**
+   * Der Suchindex für den Teilbaum mit Wurzel this oder null. Wird von
+   * {@link #getIndex()} bei Bedarf erzeugt und nach dem Erzeugen nicht mehr
+   * verändert, außer dass er als veraltet markiert wird.
+   */
+  private volatile Index index;
+
+  /**
+   * Die Indizes, in deren Teilbaum dieser Knoten liegt, oder null. Da Knoten per
+   * Referenz in mehrere Bäume eingehängt sein können und keinen Verweis auf ihre
+   * Eltern haben, merkt sich jeder Knoten selbst, welche Indizes bei einer
+   * strukturellen Änderung (neues Kind, entferntes Kind, neuer Name) veraltet sind.
+   * Das Array wird nicht verändert, sondern unter {@link #INDEX_LOCK} ersetzt.
+   */
+  private volatile Reference<?>[] indexRefs;
+
   /**
    * Parst die Daten aus der Datei die durch url bestimmt wird.
    *
@@ -125,6 +192,28 @@ public class ConfigThingy implements Iterable<ConfigThingy>
     childrenFromUrl(url, new InputStreamReader(url.openStream(), CHARSET));
   }
 
+  /**
+   * Wie {@link #ConfigThingy(String, URL)}, trägt aber zusätzlich url und die URLs
+   * aller (auch indirekt) includeten Dateien in der Reihenfolge, in der sie gelesen
+   * werden, in sources ein.
+   *
+   * @param sources
+   *          Collection, in die die gelesenen URLs eingetragen werden.
+   * @throws IOException
+   *           falls das Laden von Daten von url (oder einer includeten URL)
+   *           fehlschlägt.
+   * @throws SyntaxErrorException
+   *           falls beim Parsen der Daten von url ein syntaktischer Fehler gefunden
+   *           wird.
+   */
+  public ConfigThingy(String name, URL url, Collection<URL> sources)
+      throws IOException, SyntaxErrorException
+  {
+    this(name);
+    sources.add(url);
+    childrenFromUrl(url, new InputStreamReader(url.openStream(), CHARSET), sources);
+  }
+
   /**
    * Parst den String confString im Kontext der null URL (d,h, includes mit relativen
    * URLs dürfen in confString nicht vorkommen).
@@ -181,13 +270,13 @@ public class ConfigThingy implements Iterable<ConfigThingy>
   public ConfigThingy(String name)
   {
     this.name = name;
-    this.children = new ArrayList<>(1);
+    this.children = NO_CHILDREN;
   }
 
   /**
    * Erzeugt ein anonymes ConfigThingy mit Kindern aus children.
    */
-  private ConfigThingy(String name, List<ConfigThingy> children)
+  ConfigThingy(String name, List<ConfigThingy> children)
   {
     this.name = name;
     this.children = children;
@@ -217,13 +306,175 @@ public class ConfigThingy implements Iterable<ConfigThingy>
    */
   protected void childrenFromUrl(URL url, Reader read) throws IOException,
       SyntaxErrorException
+  {
+    childrenFromUrl(url, read, null);
+  }
+
+  /**
+   * Wie {@link #childrenFromUrl(URL, Reader)}, trägt aber die URLs aller includeten
+   * Dateien in Dokumentreihenfolge in sources ein, falls sources nicht null ist.
+   *
+   * Includete Dateien werden parallel auf dem {@link #includeExecutor()} gelesen und
+   * geparst, sobald die zugehörige %include-Anweisung gefunden wird. Erst wenn die
+   * Datei read komplett geparst ist, werden die Ergebnisse in der ursprünglichen
+   * Reihenfolge an den Stellen der %include-Anweisungen eingefügt. Jede URL wird pro
+   * Aufruf nur einmal gelesen, auch wenn sie mehrfach includet wird.
+   */
+  private void childrenFromUrl(URL url, Reader read, Collection<URL> sources)
+      throws IOException, SyntaxErrorException
+  {
+    IncludeContext context = new IncludeContext();
+    List<Include> includes = new ArrayList<>();
+    Deque<String> chain = new ArrayDeque<>();
+    if (url != null)
+      chain.push(url.toExternalForm());
+    parse(url, read, includes, context, chain);
+    context.resolve(includes, chain, sources, null);
+  }
+
+  /**
+   * Ersetzt die Kinder dieses Knotens durch den neu eingelesenen Inhalt von url.
+   * Für jede %include-Anweisung wird ein {@link Splice} in splices eingetragen,
+   * über das die includete Datei später mit
+   * {@link #reinclude(Splice, List, Collection)} neu gelesen werden kann. Die neue
+   * Kindliste wird erst nach erfolgreichem Einlesen gesetzt, so dass der Knoten
+   * bei einem Fehler unverändert bleibt.
+   */
+  void reload(URL url, Collection<URL> sources, List<Splice> splices)
+      throws IOException, SyntaxErrorException
+  {
+    ConfigThingy fresh = new ConfigThingy(name);
+    IncludeContext context = new IncludeContext(splices);
+    List<Include> includes = new ArrayList<>();
+    Deque<String> chain = new ArrayDeque<>();
+    chain.push(url.toExternalForm());
+    fresh.parse(url, new InputStreamReader(url.openStream(), CHARSET), includes, context,
+      chain);
+    context.resolve(includes, chain, sources, null);
+    for (Splice splice : splices)
+    {
+      if (splice.target == fresh)
+        splice.target = this;
+    }
+    children = fresh.children;
+    structureChanged();
+  }
+
+  /**
+   * Liest die includete Datei von splice neu ein und ersetzt die bisher von ihr
+   * eingefügten Knoten durch den neuen Inhalt. In splices wird splice samt der
+   * Einfügestellen innerhalb der alten Knoten durch die neuen Einfügestellen
+   * ersetzt. Die Kindliste des betroffenen Knotens wird nicht verändert, sondern
+   * durch eine neue ersetzt, so dass laufende Iterationen nicht gestört werden.
+   *
+   * @return false, falls die bisherigen Knoten nicht mehr an ihrer Einfügestelle
+   *         stehen (z.B. weil der Baum anderweitig verändert wurde). In diesem
+   *         Fall wird nichts verändert.
+   * @throws IOException
+   *           falls das Lesen der Datei fehlschlägt. Der Baum bleibt unverändert.
+   * @throws SyntaxErrorException
+   *           falls die Datei fehlerhaft ist. Der Baum bleibt unverändert.
+   */
+  static boolean reinclude(Splice splice, List<Splice> splices,
+      Collection<URL> sources) throws IOException, SyntaxErrorException
+  {
+    int start = splice.locate();
+    if (start < 0)
+      return false;
+    ConfigThingy target = splice.target;
+
+    // Bei einer leeren Einfügestelle ist die Reihenfolge zu anderen Einfügestellen
+    // an derselben Position nicht bekannt.
+    if (splice.nodes.isEmpty())
+    {
+      for (Splice other : splices)
+      {
+        if (other != splice && other.target == target && other.before == splice.before
+          && !splice.isWithin(other) && !other.isWithin(splice))
+          return false;
+      }
+    }
+
+    // Einfügestellen, deren Knoten die ersetzten Knoten enthalten
+    List<Splice> enclosing = new ArrayList<>();
+    List<Integer> enclosingStarts = new ArrayList<>();
+    for (Splice s = splice.parent; s != null && s.target == target; s = s.parent)
+    {
+      int enclosingStart = s.locate();
+      if (enclosingStart < 0)
+        return false;
+      enclosing.add(s);
+      enclosingStarts.add(enclosingStart);
+    }
+
+    List<Splice> added = new ArrayList<>();
+    IncludeContext context = new IncludeContext(added);
+    IncludedFile file = IncludeContext.join(context.fetch(splice.url, splice.chain));
+    Splice fresh = new Splice(splice.parent, splice.target, file, splice.chain);
+    List<ConfigThingy> content =
+      context.take(file, new ArrayDeque<>(splice.chain), sources, fresh);
+
+    ArrayList<ConfigThingy> list = new ArrayList<>(target.children);
+    List<ConfigThingy> old = list.subList(start, start + splice.nodes.size());
+    Set<ConfigThingy> replaced = newIdentitySet();
+    replaced.addAll(old);
+    int delta = content.size() - old.size();
+    old.clear();
+    list.addAll(start, content);
+    fresh.spliced(list, start, content);
+    for (int i = 0; i < enclosing.size(); ++i)
+    {
+      Splice s = enclosing.get(i);
+      int enclosingStart = enclosingStarts.get(i);
+      s.nodes = new ArrayList<>(
+        list.subList(enclosingStart, enclosingStart + s.nodes.size() + delta));
+    }
+
+    // Einfügestellen, die hinter einem ersetzten Knoten liegen, neu verankern
+    ConfigThingy last = content.isEmpty() ? fresh.before : content.get(content.size() - 1);
+    for (Splice other : splices)
+    {
+      if (other.target == target && replaced.contains(other.before))
+        other.before = last;
+    }
+
+    splices.removeIf(other -> other == splice || other.isWithin(splice));
+    if (splice.parent != null)
+      splice.parent.children.set(splice.parent.children.indexOf(splice), fresh);
+    splices.add(fresh);
+    splices.addAll(added);
+
+    if (list.isEmpty())
+    {
+      target.children = NO_CHILDREN;
+    }
+    else
+    {
+      list.trimToSize();
+      target.children = list;
+    }
+    target.structureChanged();
+    return true;
+  }
+
+  /**
+   * Parst die Daten aus read im Kontext von url und hängt die entsprechenden Knoten
+   * als Kinder an this an. Für %include-Anweisungen wird nur das Lesen der Datei
+   * über context angestoßen und ein {@link Include} in includes eingetragen.
+   *
+   * @param chain
+   *          die URLs von url und aller Dateien, die url (auch indirekt) includen.
+   *          Für diese URLs wird kein Lesen angestoßen.
+   */
+  private void parse(URL url, Reader read, List<Include> includes,
+      IncludeContext context, Collection<String> chain)
+      throws IOException, SyntaxErrorException
   {
     try
     {
       Deque<ConfigThingy> stack = new ArrayDeque<>();
       stack.push(this);
-      List<StringContentToken> tokens = tokenize(url, read);
-      Iterator<StringContentToken> liter = tokens.iterator();
+      Tokenizer liter = new Tokenizer(url, read, context.symbols);
       Token token1;
       Token token2;
       do
@@ -236,18 +487,9 @@ public class ConfigThingy implements Iterable<ConfigThingy>
             token2 = liter.next();
             if (token2.type() == TokenType.STRING && !token2.contentString().isEmpty())
             {
-              try
-              {
-                URL includeURL = new URL(url, urlEncode(token2.contentString()));
-                stack.peek().childrenFromUrl(includeURL,
-                  new InputStreamReader(includeURL.openStream(), CHARSET));
-              }
-              catch (IOException iox)
-              {
-                throw new IOException(token2.url() + " in Zeile " + token2.line()
-                  + " bei Zeichen " + token2.position()
-                  + ": %include fehlgeschlagen: ", iox);
-              }
+              ConfigThingy target = stack.peek();
+              includes.add(new Include(target, target.children.size(), token2,
+                context.fetch(url, token2.contentString(), chain)));
             }
             else
             {
@@ -290,7 +532,7 @@ public class ConfigThingy implements Iterable<ConfigThingy>
               throw new SyntaxErrorException(token1.url()
                 + ": Klammer ')' ohne passende Klammer '(' in Zeile "
                 + token1.line() + " bei Zeichen " + token1.position());
-            stack.pop();
+            stack.pop().trimChildren();
             break;
 
           case OPENPAREN:
@@ -314,6 +556,7 @@ public class ConfigThingy implements Iterable<ConfigThingy>
         throw new SyntaxErrorException(token1.url() + ": " + (stack.size() - 1)
           + " schließende Klammern fehlen");
       }
+      trimChildren();
     }
     finally
     {
@@ -373,7 +616,86 @@ public class ConfigThingy implements Iterable<ConfigThingy>
    */
   public void addChild(ConfigThingy child)
   {
-    children.add(child);
+    if (children.isEmpty())
+      children = Collections.singletonList(child);
+    else
+      mutableChildren().add(child);
+    structureChanged();
+  }
+
+  /**
+   * Markiert alle Indizes, in deren Teilbaum this liegt, als veraltet. Muss nach
+   * jeder strukturellen Änderung von this aufgerufen werden.
+   */
+  private void structureChanged()
+  {
+    if (indexRefs == null)
+      return;
+    Reference<?>[] refs;
+    synchronized (INDEX_LOCK)
+    {
+      refs = indexRefs;
+      indexRefs = null;
+    }
+    if (refs != null)
+    {
+      for (Reference<?> ref : refs)
+      {
+        Index idx = (Index) ref.get();
+        if (idx != null)
+          idx.stale = true;
+      }
+    }
+  }
+
+  /**
+   * Meldet idx bei this an und entfernt dabei Einträge für veraltete oder nicht
+   * mehr erreichbare Indizes. Muss unter {@link #INDEX_LOCK} aufgerufen werden.
+   */
+  private void watch(Index idx)
+  {
+    Reference<?>[] refs = indexRefs;
+    if (refs == null)
+    {
+      indexRefs = idx.refs;
+      return;
+    }
+    List<Reference<?>> live = new ArrayList<>(refs.length + 1);
+    for (Reference<?> ref : refs)
+    {
+      Index other = (Index) ref.get();
+      if (other != null && !other.stale && other != idx)
+        live.add(ref);
+    }
+    if (live.isEmpty())
+    {
+      indexRefs = idx.refs;
+    } else
+    {
+      live.add(idx.refs[0]);
+      indexRefs = live.toArray(new Reference<?>[live.size()]);
+    }
+  }
+
+  /**
+   * Liefert die Kindliste als veränderbare Liste.
+   */
+  private List<ConfigThingy> mutableChildren()
+  {
+    if (!(children instanceof ArrayList))
+      children = new ArrayList<>(children);
+    return children;
+  }
+
+  /**
+   * Gibt ungenutzten Platz in der Kindliste frei.
+   */
+  private void trimChildren()
+  {
+    if (children.isEmpty())
+      children = NO_CHILDREN;
+    else if (children instanceof ArrayList)
+      ((ArrayList<ConfigThingy>) children).trimToSize();
   }
 
   /**
@@ -405,7 +727,38 @@ public class ConfigThingy implements Iterable<ConfigThingy>
   @Override
   public Iterator<ConfigThingy> iterator()
   {
-    return children.iterator();
+    return new Iterator<ConfigThingy>()
+    {
+      private int next = 0;
+
+      private int last = -1;
+
+      @Override
+      public boolean hasNext()
+      {
+        return next < children.size();
+      }
+
+      @Override
+      public ConfigThingy next()
+      {
+        if (next >= children.size())
+          throw new NoSuchElementException();
+        last = next++;
+        return children.get(last);
+      }
+
+      @Override
+      public void remove()
+      {
+        if (last < 0)
+          throw new IllegalStateException();
+        mutableChildren().remove(last);
+        next = last;
+        last = -1;
+        structureChanged();
+      }
+    };
   }
 
   /**
@@ -477,6 +830,7 @@ public class ConfigThingy implements Iterable<ConfigThingy>
   public void setName(String newName)
   {
     name = newName;
+    structureChanged();
   }
 
   /**
@@ -529,6 +883,9 @@ public class ConfigThingy implements Iterable<ConfigThingy>
    *          einmal in dieser Liste auf, d.h. falls getParents==true und ein Knoten
    *          mehrere Kinder mit Name name hat, wird dieser Knoten trotzdem nur
    *          einmal eingefügt.
+   * @param foundParents
+   *          die Elternknoten, die bereits in found enthalten sind (Identität). Wird
+   *          nur bei getParents==true verwendet.
    * @param parentLevel
    *          die Suchtiefe bei Breitensuche von parent, d.h. this hat Suchtiefe
    *          parentLevel + 1
@@ -544,7 +901,8 @@ public class ConfigThingy implements Iterable<ConfigThingy>
    *         Ergebnisse bringen könnte.
    */
   private boolean rollcall(ConfigThingy parent, String name,
-      List<ConfigThingy> found, int parentLevel, int searchLevel, boolean getParents)
+      List<ConfigThingy> found, Set<ConfigThingy> foundParents, int parentLevel,
+      int searchLevel, boolean getParents)
   {
     int level = parentLevel + 1;
     if (searchLevel == level)
@@ -553,7 +911,7 @@ public class ConfigThingy implements Iterable<ConfigThingy>
       {
         if (getParents)
         {
-          if (!found.contains(parent)) {
+          if (foundParents.add(parent)) {
             found.add(parent);
           }
         }
@@ -567,8 +925,8 @@ public class ConfigThingy implements Iterable<ConfigThingy>
       boolean haveMore = false;
       for (ConfigThingy child : children)
       {
-        boolean result =
-          child.rollcall(this, name, found, level, searchLevel, getParents);
+        boolean result = child.rollcall(this, name, found, foundParents, level,
+          searchLevel, getParents);
         haveMore = haveMore || result;
       }
       return haveMore;
@@ -799,13 +1157,36 @@ public class ConfigThingy implements Iterable<ConfigThingy>
   public ConfigThingy queryAll(String name, int maxlevel, boolean getParents)
   {
     ArrayList<ConfigThingy> found = new ArrayList<>();
+    Set<ConfigThingy> foundParents = newIdentitySet();
 
     boolean hasMore;
 
     int searchlevel = 1;
+
+    Index idx = getIndex();
+    if (idx != null)
+    {
+      do
+      {
+        List<ConfigThingy> level = idx.lookup(name, getParents, searchlevel++);
+        hasMore = level != null;
+        if (hasMore)
+        {
+          for (ConfigThingy node : level)
+          {
+            if (!getParents || foundParents.add(node))
+              found.add(node);
+          }
+        }
+      } while (hasMore && searchlevel < maxlevel + 1);
+
+      return new ConfigThingy("<query results>", found);
+    }
+
     do
     {
-      hasMore = rollcall(this, name, found, -1, searchlevel++, getParents);
+      hasMore = rollcall(this, name, found, foundParents, -1, searchlevel++,
+        getParents);
     } while (hasMore && searchlevel < maxlevel + 1);
 
     return new ConfigThingy("<query results>", found);
@@ -819,7 +1200,22 @@ public class ConfigThingy implements Iterable<ConfigThingy>
   protected ConfigThingy query(String name, boolean getParents, int maxlevel,
       int minlevel)
   {
+    Index idx = getIndex();
+    if (idx != null)
+    {
+      for (int searchlevel = minlevel; searchlevel <= maxlevel; ++searchlevel)
+      {
+        List<ConfigThingy> level = idx.lookup(name, getParents, searchlevel);
+        if (level == null)
+          break;
+        if (!level.isEmpty())
+          return new ConfigThingy("<query results>", new ArrayList<>(level));
+      }
+      return new ConfigThingy("<query results>");
+    }
+
     List<ConfigThingy> found = new ArrayList<>();
+    Set<ConfigThingy> foundParents = newIdentitySet();
     boolean haveMore;
     int searchlevel = minlevel;
     do
@@ -827,7 +1223,8 @@ public class ConfigThingy implements Iterable<ConfigThingy>
       if (searchlevel > maxlevel) {
         break;
       }
-      haveMore = rollcall(this, name, found, -1, searchlevel, getParents);
+      haveMore = rollcall(this, name, found, foundParents, -1, searchlevel,
+        getParents);
       ++searchlevel;
     } while (found.isEmpty() && haveMore);
 
@@ -847,6 +1244,175 @@ public class ConfigThingy implements Iterable<ConfigThingy>
     return query(name, getParents, maxlevel, DEFAULT_MINLEVEL);
   }
 
+  private static Set<ConfigThingy> newIdentitySet()
+  {
+    return Collections.newSetFromMap(new IdentityHashMap<>());
+  }
+
+  /**
+   * Liefert den Suchindex für den Teilbaum mit Wurzel this oder null, falls die
+   * Suche ohne Index erfolgen soll. Der Index wird erst aufgebaut, wenn this
+   * mindestens zum zweiten Mal durchsucht wird, ohne dass sich seit der letzten
+   * Suche ein Knoten des Teilbaums geändert hat, und auch nur, wenn der Teilbaum
+   * mindestens {@link #INDEX_MIN_NODES} Knoten enthält. Dadurch wird vermieden,
+   * dass Bäume, die abwechselnd verändert und durchsucht werden, bei jeder Suche
+   * komplett indiziert werden.
+   */
+  private Index getIndex()
+  {
+    Index idx = index;
+    if (idx == null || idx.stale)
+    {
+      if (hasAtLeastNodes(INDEX_MIN_NODES))
+        index = new Index(this, false);
+      return null;
+    }
+
+    if (idx.nodes == null)
+    {
+      idx = new Index(this, true);
+      index = idx;
+    }
+    return idx;
+  }
+
+  /**
+   * Liefert true, falls der Teilbaum mit Wurzel this (inklusive this) mindestens
+   * min Knoten enthält.
+   */
+  private boolean hasAtLeastNodes(int min)
+  {
+    Deque<ConfigThingy> todo = new ArrayDeque<>();
+    todo.push(this);
+    int count = 0;
+    while (!todo.isEmpty())
+    {
+      if (++count >= min)
+        return true;
+      for (ConfigThingy child : todo.pop().children)
+        todo.push(child);
+    }
+    return false;
+  }
+
+  /**
+   * Ein Index über den Teilbaum eines ConfigThingys, der zu jedem Namen die Knoten
+   * mit diesem Namen und deren Elternknoten nach Suchtiefe geordnet enthält. Die
+   * Reihenfolge der Knoten innerhalb einer Suchtiefe entspricht der Reihenfolge,
+   * in der {@link ConfigThingy#rollcall} sie findet. Ein Index ist nur gültig,
+   * solange sich kein Knoten des Teilbaums ändert.
+   */
+  private static final class Index
+  {
+    /**
+     * Enthält nur eine schwache Referenz auf diesen Index. Wird von allen Knoten
+     * des Teilbaums, die nur in diesem Index liegen, als
+     * {@link ConfigThingy#indexRefs} verwendet.
+     */
+    private final Reference<?>[] refs = { new WeakReference<>(this) };
+
+    /** Name → Suchtiefe → Knoten mit diesem Namen. */
+    private final Map<String, List<List<ConfigThingy>>> nodes;
+
+    /** Name → Suchtiefe → Elternknoten von Knoten mit diesem Namen. */
+    private final Map<String, List<List<ConfigThingy>>> parents;
+
+    /** Anzahl der Suchtiefen, auf denen es Knoten gibt. */
+    private final int depth;
+
+    /**
+     * true, falls sich ein Knoten des Teilbaums seit dem Erzeugen geändert hat.
+     */
+    private volatile boolean stale;
+
+    /**
+     * Meldet den Index bei allen Knoten des Teilbaums mit Wurzel root an und
+     * indiziert den Teilbaum per Breitensuche. Falls build == false, wird nur eine
+     * Markierung ohne Index-Daten erzeugt, die ebenfalls bei einer Änderung als
+     * veraltet markiert wird.
+     */
+    private Index(ConfigThingy root, boolean build)
+    {
+      Map<String, List<List<ConfigThingy>>> nodeMap = build ? new HashMap<>() : null;
+      Map<String, List<List<ConfigThingy>>> parentMap = build ? new HashMap<>() : null;
+
+      List<ConfigThingy> level = Collections.singletonList(root);
+      List<ConfigThingy> levelParents = level;
+      int searchlevel = 0;
+      synchronized (INDEX_LOCK)
+      {
+        while (!level.isEmpty())
+        {
+          Map<String, Set<ConfigThingy>> seenParents = build ? new HashMap<>() : null;
+          List<ConfigThingy> nextLevel = new ArrayList<>();
+          List<ConfigThingy> nextParents = new ArrayList<>();
+          for (int i = 0; i < level.size(); ++i)
+          {
+            ConfigThingy node = level.get(i);
+            ConfigThingy parent = levelParents.get(i);
+            node.watch(this);
+            if (build)
+            {
+              atLevel(nodeMap, node.name, searchlevel).add(node);
+              if (seenParents.computeIfAbsent(node.name, k -> newIdentitySet())
+                  .add(parent))
+              {
+                atLevel(parentMap, node.name, searchlevel).add(parent);
+              }
+            }
+
+            for (ConfigThingy child : node.children)
+            {
+              nextLevel.add(child);
+              nextParents.add(node);
+            }
+          }
+          level = nextLevel;
+          levelParents = nextParents;
+          ++searchlevel;
+        }
+      }
+      this.nodes = nodeMap;
+      this.parents = parentMap;
+      this.depth = searchlevel;
+    }
+
+    private static List<ConfigThingy> atLevel(
+        Map<String, List<List<ConfigThingy>>> map, String name, int searchlevel)
+    {
+      List<List<ConfigThingy>> levels = map.computeIfAbsent(name,
+        k -> new ArrayList<>(1));
+      while (levels.size() <= searchlevel)
+        levels.add(Collections.emptyList());
+      List<ConfigThingy> level = levels.get(searchlevel);
+      if (level.isEmpty())
+      {
+        level = new ArrayList<>(1);
+        levels.set(searchlevel, level);
+      }
+      return level;
+    }
+
+    /**
+     * Liefert die Knoten mit Namen name (bzw. falls getParents==true deren
+     * Elternknoten) auf Suchtiefe searchlevel. Die gelieferte Liste darf nicht
+     * verändert werden.
+     *
+     * @return null, falls es auf Suchtiefe searchlevel überhaupt keine Knoten mehr
+     *         gibt, d.h. auch tiefere Suchen keine Ergebnisse bringen können.
+     */
+    private List<ConfigThingy> lookup(String name, boolean getParents,
+        int searchlevel)
+    {
+      if (searchlevel >= depth)
+        return null;
+      List<List<ConfigThingy>> levels = (getParents ? parents : nodes).get(name);
+      if (levels == null || searchlevel >= levels.size())
+        return Collections.emptyList();
+      return levels.get(searchlevel);
+    }
+  }
+
   /**
    * Falls der Knoten this ein Blatt ist wird der Name des Knotens geliefert,
    * ansonsten die Konkatenation aller Blätter des unter this liegenden Teilbaums.
@@ -1113,38 +1679,67 @@ public class ConfigThingy implements Iterable<ConfigThingy>
     OPENPAREN,
     CLOSEPAREN,
     END,
-    INCLUDE,
-    LINECOMMENT;
+    INCLUDE;
   }
 
   /**
-   * Die Methode {@link ConfigThingy#tokenize(URL)} liefert eine Liste von Objekten,
-   * die alle dieses Interface implementieren.
+   * Ein Token, wie es vom {@link Tokenizer} geliefert wird.
    *
    * @author Matthias Benkmann (D-III-ITD 5.1)
    */
-  private interface Token
+  private static final class Token
   {
+    private final TokenType type;
+
+    private final String content;
+
+    private final URL myURL;
+
+    private final int myLine;
+
+    private final int myPosition;
+
+    public Token(TokenType type, String content, URL url, int line, int position)
+    {
+      this.type = type;
+      this.content = content;
+      this.myURL = url;
+      this.myLine = line;
+      this.myPosition = position;
+    }
+
     /**
      * Liefert die URL des Dokuments, in dem dieses Token gefunden wurde.
      */
-    public URL url();
+    public URL url()
+    {
+      return myURL;
+    }
 
     /**
      * Liefert die Zeile in der dieses Token gefunden wurde.
      */
-    public int line();
+    public int line()
+    {
+      return myLine;
+    }
 
     /**
      * Liefert die Position des ersten Zeichens dieses Tokens in seiner Zeile,
      * gezählt ab 1.
      */
-    public int position();
+    public int position()
+    {
+      return myPosition;
+    }
 
     /**
-     * Liefert die Art dieses Tokens, z.B. {@link #KEY}.
+     * Liefert die Art dieses Tokens, z.B. {@link TokenType#KEY}.
      */
-    public TokenType type();
+    public TokenType type()
+    {
+      return type;
+    }
 
     /**
      * Liefert die Textrepräsentation dieses Tokens. Diese ist NICHT zwangsweise
@@ -1154,156 +1749,244 @@ public class ConfigThingy implements Iterable<ConfigThingy>
      * String Escape-Sequenzen zu finden, die im Eingabedatenstrom verwendet werden,
      * um bestimmte Zeichen wie z.B. Newline darzustellen.
      */
-    public String contentString();
+    public String contentString()
+    {
+      return content;
+    }
   }
 
   /**
-   * Abstrakte Basis-Klasse für Tokens, die ihren {@link #contentString()} Wert in
-   * einer String-Variable speichern.
+   * Zerlegt die Daten aus einem Reader in {@link Token}s, die einzeln mit
+   * {@link #next()} abgeholt werden. Die Eingabe wird zeilenweise in einen
+   * wiederverwendeten Puffer gelesen und innerhalb der Zeile über einen Index
+   * abgearbeitet, so dass weder Teilstrings der Zeile noch eine Liste aller Tokens
+   * erzeugt werden. Zeilenenden werden wie bei {@link BufferedReader#readLine()}
+   * erkannt, d.h. Zeilen- und Zeichennummern in Fehlermeldungen sind dieselben wie
+   * beim früheren zeilenbasierten Tokenizer.
    *
    * @author Matthias Benkmann (D-III-ITD 5.1)
    */
-  private abstract static class StringContentToken implements Token
+  private static final class Tokenizer
   {
-    protected String content;
+    private static final String INCLUDE = "%include";
 
-    protected int myLine;
+    private final URL url;
 
-    protected int myPosition;
+    private final Reader in;
 
-    protected URL myURL;
+    /** Symboltabelle zum Deduplizieren der Inhalte von Tokens. */
+    private final Map<String, String> symbols;
 
-    public StringContentToken(URL url, int line, int position)
-    {
-      myURL = url;
-      myLine = line;
-      myPosition = position;
-    }
+    /** Lesepuffer für in. */
+    private final char[] buf = new char[8192];
 
-    @Override
-    public URL url()
-    {
-      return myURL;
-    }
+    private int bufPos = 0;
 
-    @Override
-    public int line()
-    {
-      return myLine;
-    }
+    private int bufLen = 0;
 
-    @Override
-    public int position()
-    {
-      return myPosition;
-    }
+    /** Merkt sich, ob das letzte gelesene Zeichen ein '\r' war. */
+    private boolean skipLF = false;
 
-    @Override
-    public String contentString()
+    private boolean eof = false;
+
+    /** Die aktuelle Zeile (ohne Zeilenende). */
+    private char[] line = new char[256];
+
+    private int lineLen = 0;
+
+    /** Index des nächsten zu untersuchenden Zeichens in line. */
+    private int pos = 0;
+
+    /** Anzahl der bisher gelesenen Zeilen. */
+    private int lineNo = 0;
+
+    /** Wird für den Inhalt von Strings wiederverwendet. */
+    private final StringBuilder buffy = new StringBuilder();
+
+    public Tokenizer(URL url, Reader in, Map<String, String> symbols)
     {
-      return content;
+      this.url = url;
+      this.in = in;
+      this.symbols = symbols;
     }
-  }
 
-  /**
-   * Token für einen String gemäß Syntax für WollMux-Config-Dateien.
-   *
-   * @author Matthias Benkmann (D-III-ITD 5.1)
-   */
-  private static class StringToken extends StringContentToken
-  {
     /**
-     * Erzeugt ein neues StringToken
+     * Liefert das nächste Token. Ist das Ende der Eingabe erreicht, wird bei jedem
+     * weiteren Aufruf ein Token vom Typ {@link TokenType#END} geliefert, so dass
+     * sich Aufrufer nicht darum kümmern müssen, ob noch genug Eingabe vorhanden ist.
      *
-     * @param tokenData
-     *          ein String, für den {@link #atStartOf(String)} einen Wert größer 0
-     *          zurückliefert.
+     * @throws IOException
+     *           falls beim Lesen der Daten etwas schief geht.
+     * @throws SyntaxErrorException
+     *           falls eine Zeichenfolge nicht als Token identifiziert werden kann.
      */
-    public StringToken(String tokenData, URL url, int line, int position)
+    public Token next() throws IOException, SyntaxErrorException
     {
-      super(url, line, position);
-
-      int len = atStartOf(tokenData);
-      if (len < 2) {
-        throw new IllegalArgumentException("String token expected!");
-      }
-
-      char quote = tokenData.charAt(0);
-
-      /*
-       * %-Escapes auswerten, sowie quotequote durch quote ersetzen
-       */
-      StringBuilder buffy = new StringBuilder(tokenData.substring(1, len - 1));
-      String quoteStr = Character.toString(quote);
-      int startidx = 0;
-      int idx;
       while (true)
       {
-        idx = buffy.indexOf("%", startidx);
-        int idx2 = buffy.indexOf(quoteStr, startidx);
+        while (pos < lineLen && isWhitespace(line[pos]))
+          ++pos;
 
-        if (idx < 0 && idx2 < 0) {
-          break;
+        if (pos >= lineLen)
+        {
+          if (!readLine())
+            return new Token(TokenType.END, "", url, lineNo + 1, 0);
+          continue;
         }
 
-        String repstr;
-        int replen;
-
-        if (idx < 0 || (idx2 >= 0 && idx2 < idx)) // quotequote
+        int start = pos;
+        char ch = line[pos];
+        if (isKeyStart(ch))
         {
-          idx = idx2;
-          replen = 2;
-          repstr = quoteStr;
+          ++pos;
+          while (pos < lineLen && isKeyPart(line[pos]))
+            ++pos;
+          return new Token(TokenType.KEY, intern(new String(line, start, pos - start)),
+            url, lineNo, start + 1);
         }
-        else // %-Escape
+
+        if (ch == '"' || ch == '\'')
         {
-          if (idx + 1 >= buffy.length()) {
-            break;
+          int end = stringEnd(start);
+          if (end > 0)
+          {
+            try
+            {
+              String content = unescape(start + 1, end - 1, ch);
+              pos = end;
+              return new Token(TokenType.STRING, content, url, lineNo, start + 1);
+            }
+            catch (IllegalArgumentException x)
+            {
+              throw new SyntaxErrorException(errorMessage(start), x);
+            }
           }
+        }
+        else if (ch == '(')
+        {
+          ++pos;
+          return new Token(TokenType.OPENPAREN, "(", url, lineNo, start + 1);
+        }
+        else if (ch == ')')
+        {
+          ++pos;
+          return new Token(TokenType.CLOSEPAREN, ")", url, lineNo, start + 1);
+        }
+        else if (ch == '%' && startsWith(start, INCLUDE))
+        {
+          pos += INCLUDE.length();
+          return new Token(TokenType.INCLUDE, INCLUDE, url, lineNo, start + 1);
+        }
+        else if (ch == '#')
+        {
+          // Kommentare werden nicht als Token geliefert, weil der Parser im Fall
+          // von 2er Paaren wie KEY STRING nicht in der Lage ist über Kommentare
+          // hinwegzulesen. Anstatt ihm das einzubauen ist es einfacher, Kommentare
+          // einfach wegzuschmeissen.
+          pos = lineLen;
+          continue;
+        }
+
+        throw new SyntaxErrorException(errorMessage(start));
+      }
+    }
+
+    private String errorMessage(int start)
+    {
+      return url + ": Syntaxfehler in Zeile " + lineNo + " bei Zeichen " + (start + 1)
+        + ", Text an Fehlerstelle: \"" + new String(line, start, lineLen - start)
+        + "\"";
+    }
 
-          // default: durch selbes Zeichen, also % ersetzen
-          repstr = Character.toString(buffy.charAt(idx));
-          replen = 1;
+    /**
+     * Liefert den Index hinter dem abschließenden Anführungszeichen des bei start
+     * beginnenden Strings oder 0, falls der String in dieser Zeile nicht
+     * abgeschlossen wird. Doppelte Anführungszeichen schließen den String nicht ab.
+     */
+    private int stringEnd(int start)
+    {
+      char quote = line[start];
+      int idx = start + 1;
+      while (idx < lineLen)
+      {
+        if (line[idx] == quote)
+        {
+          ++idx;
+          if (idx >= lineLen || line[idx] != quote)
+            return idx;
+        }
+        ++idx;
+      }
+      return 0;
+    }
 
-          switch (buffy.charAt(idx + 1))
+    /**
+     * Wertet im Bereich [from, to) der aktuellen Zeile die %-Escapes aus und ersetzt
+     * doppelte Anführungszeichen quote durch einfache.
+     *
+     * @throws IllegalArgumentException
+     *           bei einem unvollständigen oder fehlerhaften %u-Escape.
+     */
+    private String unescape(int from, int to, char quote)
+    {
+      buffy.setLength(0);
+      int idx = from;
+      while (idx < to)
+      {
+        char ch = line[idx];
+        if (ch == quote) // quotequote
+        {
+          buffy.append(quote);
+          idx += 2;
+        }
+        else if (ch == '%' && idx + 1 < to)
+        {
+          switch (line[idx + 1])
           {
             case 'n':
-              repstr = "\n";
-              replen = 2;
+              buffy.append('\n');
+              idx += 2;
               break;
             case '%':
-              repstr = "%";
-              replen = 2;
+              buffy.append('%');
+              idx += 2;
               break;
             case 'u':
-              repstr = parseUnicode(buffy, idx + 2);
-              replen = 6;
+              buffy.append(parseUnicode(idx + 2, to));
+              idx += 6;
               break;
             /*
-             * darf nicht gemacht werden, weil zum Beispiel in URLs %-escapes
-             * vorkommen:
-             *
-             * default: throw new IllegalArgumentException("Unknown escape in string
-             * token '%" + buffy.charAt(idx)+"'!");
+             * Unbekannte Escapes dürfen keinen Fehler erzeugen, weil zum Beispiel in
+             * URLs %-escapes vorkommen.
              */
+            default:
+              buffy.append(ch);
+              ++idx;
           }
         }
-        buffy.replace(idx, idx + replen, repstr);
-        startidx = idx + repstr.length();
+        else
+        {
+          buffy.append(ch);
+          ++idx;
+        }
       }
+      return intern(buffy.toString());
+    }
 
-      content = buffy.toString();
+    private String intern(String str)
+    {
+      String interned = symbols.putIfAbsent(str, str);
+      return interned == null ? str : interned;
     }
 
-    private String parseUnicode(StringBuilder str, int idx)
+    private char parseUnicode(int idx, int to)
     {
-      if (idx + 4 > str.length())
+      if (idx + 4 > to)
         throw new IllegalArgumentException("Incomplete %u escape!");
-      String code = str.substring(idx, idx + 4);
+      String code = new String(line, idx, 4);
       try
       {
-        char ch = (char) Integer.parseInt(code, 16);
-        return Character.toString(ch);
+        return (char) Integer.parseInt(code, 16);
       }
       catch (NumberFormatException x)
       {
@@ -1312,329 +1995,525 @@ public class ConfigThingy implements Iterable<ConfigThingy>
       }
     }
 
-    @Override
-    public TokenType type()
+    private boolean startsWith(int start, String str)
     {
-      return TokenType.STRING;
+      if (start + str.length() > lineLen)
+        return false;
+      for (int i = 0; i < str.length(); ++i)
+      {
+        if (line[start + i] != str.charAt(i))
+          return false;
+      }
+      return true;
     }
 
     /**
-     * Liefert die Länge des längsten Prefixes von str, das sich als Token dieser
-     * Klasse interpretieren lässt.
+     * Liest die nächste Zeile nach line. Zeilenenden sind '\n', '\r' und "\r\n".
+     *
+     * @return false, falls das Ende der Eingabe erreicht ist.
      */
-    public static int atStartOf(String str)
+    private boolean readLine() throws IOException
     {
-      if (str.length() < 2) {
-        return 0;
-      }
-      char quote = str.charAt(0);
-      if (quote != '"' && quote != '\'') {
-        return 0;
-      }
+      lineLen = 0;
+      pos = 0;
+      if (eof)
+        return false;
 
-      int idx = 1;
       while (true)
       {
-        idx = str.indexOf(quote, idx);
-        if (idx < 0) {
-          return 0;
+        if (bufPos >= bufLen)
+        {
+          bufLen = in.read(buf, 0, buf.length);
+          bufPos = 0;
+          if (bufLen <= 0)
+          {
+            bufLen = 0;
+            eof = true;
+            if (lineLen > 0)
+            {
+              ++lineNo;
+              return true;
+            }
+            return false;
+          }
         }
-        ++idx;
-        if (idx >= str.length() || str.charAt(idx) != quote) {
-          return idx;
+
+        if (skipLF)
+        {
+          skipLF = false;
+          if (buf[bufPos] == '\n')
+          {
+            ++bufPos;
+            continue;
+          }
+        }
+
+        int lineStart = bufPos;
+        while (bufPos < bufLen && buf[bufPos] != '\n' && buf[bufPos] != '\r')
+          ++bufPos;
+        appendToLine(lineStart, bufPos - lineStart);
+
+        if (bufPos < bufLen)
+        {
+          skipLF = buf[bufPos] == '\r';
+          ++bufPos;
+          ++lineNo;
+          return true;
         }
-        ++idx;
       }
     }
-  }
 
-  /**
-   * Ein Token für einen Schlüssel gemäß Syntax für WollMux-Config-Dateien.
-   *
-   * @author Matthias Benkmann (D-III-ITD 5.1)
-   */
-  private static class KeyToken extends StringContentToken
-  {
-    /**
-     * Regex zur Identifikation von legalen Schlüsseln.
-     */
-    private static Pattern p = Pattern.compile("^([a-zA-Z_][a-zA-Z_0-9]*)");
+    private void appendToLine(int from, int len)
+    {
+      if (lineLen + len > line.length)
+        line = Arrays.copyOf(line, Math.max(2 * line.length, lineLen + len));
+      System.arraycopy(buf, from, line, lineLen, len);
+      lineLen += len;
+    }
 
     /**
-     * Erzeugt ein neues KeyToken
-     *
-     * @param tokenData
-     *          ein String, für den {@link #atStartOf(String)} einen Wert größer 0
-     *          zurückliefert.
+     * Entspricht der Zeichenklasse {@code (\p{Space}|\u00A0|,|;|\uFEFF)}.
      */
-    public KeyToken(String tokenData, URL url, int line, int position)
+    private static boolean isWhitespace(char ch)
     {
-      super(url, line, position);
-      Matcher m = p.matcher(tokenData);
-      if (!m.find()) {
-        throw new IllegalArgumentException("Key token expected!");
+      switch (ch)
+      {
+        case ' ':
+        case '\t':
+        case '\n':
+        case '\u000B':
+        case '\f':
+        case '\r':
+        case '\u00A0':
+        case ',':
+        case ';':
+        case '\uFEFF':
+          return true;
+        default:
+          return false;
       }
-      content = m.group(1);
     }
 
-    @Override
-    public TokenType type()
+    private static boolean isKeyStart(char ch)
     {
-      return TokenType.KEY;
+      return ('a' <= ch && ch <= 'z') || ('A' <= ch && ch <= 'Z') || ch == '_';
     }
 
-    /**
-     * Liefert die Länge des längsten Prefixes von str, das sich als Token dieser
-     * Klasse interpretieren lässt.
-     */
-    public static int atStartOf(String str)
+    private static boolean isKeyPart(char ch)
     {
-      Matcher m = p.matcher(str);
-      if (!m.find()) {
-        return 0;
-      }
-      return m.end();
+      return isKeyStart(ch) || ('0' <= ch && ch <= '9');
     }
   }
 
   /**
-   * Token für öffnende runde Klammer.
-   *
-   * @author Matthias Benkmann (D-III-ITD 5.1)
+   * Liefert den Thread-Pool zum Lesen includeter Dateien.
    */
-  private static class OpenParenToken extends StringContentToken
+  private static synchronized ExecutorService includeExecutor()
   {
-    public OpenParenToken(URL url, int line, int position)
+    if (includeExecutor == null)
     {
-      super(url, line, position);
-      content = "(";
+      AtomicInteger threadCount = new AtomicInteger();
+      includeExecutor = Executors.newFixedThreadPool(INCLUDE_THREADS, r -> {
+        Thread t = new Thread(r, "ConfigThingy-Include-" + threadCount.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      });
     }
+    return includeExecutor;
+  }
 
-    @Override
-    public TokenType type()
-    {
-      return TokenType.OPENPAREN;
-    }
+  /**
+   * Eine %include-Anweisung, deren Inhalt noch nicht eingefügt wurde.
+   */
+  private static final class Include
+  {
+    /** Der Knoten, dem die Kinder der includeten Datei hinzugefügt werden. */
+    private final ConfigThingy target;
 
-    /**
-     * Liefert 1, falls str mit '(' beginnt, ansonsten 0.
-     */
-    public static int atStartOf(String str)
+    /** Die Position in target, an der die Kinder eingefügt werden. */
+    private final int index;
+
+    /** Das Token mit der URL der includeten Datei. */
+    private final Token token;
+
+    private final CompletableFuture<IncludedFile> file;
+
+    public Include(ConfigThingy target, int index, Token token,
+        CompletableFuture<IncludedFile> file)
     {
-      return str.startsWith("(") ? 1 : 0;
+      this.target = target;
+      this.index = index;
+      this.token = token;
+      this.file = file;
     }
   }
 
   /**
-   * Token für schließende runde Klammer.
-   *
-   * @author Matthias Benkmann (D-III-ITD 5.1)
+   * Eine geparste includete Datei.
    */
-  private static class CloseParenToken extends StringContentToken
+  private static final class IncludedFile
   {
-    public CloseParenToken(URL url, int line, int position)
-    {
-      super(url, line, position);
-      content = ")";
-    }
+    private final URL url;
 
-    @Override
-    public TokenType type()
-    {
-      return TokenType.CLOSEPAREN;
-    }
+    /** Ein anonymer Knoten mit dem Inhalt der Datei als Kindern. */
+    private final ConfigThingy content;
 
-    /**
-     * Liefert 1, falls str mit ')' beginnt, ansonsten 0.
-     */
-    public static int atStartOf(String str)
+    /** Die %include-Anweisungen der Datei. */
+    private final List<Include> includes;
+
+    private boolean resolved = false;
+
+    private boolean used = false;
+
+    public IncludedFile(URL url, ConfigThingy content, List<Include> includes)
     {
-      return str.startsWith(")") ? 1 : 0;
+      this.url = url;
+      this.content = content;
+      this.includes = includes;
     }
   }
 
   /**
-   * Token für den String "%include".
-   *
-   * @author Matthias Benkmann (D-III-ITD 5.1)
+   * Der Zustand beim Einlesen einer Datei samt aller includeten Dateien.
    */
-  private static class IncludeToken extends StringContentToken
+  private static final class IncludeContext
   {
-    private static final String INC = "%include";
+    /**
+     * Symboltabelle, über die alle Schlüssel und Strings beim Parsen
+     * dedupliziert werden, so dass gleiche Namen im Baum nur einmal im Speicher
+     * liegen.
+     */
+    private final Map<String, String> symbols = new ConcurrentHashMap<>();
+
+    /**
+     * Falls nicht null werden hier die Einfügestellen aller %include-Anweisungen
+     * eingetragen. Jede includete Datei wird dann für jede %include-Anweisung neu
+     * gelesen, damit jede Einfügestelle ihre eigenen Knoten hat.
+     */
+    private final List<Splice> splices;
 
-    public IncludeToken(URL url, int line, int position)
+    public IncludeContext()
     {
-      super(url, line, position);
-      content = INC;
+      this(null);
     }
 
-    @Override
-    public TokenType type()
+    public IncludeContext(List<Splice> splices)
     {
-      return TokenType.INCLUDE;
+      this.splices = splices;
     }
 
+    /** Bereits angestoßene Lesevorgänge, Schlüssel ist die URL als String. */
+    private final Map<String, CompletableFuture<IncludedFile>> files =
+      new ConcurrentHashMap<>();
+
     /**
-     * Liefert die Länge des längsten Prefixes von str, das sich als Token dieser
-     * Klasse interpretieren lässt.
+     * Stößt das Lesen und Parsen der Datei an, die durch urlStr relativ zu context
+     * bestimmt wird, falls dies nicht bereits geschehen ist.
+     *
+     * @param chain
+     *          die URLs der Dateien, die die Datei (auch indirekt) includen.
      */
-    public static int atStartOf(String str)
+    public CompletableFuture<IncludedFile> fetch(URL context, String urlStr,
+        Collection<String> chain)
     {
-      return str.startsWith(INC) ? INC.length() : 0;
+      URL includeURL;
+      try
+      {
+        includeURL = new URL(context, urlEncode(urlStr));
+      }
+      catch (IOException x)
+      {
+        CompletableFuture<IncludedFile> failed = new CompletableFuture<>();
+        failed.completeExceptionally(x);
+        return failed;
+      }
+      return fetch(includeURL, chain);
     }
-  }
-
-  /**
-   * Token für einen Kommentar gemäß Syntax von WollMux-Config-Dateien. ACHTUNG:
-   * Tokens dieser Klasse werden derzeit von {@link ConfigThingy#tokenize(URL)} nicht
-   * zurückgeliefert, sondern verworfen.
-   *
-   * @author Matthias Benkmann (D-III-ITD 5.1)
-   */
-  private static class LineCommentToken extends StringContentToken
-  {
 
     /**
-     * Erzeugt einen neuen LineCommenToken.
+     * Stößt das Lesen und Parsen der Datei includeURL an, falls dies nicht bereits
+     * geschehen ist. Werden Einfügestellen aufgezeichnet, wird die Datei bei jedem
+     * Aufruf neu gelesen. Ist includeURL in chain enthalten, wird die Datei nicht
+     * gelesen, sondern ein fehlgeschlagenes Ergebnis geliefert, da die Datei sich
+     * sonst (bei aufgezeichneten Einfügestellen) endlos selbst includen würde.
      *
-     * @param tokenData
-     *          ein String, dessen erstes Zeichen '#' ist.
+     * @param chain
+     *          die URLs der Dateien, die includeURL (auch indirekt) includen.
      */
-    public LineCommentToken(String tokenData, URL url, int line, int position)
+    public CompletableFuture<IncludedFile> fetch(URL includeURL, Collection<String> chain)
     {
-      super(url, line, position);
-      content = tokenData.substring(1);
+      String urlKey = includeURL.toExternalForm();
+      if (chain.contains(urlKey))
+      {
+        CompletableFuture<IncludedFile> failed = new CompletableFuture<>();
+        failed.completeExceptionally(
+          new IOException(includeURL + " wird rekursiv includet"));
+        return failed;
+      }
+
+      List<String> fileChain = new ArrayList<>(chain.size() + 1);
+      fileChain.add(urlKey);
+      fileChain.addAll(chain);
+      Function<String, CompletableFuture<IncludedFile>> read =
+        key -> CompletableFuture.supplyAsync(() -> {
+          try
+          {
+            ConfigThingy content = new ConfigThingy("");
+            List<Include> includes = new ArrayList<>();
+            content.parse(includeURL,
+              new InputStreamReader(includeURL.openStream(), CHARSET), includes, this,
+              fileChain);
+            return new IncludedFile(includeURL, content, includes);
+          }
+          catch (IOException | SyntaxErrorException x)
+          {
+            throw new CompletionException(x);
+          }
+        }, includeExecutor());
+
+      if (splices != null)
+        return read.apply(urlKey);
+      return files.computeIfAbsent(urlKey, read);
     }
 
-    @Override
-    public TokenType type()
+    /**
+     * Fügt die Inhalte der includeten Dateien an den Stellen der
+     * %include-Anweisungen ein. Fehler werden in der Reihenfolge der
+     * %include-Anweisungen gemeldet.
+     *
+     * @param chain
+     *          die URLs der Dateien, deren Includes gerade aufgelöst werden, zur
+     *          Erkennung von zyklischen Includes.
+     * @param sources
+     *          falls nicht null werden die URLs der includeten Dateien eingetragen.
+     * @param parent
+     *          die Einfügestelle der Datei, deren Includes aufgelöst werden, oder
+     *          null. Wird nur verwendet, wenn Einfügestellen aufgezeichnet werden.
+     */
+    public void resolve(List<Include> includes, Deque<String> chain,
+        Collection<URL> sources, Splice parent) throws IOException, SyntaxErrorException
     {
-      return TokenType.LINECOMMENT;
+      List<List<ConfigThingy>> contents = new ArrayList<>(includes.size());
+      List<Splice> spliced = splices == null ? null : new ArrayList<>(includes.size());
+      for (Include include : includes)
+      {
+        Token token = include.token;
+        try
+        {
+          IncludedFile file = join(include.file);
+          Splice splice = null;
+          if (spliced != null)
+          {
+            splice = new Splice(parent, include.target, file, chain);
+            if (parent != null)
+              parent.children.add(splice);
+            spliced.add(splice);
+          }
+          contents.add(take(file, chain, sources, splice));
+        }
+        catch (IOException iox)
+        {
+          throw new IOException(token.url() + " in Zeile " + token.line()
+            + " bei Zeichen " + token.position() + ": %include fehlgeschlagen: ", iox);
+        }
+      }
+
+      // rückwärts, damit die Positionen der vorderen Includes gültig bleiben
+      for (int i = includes.size() - 1; i >= 0; --i)
+      {
+        Include include = includes.get(i);
+        include.target.mutableChildren().addAll(include.index, contents.get(i));
+        include.target.trimChildren();
+      }
+
+      if (spliced != null)
+      {
+        // vorwärts, um die endgültigen Positionen zu bestimmen
+        Map<ConfigThingy, Integer> shift = new IdentityHashMap<>();
+        for (int i = 0; i < includes.size(); ++i)
+        {
+          Include include = includes.get(i);
+          int offset = shift.getOrDefault(include.target, 0);
+          shift.put(include.target, offset + contents.get(i).size());
+          spliced.get(i).spliced(include.target.children, include.index + offset,
+            contents.get(i));
+        }
+        splices.addAll(spliced);
+      }
+      for (Include include : includes)
+        include.target.structureChanged();
     }
 
     /**
-     * Liefert die Länge des längsten Prefixes von str, das sich als Token dieser
-     * Klasse interpretieren lässt.
+     * Liefert die Kinder von file mit aufgelösten Includes. Beim ersten Aufruf
+     * werden die geparsten Knoten selbst geliefert, bei jedem weiteren Kopien davon.
      */
-    public static int atStartOf(String str)
+    private List<ConfigThingy> take(IncludedFile file, Deque<String> chain,
+        Collection<URL> sources, Splice splice) throws IOException, SyntaxErrorException
+    {
+      String key = file.url.toExternalForm();
+      if (chain.contains(key))
+        throw new IOException(file.url + " wird rekursiv includet");
+
+      if (sources != null)
+        sources.add(file.url);
+
+      if (!file.resolved)
+      {
+        chain.push(key);
+        resolve(file.includes, chain, sources, splice);
+        chain.pop();
+        file.resolved = true;
+      }
+
+      if (!file.used)
+      {
+        file.used = true;
+        return file.content.children;
+      }
+
+      List<ConfigThingy> copies = new ArrayList<>(file.content.count());
+      for (ConfigThingy child : file.content)
+        copies.add(new ConfigThingy(child));
+      return copies;
+    }
+
+    private static IncludedFile join(CompletableFuture<IncludedFile> file)
+        throws IOException, SyntaxErrorException
     {
-      return str.startsWith("#") ? str.length() : 0;
+      try
+      {
+        return file.join();
+      }
+      catch (CompletionException x)
+      {
+        Throwable cause = x.getCause();
+        if (cause instanceof IOException)
+          throw (IOException) cause;
+        if (cause instanceof SyntaxErrorException)
+          throw (SyntaxErrorException) cause;
+        if (cause instanceof RuntimeException)
+          throw (RuntimeException) cause;
+        if (cause instanceof Error)
+          throw (Error) cause;
+        throw x;
+      }
     }
   }
 
   /**
-   * Signalisiert das Ende des Eingabedatenstroms.
-   *
-   * @author Matthias Benkmann (D-III-ITD 5.1)
+   * Die Stelle, an der der Inhalt einer includeten Datei eingefügt wurde. Wird nur
+   * beim Einlesen über {@link #reload(URL, Collection, List)} aufgezeichnet und
+   * erlaubt es, die Datei später neu zu lesen und ihre Knoten zu ersetzen.
    */
-  private static class EndToken extends StringContentToken
+  static final class Splice
   {
-    public EndToken(URL url, int line, int position)
+    /** Die Einfügestelle der Datei mit der %include-Anweisung oder null. */
+    private final Splice parent;
+
+    /** Die Einfügestellen der von dieser Datei includeten Dateien. */
+    private final List<Splice> children = new ArrayList<>();
+
+    private final URL url;
+
+    /** Die URLs der Dateien mit der %include-Anweisung, die innerste zuerst. */
+    private final List<String> chain;
+
+    /** Der anonyme Knoten, in den die Datei geparst wurde. */
+    private final ConfigThingy content;
+
+    /** Der Knoten, in den die Knoten eingefügt wurden. */
+    private ConfigThingy target;
+
+    /** Die eingefügten Knoten. */
+    private List<ConfigThingy> nodes = NO_CHILDREN;
+
+    /** Der Knoten vor den eingefügten Knoten oder null, falls sie am Anfang stehen. */
+    private ConfigThingy before;
+
+    private Splice(Splice parent, ConfigThingy target, IncludedFile file,
+        Collection<String> chain)
     {
-      super(url, line, position);
-      content = "";
+      this.parent = parent;
+      this.target = target;
+      this.url = file.url;
+      this.content = file.content;
+      this.chain = new ArrayList<>(chain);
     }
 
-    @Override
-    public TokenType type()
+    /**
+     * Die URL der includeten Datei.
+     */
+    URL getURL()
     {
-      return TokenType.END;
+      return url;
     }
-  }
 
-  /**
-   * Zerlegt die Daten aus read in {@link Token}s. Als Quell-URL wird in den Tokens
-   * url eingetragen.
-   *
-   * @return die Liste der identifizierten Tokens, abgeschlossen durch mindestens 7
-   *         {@link EndToken}s.
-   * @throws IOException
-   *           falls beim Zugriff auf die Daten von url etwas schief geht.
-   * @throws SyntaxErrorException
-   *           falls eine Zeichenfolge nicht als Token identifiziert werden kann.
-   */
-  private static List<StringContentToken> tokenize(URL url, Reader read)
-      throws IOException, SyntaxErrorException
-  {
-    List<StringContentToken> tokens = new ArrayList<>();
-    BufferedReader in = new BufferedReader(read);
-    String line;
+    /**
+     * Liefert true, falls diese Einfügestelle im Inhalt von other liegt.
+     */
+    boolean isWithin(Splice other)
+    {
+      for (Splice s = parent; s != null; s = s.parent)
+      {
+        if (s == other)
+          return true;
+      }
+      return false;
+    }
 
-    int lineNo = 0;
-    Pattern whitespace = Pattern.compile("^(\\p{Space}|\\u00A0|,|;|\\uFEFF)+");
-    while (null != (line = in.readLine()))
+    /**
+     * Merkt sich, dass nodes an Position start in list (der Kindliste von target)
+     * eingefügt wurden. Die Einfügestellen im Inhalt, die sich auf den anonymen
+     * Knoten der Datei beziehen, werden auf target umgehängt.
+     */
+    private void spliced(List<ConfigThingy> list, int start, List<ConfigThingy> nodes)
     {
-      ++lineNo;
-      int pos = 0;
+      this.nodes = new ArrayList<>(nodes);
+      this.before = start > 0 ? list.get(start - 1) : null;
+      retarget(this);
+    }
 
-      while (line.length() > 0)
+    private void retarget(Splice splice)
+    {
+      for (Splice child : splice.children)
       {
-        Matcher wsm = whitespace.matcher(line);
-        if (wsm.find())
-        {
-          pos += wsm.end();
-          line = line.substring(wsm.end());
-          if (line.length() == 0) {
-            continue;
-          }
-        }
-
-        int tokenLength;
-        try
-        {
-          if (0 != (tokenLength = KeyToken.atStartOf(line)))
-          {
-            tokens.add(new KeyToken(line, url, lineNo, pos + 1));
-          }
-          else if (0 != (tokenLength = StringToken.atStartOf(line)))
-          {
-            tokens.add(new StringToken(line, url, lineNo, pos + 1));
-          }
-          else if (0 != (tokenLength = OpenParenToken.atStartOf(line)))
-          {
-            tokens.add(new OpenParenToken(url, lineNo, pos + 1));
-          }
-          else if (0 != (tokenLength = CloseParenToken.atStartOf(line)))
-          {
-            tokens.add(new CloseParenToken(url, lineNo, pos + 1));
-          }
-          else if (0 != (tokenLength = IncludeToken.atStartOf(line)))
-          {
-            tokens.add(new IncludeToken(url, lineNo, pos + 1));
-          }
-          else if (0 != (tokenLength = LineCommentToken.atStartOf(line)))
-          {
-            // LineCommentTokens werden nicht in tokens eingefügt, weil
-            // der Parser im Fall von 2er Paaren wie KEY STRING nicht in
-            // der Lage ist über Kommentare hinwegzulesen. Anstatt ihm das
-            // Einzubauen ist es einfacher, Kommentare einfach wegzuschmeissen.
-          }
-          else
-          {
-            throw new SyntaxErrorException(url + ": Syntaxfehler in Zeile " + lineNo
-              + " bei Zeichen " + (pos + 1) + ", Text an Fehlerstelle: \"" + line
-              + "\"");
-          }
-        }
-        catch (IllegalArgumentException x)
+        if (child.target == content)
         {
-          throw new SyntaxErrorException(url + ": Syntaxfehler in Zeile " + lineNo
-            + " bei Zeichen " + (pos + 1) + ", Text an Fehlerstelle: \"" + line
-            + "\"", x);
+          child.target = target;
+          if (child.before == null)
+            child.before = before;
         }
-
-        pos += tokenLength;
-        line = line.substring(tokenLength);
+        retarget(child);
       }
     }
 
-    // add a couple EndTokens so that users don't have to worry about
-    // checking if there's enough input remaining
-    ++lineNo;
-    for (int i = 0; i < 7; ++i)
-      tokens.add(new EndToken(url, lineNo, 0));
+    /**
+     * Liefert die aktuelle Position der eingefügten Knoten in target oder -1, falls
+     * sie dort nicht mehr stehen.
+     */
+    private int locate()
+    {
+      List<ConfigThingy> list = target.children;
+      if (nodes.isEmpty())
+      {
+        if (before == null)
+          return 0;
+        int index = list.indexOf(before);
+        return index < 0 ? -1 : index + 1;
+      }
 
-    return tokens;
+      // ConfigThingy überschreibt equals() nicht, indexOf() vergleicht Referenzen
+      int start = list.indexOf(nodes.get(0));
+      if (start < 0 || start + nodes.size() > list.size())
+        return -1;
+      for (int i = 1; i < nodes.size(); ++i)
+      {
+        if (list.get(start + i) != nodes.get(i))
+          return -1;
+      }
+      return start;
+    }
   }
 
   /**
@@ -0,0 +1,418 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2020 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.config;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches a configuration and all included files and applies changes to the parsed
+ * tree while WollMux is running.
+ *
+ * The first change re-reads the whole configuration, because a tree loaded from a
+ * {@link ConfigSnapshot} doesn't know which nodes come from which file. While doing so
+ * the position of every %include is recorded. Later changes of an included file only
+ * re-read this file and replace the nodes it contributed. Changes of the main file
+ * always re-read everything.
+ *
+ * Child lists of nodes in the tree are never modified, they are replaced by new lists.
+ * So code iterating over the configuration at the same time sees either the old or the
+ * new nodes.
+ *
+ * If a snapshot file is given, the {@link ConfigSnapshot} is written again as soon as
+ * the files haven't been changed for {@link ConfigSnapshot#MODIFICATION_TOLERANCE}
+ * milliseconds after a reload.
+ */
+public final class ConfigWatcher implements Closeable
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(ConfigWatcher.class);
+
+  /**
+   * Time in milliseconds without further changes before the configuration is reloaded.
+   * Editors often write a file in several steps.
+   */
+  private static final long QUIET_PERIOD = 500;
+
+  private final ConfigThingy conf;
+
+  private final URL url;
+
+  /**
+   * The snapshot of {@link #conf} or null.
+   */
+  private final File snapshot;
+
+  /**
+   * The URLs of all files read for {@link #conf}.
+   */
+  private final List<URL> sources;
+
+  /**
+   * True if {@link #conf} has been reloaded and the snapshot hasn't been written yet.
+   */
+  private boolean snapshotPending;
+
+  /**
+   * The local files of the configuration by their absolute path.
+   */
+  private final Map<Path, URL> files = new HashMap<>();
+
+  /**
+   * The watched directories.
+   */
+  private final Set<Path> directories = new HashSet<>();
+
+  /**
+   * The positions of all includes in {@link #conf} or null if the configuration
+   * hasn't been re-read yet.
+   */
+  private List<ConfigThingy.Splice> splices;
+
+  private WatchService watchService;
+
+  private Thread thread;
+
+  /**
+   * Create a new watcher. It doesn't watch anything until {@link #start(Consumer)} is
+   * called.
+   *
+   * @param conf
+   *          The configuration. Its children are replaced on changes.
+   * @param url
+   *          The URL conf was read from.
+   * @param sources
+   *          The URLs of all files read for conf, see
+   *          {@link ConfigThingy#ConfigThingy(String, URL, Collection)}. Only local
+   *          files are watched.
+   */
+  public ConfigWatcher(ConfigThingy conf, URL url, Collection<URL> sources)
+  {
+    this(conf, url, sources, null);
+  }
+
+  /**
+   * Create a new watcher, which also updates a snapshot of the configuration.
+   *
+   * @param conf
+   *          The configuration. Its children are replaced on changes.
+   * @param url
+   *          The URL conf was read from.
+   * @param sources
+   *          The URLs of all files read for conf, see
+   *          {@link ConfigThingy#ConfigThingy(String, URL, Collection)}. Only local
+   *          files are watched.
+   * @param snapshot
+   *          The snapshot file of conf, see {@link ConfigSnapshot}. If null, no
+   *          snapshot is written.
+   */
+  public ConfigWatcher(ConfigThingy conf, URL url, Collection<URL> sources, File snapshot)
+  {
+    this.conf = conf;
+    this.url = url;
+    this.snapshot = snapshot;
+    this.sources = new ArrayList<>(sources);
+    addFile(url);
+    sources.forEach(this::addFile);
+  }
+
+  /**
+   * Start watching the files in a background thread.
+   *
+   * @param listener
+   *          Called with the changed files after the configuration has been updated.
+   *          It isn't called if the changed files couldn't be read.
+   * @throws IOException
+   *           The files can't be watched.
+   */
+  public synchronized void start(Consumer<List<URL>> listener) throws IOException
+  {
+    if (watchService != null)
+    {
+      return;
+    }
+    watchService = FileSystems.getDefault().newWatchService();
+    for (Path file : files.keySet())
+    {
+      register(file.getParent());
+    }
+    thread = new Thread(() -> watch(listener), "ConfigWatcher");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Apply changes of some files to the configuration. If only included files have
+   * changed, only these files are read again.
+   *
+   * @param changed
+   *          The changed files.
+   * @return True if the configuration has been changed, false if the files aren't
+   *         part of the configuration.
+   * @throws IOException
+   *           A file couldn't be read. The configuration isn't changed.
+   * @throws SyntaxErrorException
+   *           A file is invalid. The configuration isn't changed.
+   */
+  public synchronized boolean reload(Collection<URL> changed)
+      throws IOException, SyntaxErrorException
+  {
+    Set<String> keys = new HashSet<>();
+    changed.forEach(file -> keys.add(file.toExternalForm()));
+    if (splices == null || keys.contains(url.toExternalForm()))
+    {
+      reloadAll();
+      snapshotPending = snapshot != null;
+      return true;
+    }
+
+    boolean modified = false;
+    List<URL> sources = new ArrayList<>();
+    for (ConfigThingy.Splice splice : new ArrayList<>(splices))
+    {
+      // splices inside a replaced file have already been re-read
+      if (!keys.contains(splice.getURL().toExternalForm()) || !splices.contains(splice))
+      {
+        continue;
+      }
+      if (!ConfigThingy.reinclude(splice, splices, sources))
+      {
+        LOGGER.debug("Einfügestelle von {} nicht gefunden, lade {} komplett neu",
+            splice.getURL(), url);
+        reloadAll();
+        snapshotPending = snapshot != null;
+        return true;
+      }
+      modified = true;
+    }
+    sources.forEach(this::addFile);
+    this.sources.addAll(sources);
+    snapshotPending |= modified && snapshot != null;
+    return modified;
+  }
+
+  /**
+   * Write the snapshot if the configuration has been reloaded since the last call.
+   *
+   * @return True if the snapshot has been written.
+   */
+  synchronized boolean writeSnapshot()
+  {
+    if (!snapshotPending)
+    {
+      return false;
+    }
+    snapshotPending = false;
+    try
+    {
+      if (ConfigSnapshot.write(snapshot, conf, url, sources,
+          System.currentTimeMillis() - ConfigSnapshot.MODIFICATION_TOLERANCE))
+      {
+        LOGGER.debug("Snapshot {} aktualisiert", snapshot);
+        return true;
+      }
+    } catch (IOException e)
+    {
+      LOGGER.debug("Snapshot {} konnte nicht geschrieben werden", snapshot, e);
+    }
+    return false;
+  }
+
+  @Override
+  public synchronized void close()
+  {
+    if (watchService == null)
+    {
+      return;
+    }
+    try
+    {
+      watchService.close();
+    } catch (IOException e)
+    {
+      LOGGER.debug("", e);
+    }
+    thread.interrupt();
+    watchService = null;
+    thread = null;
+  }
+
+  private void reloadAll() throws IOException, SyntaxErrorException
+  {
+    List<URL> sources = new ArrayList<>();
+    List<ConfigThingy.Splice> recorded = new ArrayList<>();
+    conf.reload(url, sources, recorded);
+    splices = recorded;
+    synchronized (this)
+    {
+      // the URLs of a snapshot may be spelled differently than the includes
+      files.clear();
+      addFile(url);
+      sources.forEach(this::addFile);
+      this.sources.clear();
+      this.sources.add(url);
+      this.sources.addAll(sources);
+    }
+  }
+
+  private void watch(Consumer<List<URL>> listener)
+  {
+    try
+    {
+      while (!Thread.currentThread().isInterrupted())
+      {
+        Map<String, URL> changed = new LinkedHashMap<>();
+        WatchKey key = isSnapshotPending()
+            ? watchService.poll(ConfigSnapshot.MODIFICATION_TOLERANCE, TimeUnit.MILLISECONDS)
+            : watchService.take();
+        if (key == null)
+        {
+          writeSnapshot();
+          continue;
+        }
+        do
+        {
+          collect(key, changed);
+          key = watchService.poll(QUIET_PERIOD, TimeUnit.MILLISECONDS);
+        } while (key != null);
+
+        if (!changed.isEmpty())
+        {
+          apply(new ArrayList<>(changed.values()), listener);
+        }
+      }
+    } catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    } catch (ClosedWatchServiceException e)
+    {
+      LOGGER.debug("Überwachung der Konfiguration beendet");
+    }
+  }
+
+  private void collect(WatchKey key, Map<String, URL> changed)
+  {
+    Path dir = (Path) key.watchable();
+    for (WatchEvent<?> event : key.pollEvents())
+    {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+      {
+        changed.put(url.toExternalForm(), url);
+        continue;
+      }
+      Path file = dir.resolve((Path) event.context()).toAbsolutePath().normalize();
+      URL source;
+      synchronized (this)
+      {
+        source = files.get(file);
+      }
+      if (source != null)
+      {
+        changed.put(source.toExternalForm(), source);
+      }
+    }
+    key.reset();
+  }
+
+  private void apply(List<URL> changed, Consumer<List<URL>> listener)
+  {
+    try
+    {
+      if (reload(changed))
+      {
+        LOGGER.info("Konfiguration wegen Änderungen an {} neu geladen", changed);
+        listener.accept(changed);
+      }
+    } catch (IOException | SyntaxErrorException e)
+    {
+      LOGGER.error("Die geänderte Konfiguration konnte nicht gelesen werden. "
+          + "Die bisherige Konfiguration wird weiter verwendet.", e);
+    } catch (RuntimeException e)
+    {
+      LOGGER.error("", e);
+    }
+  }
+
+  private synchronized boolean isSnapshotPending()
+  {
+    return snapshotPending;
+  }
+
+  private synchronized void addFile(URL source)
+  {
+    if (!"file".equalsIgnoreCase(source.getProtocol()))
+    {
+      return;
+    }
+    try
+    {
+      Path file = Paths.get(source.toURI()).toAbsolutePath().normalize();
+      if (files.putIfAbsent(file, source) == null && watchService != null)
+      {
+        register(file.getParent());
+      }
+    } catch (URISyntaxException | IllegalArgumentException e)
+    {
+      LOGGER.debug("{} kann nicht überwacht werden", source, e);
+    }
+  }
+
+  private void register(Path dir)
+  {
+    if (dir == null || !directories.add(dir))
+    {
+      return;
+    }
+    try
+    {
+      dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+          StandardWatchEventKinds.ENTRY_MODIFY);
+    } catch (IOException e)
+    {
+      LOGGER.error("Verzeichnis {} kann nicht überwacht werden", dir, e);
+    }
+  }
+}
@@ -26,13 +26,22 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
@@ -183,6 +192,143 @@ public class ConfGenerator
     }
   }
 
+  /**
+   * Generate the configuration files from a XML-document, which is read from a
+   * stream. Unlike {@link #generateConf()} the document isn't loaded into
+   * memory. Only two children of a file tag are kept at the same time, because
+   * the layout of an element depends on its successor.
+   *
+   * @param xml
+   *          The stream with the XML-document.
+   * @throws XMLGeneratorException
+   *           Invalid XML-document or unable to generate the configuration
+   *           file.
+   */
+  public static void generateConf(final InputStream xml)
+      throws XMLGeneratorException
+  {
+    try
+    {
+      final XMLInputFactory factory = XMLInputFactory.newInstance();
+      factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+      factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+          false);
+      final XMLStreamReader reader = factory.createXMLStreamReader(xml);
+      final Document document = DocumentBuilderFactory.newInstance()
+          .newDocumentBuilder().newDocument();
+      reader.nextTag();
+      if (!XMLTags.CONFIG.getName().equals(reader.getLocalName()))
+      {
+        throw new XMLGeneratorException("No root element config in xml file");
+      }
+      if (reader.nextTag() != XMLStreamConstants.START_ELEMENT)
+      {
+        throw new XMLGeneratorException(
+            "Root element of document has no child-elements.");
+      }
+      do
+      {
+        final File file = new File(reader.getAttributeValue(null, "filename"));
+        try (OutputStreamWriter nxtWriter = new OutputStreamWriter(
+            new FileOutputStream(file), StandardCharsets.UTF_8))
+        {
+          printFile(reader, document, new PrettyPrinter(nxtWriter));
+        }
+      } while (reader.nextTag() == XMLStreamConstants.START_ELEMENT);
+      reader.close();
+    } catch (final XMLStreamException | ParserConfigurationException e)
+    {
+      throw new XMLGeneratorException("Couldn't read XML-document.", e);
+    } catch (final IOException e)
+    {
+      throw new XMLGeneratorException("Print was unsuccessful.", e);
+    }
+  }
+
+  /**
+   * Print the children of a file tag, which are read from a stream.
+   *
+   * @param reader
+   *          The reader positioned at the start of the file tag. Afterwards
+   *          it is positioned at the end of the file tag.
+   * @param document
+   *          The document used to create the elements.
+   * @param printer
+   *          The printer to use.
+   * @throws XMLStreamException
+   *           Couldn't read the XML-document.
+   * @throws IOException
+   *           Couldn't print.
+   * @throws XMLGeneratorException
+   *           Unsupported elements.
+   */
+  private static void printFile(final XMLStreamReader reader,
+      final Document document, final PrettyPrinter printer)
+      throws XMLStreamException, IOException, XMLGeneratorException
+  {
+    final Element file = document.createElement(XMLTags.FILE.getName());
+    Element previous = null;
+    while (reader.nextTag() == XMLStreamConstants.START_ELEMENT)
+    {
+      final Element next = readElement(reader, document);
+      file.appendChild(next);
+      if (previous != null)
+      {
+        printElement(previous, printer);
+        file.removeChild(previous);
+      }
+      previous = next;
+    }
+    if (previous != null)
+    {
+      printElement(previous, printer);
+    }
+    printer.print();
+    printer.flush();
+  }
+
+  /**
+   * Read an element and its children from a stream.
+   *
+   * @param reader
+   *          The reader positioned at the start of the element. Afterwards it
+   *          is positioned at the end of the element.
+   * @param document
+   *          The document used to create the elements.
+   * @return The element.
+   * @throws XMLStreamException
+   *           Couldn't read the XML-document.
+   */
+  private static Element readElement(final XMLStreamReader reader,
+      final Document document) throws XMLStreamException
+  {
+    final Element element = document.createElement(reader.getLocalName());
+    for (int index = 0; index < reader.getAttributeCount(); index++)
+    {
+      element.setAttribute(reader.getAttributeLocalName(index),
+          reader.getAttributeValue(index));
+    }
+    final StringBuilder text = new StringBuilder();
+    int event = reader.next();
+    while (event != XMLStreamConstants.END_ELEMENT)
+    {
+      if (event == XMLStreamConstants.START_ELEMENT)
+      {
+        element.appendChild(readElement(reader, document));
+      } else if (reader.hasText())
+      {
+        text.append(reader.getText());
+      }
+      event = reader.next();
+    }
+    // whitespace between child elements isn't content
+    if (!element.hasChildNodes() && text.length() > 0)
+    {
+      element.setTextContent(text.toString());
+    }
+    return element;
+  }
+
   /**
    * Print the children of a file tag.
    *
@@ -195,41 +341,58 @@ public class ConfGenerator
    * @throws XMLGeneratorException
    *           Unsupported elements.
    */
-  private void printChildren(final NodeList children,
+  private static void printChildren(final NodeList children,
       final PrettyPrinter printer) throws IOException, XMLGeneratorException
   {
     for (int index = 0; index < children.getLength(); index++)
     {
-      final Element element = (Element) children.item(index);
-      switch (XMLTags.valueOf(element.getTagName().toUpperCase()))
-      {
-      case KEY:
-        printKey(element, false, false, printer);
-        break;
-      case VALUE:
-        printer.add2Line("(" + Trimmer.addQuoates(element.getTextContent())
-            + ")");
-        printer.print();
-        break;
-      case GROUP:
-        printGroup(element, false, printer);
-        break;
-      case COMMENT:
-        printComment(element, printer);
-        break;
-      case FILEREFERENCE:
-        final String content = element.getTextContent();
-        printer.add2Line("%include \"" + content + "\"");
-        printer.print();
-        break;
-      default:
-        throw new XMLGeneratorException("Unsupported element");
-      }
+      printElement((Element) children.item(index), printer);
     }
     printer.print();
     printer.flush();
   }
 
+  /**
+   * Print a child of a file tag.
+   *
+   * @param element
+   *          The child.
+   * @param printer
+   *          The printer to use.
+   * @throws IOException
+   *           Couldn't print.
+   * @throws XMLGeneratorException
+   *           Unsupported elements.
+   */
+  private static void printElement(final Element element,
+      final PrettyPrinter printer) throws IOException, XMLGeneratorException
+  {
+    switch (XMLTags.valueOf(element.getTagName().toUpperCase()))
+    {
+    case KEY:
+      printKey(element, false, false, printer);
+      break;
+    case VALUE:
+      printer.add2Line("(" + Trimmer.addQuoates(element.getTextContent())
+          + ")");
+      printer.print();
+      break;
+    case GROUP:
+      printGroup(element, false, printer);
+      break;
+    case COMMENT:
+      printComment(element, printer);
+      break;
+    case FILEREFERENCE:
+      final String content = element.getTextContent();
+      printer.add2Line("%include \"" + content + "\"");
+      printer.print();
+      break;
+    default:
+      throw new XMLGeneratorException("Unsupported element");
+    }
+  }
+
   /**
    * Print a key element and its children.
    *
@@ -246,7 +409,7 @@ public class ConfGenerator
    * @throws IOException
    *           Print was unsuccessful.
    */
-  private void printKey(final Element elem, final boolean grouped,
+  private static void printKey(final Element elem, final boolean grouped,
       final boolean whitespace, final PrettyPrinter printer)
       throws XMLGeneratorException, IOException
   {
@@ -295,7 +458,7 @@ public class ConfGenerator
    * @throws IOException
    *           Print was unsuccessful.
    */
-  private void printComment(final Element elem, final PrettyPrinter printer)
+  private static void printComment(final Element elem, final PrettyPrinter printer)
       throws IOException
   {
     printer.add2Line(elem.getTextContent());
@@ -314,7 +477,7 @@ public class ConfGenerator
    * @param printer
    *          The printer.
    */
-  private void printValueOfGroup(final String value, final String whitespace,
+  private static void printValueOfGroup(final String value, final String whitespace,
       final boolean last, final PrettyPrinter printer)
   {
     if (last)
@@ -340,7 +503,7 @@ public class ConfGenerator
    * @throws IOException
    *           Couldn't print.
    */
-  private void printGroupElements(final NodeList elements,
+  private static void printGroupElements(final NodeList elements,
       final boolean isList, final PrettyPrinter printer)
       throws XMLGeneratorException, IOException
   {
@@ -382,7 +545,7 @@ public class ConfGenerator
    * @throws XMLGeneratorException
    *           Unsupported element for group.
    */
-  private void printGroup(final Element elem, final boolean named,
+  private static void printGroup(final Element elem, final boolean named,
       final PrettyPrinter printer) throws IOException, XMLGeneratorException
   {
     printer.add2Line("(");
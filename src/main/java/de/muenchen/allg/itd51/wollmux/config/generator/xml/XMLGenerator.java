@@ -27,14 +27,21 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Deque;
 import java.util.LinkedList;
+import java.util.List;
 
 import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
@@ -68,6 +75,10 @@ import de.muenchen.allg.itd51.wollmux.config.scanner.TokenType;
  * Document doc = generator.generateXML();
  * //print XML-document to original files
  * new ConfGenerator(doc).generateConf();
+ * //or write the XML-document to a stream without creating it in memory
+ * generator.generateXML(new FileOutputStream("someFile.xml"));
+ * //and print it to the original files
+ * ConfGenerator.generateConf(new FileInputStream("someFile.xml"));
  * //print the first file of the XML-document to a stream.
  * new ConfGenerator(doc).generateConf(new FileOutputStream("someOtherFile"), 0);
  * </code>
@@ -78,6 +89,11 @@ import de.muenchen.allg.itd51.wollmux.config.scanner.TokenType;
 public class XMLGenerator
 {
 
+  /**
+   * The name of the attribute of file elements containing the file name.
+   */
+  private static final String FILE_NAME = "filename";
+
   /**
    * The document.
    */
@@ -318,7 +334,6 @@ public class XMLGenerator
    */
   private void createFile(final Token token) throws MalformedURLException
   {
-    final String FILE_NAME = "filename";
     Element element;
     if (!XMLTags.CONFIG.getName().equals(files.peek().getTagName()))
     {
@@ -326,28 +341,205 @@ public class XMLGenerator
       element.setTextContent(token.getContent());
       files.peek().appendChild(element);
     }
-    URL context = new URL("file:" + files.peek().getAttribute(FILE_NAME));
-    String newFile = PathProcessor.processInclude(token.getContent());
-    Path path = Paths.get(newFile);
     element = document.createElement(XMLTags.FILE.getName());
+    element.setAttribute(FILE_NAME,
+        getFileName(files.peek().getAttribute(FILE_NAME), token.getContent()));
+    config.appendChild(element);
+    files.push(element);
+  }
+
+  /**
+   * Compute the value of the filename attribute of a file element.
+   *
+   * @param context
+   *          The filename attribute of the element containing the
+   *          include-instruction.
+   * @param include
+   *          The file name of the include-instruction.
+   * @return The file name.
+   * @throws MalformedURLException
+   *           Couldn't create the URL of the file.
+   */
+  private static String getFileName(final String context, final String include)
+      throws MalformedURLException
+  {
+    URL contextURL = new URL("file:" + context);
+    String newFile = PathProcessor.processInclude(include);
+    Path path = Paths.get(newFile);
     boolean windowsOS = System.getProperty("os.name").toLowerCase().contains("windows");
-    if(windowsOS)
+    if(windowsOS && path.toFile().exists())
     {
-      if(path.toFile().exists())
-      {        
-        element.setAttribute(FILE_NAME, new URL(context, "/" + newFile).getPath()); 
-      }
-      else
+      return new URL(contextURL, "/" + newFile).getPath();
+    }
+    return new URL(contextURL, newFile).getPath();
+  }
+
+  /**
+   * Write the XML-document to a stream without creating it in memory. The
+   * document is the same as the one of {@link #generateXML()}. Each file is
+   * written completely before its included files are read, so only one file
+   * is open at the same time.
+   *
+   * @param out
+   *          The stream to write the document to. The encoding is UTF-8.
+   * @throws XMLGeneratorException
+   *           Couldn't read the configuration or write the document.
+   */
+  public void generateXML(final OutputStream out) throws XMLGeneratorException
+  {
+    try
+    {
+      final XMLStreamWriter writer = XMLOutputFactory.newInstance()
+          .createXMLStreamWriter(out, StandardCharsets.UTF_8.name());
+      writer.writeStartDocument(StandardCharsets.UTF_8.name(), "1.0");
+      writer.writeStartElement(XMLTags.CONFIG.getName());
+      scanner.setFollowIncludes(false);
+      writeFile(writer, scanner, "");
+      writer.writeEndElement();
+      writer.writeEndDocument();
+      writer.flush();
+    } catch (final XMLStreamException e)
+    {
+      throw new XMLGeneratorException("Couldn't write document.", e);
+    } catch (final ScannerException ex)
+    {
+      throw new XMLGeneratorException("Problems while scaning", ex);
+    } catch (MalformedURLException e)
+    {
+      throw new XMLGeneratorException("Problems to create new file reference",
+          e);
+    }
+  }
+
+  /**
+   * Write a file element and afterwards the file elements of the included
+   * files.
+   *
+   * @param writer
+   *          The writer of the document.
+   * @param fileScanner
+   *          The scanner of the file. It mustn't follow includes.
+   * @param context
+   *          The filename attribute of the element containing the
+   *          include-instruction of this file.
+   * @throws XMLStreamException
+   *           Couldn't write the document.
+   * @throws ScannerException
+   *           Couldn't read a file.
+   * @throws XMLGeneratorException
+   *           Unknown tokens.
+   * @throws MalformedURLException
+   *           Couldn't create the URL of an included file.
+   */
+  private void writeFile(final XMLStreamWriter writer,
+      final Scanner fileScanner, final String context)
+      throws XMLStreamException, ScannerException, XMLGeneratorException,
+      MalformedURLException
+  {
+    final Deque<XMLTags> elements = new ArrayDeque<>();
+    final List<URL> includes = new ArrayList<>();
+    final List<String> contexts = new ArrayList<>();
+    String fileName = null;
+    while (fileScanner.hasNext())
+    {
+      final Token token = fileScanner.next();
+      switch (token.getType())
       {
-        element.setAttribute(FILE_NAME, new URL(context, newFile).getPath());
+      case KEY:
+        writer.writeStartElement(XMLTags.KEY.getName());
+        writer.writeAttribute("id", token.getContent());
+        elements.push(XMLTags.KEY);
+        break;
+      case VALUE:
+        writeTextElement(writer, XMLTags.VALUE,
+            Trimmer.trimQuotes(token.getContent()));
+        closeKey(writer, elements);
+        break;
+      case OPENING_BRACKET:
+        writer.writeStartElement(XMLTags.GROUP.getName());
+        elements.push(XMLTags.GROUP);
+        break;
+      case CLOSING_BRACKET:
+        writer.writeEndElement();
+        elements.pop();
+        closeKey(writer, elements);
+        break;
+      case COMMENT:
+        writeTextElement(writer, XMLTags.COMMENT, token.getContent());
+        break;
+      case NEW_FILE:
+        if (fileName == null)
+        {
+          fileName = getFileName(context, token.getContent());
+          writer.writeStartElement(XMLTags.FILE.getName());
+          writer.writeAttribute(FILE_NAME, fileName);
+          elements.push(XMLTags.FILE);
+        } else
+        {
+          writeTextElement(writer, XMLTags.FILEREFERENCE, token.getContent());
+          includes.add(new URL(fileScanner.getFilename(),
+              PathProcessor.processInclude(token.getContent())));
+          // like generateXML() resolve against the innermost element
+          contexts.add(elements.peek() == XMLTags.FILE ? fileName : "");
+        }
+        break;
+      case END_FILE:
+        writer.writeEndElement();
+        elements.pop();
+        break;
+      default:
+        throw new XMLGeneratorException("Unknown token");
       }
     }
-    else
+    fileScanner.close();
+
+    for (int i = 0; i < includes.size(); i++)
     {
-      element.setAttribute(FILE_NAME, new URL(context, newFile).getPath());  
+      final Scanner includeScanner = new Scanner(includes.get(i));
+      includeScanner.setFollowIncludes(false);
+      writeFile(writer, includeScanner, contexts.get(i));
+    }
+  }
+
+  /**
+   * Write an element, which only contains text.
+   *
+   * @param writer
+   *          The writer of the document.
+   * @param tag
+   *          The tag of the element.
+   * @param text
+   *          The text content of the element.
+   * @throws XMLStreamException
+   *           Couldn't write the element.
+   */
+  private static void writeTextElement(final XMLStreamWriter writer,
+      final XMLTags tag, final String text) throws XMLStreamException
+  {
+    writer.writeStartElement(tag.getName());
+    writer.writeCharacters(text);
+    writer.writeEndElement();
+  }
+
+  /**
+   * Close the current element if it is a key element, because its value is
+   * complete.
+   *
+   * @param writer
+   *          The writer of the document.
+   * @param elements
+   *          The stack of open elements.
+   * @throws XMLStreamException
+   *           Couldn't write the end of the element.
+   */
+  private static void closeKey(final XMLStreamWriter writer,
+      final Deque<XMLTags> elements) throws XMLStreamException
+  {
+    if (elements.peek() == XMLTags.KEY)
+    {
+      writer.writeEndElement();
+      elements.pop();
     }
-    config.appendChild(element);
-    files.push(element);
   }
 
   /**
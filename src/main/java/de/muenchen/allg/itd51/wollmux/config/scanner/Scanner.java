@@ -51,6 +51,8 @@ public class Scanner implements Iterator<Token>, Closeable
   private final Deque<Tokenizer> stack = new LinkedList<>();
   /** Is this the first time to read. */
   private boolean isStart;
+  /** Are included files read. */
+  private boolean followIncludes = true;
 
   /**
    * Create a new ScannerReader and read the UTF-8 byte ordering mark if there
@@ -84,6 +86,29 @@ public class Scanner implements Iterator<Token>, Closeable
     stack.push(new Tokenizer(stream));
   }
 
+  /**
+   * Should included files be read? If not, the {@link TokenType#NEW_FILE}
+   * tokens of include-instructions are still returned, but the tokens of the
+   * included file are not. Default is true.
+   *
+   * @param followIncludes
+   *          True if included files should be read, false otherwise.
+   */
+  public void setFollowIncludes(final boolean followIncludes)
+  {
+    this.followIncludes = followIncludes;
+  }
+
+  /**
+   * Get the URL of the file, which is currently read.
+   *
+   * @return The URL of the file or null if all files have been read.
+   */
+  public URL getFilename()
+  {
+    return stack.isEmpty() ? null : stack.peek().getFilename();
+  }
+
   @Override
   public void close() throws ScannerException
   {
@@ -114,7 +139,7 @@ public class Scanner implements Iterator<Token>, Closeable
       return new Token(stack.peek().getFilename().getFile(), TokenType.NEW_FILE);
     }
     final Token token = stack.peek().next();
-    if (token.getType() == TokenType.NEW_FILE)
+    if (token.getType() == TokenType.NEW_FILE && followIncludes)
     {
       try
       {
@@ -0,0 +1,137 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2020 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.db;
+
+import java.util.Map;
+import java.util.Objects;
+
+import de.muenchen.allg.itd51.wollmux.util.L;
+
+/**
+ * A dataset which stores its values in an array. The names of the columns are kept in a
+ * {@link DatasetSchema}, which is shared by all datasets of a datasource. A column without a value
+ * is null, which is different from an empty value.
+ */
+public class ArrayDataset implements Dataset
+{
+  private final DatasetSchema schema;
+
+  private final String key;
+
+  private final String[] values;
+
+  /**
+   * Create a new dataset. The values are used by reference.
+   *
+   * @param schema
+   *          The schema of the dataset.
+   * @param key
+   *          The key of the dataset.
+   * @param values
+   *          The values in the order of {@link DatasetSchema#getColumns()}.
+   * @throws IllegalArgumentException
+   *           The number of values doesn't match the number of columns.
+   */
+  public ArrayDataset(DatasetSchema schema, String key, String[] values)
+  {
+    if (values.length != schema.size())
+    {
+      throw new IllegalArgumentException(
+          "Expected " + schema.size() + " values but got " + values.length);
+    }
+    this.schema = schema;
+    this.key = key;
+    this.values = values;
+  }
+
+  /**
+   * Create a new dataset with the values of a map. Entries of columns, which aren't part of the
+   * schema, are ignored.
+   *
+   * @param schema
+   *          The schema of the dataset.
+   * @param key
+   *          The key of the dataset.
+   * @param data
+   *          Mapping from column to value.
+   */
+  public ArrayDataset(DatasetSchema schema, String key, Map<String, String> data)
+  {
+    this(schema, key, new String[schema.size()]);
+    for (Map.Entry<String, String> entry : data.entrySet())
+    {
+      int position = schema.indexOf(entry.getKey());
+      if (position >= 0)
+      {
+        values[position] = entry.getValue();
+      }
+    }
+  }
+
+  /**
+   * Get the schema of the dataset.
+   *
+   * @return The schema.
+   */
+  public DatasetSchema getSchema()
+  {
+    return schema;
+  }
+
+  /**
+   * Check whether another dataset has the same values in all columns of this dataset.
+   *
+   * @param other
+   *          The other dataset, usually one with more columns.
+   * @return True if the other dataset contains all columns and values of this one.
+   */
+  public boolean agreesWith(ArrayDataset other)
+  {
+    for (int i = 0; i < values.length; i++)
+    {
+      int position = other.schema.indexOf(schema.getColumns().get(i));
+      if (position < 0 || !Objects.equals(values[i], other.values[position]))
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public String get(String columnName) throws ColumnNotFoundException
+  {
+    int position = schema.indexOf(columnName);
+    if (position < 0)
+    {
+      throw new ColumnNotFoundException(L.m("Datensatz kennt Spalte \"%1\" nicht!", columnName));
+    }
+    return values[position];
+  }
+
+  @Override
+  public String getKey()
+  {
+    return key;
+  }
+}
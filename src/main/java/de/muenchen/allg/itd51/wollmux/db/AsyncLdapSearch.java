@@ -41,17 +41,18 @@ public class AsyncLdapSearch
     this.dj = dj;
   }
 
+  /**
+   * Start the search in the main datasource of the {@link DatasourceJoiner}.
+   *
+   * @return The future results, which are null if there is no query or no
+   *         {@link DatasourceJoiner}.
+   */
   public CompletableFuture<QueryResults> runLdapSearchAsync()
   {
-    return this.asyncLdapSearch;
-  }
-
-  private CompletableFuture<QueryResults> asyncLdapSearch = CompletableFuture.supplyAsync(() -> {
-
     if (searchQuery == null || dj == null)
-      return null;
+      return CompletableFuture.completedFuture(null);
 
-    return Search.search(searchQuery, dj);
-  });
+    return Search.searchAsync(searchQuery, dj);
+  }
 
 }
@@ -29,6 +29,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Predicate;
 
 import org.slf4j.Logger;
@@ -198,7 +199,22 @@ public class AttachDatasource implements Datasource
   @Override
   public QueryResults getDatasetsByKey(Collection<String> keys)
   {
-    return attachColumns(source1.getDatasetsByKey(keys), DatasetPredicate.matchAll);
+    return DatasourceExecutor.await(getDatasetsByKeyAsync(keys, false));
+  }
+
+  @Override
+  public CompletableFuture<QueryResults> getDatasetsByKeyAsync(Collection<String> keys)
+  {
+    return getDatasetsByKeyAsync(keys, true);
+  }
+
+  private CompletableFuture<QueryResults> getDatasetsByKeyAsync(Collection<String> keys,
+      boolean dropOnTimeout)
+  {
+    return DatasourceExecutor
+        .withTimeout(source1.getDatasetsByKeyAsync(keys), source1Name, dropOnTimeout)
+        .thenApplyAsync(results -> attachColumns(results, DatasetPredicate.matchAll),
+            DatasourceExecutor.get());
   }
 
   @Override
@@ -214,6 +230,22 @@ public class AttachDatasource implements Datasource
    */
   @Override
   public QueryResults find(List<QueryPart> query)
+  {
+    return DatasourceExecutor.await(findAsync(query, false));
+  }
+
+  /**
+   * Die zweite Datenquelle wird mit den Ergebnissen der ersten abgefragt (bzw. umgekehrt), deshalb
+   * können die beiden Abfragen nicht gleichzeitig laufen. Die Abfragen des Joins laufen aber
+   * gleichzeitig (siehe {@link BatchJoin}).
+   */
+  @Override
+  public CompletableFuture<QueryResults> findAsync(List<QueryPart> query)
+  {
+    return findAsync(query, true);
+  }
+
+  private CompletableFuture<QueryResults> findAsync(List<QueryPart> query, boolean dropOnTimeout)
   {
     List<QueryPart> query1 = new ArrayList<>(query.size() / 2);
     List<QueryPart> query2 = new ArrayList<>(query.size() / 2);
@@ -238,12 +270,13 @@ public class AttachDatasource implements Datasource
      */
     if (!query1.isEmpty())
     {
-      QueryResults results = source1.find(query1);
-
-      return attachColumns(results, DatasetPredicate.makePredicate(query2WithPrefix));
+      Predicate<Dataset> filter = DatasetPredicate.makePredicate(query2WithPrefix);
+      return DatasourceExecutor.withTimeout(source1.findAsync(query1), source1Name, dropOnTimeout)
+          .thenApplyAsync(results -> attachColumns(results, filter), DatasourceExecutor.get());
     } else
     {
-      return attachColumnsReversed(source2.find(query2));
+      return DatasourceExecutor.withTimeout(source2.findAsync(query2), source2Name, dropOnTimeout)
+          .thenApplyAsync(this::attachColumnsReversed, DatasourceExecutor.get());
     }
   }
 
@@ -262,21 +295,12 @@ public class AttachDatasource implements Datasource
   {
     List<Dataset> resultsWithAttachments = new ArrayList<>(results.size());
 
+    BatchJoin join = new BatchJoin(source2, match1, match2);
+    join.fetch(results);
+
     for (Dataset ds : results)
     {
-      List<QueryPart> query = new ArrayList<>(match1.length);
-      for (int i = 0; i < match1.length; ++i)
-      {
-        try
-        {
-          query.add(new QueryPart(match2[i], ds.get(match1[i])));
-        } catch (ColumnNotFoundException x)
-        {
-          LOGGER.error("", x);
-        }
-      }
-
-      QueryResults appendix = source2.find(query);
+      QueryResults appendix = join.find(ds);
 
       Dataset newDataset;
 
@@ -301,28 +325,19 @@ public class AttachDatasource implements Datasource
       }
     }
 
-    return new QueryResultsList(resultsWithAttachments);
+    return new QueryResultsList(resultsWithAttachments, results.isComplete());
   }
 
   private QueryResults attachColumnsReversed(QueryResults results)
   {
     List<ConcatDataset> resultsWithAttachments = new ArrayList<>(results.size());
 
+    BatchJoin join = new BatchJoin(source1, match2, match1);
+    join.fetch(results);
+
     for (Dataset ds : results)
     {
-      List<QueryPart> query = new ArrayList<>(match1.length);
-      for (int i = 0; i < match1.length; ++i)
-      {
-        try
-        {
-          query.add(new QueryPart(match1[i], ds.get(match2[i])));
-        } catch (ColumnNotFoundException x)
-        {
-          LOGGER.error("", x);
-        }
-      }
-
-      QueryResults prependix = source1.find(query);
+      QueryResults prependix = join.find(ds);
 
       if (prependix.size() > 0)
       {
@@ -333,7 +348,7 @@ public class AttachDatasource implements Datasource
       }
     }
 
-    return new QueryResultsList(resultsWithAttachments);
+    return new QueryResultsList(resultsWithAttachments, results.isComplete());
   }
 
   private class ConcatDataset implements Dataset
@@ -0,0 +1,213 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2020 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.db;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Finds the datasets of a datasource whose MATCH columns have the same values as the MATCH columns
+ * of other datasets. Instead of one {@link Datasource#find(List)} per dataset, the distinct value
+ * combinations are collected and fetched with a few {@link Datasource#findAny(List)} queries of at
+ * most {@link #BATCH_SIZE} combinations. These queries run concurrently on the
+ * {@link DatasourceExecutor}. The results are grouped in a hash table by their values.
+ *
+ * Values which can't be compared by a hash lookup (missing, empty or containing *) are searched
+ * with {@link Datasource#find(List)} as before. So are the values of a query which returned
+ * datasets that don't map to any of its value combinations (e.g. because of multi-valued
+ * attributes or matching rules of the server) or which is incomplete, because the hash table
+ * can't tell whether such a combination has no matches.
+ */
+class BatchJoin
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(BatchJoin.class);
+
+  /**
+   * Maximum number of value combinations in one query.
+   */
+  static final int BATCH_SIZE = 100;
+
+  private final Datasource source;
+
+  private final String[] columns;
+
+  private final String[] sourceColumns;
+
+  /**
+   * Maps the case-folded value combinations of the fetched datasets to the found datasets. A
+   * combination without matches is only contained if its query proved it.
+   */
+  private final Map<List<String>, List<Dataset>> table = new HashMap<>();
+
+  /**
+   * Create a new join.
+   *
+   * @param source
+   *          The datasource to search.
+   * @param columns
+   *          The MATCH columns of the datasets to join.
+   * @param sourceColumns
+   *          The corresponding MATCH columns of source.
+   */
+  BatchJoin(Datasource source, String[] columns, String[] sourceColumns)
+  {
+    this.source = source;
+    this.columns = columns;
+    this.sourceColumns = sourceColumns;
+  }
+
+  /**
+   * Fetch the datasets of the source, which match the given datasets.
+   *
+   * @param datasets
+   *          The datasets to join.
+   */
+  void fetch(Iterable<Dataset> datasets)
+  {
+    Map<List<String>, List<QueryPart>> queries = new LinkedHashMap<>();
+    for (Dataset ds : datasets)
+    {
+      List<String> values = getValues(ds, columns);
+      if (values != null)
+      {
+        queries.computeIfAbsent(fold(values), key -> {
+          List<QueryPart> query = new ArrayList<>(values.size());
+          for (int i = 0; i < sourceColumns.length; i++)
+          {
+            query.add(new QueryPart(sourceColumns[i], values.get(i)));
+          }
+          return query;
+        });
+      }
+    }
+    List<List<String>> keys = new ArrayList<>(queries.keySet());
+    List<List<QueryPart>> batch = new ArrayList<>(queries.values());
+    List<CompletableFuture<QueryResults>> chunks = new ArrayList<>();
+    for (int start = 0; start < batch.size(); start += BATCH_SIZE)
+    {
+      List<List<QueryPart>> chunk = batch.subList(start,
+          Math.min(start + BATCH_SIZE, batch.size()));
+      if (batch.size() <= BATCH_SIZE)
+      {
+        chunks.add(CompletableFuture.completedFuture(source.findAny(chunk)));
+      } else
+      {
+        chunks.add(DatasourceExecutor.supply(() -> source.findAny(chunk)));
+      }
+    }
+    for (int i = 0; i < chunks.size(); i++)
+    {
+      List<List<String>> chunkKeys = keys.subList(i * BATCH_SIZE,
+          Math.min((i + 1) * BATCH_SIZE, keys.size()));
+      QueryResults results = DatasourceExecutor.await(chunks.get(i));
+      boolean unmapped = !results.isComplete();
+      for (Dataset ds : results)
+      {
+        List<String> values = getValues(ds, sourceColumns);
+        List<String> key = values == null ? null : fold(values);
+        if (key != null && queries.containsKey(key))
+        {
+          table.computeIfAbsent(key, k -> new ArrayList<>(1)).add(ds);
+        } else
+        {
+          unmapped = true;
+        }
+      }
+      if (!unmapped)
+      {
+        chunkKeys.forEach(key -> table.computeIfAbsent(key, k -> new ArrayList<>(0)));
+      }
+    }
+  }
+
+  /**
+   * Get the datasets of the source, which match the given dataset.
+   *
+   * @param ds
+   *          A dataset to join. If its values are in the hash table (see {@link #fetch(Iterable)})
+   *          the result comes from there, otherwise the source is searched.
+   * @return The matching datasets.
+   */
+  QueryResults find(Dataset ds)
+  {
+    List<String> values = getValues(ds, columns);
+    List<Dataset> matches = values == null ? null : table.get(fold(values));
+    if (matches != null)
+    {
+      return new QueryResultsList(matches);
+    }
+
+    List<QueryPart> query = new ArrayList<>(columns.length);
+    for (int i = 0; i < columns.length; ++i)
+    {
+      try
+      {
+        query.add(new QueryPart(sourceColumns[i], ds.get(columns[i])));
+      } catch (ColumnNotFoundException x)
+      {
+        LOGGER.error("", x);
+      }
+    }
+    return source.find(query);
+  }
+
+  /**
+   * Get the values of the columns of a dataset.
+   *
+   * @return The values or null, if a value can't be compared by a hash lookup.
+   */
+  private static List<String> getValues(Dataset ds, String[] columns)
+  {
+    List<String> values = new ArrayList<>(columns.length);
+    for (String column : columns)
+    {
+      try
+      {
+        String value = ds.get(column);
+        if (value == null || value.isEmpty() || value.indexOf('*') >= 0)
+        {
+          return null;
+        }
+        values.add(value);
+      } catch (ColumnNotFoundException x)
+      {
+        return null;
+      }
+    }
+    return values;
+  }
+
+  private static List<String> fold(List<String> values)
+  {
+    List<String> folded = new ArrayList<>(values.size());
+    values.forEach(value -> folded.add(ColumnIndex.fold(value)));
+    return folded;
+  }
+}
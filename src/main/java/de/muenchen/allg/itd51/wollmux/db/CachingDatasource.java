@@ -0,0 +1,298 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2020 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.db;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * Caches the results of {@link #find(List)} and {@link #getDatasetsByKey(Collection)} of a
+ * datasource for a limited time.
+ *
+ * Queries are normalized before they are looked up: the order of the query parts doesn't matter
+ * and search strings are compared case-insensitively, as the search of datasources is
+ * case-insensitive.
+ *
+ * Results of queries with projected columns (see {@link #find(List, Collection)}) are cached
+ * separately for each set of columns. Cached results of the full query are used for them too.
+ *
+ * Incomplete results (see {@link QueryResults#isComplete()}), e.g. after an error or a timeout of
+ * the datasource, aren't cached, so the next query asks the datasource again.
+ *
+ * {@link #getContents()} and {@link #findAny(List)} aren't cached.
+ */
+final class CachingDatasource implements Datasource
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(CachingDatasource.class);
+
+  private final Datasource datasource;
+
+  private final Cache<List<Set<?>>, QueryResults> findCache;
+
+  private final Cache<Set<String>, QueryResults> keyCache;
+
+  /**
+   * Create a new cache for a datasource.
+   *
+   * @param datasource
+   *          The datasource.
+   * @param ttl
+   *          How long results are cached in seconds.
+   * @param size
+   *          The maximum number of cached results of each kind of query.
+   */
+  CachingDatasource(Datasource datasource, long ttl, long size)
+  {
+    this.datasource = datasource;
+    findCache = CacheBuilder.newBuilder().maximumSize(size).expireAfterWrite(ttl, TimeUnit.SECONDS)
+        .recordStats().build();
+    keyCache = CacheBuilder.newBuilder().maximumSize(size).expireAfterWrite(ttl, TimeUnit.SECONDS)
+        .recordStats().build();
+  }
+
+  /**
+   * Discard all cached results. The caches don't outlive the {@link DatasourceJoiner}: the
+   * datasources are created again with it (e.g. after the configuration changed), and the LOS is
+   * only refreshed from the datasources then.
+   */
+  void invalidate()
+  {
+    LOGGER.debug("Cache der Datenquelle \"{}\" verworfen: {}, {}", getName(), findCache.stats(),
+        keyCache.stats());
+    findCache.invalidateAll();
+    keyCache.invalidateAll();
+  }
+
+  /**
+   * Get the statistics of the cache for {@link #find(List)}.
+   *
+   * @return The statistics.
+   */
+  CacheStats getFindStats()
+  {
+    return findCache.stats();
+  }
+
+  /**
+   * Get the statistics of the cache for {@link #getDatasetsByKey(Collection)}.
+   *
+   * @return The statistics.
+   */
+  CacheStats getKeyStats()
+  {
+    return keyCache.stats();
+  }
+
+  /**
+   * Build the key of a query in {@link #findCache}.
+   *
+   * @param query
+   *          The query.
+   * @param columns
+   *          The projected columns or null for all columns.
+   * @return The key.
+   */
+  private static List<Set<?>> normalize(List<QueryPart> query, Collection<String> columns)
+  {
+    Set<List<String>> parts = new HashSet<>();
+    for (QueryPart part : query)
+    {
+      parts.add(List.of(part.getColumnName(), part.getSearchString().toLowerCase(Locale.ROOT)));
+    }
+    if (columns == null)
+    {
+      return List.of(parts);
+    }
+    return List.of(parts, new HashSet<>(columns));
+  }
+
+  /**
+   * Cache the results of a query, unless they are incomplete.
+   */
+  private static <K> void put(Cache<K, QueryResults> cache, K cacheKey, QueryResults results)
+  {
+    if (results.isComplete())
+    {
+      cache.put(cacheKey, results);
+    }
+  }
+
+  /**
+   * Look up the cached results of a query. Results of the full query can be used for all
+   * projections.
+   */
+  private QueryResults lookup(List<QueryPart> query, List<Set<?>> cacheKey)
+  {
+    QueryResults results = findCache.getIfPresent(cacheKey);
+    if (results == null && cacheKey.size() > 1)
+    {
+      results = findCache.getIfPresent(normalize(query, null));
+    }
+    return results;
+  }
+
+  @Override
+  public List<String> getSchema()
+  {
+    return datasource.getSchema();
+  }
+
+  @Override
+  public QueryResults getDatasetsByKey(Collection<String> keys)
+  {
+    Set<String> cacheKey = new HashSet<>(keys);
+    QueryResults results = keyCache.getIfPresent(cacheKey);
+    if (results == null)
+    {
+      results = datasource.getDatasetsByKey(keys);
+      put(keyCache, cacheKey, results);
+    }
+    return results;
+  }
+
+  @Override
+  public CompletableFuture<QueryResults> getDatasetsByKeyAsync(Collection<String> keys)
+  {
+    Set<String> cacheKey = new HashSet<>(keys);
+    QueryResults results = keyCache.getIfPresent(cacheKey);
+    if (results != null)
+    {
+      return CompletableFuture.completedFuture(results);
+    }
+    return datasource.getDatasetsByKeyAsync(keys).thenApply(r -> {
+      put(keyCache, cacheKey, r);
+      return r;
+    });
+  }
+
+  @Override
+  public QueryResults find(List<QueryPart> query)
+  {
+    return find(query, (Collection<String>) null);
+  }
+
+  @Override
+  public QueryResults find(List<QueryPart> query, Collection<String> columns)
+  {
+    List<Set<?>> cacheKey = normalize(query, columns);
+    QueryResults results = lookup(query, cacheKey);
+    if (results == null)
+    {
+      results = datasource.find(query, columns);
+      put(findCache, cacheKey, results);
+    }
+    return results;
+  }
+
+  @Override
+  public CompletableFuture<QueryResults> findAsync(List<QueryPart> query)
+  {
+    List<Set<?>> cacheKey = normalize(query, null);
+    QueryResults results = findCache.getIfPresent(cacheKey);
+    if (results != null)
+    {
+      return CompletableFuture.completedFuture(results);
+    }
+    return datasource.findAsync(query).thenApply(r -> {
+      put(findCache, cacheKey, r);
+      return r;
+    });
+  }
+
+  /**
+   * Cached results are passed in one piece. Otherwise the pages of the datasource are passed on
+   * and cached after the last one, if all of them are complete.
+   */
+  @Override
+  public void find(List<QueryPart> query, Consumer<QueryResults> pageConsumer)
+  {
+    find(query, null, pageConsumer);
+  }
+
+  @Override
+  public void find(List<QueryPart> query, Collection<String> columns,
+      Consumer<QueryResults> pageConsumer)
+  {
+    List<Set<?>> cacheKey = normalize(query, columns);
+    QueryResults results = lookup(query, cacheKey);
+    if (results != null)
+    {
+      if (!results.isEmpty())
+      {
+        pageConsumer.accept(results);
+      }
+      return;
+    }
+
+    List<Dataset> datasets = new ArrayList<>();
+    AtomicBoolean complete = new AtomicBoolean(true);
+    datasource.find(query, columns, page -> {
+      page.forEach(datasets::add);
+      if (!page.isComplete())
+      {
+        complete.set(false);
+      }
+      pageConsumer.accept(page);
+    });
+    put(findCache, cacheKey, new QueryResultsList(datasets, complete.get()));
+  }
+
+  @Override
+  public QueryResults findAny(List<List<QueryPart>> queries)
+  {
+    return datasource.findAny(queries);
+  }
+
+  @Override
+  public QueryResults getContents()
+  {
+    return datasource.getContents();
+  }
+
+  @Override
+  public CompletableFuture<QueryResults> getContentsAsync()
+  {
+    return datasource.getContentsAsync();
+  }
+
+  @Override
+  public String getName()
+  {
+    return datasource.getName();
+  }
+}
@@ -0,0 +1,413 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2020 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.db;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import de.muenchen.allg.itd51.wollmux.db.DatasetPredicate.MatchMode;
+
+/**
+ * An index over the values of one column of an in-memory datasource. The index only narrows down
+ * the datasets which may match a {@link QueryPart}, the candidates still have to be tested with
+ * the predicate of {@link DatasetPredicate}.
+ */
+public abstract class ColumnIndex
+{
+  /**
+   * The kinds of indexes.
+   */
+  public enum Type
+  {
+    /**
+     * Hash index, supports exact searches.
+     */
+    EXACT,
+    /**
+     * Sorted index, supports exact and prefix searches.
+     */
+    PREFIX,
+    /**
+     * N-gram index, supports all searches with at least {@value ColumnIndex#GRAM_LENGTH}
+     * characters.
+     */
+    INFIX;
+  }
+
+  static final int GRAM_LENGTH = 3;
+
+  private static final int[] NO_ROWS = new int[0];
+
+  private final String column;
+
+  private ColumnIndex(String column)
+  {
+    this.column = column;
+  }
+
+  /**
+   * Create an index.
+   *
+   * @param type
+   *          The kind of the index.
+   * @param column
+   *          The indexed column.
+   * @param data
+   *          The datasets. The index refers to them by their position in this list.
+   * @return A new index.
+   */
+  static ColumnIndex create(Type type, String column, List<Dataset> data)
+  {
+    ColumnIndex index;
+    switch (type)
+    {
+    case PREFIX:
+      index = new SortedIndex(column);
+      break;
+    case INFIX:
+      index = new GramIndex(column);
+      break;
+    default:
+      index = new HashIndex(column);
+      break;
+    }
+    for (int row = 0; row < data.size(); row++)
+    {
+      try
+      {
+        String value = data.get(row).get(column);
+        index.add(fold(value == null ? "" : value), row);
+      } catch (ColumnNotFoundException ex)
+      {
+        // datasets without this column never match
+      }
+    }
+    index.complete();
+    return index;
+  }
+
+  /**
+   * Get the datasets which may match the query part.
+   *
+   * @param part
+   *          A query part on the indexed column.
+   * @return The ascending positions of the datasets or null, if the index can't narrow down the
+   *         search.
+   */
+  int[] lookup(QueryPart part)
+  {
+    String search = fold(part.getSearchString().replace("*", ""));
+    if (search.isEmpty())
+    {
+      return null;
+    }
+    return lookup(MatchMode.of(part.getSearchString()), search);
+  }
+
+  String getColumn()
+  {
+    return column;
+  }
+
+  abstract void add(String value, int row);
+
+  abstract void complete();
+
+  abstract int[] lookup(MatchMode mode, String search);
+
+  /**
+   * Normalize a string, so that two strings are equal if and only if they are equal ignoring case
+   * according to {@link String#equalsIgnoreCase(String)}.
+   */
+  static String fold(String value)
+  {
+    char[] chars = value.toCharArray();
+    for (int i = 0; i < chars.length; i++)
+    {
+      chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+    }
+    return new String(chars);
+  }
+
+  /**
+   * Index with a hash map from value to datasets.
+   */
+  private static class HashIndex extends ColumnIndex
+  {
+    private Map<String, Postings> building = new HashMap<>();
+
+    private Map<String, int[]> rows;
+
+    HashIndex(String column)
+    {
+      super(column);
+    }
+
+    @Override
+    void add(String value, int row)
+    {
+      building.computeIfAbsent(value, v -> new Postings()).add(row);
+    }
+
+    @Override
+    void complete()
+    {
+      rows = Postings.toArrays(building);
+      building = null;
+    }
+
+    @Override
+    int[] lookup(MatchMode mode, String search)
+    {
+      if (mode != MatchMode.EXACT)
+      {
+        return null;
+      }
+      return rows.getOrDefault(search, NO_ROWS);
+    }
+  }
+
+  /**
+   * Index with sorted values, so that all values with a common prefix are adjacent.
+   */
+  private static class SortedIndex extends ColumnIndex
+  {
+    private Map<String, Postings> building = new TreeMap<>();
+
+    private String[] values;
+
+    private int[][] rows;
+
+    SortedIndex(String column)
+    {
+      super(column);
+    }
+
+    @Override
+    void add(String value, int row)
+    {
+      building.computeIfAbsent(value, v -> new Postings()).add(row);
+    }
+
+    @Override
+    void complete()
+    {
+      values = building.keySet().toArray(new String[building.size()]);
+      rows = new int[values.length][];
+      int i = 0;
+      for (Postings postings : building.values())
+      {
+        rows[i++] = postings.toArray();
+      }
+      building = null;
+    }
+
+    @Override
+    int[] lookup(MatchMode mode, String search)
+    {
+      int pos = Arrays.binarySearch(values, search);
+      switch (mode)
+      {
+      case EXACT:
+        return pos >= 0 ? rows[pos] : NO_ROWS;
+      case PREFIX:
+        Postings result = new Postings();
+        for (int i = pos >= 0 ? pos : -pos - 1; i < values.length && values[i].startsWith(search); i++)
+        {
+          result.addAll(rows[i]);
+        }
+        int[] found = result.toArray();
+        Arrays.sort(found);
+        return found;
+      default:
+        return null;
+      }
+    }
+  }
+
+  /**
+   * Index with a hash map from all substrings of length {@link #GRAM_LENGTH} to the datasets
+   * containing them. The values are enclosed by markers, so that prefixes and suffixes have their
+   * own n-grams.
+   */
+  private static class GramIndex extends ColumnIndex
+  {
+    private static final char BEGIN = '\u0002';
+
+    private static final char END = '\u0003';
+
+    private Map<String, Postings> building = new HashMap<>();
+
+    private Map<String, int[]> rows;
+
+    GramIndex(String column)
+    {
+      super(column);
+    }
+
+    @Override
+    void add(String value, int row)
+    {
+      String text = BEGIN + value + END;
+      for (int i = 0; i + GRAM_LENGTH <= text.length(); i++)
+      {
+        building.computeIfAbsent(text.substring(i, i + GRAM_LENGTH), v -> new Postings()).add(row);
+      }
+    }
+
+    @Override
+    void complete()
+    {
+      rows = Postings.toArrays(building);
+      building = null;
+    }
+
+    @Override
+    int[] lookup(MatchMode mode, String search)
+    {
+      String text = search;
+      if (mode == MatchMode.EXACT || mode == MatchMode.PREFIX)
+      {
+        text = BEGIN + text;
+      }
+      if (mode == MatchMode.EXACT || mode == MatchMode.SUFFIX)
+      {
+        text = text + END;
+      }
+      if (text.length() < GRAM_LENGTH)
+      {
+        return null;
+      }
+
+      int[][] found = new int[text.length() - GRAM_LENGTH + 1][];
+      for (int i = 0; i < found.length; i++)
+      {
+        found[i] = rows.get(text.substring(i, i + GRAM_LENGTH));
+        if (found[i] == null)
+        {
+          return NO_ROWS;
+        }
+      }
+      // start with the rarest n-gram, so that the intermediate results stay small
+      Arrays.sort(found, (a, b) -> Integer.compare(a.length, b.length));
+      int[] result = found[0];
+      for (int i = 1; i < found.length && result.length > 0; i++)
+      {
+        result = intersect(result, found[i]);
+      }
+      return result;
+    }
+
+    /**
+     * Intersect two ascending arrays. a must not be longer than b.
+     */
+    private static int[] intersect(int[] a, int[] b)
+    {
+      int[] result = new int[a.length];
+      int size = 0;
+      if (a.length * 16 < b.length)
+      {
+        int from = 0;
+        for (int row : a)
+        {
+          int pos = Arrays.binarySearch(b, from, b.length, row);
+          if (pos >= 0)
+          {
+            result[size++] = row;
+            from = pos + 1;
+          } else
+          {
+            from = -pos - 1;
+          }
+        }
+        return Arrays.copyOf(result, size);
+      }
+      int i = 0;
+      int j = 0;
+      while (i < a.length && j < b.length)
+      {
+        if (a[i] < b[j])
+        {
+          i++;
+        } else if (a[i] > b[j])
+        {
+          j++;
+        } else
+        {
+          result[size++] = a[i];
+          i++;
+          j++;
+        }
+      }
+      return Arrays.copyOf(result, size);
+    }
+  }
+
+  /**
+   * Growing list of ascending dataset positions without duplicates.
+   */
+  private static class Postings
+  {
+    private int[] rows = new int[2];
+
+    private int size;
+
+    void add(int row)
+    {
+      if (size > 0 && rows[size - 1] == row)
+      {
+        return;
+      }
+      if (size == rows.length)
+      {
+        rows = Arrays.copyOf(rows, size * 2);
+      }
+      rows[size++] = row;
+    }
+
+    void addAll(int[] other)
+    {
+      if (size + other.length > rows.length)
+      {
+        rows = Arrays.copyOf(rows, Math.max(size * 2, size + other.length));
+      }
+      System.arraycopy(other, 0, rows, size, other.length);
+      size += other.length;
+    }
+
+    int[] toArray()
+    {
+      return Arrays.copyOf(rows, size);
+    }
+
+    static Map<String, int[]> toArrays(Map<String, Postings> postings)
+    {
+      Map<String, int[]> result = new HashMap<>();
+      postings.forEach((key, value) -> result.put(key, value.toArray()));
+      return result;
+    }
+  }
+}
@@ -23,6 +23,8 @@
 package de.muenchen.allg.itd51.wollmux.db;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -118,6 +120,29 @@ public class ColumnTransformer
     return new ArrayList<>(schema);
   }
 
+  /**
+   * Liefert die Namen der Spalten der untransformierten {@link Dataset}s, die zur Berechnung der
+   * Spalten columns benötigt werden. Für Pseudospalten sind das die Parameter ihrer Funktion, alle
+   * anderen Spalten werden direkt durchgereicht. Damit kann bei einer Suche angegeben werden,
+   * welche Spalten die Datenquelle liefern muss (siehe {@link Datasource#find(List, Collection)}).
+   */
+  public Set<String> getSourceColumns(Collection<String> columns)
+  {
+    Set<String> sourceColumns = new HashSet<>();
+    for (String column : columns)
+    {
+      Function func = columnTranslations.get(column);
+      if (func == null)
+      {
+        sourceColumns.add(column);
+      } else
+      {
+        sourceColumns.addAll(Arrays.asList(func.parameters()));
+      }
+    }
+    return sourceColumns;
+  }
+
   /**
    * Liefert den Wert der Pseudospalte columnName, der anhand der Umsetzungsregeln
    * aus dem {@link Dataset} ds berechnet wird. Falls keine Umsetzungsregel für
@@ -24,7 +24,6 @@ package de.muenchen.allg.itd51.wollmux.db;
 
 import java.util.List;
 import java.util.function.Predicate;
-import java.util.regex.Pattern;
 
 /**
  * 
@@ -43,26 +42,128 @@ public class DatasetPredicate
    * Matches a List of {@link QueryPart} against a given {@link Dataset}. Invalid * character in
    * QueryPart's search string are filtered out.
    * 
+   * The search strings are analyzed once when the predicate is created. A leading and/or trailing
+   * * selects a suffix, prefix or substring search, otherwise the whole value has to match. The
+   * comparison is case-insensitive like the search in the other datasources.
+   * 
    * @param query
    *          List of {@link QueryPart}
    * @return Predicate for a dataset.
    */
   public static Predicate<Dataset> makePredicate(List<QueryPart> query)
   {
-    return query.stream().map(part -> {
-      @SuppressWarnings("squid:S1488")
-      Predicate<Dataset> pred = (Dataset ds) -> {
-        try
-        {
-          return Pattern.matches(part.getSearchString().replaceAll("\\*", ""),
-              ds.get(part.getColumnName()));
-        } catch (ColumnNotFoundException ex)
+    if (query.isEmpty())
+    {
+      return matchAll;
+    }
+    if (query.size() == 1)
+    {
+      return new PartMatcher(query.get(0));
+    }
+
+    PartMatcher[] matchers = query.stream().map(PartMatcher::new).toArray(PartMatcher[]::new);
+    return (Dataset ds) -> {
+      for (PartMatcher matcher : matchers)
+      {
+        if (!matcher.test(ds))
         {
           return false;
         }
-      };
+      }
+      return true;
+    };
+  }
+
+  /**
+   * The kind of comparison described by the position of the * in a search string.
+   */
+  enum MatchMode
+  {
+    EXACT,
+    PREFIX,
+    SUFFIX,
+    CONTAINS;
+
+    /**
+     * Get the kind of comparison of a search string.
+     *
+     * @param search
+     *          The search string of a {@link QueryPart}.
+     * @return The kind of comparison.
+     */
+    static MatchMode of(String search)
+    {
+      boolean prefix = search.endsWith("*");
+      boolean suffix = search.startsWith("*");
+      if (prefix && suffix)
+      {
+        return CONTAINS;
+      } else if (prefix)
+      {
+        return PREFIX;
+      } else if (suffix)
+      {
+        return SUFFIX;
+      } else
+      {
+        return EXACT;
+      }
+    }
+  }
 
-      return pred;
-    }).reduce(matchAll, Predicate::and);
+  /**
+   * Predicate for a single {@link QueryPart}.
+   */
+  private static final class PartMatcher implements Predicate<Dataset>
+  {
+    private final String columnName;
+
+    private final String searchString;
+
+    private final MatchMode mode;
+
+    PartMatcher(QueryPart part)
+    {
+      columnName = part.getColumnName();
+      searchString = part.getSearchString().replace("*", "");
+      mode = MatchMode.of(part.getSearchString());
+    }
+
+    @Override
+    public boolean test(Dataset ds)
+    {
+      String value;
+      try
+      {
+        value = ds.get(columnName);
+      } catch (ColumnNotFoundException ex)
+      {
+        return false;
+      }
+      if (value == null)
+      {
+        value = "";
+      }
+
+      int length = searchString.length();
+      switch (mode)
+      {
+      case PREFIX:
+        return value.regionMatches(true, 0, searchString, 0, length);
+      case SUFFIX:
+        return value.regionMatches(true, value.length() - length, searchString, 0, length);
+      case CONTAINS:
+        for (int i = 0; i <= value.length() - length; i++)
+        {
+          if (value.regionMatches(true, i, searchString, 0, length))
+          {
+            return true;
+          }
+        }
+        return false;
+      default:
+        return value.equalsIgnoreCase(searchString);
+      }
+    }
   }
 }
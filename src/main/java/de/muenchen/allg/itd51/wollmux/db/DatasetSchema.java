@@ -0,0 +1,107 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2020 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.db;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The columns of datasets with a common schema. The schema maps each column to the position of its
+ * value in an {@link ArrayDataset}, so that the column names are stored once per datasource and
+ * not once per dataset.
+ */
+public final class DatasetSchema
+{
+  private final List<String> columns;
+
+  private final Map<String, Integer> positions;
+
+  /**
+   * Create a new schema.
+   *
+   * @param columns
+   *          The columns. If a column is listed more than once, only the first one is used.
+   */
+  public DatasetSchema(Collection<String> columns)
+  {
+    List<String> distinct = new ArrayList<>(columns.size());
+    positions = new HashMap<>();
+    for (String column : columns)
+    {
+      if (positions.putIfAbsent(column, distinct.size()) == null)
+      {
+        distinct.add(column);
+      }
+    }
+    this.columns = Collections.unmodifiableList(distinct);
+  }
+
+  /**
+   * Get the position of a column.
+   *
+   * @param column
+   *          The name of the column.
+   * @return The position or -1 if the schema doesn't contain the column.
+   */
+  public int indexOf(String column)
+  {
+    Integer position = positions.get(column);
+    return position == null ? -1 : position;
+  }
+
+  /**
+   * Check whether the schema contains a column.
+   *
+   * @param column
+   *          The name of the column.
+   * @return True if the column is part of the schema.
+   */
+  public boolean contains(String column)
+  {
+    return positions.containsKey(column);
+  }
+
+  /**
+   * Get the number of columns.
+   *
+   * @return The number of columns.
+   */
+  public int size()
+  {
+    return columns.size();
+  }
+
+  /**
+   * Get the columns in the order of their positions.
+   *
+   * @return An unmodifiable list of the columns.
+   */
+  public List<String> getColumns()
+  {
+    return columns;
+  }
+}
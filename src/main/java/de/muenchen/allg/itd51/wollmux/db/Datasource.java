@@ -22,8 +22,11 @@
  */
 package de.muenchen.allg.itd51.wollmux.db;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
@@ -69,6 +72,19 @@ public interface Datasource
    */
   public QueryResults getDatasetsByKey(Collection<String> keys);
 
+  /**
+   * Asynchrone Variante von {@link #getDatasetsByKey(Collection)}. Die Standardimplementierung
+   * führt {@link #getDatasetsByKey(Collection)} in einem eigenen Thread aus.
+   * 
+   * @param keys
+   *          Keys to search against.
+   * @return Future results as {@link QueryResults}
+   */
+  public default CompletableFuture<QueryResults> getDatasetsByKeyAsync(Collection<String> keys)
+  {
+    return DatasourceExecutor.supply(() -> getDatasetsByKey(keys));
+  }
+
   /**
    * Liefert alle Datensätze, die alle Bedingungen von query (Liste von {@link QueryPart}s)
    * erfüllen. Ist query leer, werden keine Datensätze zurückgeliefert. Enthält query Bedingungen
@@ -80,6 +96,102 @@ public interface Datasource
    */
   public QueryResults find(List<QueryPart> query);
 
+  /**
+   * Asynchrone Variante von {@link #find(List)}. Die Standardimplementierung führt
+   * {@link #find(List)} in einem eigenen Thread aus. Datenquellen, die andere Datenquellen
+   * zusammenfassen, überschreiben diese Methode, um ihre Datenquellen gleichzeitig abzufragen.
+   * 
+   * @param query
+   *          Query to search against the datasource.
+   * @return Future results as {@link QueryResults}
+   */
+  public default CompletableFuture<QueryResults> findAsync(List<QueryPart> query)
+  {
+    return DatasourceExecutor.supply(() -> find(query));
+  }
+
+  /**
+   * Wie {@link #find(List)}, die Ergebnisse werden aber in Teilen an pageConsumer übergeben, sobald
+   * sie vorliegen. Damit können z.B. Dialoge die ersten Ergebnisse einer umfangreichen Suche schon
+   * anzeigen, bevor die restlichen geladen sind. Die Methode kehrt erst zurück, wenn alle
+   * Ergebnisse übergeben wurden. Ist die Suche unvollständig (siehe
+   * {@link QueryResults#isComplete()}), ist die letzte Seite als unvollständig markiert; sie kann
+   * dann auch leer sein. Die Standardimplementierung übergibt die Ergebnisse von
+   * {@link #find(List)} auf einmal.
+   * 
+   * @param query
+   *          Query to search against the datasource.
+   * @param pageConsumer
+   *          Is called for each part of the results.
+   */
+  public default void find(List<QueryPart> query, Consumer<QueryResults> pageConsumer)
+  {
+    QueryResults results = find(query);
+    if (!results.isEmpty() || !results.isComplete())
+    {
+      pageConsumer.accept(results);
+    }
+  }
+
+  /**
+   * Wie {@link #find(List)}, der Aufrufer gibt aber die Spalten an, die er von den Ergebnissen
+   * benötigt (z.B. für die Anzeige in einer Ergebnisliste). Datenquellen können dann nur diese
+   * Spalten (und die für den Schlüssel nötigen) abrufen. Die gelieferten Datensätze müssen trotzdem
+   * alle Spalten des Schemas liefern; fehlende Werte werden bei Bedarf nachgeladen. Die
+   * Standardimplementierung ignoriert columns.
+   * 
+   * @param query
+   *          Query to search against the datasource.
+   * @param columns
+   *          Die Spalten, die der Aufrufer benötigt. Bei null werden alle Spalten benötigt.
+   * @return Results as {@link QueryResults}
+   */
+  public default QueryResults find(List<QueryPart> query, Collection<String> columns)
+  {
+    return find(query);
+  }
+
+  /**
+   * Wie {@link #find(List, Consumer)} mit den benötigten Spalten wie bei
+   * {@link #find(List, Collection)}. Die Standardimplementierung ignoriert columns.
+   * 
+   * @param query
+   *          Query to search against the datasource.
+   * @param columns
+   *          Die Spalten, die der Aufrufer benötigt. Bei null werden alle Spalten benötigt.
+   * @param pageConsumer
+   *          Is called for each part of the results.
+   */
+  public default void find(List<QueryPart> query, Collection<String> columns,
+      Consumer<QueryResults> pageConsumer)
+  {
+    find(query, pageConsumer);
+  }
+
+  /**
+   * Liefert alle Datensätze, die mindestens eine der Abfragen aus queries erfüllen (jede Abfrage
+   * wie bei {@link #find(List)}). Datenquellen, die mehrere Abfragen mit einer einzigen Anfrage an
+   * ihr Backend beantworten können, sollten diese Methode überschreiben. Die Standardimplementierung
+   * führt die Abfragen nacheinander mit {@link #find(List)} aus. Ein Datensatz, der mehrere Abfragen
+   * erfüllt, kann mehrfach geliefert werden.
+   * 
+   * @param queries
+   *          Queries to search against the datasource.
+   * @return Results as {@link QueryResults}
+   */
+  public default QueryResults findAny(List<List<QueryPart>> queries)
+  {
+    List<Dataset> results = new ArrayList<>();
+    boolean complete = true;
+    for (List<QueryPart> query : queries)
+    {
+      QueryResults res = find(query);
+      res.forEach(results::add);
+      complete = complete && res.isComplete();
+    }
+    return new QueryResultsList(results, complete);
+  }
+
   /**
    * Liefert eine implementierungsabhängige Teilmenge der Datensätze der Datenquelle. Wenn möglich
    * sollte die Datenquelle hier all ihre Datensätze zurückliefern oder zumindest soviele wie
@@ -87,6 +199,17 @@ public interface Datasource
    */
   public QueryResults getContents();
 
+  /**
+   * Asynchrone Variante von {@link #getContents()}. Die Standardimplementierung führt
+   * {@link #getContents()} in einem eigenen Thread aus.
+   * 
+   * @return Future results as {@link QueryResults}
+   */
+  public default CompletableFuture<QueryResults> getContentsAsync()
+  {
+    return DatasourceExecutor.supply(this::getContents);
+  }
+
   /**
    * Liefert den Namen dieser Datenquelle.
    */
@@ -0,0 +1,164 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2020 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.db;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.muenchen.allg.itd51.wollmux.util.L;
+
+/**
+ * Runs the asynchronous queries of datasources (see {@link Datasource#findAsync(java.util.List)}).
+ *
+ * The threads are created on demand and reused afterwards. The pool isn't bounded, because the
+ * blocking methods of composite datasources wait for the queries of their sources. A bounded pool
+ * could be exhausted by nested composite datasources, which wait for each other.
+ */
+final class DatasourceExecutor
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(DatasourceExecutor.class);
+
+  private static ExecutorService executor;
+
+  private DatasourceExecutor()
+  {
+    // hide implicit public constructor
+  }
+
+  /**
+   * Get the executor. It's created on first usage.
+   *
+   * @return The executor.
+   */
+  static synchronized ExecutorService get()
+  {
+    if (executor == null)
+    {
+      AtomicInteger threadCount = new AtomicInteger();
+      executor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "Datasource-" + threadCount.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      });
+    }
+    return executor;
+  }
+
+  /**
+   * Run a blocking query on the executor.
+   *
+   * @param query
+   *          The query.
+   * @return The future results of the query.
+   */
+  static <T> CompletableFuture<T> supply(Supplier<T> query)
+  {
+    return CompletableFuture.supplyAsync(query, get());
+  }
+
+  /**
+   * Limit the time to wait for the results of a datasource to
+   * {@link DatasourceJoinerFactory#getDatasourceTimeout()}. If there are no results in time, an
+   * error is logged and there are no results, which are marked as incomplete (see
+   * {@link QueryResults#isComplete()}).
+   *
+   * @param results
+   *          The future results of a datasource.
+   * @param datasourceName
+   *          The name of the datasource for the log message.
+   * @return The results or empty results after the timeout.
+   */
+  static CompletableFuture<QueryResults> withTimeout(CompletableFuture<QueryResults> results,
+      String datasourceName)
+  {
+    return results.orTimeout(DatasourceJoinerFactory.getDatasourceTimeout(), TimeUnit.MILLISECONDS)
+        .exceptionally(e -> {
+          Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+          if (cause instanceof TimeoutException)
+          {
+            LOGGER.error(L.m("Zeitüberschreitung bei der Suche in Datenquelle \"%1\"",
+                datasourceName));
+            return new QueryResultsList(new ArrayList<Dataset>(0), false);
+          }
+          throw e instanceof CompletionException ? (CompletionException) e
+              : new CompletionException(e);
+        });
+  }
+
+  /**
+   * Like {@link #withTimeout(CompletableFuture, String)} if dropOnTimeout is true. Otherwise the
+   * results are returned unchanged, so the caller gets the complete results or the failure of the
+   * datasource. Composite datasources use this to drop slow sources only for asynchronous queries,
+   * while their blocking methods behave as before.
+   *
+   * @param results
+   *          The future results of a datasource.
+   * @param datasourceName
+   *          The name of the datasource for the log message.
+   * @param dropOnTimeout
+   *          If true, the results are empty after the timeout.
+   * @return The results.
+   */
+  static CompletableFuture<QueryResults> withTimeout(CompletableFuture<QueryResults> results,
+      String datasourceName, boolean dropOnTimeout)
+  {
+    return dropOnTimeout ? withTimeout(results, datasourceName) : results;
+  }
+
+  /**
+   * Wait for the results of an asynchronous query. Exceptions of the query are rethrown
+   * unwrapped, as if the query had been executed by the calling thread.
+   *
+   * @param results
+   *          The future results.
+   * @return The results.
+   */
+  static <T> T await(CompletableFuture<T> results)
+  {
+    try
+    {
+      return results.join();
+    } catch (CompletionException e)
+    {
+      if (e.getCause() instanceof RuntimeException)
+      {
+        throw (RuntimeException) e.getCause();
+      }
+      if (e.getCause() instanceof Error)
+      {
+        throw (Error) e.getCause();
+      }
+      throw e;
+    }
+  }
+}
@@ -23,12 +23,16 @@
 package de.muenchen.allg.itd51.wollmux.db;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
@@ -61,6 +65,12 @@ public class DatasourceJoiner
 
   private static final String ROLLE = "Rolle";
 
+  /**
+   * Die Spalten, die {@link #sortPAL} und toString() der Ergebnisse von {@link #find(List)}
+   * verwenden. Mehr Spalten müssen für die Anzeige von Suchergebnissen nicht abgerufen werden.
+   */
+  public static final List<String> DISPLAY_COLUMNS = List.of(ROLLE, NACHNAME, VORNAME);
+
   private static final String DATASET_NOT_FROM_LOS_ERROR_MSG = "Dataset does not come from the local override storage. ";
 
   /**
@@ -103,7 +113,7 @@ public class DatasourceJoiner
    * @param los
    *          Instance of an local override storage object.
    */
-  public DatasourceJoiner(Map<String, Datasource> dataSources, String senderSource,
+  public DatasourceJoiner(Map<String, ? extends Datasource> dataSources, String senderSource,
       LocalOverrideStorage los)
   {
     init(dataSources, senderSource, los);
@@ -117,10 +127,10 @@ public class DatasourceJoiner
   {
   }
 
-  protected void init(Map<String, Datasource> dataSources, String senderSource,
+  protected void init(Map<String, ? extends Datasource> dataSources, String senderSource,
       LocalOverrideStorage los)
   {
-    for (Map.Entry<String, Datasource> ds : dataSources.entrySet())
+    for (Map.Entry<String, ? extends Datasource> ds : dataSources.entrySet())
     {
       if (ds.getValue() != null)
       {
@@ -276,6 +286,34 @@ public class DatasourceJoiner
    * @return Results as {@link QueryResults}
    */
   public QueryResults find(Query query)
+  {
+    return getQuerySource(query).find(query.getQueryParts(), query.getColumns());
+  }
+
+  /**
+   * Wie {@link #find(Query)}, die Ergebnisse werden aber in Teilen an pageConsumer übergeben,
+   * sobald die Datenquelle sie liefert (siehe {@link Datasource#find(List, Consumer)}).
+   *
+   * @param query
+   *          Query to search against the datasource.
+   * @param pageConsumer
+   *          Is called for each part of the results.
+   * @throws IllegalArgumentException
+   *           falls eine Suchanfrage fehlerhaft ist, weil z.B. die entsprechende Datenquelle nicht
+   *           existiert.
+   */
+  public void find(Query query, Consumer<QueryResults> pageConsumer)
+  {
+    getQuerySource(query).find(query.getQueryParts(), query.getColumns(), pageConsumer);
+  }
+
+  /**
+   * Prüft die Suchstrings der Anfrage und liefert die Datenquelle, in der gesucht werden soll.
+   *
+   * @throws IllegalArgumentException
+   *           falls die Datenquelle nicht existiert oder ein Suchstring illegal ist.
+   */
+  private Datasource getQuerySource(Query query)
   {
     Datasource source = nameToDatasource.get(query.getDatasourceName());
     if (source == null)
@@ -297,8 +335,7 @@ public class DatasourceJoiner
       }
     }
 
-    // Suche ausführen.
-    return source.find(query.getQueryParts());
+    return source;
   }
 
   /**
@@ -310,7 +347,45 @@ public class DatasourceJoiner
    */
   public QueryResults find(List<QueryPart> query)
   {
-    QueryResults res = mainDatasource.find(query);
+    return wrap(mainDatasource.find(query));
+  }
+
+  /**
+   * Asynchrone Variante von {@link #find(List)}. Liefert die Hauptdatenquelle nicht innerhalb von
+   * {@link DatasourceJoinerFactory#getDatasourceTimeout()}, gibt es keine Ergebnisse.
+   *
+   * @param query
+   *          Query to search against the main datasource.
+   * @return Future search results as {@link QueryResults}
+   */
+  public CompletableFuture<QueryResults> findAsync(List<QueryPart> query)
+  {
+    return DatasourceExecutor.withTimeout(mainDatasource.findAsync(query), mainDatasource.getName())
+        .thenApply(this::wrap);
+  }
+
+  /**
+   * Wie {@link #findAsync(List)}, die Hauptdatenquelle muss aber nur die Spalten columns abrufen
+   * (siehe {@link Datasource#find(List, Collection)}). Die übrigen Spalten werden erst beim Zugriff
+   * nachgeladen, z.B. wenn ein Ergebnis in den LOS kopiert wird.
+   *
+   * @param query
+   *          Query to search against the main datasource.
+   * @param columns
+   *          Die benötigten Spalten, z.B. {@link #DISPLAY_COLUMNS}.
+   * @return Future search results as {@link QueryResults}
+   */
+  public CompletableFuture<QueryResults> findAsync(List<QueryPart> query,
+      Collection<String> columns)
+  {
+    return DatasourceExecutor
+        .withTimeout(DatasourceExecutor.supply(() -> mainDatasource.find(query, columns)),
+            mainDatasource.getName())
+        .thenApply(this::wrap);
+  }
+
+  private QueryResults wrap(QueryResults res)
+  {
     List<DJDatasetWrapper> djDatasetsList = StreamSupport.stream(res.spliterator(), false)
         .map(ds -> new DJDatasetWrapper(ds)).collect(Collectors.toList());
 
@@ -399,6 +474,20 @@ public class DatasourceJoiner
     return conf;
   }
 
+  /**
+   * Saves the changes of the local override storage since the last save, see
+   * {@link LocalOverrideStorage#save(boolean)}.
+   *
+   * @param compact
+   *          If true, the whole local override storage is written instead of only the changes.
+   * @throws IOException
+   *           The local override storage can't be saved.
+   */
+  public void saveLOS(boolean compact) throws IOException
+  {
+    myLOS.save(compact);
+  }
+
   /**
    * Copies all datasets from the search result into the personal sender source list.
    *
@@ -23,11 +23,14 @@
 package de.muenchen.allg.itd51.wollmux.db;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -53,6 +56,32 @@ public class DatasourceJoinerFactory
 
   private static long datasourceTimeout = 10000;
 
+  /**
+   * Erzeugt eine Datenquelle aus ihrem "Datenquelle"-Knoten.
+   */
+  @FunctionalInterface
+  private interface DatasourceCreator
+  {
+    Datasource create(Map<String, Datasource> nameToDatasource, ConfigThingy sourceDesc,
+        URL context) throws IOException;
+  }
+
+  /**
+   * Bildet die unterstützten Datenquellentypen (TYPE) auf ihre Konstruktoren ab.
+   */
+  private static final Map<String, DatasourceCreator> DATASOURCE_TYPES = Map.of(
+      "conf", ThingyDatasource::new,
+      "union", UnionDatasource::new,
+      "attach", AttachDatasource::new,
+      "overlay", OverlayDatasource::new,
+      "prefer", PreferDatasource::new,
+      "schema", SchemaDatasource::new,
+      "ldap", LDAPDatasource::new,
+      "ooo", (nameToDatasource, sourceDesc, context) -> new OOoDatasource(nameToDatasource,
+          sourceDesc),
+      "funky", (nameToDatasource, sourceDesc, context) -> new FunkyDatasource(nameToDatasource,
+          sourceDesc));
+
   private DatasourceJoinerFactory()
   {
     // hide public constructor
@@ -103,10 +132,28 @@ public class DatasourceJoinerFactory
         if (null == senderSourceStr)
           senderSourceStr = DatasourceJoiner.NOCONFIG;
 
-        datasourceJoiner = new DatasourceJoiner(
-            collectDatasources(WollMuxFiles.getWollmuxConf(), WollMuxFiles.getDefaultContext()),
-            senderSourceStr, createLocalOverrideStorage(senderSourceStr,
-                WollMuxFiles.getLosCacheFile(), WollMuxFiles.getDefaultContext()));
+        Map<String, Datasource> datasources = collectDatasources(WollMuxFiles.getWollmuxConf(),
+            WollMuxFiles.getDefaultContext());
+
+        /*
+         * Die Hauptdatenquelle (mit den Datenquellen, auf denen sie aufbaut) wird sofort erzeugt,
+         * damit wie bisher auf den Cache zurückgegriffen werden kann, falls sie fehlerhaft ist.
+         */
+        Datasource mainDatasource = datasources.get(senderSourceStr);
+        if (mainDatasource != null && !initialize(mainDatasource))
+        {
+          datasources.put(senderSourceStr, null);
+        }
+
+        datasourceJoiner = new DatasourceJoiner(datasources, senderSourceStr,
+            createLocalOverrideStorage(senderSourceStr, WollMuxFiles.getLosCacheFile(),
+                WollMuxFiles.getDefaultContext()));
+
+        if (Boolean.parseBoolean(
+            WollMuxFiles.getWollmuxConf().getString("DATASOURCE_PREWARM", "false")))
+        {
+          prewarm(datasources);
+        }
 
         FunctionLibrary funcLib = new FunctionLibrary();
         DialogLibrary dialogLib = new DialogLibrary();
@@ -124,9 +171,41 @@ public class DatasourceJoinerFactory
     return datasourceJoiner;
   }
 
+  /**
+   * Speichert den Cache und die persönliche Absenderliste und verwirft den DJ, so dass
+   * er beim nächsten Aufruf von {@link #getDatasourceJoiner()} mit der aktuellen
+   * Konfiguration neu erzeugt wird.
+   */
+  public static void reset()
+  {
+    if (datasourceJoiner == null)
+    {
+      return;
+    }
+
+    ConfigThingy cache = datasourceJoiner.saveCacheAndLOS(WollMuxFiles.getLosCacheFile());
+    try
+    {
+      WollMuxFiles.writeConfToFile(WollMuxFiles.getLosCacheFile(), cache);
+      // danach schreiben, damit der Snapshot nicht älter als die Cache-Datei ist
+      datasourceJoiner.saveLOS(true);
+    } catch (IOException e)
+    {
+      LOGGER.error("Cache konnte nicht gespeichert werden.", e);
+    }
+    datasourceJoiner = null;
+  }
+
+  /**
+   * Erzeugt für alle Datenquellen aus joinConf einen {@link LazyDatasource}, d.h. die
+   * Datenquellen werden erst beim ersten Zugriff initialisiert. Jede Datenquelle sieht dabei nur
+   * die Datenquellen, die vor ihr definiert wurden. Datenquellen mit unbekanntem TYPE werden auf
+   * null abgebildet. Ist für eine Datenquelle CACHE_TTL angegeben, werden ihre Ergebnisse in einem
+   * {@link CachingDatasource} zwischengespeichert.
+   */
   private static Map<String, Datasource> collectDatasources(ConfigThingy joinConf, URL context)
   {
-    HashMap<String, Datasource> datasources = new HashMap<>();
+    Map<String, Datasource> datasources = new LinkedHashMap<>();
 
     ConfigThingy datenquellen = joinConf.query("Datenquellen").query("Datenquelle");
     for (ConfigThingy sourceDesc : datenquellen)
@@ -140,49 +219,19 @@ public class DatasourceJoinerFactory
       }
 
       Datasource ds = null;
-      try
-      {
-        switch (type)
-        {
-        case "conf":
-          ds = new ThingyDatasource(datasources, sourceDesc, context);
-          break;
-        case "union":
-          ds = new UnionDatasource(datasources, sourceDesc, context);
-          break;
-        case "attach":
-          ds = new AttachDatasource(datasources, sourceDesc, context);
-          break;
-        case "overlay":
-          ds = new OverlayDatasource(datasources, sourceDesc, context);
-          break;
-        case "prefer":
-          ds = new PreferDatasource(datasources, sourceDesc, context);
-          break;
-        case "schema":
-          ds = new SchemaDatasource(datasources, sourceDesc, context);
-          break;
-        case "ldap":
-          ds = new LDAPDatasource(datasources, sourceDesc, context);
-          break;
-        case "ooo":
-          ds = new OOoDatasource(datasources, sourceDesc);
-          break;
-        case "funky":
-          ds = new FunkyDatasource(datasources, sourceDesc);
-          break;
-        default:
-          LOGGER.error("Ununterstützter Datenquellentyp: {}", type);
-          break;
-        }
-      } catch (Exception x)
+      DatasourceCreator creator = DATASOURCE_TYPES.get(type);
+      if (creator != null)
       {
-        LOGGER.error(
-            L.m("Fehler beim Initialisieren von Datenquelle \"%1\" (Typ \"%2\"):", name, type), x);
-      }
-
-      if (ds == null)
+        /*
+         * Die Datenquellen, die bis hierher definiert wurden. Spätere Definitionen unter dem selben
+         * Namen dürfen die Datenquellen nicht beeinflussen, auf die sich diese Datenquelle bezieht.
+         */
+        Map<String, Datasource> definedDatasources = new HashMap<>(datasources);
+        ds = withCache(new LazyDatasource(name, type,
+            () -> creator.create(definedDatasources, sourceDesc, context)), sourceDesc);
+      } else
       {
+        LOGGER.error("Ununterstützter Datenquellentyp: {}", type);
         LOGGER
             .error(L.m("Datenquelle {} von Typ {} konnte nicht initialisiert werden", name, type));
         /*
@@ -198,6 +247,70 @@ public class DatasourceJoinerFactory
     return datasources;
   }
 
+  /**
+   * Legt einen Cache vor die Datenquelle, falls in sourceDesc eine CACHE_TTL (in Sekunden) größer 0
+   * angegeben ist. CACHE_SIZE begrenzt die Anzahl der gespeicherten Ergebnisse (Standard 100).
+   */
+  private static Datasource withCache(Datasource ds, ConfigThingy sourceDesc)
+  {
+    String cacheTtl = sourceDesc.getString("CACHE_TTL");
+    if (cacheTtl == null)
+    {
+      return ds;
+    }
+
+    try
+    {
+      long ttl = Long.parseLong(cacheTtl);
+      long size = Long.parseLong(sourceDesc.getString("CACHE_SIZE", "100"));
+      if (ttl < 0 || size <= 0)
+      {
+        LOGGER.error(L.m(
+            "CACHE_TTL und CACHE_SIZE der Datenquelle \"%1\" dürfen nicht negativ sein",
+            ds.getName()));
+      } else if (ttl > 0)
+      {
+        return new CachingDatasource(ds, ttl, size);
+      }
+    } catch (NumberFormatException e)
+    {
+      LOGGER.error(L.m("CACHE_TTL und CACHE_SIZE der Datenquelle \"%1\" müssen ganze Zahlen sein",
+          ds.getName()));
+    }
+    return ds;
+  }
+
+  /**
+   * Initialisiert die Datenquelle, falls dies noch nicht geschehen ist.
+   *
+   * @return false, falls die Datenquelle nicht initialisiert werden konnte.
+   */
+  private static boolean initialize(Datasource ds)
+  {
+    try
+    {
+      ds.getSchema();
+      return true;
+    } catch (ConfigurationErrorException e)
+    {
+      return false;
+    }
+  }
+
+  /**
+   * Initialisiert die Datenquellen im Hintergrund in der Reihenfolge ihrer Definition, damit der
+   * erste Zugriff auf sie nicht warten muss.
+   */
+  private static void prewarm(Map<String, Datasource> datasources)
+  {
+    List<Datasource> toInitialize = new ArrayList<>(datasources.values());
+    DatasourceExecutor.get().execute(() -> {
+      long start = System.currentTimeMillis();
+      toInitialize.stream().filter(Objects::nonNull).forEach(DatasourceJoinerFactory::initialize);
+      LOGGER.debug("Datenquellen in {} ms vorab initialisiert", System.currentTimeMillis() - start);
+    });
+  }
+
   private static LocalOverrideStorage createLocalOverrideStorage(String mainSourceName,
       File losCache, URL context)
   {
@@ -211,6 +324,20 @@ public class DatasourceJoinerFactory
     }
   }
 
+  /**
+   * Liefert den aktuellen Inhalt von Cache und persönlicher Absenderliste in der Form der
+   * Cache-Datei, ohne ihn zu speichern. Die Cache-Datei selbst wird nur bei {@link #reset()}
+   * geschrieben, dazwischen werden Änderungen nur in Snapshot und Journal gespeichert. Der DJ wird
+   * dafür nicht erzeugt.
+   *
+   * @return null, falls es keinen initialisierten DJ gibt.
+   */
+  public static ConfigThingy getCacheAndLOS()
+  {
+    return datasourceJoiner == null ? null
+        : datasourceJoiner.saveCacheAndLOS(WollMuxFiles.getLosCacheFile());
+  }
+
   public static long getDatasourceTimeout()
   {
     return datasourceTimeout;
@@ -22,6 +22,7 @@
  */
 package de.muenchen.allg.itd51.wollmux.db;
 
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
@@ -29,12 +30,17 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Properties;
+import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 
 import javax.naming.Context;
@@ -47,11 +53,19 @@ import javax.naming.directory.Attributes;
 import javax.naming.directory.DirContext;
 import javax.naming.directory.SearchControls;
 import javax.naming.directory.SearchResult;
-import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.LdapName;
+import javax.naming.ldap.PagedResultsControl;
+import javax.naming.ldap.PagedResultsResponseControl;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
 import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
 import de.muenchen.allg.itd51.wollmux.config.ConfigurationErrorException;
 import de.muenchen.allg.itd51.wollmux.config.NodeNotFoundException;
@@ -69,6 +83,12 @@ public class LDAPDatasource implements Datasource
 
   private List<String> schema;
 
+  /**
+   * Die Spalten der vollständig gelesenen Datensätze. Wird von diesen Datensätzen gemeinsam
+   * verwendet.
+   */
+  private DatasetSchema datasetSchema;
+
   private String datasourceName;
 
   private String url;
@@ -80,6 +100,24 @@ public class LDAPDatasource implements Datasource
   /** properties für die Verbindung zum LDAP-Server */
   private Properties properties = new Properties();
 
+  /** Standardwert für die maximale Anzahl gleichzeitiger Verbindungen (POOL_SIZE). */
+  private static final int DEFAULT_POOL_SIZE = 5;
+
+  /** Standardwert in Sekunden, nach dem unbenutzte Verbindungen geschlossen werden. */
+  private static final int DEFAULT_POOL_IDLE_TIMEOUT = 60;
+
+  /**
+   * Die wiederverwendeten Verbindungen zum LDAP-Server. Alle Suchen und Attributabfragen leihen
+   * sich hier eine Verbindung aus, anstatt jedesmal eine neue aufzubauen.
+   */
+  private LdapContextPool pool;
+
+  /** Standardwert für die Anzahl der Ergebnisse, die pro Seite vom Server geholt werden. */
+  private static final int DEFAULT_PAGE_SIZE = 200;
+
+  /** Anzahl der Ergebnisse, die pro Seite vom Server geholt werden (PAGE_SIZE). */
+  private int pageSize;
+
   /** Separator zur Schluesselerzeugung aus mehreren Schluesselwerten */
   private static final String SEPARATOR = "&:=&:%";
 
@@ -131,10 +169,19 @@ public class LDAPDatasource implements Datasource
   private static final Pattern KEY_RE = Pattern.compile("^(\\(&(\\([^()=]+[^()]*\\))+\\))?"
       + KEY_SEPARATOR_0_NON_0_RE + "([a-zA-Z_][a-zA-Z0-9_]*=.*" + SEPARATOR + ")?$");
 
+  /** Standardwert für die maximale Anzahl Einträge im {@link #attributeCache}. */
+  private static final int DEFAULT_ATTRIBUTE_CACHE_SIZE = 1000;
+
+  /** Standardwert in Sekunden, wie lange Einträge im {@link #attributeCache} gültig sind. */
+  private static final int DEFAULT_ATTRIBUTE_CACHE_TTL = 600;
+
   /**
-   * temporärer cache für relative Attribute (wird bei jeder neuen Suche neu angelegt)
+   * Cache für relative Attribute (z.B. die Anschrift einer Organisationseinheit), die sich nur
+   * selten ändern. Die Einträge bleiben über mehrere Suchen hinweg erhalten, bis sie nach
+   * ATTRIBUTE_CACHE_TTL Sekunden verfallen oder mehr als ATTRIBUTE_CACHE_SIZE Einträge vorhanden
+   * sind.
    */
-  private Map<CacheKey, Attributes> attributeCache = new HashMap<>();
+  private Cache<CacheKey, Attributes> attributeCache;
 
   /**
    * Erzeugt eine neue LDAPDatasource.
@@ -202,6 +249,21 @@ public class LDAPDatasource implements Datasource
       properties.put(Context.SECURITY_CREDENTIALS, password);
     }
 
+    int poolSize = parsePositiveInt(sourceDesc, "POOL_SIZE", DEFAULT_POOL_SIZE);
+    int idleTimeout = parsePositiveInt(sourceDesc, "POOL_IDLE_TIMEOUT", DEFAULT_POOL_IDLE_TIMEOUT);
+    pool = new LdapContextPool(properties, poolSize, idleTimeout * 1000L);
+    pageSize = parsePositiveInt(sourceDesc, "PAGE_SIZE", DEFAULT_PAGE_SIZE);
+
+    int cacheSize = parsePositiveInt(sourceDesc, "ATTRIBUTE_CACHE_SIZE",
+        DEFAULT_ATTRIBUTE_CACHE_SIZE);
+    int cacheTtl = parsePositiveInt(sourceDesc, "ATTRIBUTE_CACHE_TTL",
+        DEFAULT_ATTRIBUTE_CACHE_TTL);
+    attributeCache = CacheBuilder.newBuilder()
+        .maximumSize(cacheSize)
+        .expireAfterWrite(cacheTtl, TimeUnit.SECONDS)
+        .recordStats()
+        .build();
+
     ConfigThingy spalten = sourceDesc.query("Spalten");
 
     if (spalten.count() == 0)
@@ -263,6 +325,7 @@ public class LDAPDatasource implements Datasource
         schema.add(spalte);
       }
     }
+    datasetSchema = new DatasetSchema(schema);
 
     // Key-Attribute
     ConfigThingy keys = sourceDesc.query("Schluessel");
@@ -330,6 +393,38 @@ public class LDAPDatasource implements Datasource
     }
   }
 
+  /**
+   * Liest den optionalen Parameter key als positive Ganzzahl.
+   * 
+   * @return der Wert oder defaultValue, falls der Parameter fehlt.
+   * @throws ConfigurationErrorException
+   *           falls der Wert keine positive Ganzzahl ist.
+   */
+  private int parsePositiveInt(ConfigThingy sourceDesc, String key, int defaultValue)
+  {
+    String value;
+    try
+    {
+      value = sourceDesc.get(key).toString();
+    } catch (NodeNotFoundException e)
+    {
+      return defaultValue;
+    }
+    try
+    {
+      int number = Integer.parseInt(value);
+      if (number > 0)
+      {
+        return number;
+      }
+    } catch (NumberFormatException e)
+    {
+      LOGGER.trace("", e);
+    }
+    throw new ConfigurationErrorException(
+        errorMessage() + L.m("%1 muss eine ganze Zahl größer als 0 sein: %2", key, value));
+  }
+
   /** Setzt die timeout-Properties. */
   private void setTimeout(long timeout)
   {
@@ -428,36 +523,34 @@ public class LDAPDatasource implements Datasource
     }
 
     List<Dataset> results = new ArrayList<>(keys.size());
+    boolean complete = true;
 
-    try
-    {
-      attributeCache.clear();
-
-      if (keyStatus == ABSOLUTE_ONLY || keyStatus == ABSOLUTE_AND_RELATIVE)
-      { // absolute Attribute vorhanden
-        results.addAll(handleAbsoluteKeys(keys));
-      } else
-      { // nur relative Attribute
-        for (String currentKey : keys)
-        {
-          List<QueryPart> query = keyToFindQuery(currentKey);
+    if (keyStatus == ABSOLUTE_ONLY || keyStatus == ABSOLUTE_AND_RELATIVE)
+    { // absolute Attribute vorhanden
+      complete = handleAbsoluteKeys(keys, results);
+    } else
+    { // nur relative Attribute
+      for (String currentKey : keys)
+      {
+        List<QueryPart> query = keyToFindQuery(currentKey);
 
-          QueryResults res = find(query);
-          for (Dataset ds : res)
-            results.add(ds);
-        }
+        QueryResults res = find(query);
+        for (Dataset ds : res)
+          results.add(ds);
+        complete = complete && res.isComplete();
       }
-
-      return new QueryResultsList(results);
-    } finally
-    {
-      attributeCache.clear();
     }
+
+    return new QueryResultsList(results, complete);
   }
 
-  private List<Dataset> handleAbsoluteKeys(Collection<String> keys)
+  /**
+   * Fügt die Datensätze mit den Schlüsseln keys zu results hinzu.
+   *
+   * @return false, falls die Suche unvollständig ist.
+   */
+  private boolean handleAbsoluteKeys(Collection<String> keys, List<Dataset> results)
   {
-    List<Dataset> results = new ArrayList<>();
     // build searchFilter
     StringBuilder searchFilter = new StringBuilder();
 
@@ -472,31 +565,38 @@ public class LDAPDatasource implements Datasource
     }
     if (searchFilter.length() == 0)
     {
-      return results;
+      return true;
     }
     searchFilter.insert(0, "(|");
     searchFilter.append(")");
 
     // search LDAP
-    NamingEnumeration<SearchResult> currentResults = searchLDAP("", searchFilter.toString(),
+    SearchResults currentResults = searchLDAP("", searchFilter.toString(),
         SearchControls.SUBTREE_SCOPE, true);
 
-    while (currentResults != null && currentResults.hasMoreElements())
+    for (SearchResult currentResult : currentResults)
     {
-      try
+      Dataset dataset = getDataset(currentResult);
+      if (keyStatus == ABSOLUTE_ONLY || keys.contains(dataset.getKey()))
       {
-        SearchResult currentResult = currentResults.next();
-        Dataset dataset = getDataset(currentResult);
-        if (keyStatus == ABSOLUTE_ONLY || keys.contains(dataset.getKey()))
-        {
-          results.add(dataset);
-        }
-      } catch (NamingException e)
-      {
-        LOGGER.error(L.m("Error in LDAP-Directory."), e);
+        results.add(dataset);
       }
     }
-    return results;
+    return currentResults.complete;
+  }
+
+  /**
+   * Die Suchergebnisse von {@link LDAPDatasource#searchLDAP(String, String, int, boolean)}.
+   */
+  private static class SearchResults extends ArrayList<SearchResult>
+  {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * false, falls bei der Suche ein Fehler aufgetreten ist (z.B. Zeitlimit überschritten) und
+     * daher Ergebnisse fehlen können.
+     */
+    boolean complete = true;
   }
 
   /**
@@ -551,11 +651,12 @@ public class LDAPDatasource implements Datasource
   {
 
     List<Name> paths = null;
-    DirContext ctx = null;
+    LdapContext ctx = null;
+    boolean broken = false;
 
     try
     {
-      ctx = new InitialLdapContext(properties, null);
+      ctx = pool.borrow(DatasourceJoinerFactory.getDatasourceTimeout());
       NameParser np = ctx.getNameParser("");
       int rootSize = np.parse(baseDN).size();
       SearchControls sc = new SearchControls();
@@ -583,22 +684,15 @@ public class LDAPDatasource implements Datasource
           paths.add(pathName);
       }
 
-      ctx.close();
-
     } catch (NamingException e)
     {
+      broken = LdapContextPool.isBroken(e);
       LOGGER.error("Internal error in LDAP.", e);
     } finally
     {
       if (ctx != null)
       {
-        try
-        {
-          ctx.close();
-        } catch (NamingException e)
-        {
-          LOGGER.error("", e);
-        }
+        pool.release(ctx, broken);
       }
     }
 
@@ -614,6 +708,52 @@ public class LDAPDatasource implements Datasource
   @Override
   public QueryResults find(List<QueryPart> query)
   {
+    return find(query, (Collection<String>) null);
+  }
+
+  /**
+   * Es werden nur die Attribute der Spalten columns und der Schlüsselspalten abgerufen. Die
+   * übrigen Spalten lädt ein Datensatz beim ersten Zugriff mit
+   * {@link #getDatasetsByKey(Collection)} nach.
+   */
+  @Override
+  public QueryResults find(List<QueryPart> query, Collection<String> columns)
+  {
+    List<Dataset> results = new ArrayList<>();
+    AtomicBoolean complete = new AtomicBoolean(true);
+    find(query, columns, page -> {
+      page.forEach(results::add);
+      if (!page.isComplete())
+      {
+        complete.set(false);
+      }
+    });
+
+    LOGGER.debug("Attribut-Cache: {}", attributeCache.stats());
+
+    return new QueryResultsList(results, complete.get());
+  }
+
+  @Override
+  public void find(List<QueryPart> query, Consumer<QueryResults> pageConsumer)
+  {
+    find(query, null, pageConsumer);
+  }
+
+  /**
+   * Bei einer Suche nur über Attribute mit positivem Pfad werden die Ergebnisse seitenweise (siehe
+   * PAGE_SIZE) übergeben, sobald sie vom Server geliefert werden. Bei Bedingungen über
+   * Vorfahren-Attribute (negative Pfade) werden alle Ergebnisse auf einmal übergeben. Es werden
+   * nur die Attribute der Spalten columns und der Schlüsselspalten abgerufen (siehe
+   * {@link #find(List, Collection)}).
+   */
+  @Override
+  public void find(List<QueryPart> query, Collection<String> columns,
+      Consumer<QueryResults> pageConsumer)
+  {
+    DatasetSchema projection = getProjection(columns);
+    String[] returningAttributes = getReturningAttributes(projection);
+
     StringBuilder searchFilter = new StringBuilder();
     List<RelativePaths> positiveSubtreePathLists = new ArrayList<>();
 
@@ -628,7 +768,7 @@ public class LDAPDatasource implements Datasource
 
       if (colDef == null)
       {
-        return new QueryResultsList(new Vector<Dataset>(0));
+        return;
       }
 
       String attributeName = colDef.attributeName;
@@ -691,6 +831,12 @@ public class LDAPDatasource implements Datasource
       String pathFilter = ent.getValue();
 
       RelativePaths paths = getPaths(pathFilter, relativePath);
+      if (paths.paths == null)
+      {
+        // Fehler beim Zugriff auf das LDAP-Verzeichnis
+        pageConsumer.accept(new QueryResultsList(new ArrayList<Dataset>(0), false));
+        return;
+      }
 
       if (relativePath > 0)
       {
@@ -926,11 +1072,9 @@ public class LDAPDatasource implements Datasource
     if (searchFilter.length() == 0 && mergedPositiveSubtreePathLists == null
         && mergedNegativeSubtreePaths == null)
     {
-      return new QueryResultsList(new Vector<Dataset>(0));
+      return;
     }
 
-    List<SearchResult> currentResultList = new ArrayList<>();
-
     /*
      * TOD0: besser insgesamt auf havePositiveConstraints und haveNegativeConstrainst Booleans
      * umstellen, anstatt die size zu überprüfen. Könnte zum Irrtum verleiten, dass hier
@@ -960,6 +1104,7 @@ public class LDAPDatasource implements Datasource
 
       // allgemeine Suche
 
+      boolean complete = true;
       for (String subTree : positiveSubtreeStrings)
       {
         String comma = ",";
@@ -967,20 +1112,29 @@ public class LDAPDatasource implements Datasource
         {
           comma = "";
         }
-        NamingEnumeration<SearchResult> currentResults = searchLDAP(subTree + comma,
-            searchFilter.toString(), SearchControls.SUBTREE_SCOPE, true);
-
-        while (currentResults != null && currentResults.hasMoreElements())
-        {
-          SearchResult sr = currentResults.nextElement();
-          String name = preparePath(sr.getNameInNamespace());
-          sr.setName(name + (name.length() > 0 ? comma : "") + subTree);
-          currentResultList.add(sr);
-        }
+        String separator = comma;
+        complete &= searchLDAP(subTree + comma, searchFilter.toString(), SearchControls.SUBTREE_SCOPE, true,
+            returningAttributes, (ctx, page) -> {
+              // generate Datasets from SearchResults
+              List<Dataset> datasets = new ArrayList<>(page.size());
+              for (SearchResult sr : page)
+              {
+                String name = preparePath(sr.getNameInNamespace());
+                sr.setName(name + (name.length() > 0 ? separator : "") + subTree);
+                datasets.add(getDataset(sr, ctx, projection));
+              }
+              pageConsumer.accept(new QueryResultsList(datasets));
+            });
 
       }
+      if (!complete)
+      {
+        pageConsumer.accept(new QueryResultsList(new ArrayList<Dataset>(0), false));
+      }
     } else
     { // Breitensuche ausgehend von den Knoten der mergedNegativeSubtreePaths
+      List<SearchResult> currentResultList = new ArrayList<>();
+      boolean complete = true;
       for (RelativePath currentRelativePath : mergedNegativeSubtreePaths)
       {
         int depth = -currentRelativePath.relative;
@@ -989,32 +1143,131 @@ public class LDAPDatasource implements Datasource
 
         Name currentName = currentRelativePath.name;
         String currentPath = currentName.toString();
-        List<SearchResult> currentSearch = searchLDAPLevel(currentPath, searchFilter.toString(),
-            depth);
+        SearchResults currentSearch = searchLDAPLevel(currentPath, searchFilter.toString(),
+            depth, returningAttributes);
 
         currentResultList.addAll(currentSearch);
+        complete = complete && currentSearch.complete;
       }
 
+      // generate Datasets from SearchResults
+      List<Dataset> datasets = new ArrayList<>(currentResultList.size());
+      for (SearchResult currentResult : currentResultList)
+      {
+        datasets.add(getDataset(currentResult, projection));
+      }
+      if (!datasets.isEmpty() || !complete)
+      {
+        pageConsumer.accept(new QueryResultsList(datasets, complete));
+      }
     }
+  }
 
-    List<Dataset> results = new ArrayList<>();
-
-    // generate Datasets from SearchResults
+  /**
+   * Liefert die Spalten, die abgerufen werden müssen, damit die Datensätze die Spalten columns und
+   * ihren Schlüssel liefern können.
+   *
+   * @return null, falls alle Spalten abgerufen werden müssen.
+   */
+  private DatasetSchema getProjection(Collection<String> columns)
+  {
+    if (columns == null)
+    {
+      return null;
+    }
+    Set<String> projection = new HashSet<>();
+    keyAttributes.forEach(column -> projection.add((String) column));
+    for (String column : columns)
+    {
+      if (columnDefinitions.containsKey(column))
+      {
+        projection.add(column);
+      }
+    }
+    if (projection.size() >= columnDefinitions.size())
+    {
+      return null;
+    }
+    return new DatasetSchema(projection);
+  }
 
-    attributeCache.clear();
+  /**
+   * Liefert die Attribute der Suchergebnisse, die für die Spalten projection abgerufen werden
+   * müssen. Attribute anderer Knoten (relative Pfade) werden erst in
+   * {@link #getDataset(SearchResult, DirContext, DatasetSchema)} gelesen.
+   *
+   * @param projection
+   *          Die Spalten oder null für alle Spalten.
+   * @return null, falls alle Attribute abgerufen werden müssen.
+   */
+  private String[] getReturningAttributes(DatasetSchema projection)
+  {
+    if (projection == null)
+    {
+      return null;
+    }
+    Set<String> attributes = new HashSet<>();
+    for (String column : projection.getColumns())
+    {
+      ColumnDefinition colDef = columnDefinitions.get(column);
+      if (colDef.relativePath == 0)
+      {
+        attributes.add(colDef.attributeName);
+      }
+    }
+    return attributes.toArray(new String[attributes.size()]);
+  }
 
-    try
+  /**
+   * Fasst die Abfragen zu einem einzigen Suchfilter (|(&...)(&...)) zusammen, falls alle
+   * Bedingungen Attribute des gesuchten Knotens selbst betreffen. Ansonsten werden die Abfragen
+   * einzeln mit {@link #find(List)} ausgeführt.
+   */
+  @Override
+  public QueryResults findAny(List<List<QueryPart>> queries)
+  {
+    StringBuilder searchFilter = new StringBuilder();
+    for (List<QueryPart> query : queries)
     {
-      for (SearchResult currentResult : currentResultList)
+      if (query.isEmpty())
       {
-        results.add(getDataset(currentResult));
+        continue;
       }
-    } finally
+      searchFilter.append("(&");
+      for (QueryPart part : query)
+      {
+        ColumnDefinition colDef = columnDefinitions.get(part.getColumnName());
+        if (colDef == null || colDef.relativePath != 0 || part.getSearchString().isEmpty())
+        {
+          return Datasource.super.findAny(queries);
+        }
+        String currentSearchFilter = "(" + ldapEscape(colDef.attributeName) + "="
+            + ldapEscape(part.getSearchString()) + ")";
+        if (colDef.columnObjectClass != null)
+        {
+          currentSearchFilter = "(&" + currentSearchFilter + "(objectClass="
+              + ldapEscape(colDef.columnObjectClass) + "))";
+        }
+        searchFilter.append(currentSearchFilter);
+      }
+      searchFilter.append(")");
+    }
+
+    if (searchFilter.length() == 0)
     {
-      attributeCache.clear();
+      return new QueryResultsList(new Vector<Dataset>(0));
     }
+    searchFilter.insert(0, "(|").append(")");
 
-    return new QueryResultsList(results);
+    List<Dataset> results = new ArrayList<>();
+    SearchResults currentResults = searchLDAP("", searchFilter.toString(),
+        SearchControls.SUBTREE_SCOPE, true);
+    for (SearchResult sr : currentResults)
+    {
+      sr.setName(preparePath(sr.getNameInNamespace()));
+      results.add(getDataset(sr));
+    }
+    return new QueryResultsList(results, currentResults.complete);
   }
 
   /**
@@ -1038,6 +1291,15 @@ public class LDAPDatasource implements Datasource
     return datasourceName;
   }
 
+  /**
+   * Liefert die Statistik des Caches für relative Attribute (Treffer, Fehlschläge, verdrängte
+   * Einträge).
+   */
+  public CacheStats getAttributeCacheStats()
+  {
+    return attributeCache.stats();
+  }
+
   /**
    * generiert einen Schluessel aus einem geordneten(!) Vector der Schluesselwerte
    * 
@@ -1045,7 +1307,7 @@ public class LDAPDatasource implements Datasource
    * @return
    * @author Matthias Benkmann (D-III-ITD 5.1)
    */
-  private String generateKey(Map<String, String> data)
+  private String generateKey(DatasetSchema columns, String[] values)
   {
     List<ColumnDefinition> keyColumns = new ArrayList<>();
     Iterator<Object> iter = keyAttributes.iterator();
@@ -1080,7 +1342,7 @@ public class LDAPDatasource implements Datasource
         key.append('(');
         key.append(ldapEscape(colDef.attributeName));
         key.append('=');
-        String value = data.get(colDef.columnName);
+        String value = getValue(columns, values, colDef.columnName);
         if (value == null)
         {
           value = "*";
@@ -1104,7 +1366,7 @@ public class LDAPDatasource implements Datasource
       {
         key.append(colDef.columnName);
         key.append('=');
-        String value = data.get(colDef.columnName);
+        String value = getValue(columns, values, colDef.columnName);
         if (value == null)
         {
           value = "";
@@ -1117,6 +1379,16 @@ public class LDAPDatasource implements Datasource
     return key.toString();
   }
 
+  /**
+   * Liefert den Wert der Spalte column aus values oder null, falls columns die Spalte nicht
+   * enthält.
+   */
+  private static String getValue(DatasetSchema columns, String[] values, String column)
+  {
+    int position = columns.indexOf(column);
+    return position < 0 ? null : values[position];
+  }
+
   private static class CacheKey
   {
     private static final String CACHE_KEY_SEPARATOR = "/{%§";
@@ -1164,37 +1436,95 @@ public class LDAPDatasource implements Datasource
    * 
    */
   private Dataset getDataset(SearchResult searchResult)
+  {
+    return getDataset(searchResult, (DatasetSchema) null);
+  }
+
+  /**
+   * Wie {@link #getDataset(SearchResult)}, es werden aber nur die Spalten projection gelesen.
+   *
+   * @param projection
+   *          Die Spalten oder null für alle Spalten.
+   */
+  private Dataset getDataset(SearchResult searchResult, DatasetSchema projection)
+  {
+    LdapContext ctx = null;
+    try
+    {
+      ctx = pool.borrow(DatasourceJoinerFactory.getDatasourceTimeout());
+    } catch (NamingException e)
+    {
+      LOGGER.error("Fehler beim Zugriff auf das LDAP-Verzeichnis.", e);
+    }
+
+    try
+    {
+      return getDataset(searchResult, ctx, projection);
+    } finally
+    {
+      if (ctx != null)
+      {
+        pool.release(ctx, false);
+      }
+    }
+  }
+
+  /**
+   * Wie {@link #getDataset(SearchResult)}, verwendet aber die Verbindung ctx, die der Aufrufer
+   * bereits aus dem {@link #pool} ausgeliehen hat. Ist ctx null, bleiben die relativen Attribute
+   * leer, soweit sie nicht im {@link #attributeCache} sind.
+   */
+  private Dataset getDataset(SearchResult searchResult, DirContext ctx)
+  {
+    return getDataset(searchResult, ctx, null);
+  }
+
+  /**
+   * Wie {@link #getDataset(SearchResult, DirContext)}, es werden aber nur die Spalten projection
+   * gelesen. Die übrigen Spalten lädt der Datensatz beim ersten Zugriff nach.
+   *
+   * @param projection
+   *          Die Spalten oder null für alle Spalten.
+   */
+  private Dataset getDataset(SearchResult searchResult, DirContext ctx, DatasetSchema projection)
   {
     Attributes attributes = searchResult.getAttributes();
 
-    Map<String, String> relation = new HashMap<>();
+    DatasetSchema columns = projection == null ? datasetSchema : projection;
+    String[] values = new String[columns.size()];
 
     Name pathName = null;
     Name rootName = null;
-    DirContext ctx = null;
 
     try
     {
       String tempPath = searchResult.getNameInNamespace();
       tempPath = preparePath(tempPath);
 
-      ctx = new InitialLdapContext(properties, null);
-      NameParser nameParser = ctx.getNameParser("");
-      pathName = nameParser.parse(tempPath);
-      rootName = nameParser.parse(baseDN); // TOD0: Das ist eine Konstante, nur
-      // einmal berechnen (ausser, dass dies
-      // nur mit funktionierender
-      // Netzanbindung moeglich ist). Testen
-      // mit rausgezogenem Netzkabel
+      if (ctx != null)
+      {
+        NameParser nameParser = ctx.getNameParser("");
+        pathName = nameParser.parse(tempPath);
+        rootName = nameParser.parse(baseDN); // TOD0: Das ist eine Konstante, nur
+        // einmal berechnen (ausser, dass dies
+        // nur mit funktionierender
+        // Netzanbindung moeglich ist). Testen
+        // mit rausgezogenem Netzkabel
+      } else
+      {
+        // ohne Verbindung können relative Attribute nur aus dem attributeCache kommen
+        pathName = new LdapName(tempPath);
+        rootName = new LdapName(baseDN);
+      }
 
-    } catch (NamingException e)
+    } catch (NamingException | NullPointerException e)
     {
       LOGGER.error("Fehler beim Zugriff auf das LDAP-Verzeichnis.", e);
     }
 
-    for (Map.Entry<String, ColumnDefinition> columnDefEntry : columnDefinitions.entrySet())
+    for (int i = 0; i < values.length; i++)
     {
-      ColumnDefinition currentAttribute = columnDefEntry.getValue();
+      ColumnDefinition currentAttribute = columnDefinitions.get(columns.getColumns().get(i));
 
       int relativePath = currentAttribute.relativePath;
       String attributeName = currentAttribute.attributeName;
@@ -1214,7 +1544,7 @@ public class LDAPDatasource implements Datasource
           // do nothing (Attributwert nicht vorhanden und bleibt somit 'null')
         }
 
-      } else
+      } else if (rootName != null && pathName != null)
       { // value is stored somewhere else in the directory
 
         Name attributePath = (Name) rootName.clone();
@@ -1238,15 +1568,16 @@ public class LDAPDatasource implements Datasource
           Attributes foundAttributes;
 
           CacheKey key = new CacheKey(attributePath, searchAttributes);
-          foundAttributes = attributeCache.get(key);
+          foundAttributes = attributeCache.getIfPresent(key);
 
-          if (foundAttributes == null)
+          if (foundAttributes == null && ctx != null)
           {
             foundAttributes = ctx.getAttributes(attributePath, searchAttributes);
             attributeCache.put(key, foundAttributes);
           }
 
-          Attribute foundAttribute = foundAttributes.get(attributeName);
+          Attribute foundAttribute =
+              foundAttributes == null ? null : foundAttributes.get(attributeName);
 
           if (foundAttribute != null)
           {
@@ -1267,13 +1598,13 @@ public class LDAPDatasource implements Datasource
         {
           value = value.replaceAll(lineSeparator, "\n");
         }
-        relation.put(columnDefEntry.getKey(), value);
+        values[i] = value;
       }
     }
 
-      String key = generateKey(relation);
+    String key = generateKey(columns, values);
 
-      return new LDAPDataset(key, relation);
+    return new LDAPDataset(new ArrayDataset(columns, key, values));
   }
 
   /**
@@ -1289,13 +1620,46 @@ public class LDAPDatasource implements Datasource
    * @param onlyObjectClass
    *          falls true, werden nur Knoten zurückgeliefert, deren objectClass {@link #objectClass}
    *          entspricht.
-   * @return die Suchergebnisse
+   * @return die Suchergebnisse. Bei einem Fehler werden die bisherigen Ergebnisse geliefert und
+   *         als unvollständig markiert.
    * @author Max Meier (D-III-ITD 5.1)
-   * @throws NamingException
    * 
    */
-  private NamingEnumeration<SearchResult> searchLDAP(String path, String filter, int searchScope,
+  private SearchResults searchLDAP(String path, String filter, int searchScope,
       boolean onlyObjectClass)
+  {
+    return searchLDAP(path, filter, searchScope, onlyObjectClass, null);
+  }
+
+  /**
+   * Wie {@link #searchLDAP(String, String, int, boolean)}, die Suchergebnisse enthalten aber nur
+   * die Attribute returningAttributes (bei null alle).
+   */
+  private SearchResults searchLDAP(String path, String filter, int searchScope,
+      boolean onlyObjectClass, String[] returningAttributes)
+  {
+    SearchResults result = new SearchResults();
+    result.complete = searchLDAP(path, filter, searchScope, onlyObjectClass, returningAttributes,
+        (ctx, page) -> result.addAll(page));
+
+    LOGGER.debug(result.isEmpty() ? "keine Ergebnisse gefunden" : "Ergebnisse gefunden");
+
+    return result;
+  }
+
+  /**
+   * Wie {@link #searchLDAP(String, String, int, boolean)}, die Ergebnisse werden aber seitenweise
+   * mit dem RFC 2696 Paged Results Control abgerufen (je {@link #pageSize} Ergebnisse) und jede
+   * Seite sofort an pageHandler übergeben. Unterstützt der Server das Control nicht, liefert er
+   * alle Ergebnisse als eine Seite. Der pageHandler erhält die Verbindung, auf der gesucht wird, und
+   * kann sie für weitere Anfragen (z.B. relative Attribute) verwenden; sie darf nicht geschlossen
+   * werden. Die Suchergebnisse enthalten nur die Attribute returningAttributes (bei null alle).
+   *
+   * @return false, falls bei der Suche ein Fehler aufgetreten ist (z.B. Zeitlimit überschritten)
+   *         und daher Ergebnisse fehlen können.
+   */
+  private boolean searchLDAP(String path, String filter, int searchScope, boolean onlyObjectClass,
+      String[] returningAttributes, BiConsumer<DirContext, List<SearchResult>> pageHandler)
   {
     LOGGER.debug("searchLDAP({}, {}, {}, {})", path, filter, searchScope, onlyObjectClass);
 
@@ -1303,6 +1667,8 @@ public class LDAPDatasource implements Datasource
 
     searchControls.setSearchScope(searchScope);
 
+    searchControls.setReturningAttributes(returningAttributes);
+
     searchControls.setTimeLimit((int) DatasourceJoinerFactory.getDatasourceTimeout());
 
     if (onlyObjectClass)
@@ -1315,53 +1681,105 @@ public class LDAPDatasource implements Datasource
       // doch überflüssig
     }
 
-    Optional<NamingEnumeration<SearchResult>> result = Optional.empty();
-    DirContext ctx = null;
+    LdapContext ctx = null;
+    boolean broken = false;
+    boolean complete = true;
 
     try
     {
-      ctx = new InitialLdapContext(properties, null);
+      ctx = pool.borrow(DatasourceJoinerFactory.getDatasourceTimeout());
       NameParser nameParser = ctx.getNameParser("");
       Name name = nameParser.parse(path + baseDN);
 
-      LOGGER.trace("ctx.search({}, {}, searchControls) mit Zeitlimit {}", name, filter,
-          searchControls.getTimeLimit());
-      result = Optional.of(ctx.search(name, filter, searchControls));
-      LOGGER.trace("ctx.search() abgeschlossen");
+      byte[] cookie = null;
+      do
+      {
+        List<SearchResult> page = new ArrayList<>();
+        ctx.setRequestControls(
+            new Control[] { new PagedResultsControl(pageSize, cookie, Control.NONCRITICAL) });
+        LOGGER.trace("ctx.search({}, {}, searchControls) mit Zeitlimit {}", name, filter,
+            searchControls.getTimeLimit());
+        NamingEnumeration<SearchResult> enumer = ctx.search(name, filter, searchControls);
+        LOGGER.trace("ctx.search() abgeschlossen");
+        try
+        {
+          while (enumer.hasMore())
+          {
+            page.add(enumer.next());
+          }
+          cookie = getPagedResultsCookie(ctx.getResponseControls());
+        } catch (NamingException e)
+        {
+          // z.B. Zeitlimit überschritten, die bisherigen Ergebnisse werden geliefert
+          broken = LdapContextPool.isBroken(e);
+          complete = false;
+          cookie = null;
+          LOGGER.debug("", e);
+        } finally
+        {
+          enumer.close();
+          // weitere Anfragen des pageHandlers nicht mit dem Control versehen
+          ctx.setRequestControls(null);
+        }
+
+        if (!page.isEmpty())
+        {
+          pageHandler.accept(ctx, page);
+        }
+      } while (cookie != null && !broken);
     } catch (NamingException e)
     {
+      broken = broken || LdapContextPool.isBroken(e);
+      complete = false;
+      LOGGER.error("", e);
+    } catch (IOException e)
+    {
+      complete = false;
       LOGGER.error("", e);
     } finally
     {
       if (ctx != null)
       {
-        try
-        {
-          ctx.close();
-        } catch (NamingException e)
+        pool.release(ctx, broken);
+      }
+    }
+    return complete;
+  }
+
+  /**
+   * Liefert das Cookie zum Abruf der nächsten Seite oder null, falls es keine weiteren Seiten gibt.
+   */
+  private static byte[] getPagedResultsCookie(Control[] responseControls)
+  {
+    if (responseControls != null)
+    {
+      for (Control control : responseControls)
+      {
+        if (control instanceof PagedResultsResponseControl)
         {
-          LOGGER.error("", e);
+          byte[] cookie = ((PagedResultsResponseControl) control).getCookie();
+          return cookie == null || cookie.length == 0 ? null : cookie;
         }
       }
     }
-
-    result.ifPresent(r -> LOGGER
-        .debug(r.hasMoreElements() ? "Ergebnisse gefunden" : "keine Ergebnisse gefunden"));
-
-    return result.orElse(null);
+    return null;
   }
 
   /**
    * Durchsucht die Nachfahren des durch path + BASE_DN bezeichneten Knotens mit Abstand level zu
    * diesem Knoten nach Knoten, die auf die Suchanfrage filter passen. Es werden nur Objekte mit
-   * objectClass = {@link #objectClass} geliefert.
+   * objectClass = {@link #objectClass} geliefert. Die Ergebnisse enthalten nur die Attribute
+   * returningAttributes (bei null alle).
    * 
-   * @return eine List von {@link SearchResult}s.
+   * @return eine List von {@link SearchResult}s, die als unvollständig markiert ist, falls eine
+   *         der Suchen fehlgeschlagen ist.
    * @author Max Meier (D-III-ITD 5.1)
    * 
    */
-  private List<SearchResult> searchLDAPLevel(String path, String filter, int level)
+  private SearchResults searchLDAPLevel(String path, String filter, int level,
+      String[] returningAttributes)
   {
+    SearchResults result = new SearchResults();
     List<String> seeds = new ArrayList<>();
     seeds.add(path);
 
@@ -1379,12 +1797,12 @@ public class LDAPDatasource implements Datasource
           comma = "";
         }
 
-        NamingEnumeration<SearchResult> enumer = searchLDAP(searchPath + comma, "",
+        SearchResults children = searchLDAP(searchPath + comma, "",
             SearchControls.ONELEVEL_SCOPE, false);
+        result.complete = result.complete && children.complete;
 
-        while (enumer != null && enumer.hasMoreElements())
+        for (SearchResult currentResult : children)
         {
-          SearchResult currentResult = enumer.nextElement();
           String subPath = preparePath(currentResult.getNameInNamespace());
           comma = ",";
           if (subPath.isEmpty())
@@ -1400,8 +1818,6 @@ public class LDAPDatasource implements Datasource
 
     }
 
-    List<SearchResult> result = new ArrayList<>();
-
     for (String currentPath : seeds)
     {
       comma = ",";
@@ -1410,12 +1826,13 @@ public class LDAPDatasource implements Datasource
         comma = "";
       }
 
-      NamingEnumeration<SearchResult> enumer = searchLDAP(currentPath + comma, filter,
-          level == 0 ? SearchControls.OBJECT_SCOPE : SearchControls.ONELEVEL_SCOPE, true);
+      SearchResults found = searchLDAP(currentPath + comma, filter,
+          level == 0 ? SearchControls.OBJECT_SCOPE : SearchControls.ONELEVEL_SCOPE, true,
+          returningAttributes);
+      result.complete = result.complete && found.complete;
 
-      while (enumer != null && enumer.hasMoreElements())
+      for (SearchResult sr : found)
       {
-        SearchResult sr = enumer.nextElement();
         String name = preparePath(sr.getNameInNamespace());
         String actualPath = name + (name.length() > 0 ? comma : "") + currentPath;
         sr.setName(actualPath);
@@ -1475,31 +1892,60 @@ public class LDAPDatasource implements Datasource
   private class LDAPDataset implements Dataset
   {
 
-    private String key;
-
-    private Map<String, String> relation;
+    /**
+     * Die Werte des Datensatzes. Wurden bei der Suche nicht alle Spalten abgerufen, werden die
+     * übrigen beim ersten Zugriff nachgeladen.
+     */
+    private volatile ArrayDataset relation;
 
-    LDAPDataset(String key, Map<String, String> relation)
+    LDAPDataset(ArrayDataset relation)
     {
-      this.key = key;
       this.relation = relation;
     }
 
     @Override
     public String get(java.lang.String columnName) throws ColumnNotFoundException
     {
-      if (!schema.contains(columnName))
+      if (!datasetSchema.contains(columnName))
       {
         throw new ColumnNotFoundException();
       }
 
-      return relation.get(columnName);
+      if (!relation.getSchema().contains(columnName))
+      {
+        load();
+      }
+      ArrayDataset current = relation;
+      return current.getSchema().contains(columnName) ? current.get(columnName) : null;
+    }
+
+    /**
+     * Lädt alle Spalten des Datensatzes über seinen Schlüssel nach. Gibt es mehrere Datensätze mit
+     * dem Schlüssel, wird der verwendet, der in den bereits abgerufenen Spalten übereinstimmt.
+     * Schlägt das Nachladen fehl, wird es beim nächsten Zugriff wiederholt.
+     */
+    private synchronized void load()
+    {
+      if (relation.getSchema() == datasetSchema)
+      {
+        return;
+      }
+      for (Dataset ds : getDatasetsByKey(List.of(getKey())))
+      {
+        ArrayDataset fullRelation = ((LDAPDataset) ds).relation;
+        if (relation.agreesWith(fullRelation))
+        {
+          relation = fullRelation;
+          return;
+        }
+      }
+      LOGGER.debug("Datensatz mit Schlüssel \"{}\" konnte nicht nachgeladen werden", getKey());
     }
 
     @Override
     public String getKey()
     {
-      return key;
+      return relation.getKey();
     }
 
   }
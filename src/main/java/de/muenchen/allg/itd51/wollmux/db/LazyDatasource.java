@@ -0,0 +1,226 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2020 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.db;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.muenchen.allg.itd51.wollmux.config.ConfigurationErrorException;
+import de.muenchen.allg.itd51.wollmux.util.L;
+
+/**
+ * A proxy for a datasource, which creates the datasource on first usage. Only the name of the
+ * datasource is known without creating it.
+ *
+ * Datasources referencing other datasources (union, attach, overlay, ...) access the schema of
+ * their sources in their constructor. So the sources are created before the datasource
+ * referencing them.
+ *
+ * If the datasource can't be created, the error is logged once and every access throws a
+ * {@link ConfigurationErrorException}. There is no retry, because the constructors of datasources
+ * only fail because of configuration errors (see {@link Datasource}).
+ */
+final class LazyDatasource implements Datasource
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(LazyDatasource.class);
+
+  private final String name;
+
+  private final String type;
+
+  private Callable<Datasource> factory;
+
+  private volatile Datasource datasource;
+
+  private ConfigurationErrorException error;
+
+  /**
+   * Create a new proxy.
+   *
+   * @param name
+   *          The name of the datasource.
+   * @param type
+   *          The type of the datasource for log messages.
+   * @param factory
+   *          Creates the datasource.
+   */
+  LazyDatasource(String name, String type, Callable<Datasource> factory)
+  {
+    this.name = name;
+    this.type = type;
+    this.factory = factory;
+  }
+
+  /**
+   * Has the datasource already been created?
+   *
+   * @return True if the datasource has been created successfully.
+   */
+  boolean isInitialized()
+  {
+    return datasource != null;
+  }
+
+  private Datasource get()
+  {
+    Datasource ds = datasource;
+    if (ds != null)
+    {
+      return ds;
+    }
+
+    synchronized (this)
+    {
+      if (datasource == null && error == null)
+      {
+        create();
+      }
+      if (error != null)
+      {
+        throw error;
+      }
+      return datasource;
+    }
+  }
+
+  private void create()
+  {
+    long start = System.currentTimeMillis();
+    Datasource ds = null;
+    try
+    {
+      ds = factory.call();
+    } catch (Exception x)
+    {
+      LOGGER.error(
+          L.m("Fehler beim Initialisieren von Datenquelle \"%1\" (Typ \"%2\"):", name, type), x);
+    }
+
+    if (ds == null)
+    {
+      error = new ConfigurationErrorException(
+          L.m("Datenquelle \"%1\" von Typ \"%2\" konnte nicht initialisiert werden", name, type));
+      LOGGER.error(error.getMessage());
+    } else
+    {
+      LOGGER.debug("Datenquelle \"{}\" in {} ms initialisiert", name,
+          System.currentTimeMillis() - start);
+      datasource = ds;
+    }
+    factory = null;
+  }
+
+  /**
+   * Create the datasource in a thread of the {@link DatasourceExecutor}, if it doesn't exist yet,
+   * so that asynchronous queries don't block the calling thread.
+   */
+  private <T> CompletableFuture<T> getAsync(Function<Datasource, CompletableFuture<T>> query)
+  {
+    Datasource ds = datasource;
+    if (ds != null)
+    {
+      return query.apply(ds);
+    }
+    return DatasourceExecutor.supply(this::get).thenCompose(query);
+  }
+
+  @Override
+  public List<String> getSchema()
+  {
+    return get().getSchema();
+  }
+
+  @Override
+  public QueryResults getDatasetsByKey(Collection<String> keys)
+  {
+    return get().getDatasetsByKey(keys);
+  }
+
+  @Override
+  public CompletableFuture<QueryResults> getDatasetsByKeyAsync(Collection<String> keys)
+  {
+    return getAsync(ds -> ds.getDatasetsByKeyAsync(keys));
+  }
+
+  @Override
+  public QueryResults find(List<QueryPart> query)
+  {
+    return get().find(query);
+  }
+
+  @Override
+  public CompletableFuture<QueryResults> findAsync(List<QueryPart> query)
+  {
+    return getAsync(ds -> ds.findAsync(query));
+  }
+
+  @Override
+  public void find(List<QueryPart> query, Consumer<QueryResults> pageConsumer)
+  {
+    get().find(query, pageConsumer);
+  }
+
+  @Override
+  public QueryResults find(List<QueryPart> query, Collection<String> columns)
+  {
+    return get().find(query, columns);
+  }
+
+  @Override
+  public void find(List<QueryPart> query, Collection<String> columns,
+      Consumer<QueryResults> pageConsumer)
+  {
+    get().find(query, columns, pageConsumer);
+  }
+
+  @Override
+  public QueryResults findAny(List<List<QueryPart>> queries)
+  {
+    return get().findAny(queries);
+  }
+
+  @Override
+  public QueryResults getContents()
+  {
+    return get().getContents();
+  }
+
+  @Override
+  public CompletableFuture<QueryResults> getContentsAsync()
+  {
+    return getAsync(Datasource::getContentsAsync);
+  }
+
+  @Override
+  public String getName()
+  {
+    return name;
+  }
+}
@@ -0,0 +1,320 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2020 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.db;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.naming.CommunicationException;
+import javax.naming.InterruptedNamingException;
+import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
+import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.LdapContext;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.muenchen.allg.itd51.wollmux.util.L;
+
+/**
+ * A pool of bound LDAP contexts of one {@link LDAPDatasource}. Creating a context opens a new
+ * connection and authenticates, so the contexts are reused for all searches and attribute lookups.
+ *
+ * At most {@code maxSize} contexts are open at the same time. If all of them are in use,
+ * {@link #borrow(long)} waits until one is released. Idle contexts are reused last-in-first-out
+ * and closed after {@code idleTimeout} milliseconds. A context which has been idle for more than
+ * {@link #VALIDATION_INTERVAL} milliseconds is checked before it is handed out again.
+ */
+class LdapContextPool
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(LdapContextPool.class);
+
+  /**
+   * Idle time in milliseconds after which a context is validated before reuse.
+   */
+  static final long VALIDATION_INTERVAL = 5000;
+
+  /**
+   * Closes idle contexts of all pools. Only runs for pools with open contexts.
+   */
+  private static ScheduledExecutorService evictor;
+
+  private final Hashtable<?, ?> environment;
+
+  private final int maxSize;
+
+  private final long idleTimeout;
+
+  /**
+   * The idle contexts, most recently released first.
+   */
+  private final Deque<IdleContext> idle = new ArrayDeque<>();
+
+  /**
+   * Number of open contexts, idle or borrowed.
+   */
+  private int size;
+
+  /**
+   * Periodic eviction of idle contexts. Only scheduled as long as there are open contexts, so that
+   * unused pools can be garbage collected.
+   */
+  private ScheduledFuture<?> evictionTask;
+
+  /**
+   * Creates a new pool. No connection is opened before the first {@link #borrow(long)}.
+   *
+   * @param environment
+   *          The environment of the contexts (see {@link InitialLdapContext}).
+   * @param maxSize
+   *          The maximum number of open contexts.
+   * @param idleTimeout
+   *          Idle contexts are closed after this many milliseconds.
+   */
+  LdapContextPool(Hashtable<?, ?> environment, int maxSize, long idleTimeout)
+  {
+    if (maxSize <= 0 || idleTimeout <= 0)
+    {
+      throw new IllegalArgumentException("maxSize and idleTimeout have to be greater than 0");
+    }
+    this.environment = environment;
+    this.maxSize = maxSize;
+    this.idleTimeout = idleTimeout;
+  }
+
+  /**
+   * Get a context of the pool. Every borrowed context has to be returned with
+   * {@link #release(LdapContext, boolean)}.
+   *
+   * @param timeout
+   *          Maximum time in milliseconds to wait for a context if all are in use.
+   * @return A bound context.
+   * @throws NamingException
+   *           The context couldn't be created or no context became available in time.
+   */
+  LdapContext borrow(long timeout) throws NamingException
+  {
+    long deadline = System.currentTimeMillis() + timeout;
+    while (true)
+    {
+      IdleContext candidate;
+      synchronized (this)
+      {
+        candidate = idle.pollFirst();
+        while (candidate == null && size >= maxSize)
+        {
+          long wait = deadline - System.currentTimeMillis();
+          if (wait <= 0)
+          {
+            throw new NamingException(
+                L.m("Keine freie LDAP-Verbindung innerhalb von %1 ms verfügbar.", timeout));
+          }
+          try
+          {
+            wait(wait);
+          } catch (InterruptedException e)
+          {
+            Thread.currentThread().interrupt();
+            throw new InterruptedNamingException(e.getMessage());
+          }
+          candidate = idle.pollFirst();
+        }
+        if (candidate == null)
+        {
+          size++;
+          if (evictionTask == null)
+          {
+            evictionTask = evictor().scheduleWithFixedDelay(this::evictIdle, idleTimeout,
+                idleTimeout, TimeUnit.MILLISECONDS);
+          }
+        }
+      }
+
+      if (candidate == null)
+      {
+        return create();
+      }
+      if (System.currentTimeMillis() - candidate.since <= VALIDATION_INTERVAL
+          || isValid(candidate.context))
+      {
+        return candidate.context;
+      }
+      LOGGER.debug("Verbindung zum LDAP-Server ist nicht mehr gültig.");
+      release(candidate.context, true);
+    }
+  }
+
+  /**
+   * Return a borrowed context to the pool.
+   *
+   * @param context
+   *          The context.
+   * @param broken
+   *          If true, the context is closed instead of being reused.
+   */
+  void release(LdapContext context, boolean broken)
+  {
+    synchronized (this)
+    {
+      if (!broken)
+      {
+        idle.addFirst(new IdleContext(context, System.currentTimeMillis()));
+        notifyAll();
+        return;
+      }
+      size--;
+      notifyAll();
+    }
+    close(context);
+  }
+
+  /**
+   * Closes all contexts which have been idle for more than the idle timeout.
+   */
+  void evictIdle()
+  {
+    long limit = System.currentTimeMillis() - idleTimeout;
+    List<LdapContext> expired = new ArrayList<>();
+    synchronized (this)
+    {
+      Iterator<IdleContext> iter = idle.descendingIterator();
+      while (iter.hasNext())
+      {
+        IdleContext candidate = iter.next();
+        if (candidate.since > limit)
+        {
+          break;
+        }
+        iter.remove();
+        expired.add(candidate.context);
+      }
+      size -= expired.size();
+      if (size == 0 && evictionTask != null)
+      {
+        evictionTask.cancel(false);
+        evictionTask = null;
+      }
+    }
+    expired.forEach(LdapContextPool::close);
+  }
+
+  /**
+   * Number of open contexts, idle or borrowed.
+   */
+  synchronized int size()
+  {
+    return size;
+  }
+
+  /**
+   * Number of idle contexts.
+   */
+  synchronized int idleSize()
+  {
+    return idle.size();
+  }
+
+  /**
+   * Tests whether an exception was caused by a broken connection, so that the context shouldn't be
+   * reused.
+   */
+  static boolean isBroken(NamingException e)
+  {
+    return e instanceof CommunicationException || e instanceof ServiceUnavailableException;
+  }
+
+  private LdapContext create() throws NamingException
+  {
+    try
+    {
+      return new InitialLdapContext(environment, null);
+    } catch (NamingException | RuntimeException e)
+    {
+      synchronized (this)
+      {
+        size--;
+        notifyAll();
+      }
+      throw e;
+    }
+  }
+
+  private static boolean isValid(LdapContext context)
+  {
+    try
+    {
+      // read no attributes, only test the connection
+      context.getAttributes("", new String[] { "1.1" });
+      return true;
+    } catch (NamingException e)
+    {
+      return !isBroken(e);
+    }
+  }
+
+  private static void close(LdapContext context)
+  {
+    try
+    {
+      context.close();
+    } catch (NamingException e)
+    {
+      LOGGER.trace("", e);
+    }
+  }
+
+  private static synchronized ScheduledExecutorService evictor()
+  {
+    if (evictor == null)
+    {
+      evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "LDAP-Pool-Evictor");
+        t.setDaemon(true);
+        return t;
+      });
+    }
+    return evictor;
+  }
+
+  private static class IdleContext
+  {
+    private final LdapContext context;
+
+    private final long since;
+
+    IdleContext(LdapContext context, long since)
+    {
+      this.context = context;
+      this.since = since;
+    }
+  }
+}
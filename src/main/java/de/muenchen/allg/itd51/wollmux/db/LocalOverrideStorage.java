@@ -22,6 +22,7 @@
  */
 package de.muenchen.allg.itd51.wollmux.db;
 
+import java.io.IOException;
 import java.util.List;
 
 import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
@@ -108,4 +109,19 @@ public interface LocalOverrideStorage extends Iterable<Dataset>
    */
   public boolean isEmpty();
 
+  /**
+   * Speichert die Änderungen am LOS seit dem letzten Speichern dauerhaft. Die
+   * Standardimplementierung speichert nichts.
+   * 
+   * @param compact
+   *          falls true, wird der gesamte LOS neu geschrieben, anstatt nur die
+   *          Änderungen anzuhängen.
+   * @throws IOException
+   *           falls nicht gespeichert werden konnte.
+   */
+  public default void save(boolean compact) throws IOException
+  {
+    // nichts zu speichern
+  }
+
 }
@@ -0,0 +1,643 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2020 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.db;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent storage of a {@link LocalOverrideStorageStandardImpl} as a binary snapshot and a
+ * journal of the changes made since the snapshot was written.
+ *
+ * Changes are collected in memory and appended to the journal as one record by
+ * {@link #append(int)}. Each record has a checksum, so a record which was only partially written
+ * is ignored on the next load. If the journal has become too long, if it can't be continued or if
+ * the content was changed as a whole, a new snapshot is written instead. Snapshot and journal are
+ * written to temporary files and moved into place. Both carry a generation number, so a journal
+ * which belongs to an older snapshot is never replayed.
+ */
+final class LocalOverrideStorageJournal
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(LocalOverrideStorageJournal.class);
+
+  private static final int SNAPSHOT_MAGIC = 0x574d4c53;
+
+  private static final int JOURNAL_MAGIC = 0x574d4c4a;
+
+  private static final int FORMAT_VERSION = 1;
+
+  /**
+   * Size of magic number, format version and generation.
+   */
+  private static final int HEADER_LENGTH = 16;
+
+  /**
+   * Size of the checksum at the end of snapshots and journal records.
+   */
+  private static final int CHECKSUM_LENGTH = 8;
+
+  /**
+   * Number of changes in the journal after which a new snapshot is written.
+   */
+  private static final int COMPACTION_THRESHOLD = 1000;
+
+  private static final byte ADD = 1;
+
+  private static final byte REMOVE = 2;
+
+  private static final byte SET = 3;
+
+  private static final byte SELECT = 4;
+
+  /**
+   * A dataset as it's stored in snapshot and journal.
+   */
+  static final class Entry
+  {
+    final String key;
+
+    /**
+     * The cached values of the background datasource or null if the dataset only exists in the
+     * local override storage.
+     */
+    final Map<String, String> cache;
+
+    final Map<String, String> override;
+
+    Entry(String key, Map<String, String> cache, Map<String, String> override)
+    {
+      this.key = key;
+      this.cache = cache;
+      this.override = override;
+    }
+  }
+
+  /**
+   * The complete content of a local override storage.
+   */
+  static final class Content
+  {
+    final List<String> schema;
+
+    final List<Entry> entries;
+
+    /**
+     * The position of the selected dataset or -1 if no dataset is selected.
+     */
+    int selected;
+
+    Content(List<String> schema, List<Entry> entries, int selected)
+    {
+      this.schema = schema;
+      this.entries = entries;
+      this.selected = selected;
+    }
+  }
+
+  private final File snapshotFile;
+
+  private final File journalFile;
+
+  /**
+   * The generation of the current snapshot. The journal must have the same generation.
+   */
+  private long generation;
+
+  /**
+   * The changes which haven't been appended to the journal yet.
+   */
+  private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+  private final DataOutputStream pendingOut = new DataOutputStream(pending);
+
+  private int pendingChanges;
+
+  /**
+   * Number of changes in the journal.
+   */
+  private int journalChanges;
+
+  /**
+   * The position of the selected dataset as it's known to snapshot and journal.
+   */
+  private int selected = -1;
+
+  /**
+   * If true, the journal can't be continued and the next call of {@link #append(int)} fails.
+   */
+  private boolean compactionNeeded = true;
+
+  /**
+   * Create a new journal.
+   *
+   * @param snapshotFile
+   *          The file of the snapshot.
+   * @param journalFile
+   *          The file of the journal.
+   */
+  LocalOverrideStorageJournal(File snapshotFile, File journalFile)
+  {
+    this.snapshotFile = snapshotFile;
+    this.journalFile = journalFile;
+  }
+
+  /**
+   * Get the file of the snapshot.
+   *
+   * @return The file of the snapshot.
+   */
+  File getSnapshotFile()
+  {
+    return snapshotFile;
+  }
+
+  /**
+   * Read the snapshot and replay the journal.
+   *
+   * @return The content or null if there's no valid snapshot.
+   */
+  Content load()
+  {
+    if (!snapshotFile.isFile())
+    {
+      return null;
+    }
+
+    Content content;
+    try
+    {
+      byte[] bytes = Files.readAllBytes(snapshotFile.toPath());
+      if (bytes.length < HEADER_LENGTH + CHECKSUM_LENGTH
+          || !hasValidChecksum(bytes, 0, bytes.length - CHECKSUM_LENGTH))
+      {
+        LOGGER.debug("Snapshot {} ist beschädigt", snapshotFile);
+        return null;
+      }
+      DataInputStream in = new DataInputStream(
+          new ByteArrayInputStream(bytes, 0, bytes.length - CHECKSUM_LENGTH));
+      if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != FORMAT_VERSION)
+      {
+        return null;
+      }
+      long snapshotGeneration = in.readLong();
+      List<String> schema = new ArrayList<>();
+      for (int i = in.readInt(); i > 0; i--)
+      {
+        schema.add(readString(in));
+      }
+      int count = in.readInt();
+      List<Entry> entries = new ArrayList<>(count);
+      for (int i = 0; i < count; i++)
+      {
+        entries.add(readEntry(in));
+      }
+      content = new Content(schema, entries, in.readInt());
+      generation = snapshotGeneration;
+    } catch (IOException | RuntimeException e)
+    {
+      LOGGER.debug("Snapshot {} konnte nicht gelesen werden", snapshotFile, e);
+      return null;
+    }
+
+    compactionNeeded = !replay(content);
+    selected = content.selected;
+    return content;
+  }
+
+  /**
+   * Apply the records of the journal to content.
+   *
+   * @return False if the journal doesn't belong to the snapshot or is damaged, so that it can't be
+   *         continued.
+   */
+  private boolean replay(Content content)
+  {
+    if (!journalFile.isFile())
+    {
+      return false;
+    }
+    try
+    {
+      byte[] bytes = Files.readAllBytes(journalFile.toPath());
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+      if (bytes.length < HEADER_LENGTH || in.readInt() != JOURNAL_MAGIC
+          || in.readInt() != FORMAT_VERSION || in.readLong() != generation)
+      {
+        LOGGER.debug("Journal {} gehört nicht zum Snapshot {}", journalFile, snapshotFile);
+        return false;
+      }
+      int offset = HEADER_LENGTH;
+      while (offset < bytes.length)
+      {
+        int length = offset + Integer.BYTES > bytes.length ? -1 : in.readInt();
+        int start = offset + Integer.BYTES;
+        if (length < 0 || length > bytes.length - start - CHECKSUM_LENGTH
+            || !hasValidChecksum(bytes, start, length))
+        {
+          LOGGER.info("Journal {} ist ab Position {} unvollständig", journalFile, offset);
+          return false;
+        }
+        journalChanges += replayRecord(
+            new DataInputStream(new ByteArrayInputStream(bytes, start, length)), content);
+        in.skipBytes(length + CHECKSUM_LENGTH);
+        offset = start + length + CHECKSUM_LENGTH;
+      }
+      return true;
+    } catch (IOException | RuntimeException e)
+    {
+      LOGGER.info("Journal {} konnte nicht gelesen werden", journalFile, e);
+      return false;
+    }
+  }
+
+  private static int replayRecord(DataInputStream in, Content content) throws IOException
+  {
+    int changes = 0;
+    while (in.available() > 0)
+    {
+      byte type = in.readByte();
+      switch (type)
+      {
+      case ADD:
+        content.entries.add(readEntry(in));
+        break;
+      case REMOVE:
+        content.entries.remove(in.readInt());
+        break;
+      case SET:
+        Map<String, String> override = content.entries.get(in.readInt()).override;
+        String column = readString(in);
+        String value = readString(in);
+        if (value == null)
+        {
+          override.remove(column);
+        } else
+        {
+          override.put(column, value);
+        }
+        break;
+      case SELECT:
+        content.selected = in.readInt();
+        break;
+      default:
+        throw new IOException("Unbekannter Eintrag " + type);
+      }
+      changes++;
+    }
+    return changes;
+  }
+
+  /**
+   * Record that a dataset has been appended.
+   *
+   * @param entry
+   *          The new dataset.
+   */
+  void add(Entry entry)
+  {
+    record(out -> {
+      out.writeByte(ADD);
+      writeEntry(out, entry);
+    });
+  }
+
+  /**
+   * Record that a dataset has been removed.
+   *
+   * @param index
+   *          The position of the dataset before it was removed.
+   */
+  void remove(int index)
+  {
+    record(out -> {
+      out.writeByte(REMOVE);
+      out.writeInt(index);
+    });
+  }
+
+  /**
+   * Record that the override of a column has changed.
+   *
+   * @param index
+   *          The position of the dataset.
+   * @param column
+   *          The column.
+   * @param value
+   *          The new override or null if the override has been discarded.
+   */
+  void set(int index, String column, String value)
+  {
+    record(out -> {
+      out.writeByte(SET);
+      out.writeInt(index);
+      writeString(out, column);
+      writeString(out, value);
+    });
+  }
+
+  /**
+   * Record that the content has been changed as a whole, so that the next time a snapshot has to
+   * be written.
+   */
+  void invalidate()
+  {
+    compactionNeeded = true;
+    pending.reset();
+    pendingChanges = 0;
+  }
+
+  /**
+   * Check whether the changes have to be stored by {@link #compact(Content)}.
+   *
+   * @return True if a snapshot has to be written.
+   */
+  boolean isCompactionNeeded()
+  {
+    return compactionNeeded || journalChanges + pendingChanges >= COMPACTION_THRESHOLD;
+  }
+
+  /**
+   * Append all recorded changes as one record to the journal.
+   *
+   * @param selectedIndex
+   *          The position of the currently selected dataset or -1.
+   * @throws IOException
+   *           The journal can't be written.
+   * @throws IllegalStateException
+   *           A snapshot has to be written instead, see {@link #isCompactionNeeded()}.
+   */
+  void append(int selectedIndex) throws IOException
+  {
+    if (compactionNeeded)
+    {
+      throw new IllegalStateException("Journal " + journalFile + " kann nicht fortgesetzt werden");
+    }
+    if (selectedIndex != selected)
+    {
+      int index = selectedIndex;
+      record(out -> {
+        out.writeByte(SELECT);
+        out.writeInt(index);
+      });
+    }
+    if (pendingChanges == 0)
+    {
+      return;
+    }
+
+    byte[] changes = pending.toByteArray();
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream(changes.length + 12);
+    try (DataOutputStream out = new DataOutputStream(buffer))
+    {
+      out.writeInt(changes.length);
+      out.write(changes);
+      out.writeLong(checksum(changes, 0, changes.length));
+    }
+    try (FileOutputStream out = new FileOutputStream(journalFile, true))
+    {
+      buffer.writeTo(out);
+      out.getFD().sync();
+    } catch (IOException e)
+    {
+      // the end of the journal is undefined now
+      compactionNeeded = true;
+      throw e;
+    }
+    journalChanges += pendingChanges;
+    selected = selectedIndex;
+    pending.reset();
+    pendingChanges = 0;
+  }
+
+  /**
+   * Write a new snapshot with content and start a new, empty journal.
+   *
+   * @param content
+   *          The complete content.
+   * @throws IOException
+   *           The snapshot or journal can't be written.
+   */
+  void compact(Content content) throws IOException
+  {
+    long newGeneration = generation + 1;
+
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(buffer))
+    {
+      out.writeInt(SNAPSHOT_MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      out.writeLong(newGeneration);
+      out.writeInt(content.schema.size());
+      for (String column : content.schema)
+      {
+        writeString(out, column);
+      }
+      out.writeInt(content.entries.size());
+      for (Entry entry : content.entries)
+      {
+        writeEntry(out, entry);
+      }
+      out.writeInt(content.selected);
+      byte[] bytes = buffer.toByteArray();
+      out.writeLong(checksum(bytes, 0, bytes.length));
+    }
+    replace(snapshotFile, buffer);
+
+    buffer = new ByteArrayOutputStream(HEADER_LENGTH);
+    try (DataOutputStream out = new DataOutputStream(buffer))
+    {
+      out.writeInt(JOURNAL_MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      out.writeLong(newGeneration);
+    }
+    // The new snapshot is in place, a crash now leaves a journal of the wrong generation
+    // which is ignored.
+    generation = newGeneration;
+    compactionNeeded = true;
+    replace(journalFile, buffer);
+
+    compactionNeeded = false;
+    journalChanges = 0;
+    selected = content.selected;
+    pending.reset();
+    pendingChanges = 0;
+  }
+
+  /**
+   * Write the data to a temporary file and move it to file.
+   */
+  private static void replace(File file, ByteArrayOutputStream data) throws IOException
+  {
+    File tmp = new File(file.getPath() + ".tmp");
+    try (FileOutputStream out = new FileOutputStream(tmp))
+    {
+      data.writeTo(out);
+      out.getFD().sync();
+    }
+    try
+    {
+      Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e)
+    {
+      Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  @FunctionalInterface
+  private interface Change
+  {
+    void write(DataOutputStream out) throws IOException;
+  }
+
+  private void record(Change change)
+  {
+    if (compactionNeeded)
+    {
+      return;
+    }
+    try
+    {
+      change.write(pendingOut);
+      pendingChanges++;
+    } catch (IOException e)
+    {
+      // can't happen with a ByteArrayOutputStream
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static long checksum(byte[] bytes, int offset, int length)
+  {
+    CRC32 crc = new CRC32();
+    crc.update(bytes, offset, length);
+    return crc.getValue();
+  }
+
+  /**
+   * Check the checksum, which follows length bytes starting at offset.
+   */
+  private static boolean hasValidChecksum(byte[] bytes, int offset, int length)
+  {
+    long expected = 0;
+    for (int i = 0; i < CHECKSUM_LENGTH; i++)
+    {
+      expected = (expected << 8) | (bytes[offset + length + i] & 0xff);
+    }
+    return checksum(bytes, offset, length) == expected;
+  }
+
+  private static void writeEntry(DataOutputStream out, Entry entry) throws IOException
+  {
+    writeString(out, entry.key);
+    writeMap(out, entry.cache);
+    writeMap(out, entry.override);
+  }
+
+  private static Entry readEntry(DataInputStream in) throws IOException
+  {
+    String key = readString(in);
+    Map<String, String> cache = readMap(in);
+    Map<String, String> override = readMap(in);
+    if (override == null)
+    {
+      throw new IOException("Datensatz ohne Override");
+    }
+    return new Entry(key, cache, override);
+  }
+
+  private static void writeMap(DataOutputStream out, Map<String, String> map) throws IOException
+  {
+    if (map == null)
+    {
+      out.writeInt(-1);
+      return;
+    }
+    out.writeInt(map.size());
+    for (Map.Entry<String, String> entry : map.entrySet())
+    {
+      writeString(out, entry.getKey());
+      writeString(out, entry.getValue());
+    }
+  }
+
+  private static Map<String, String> readMap(DataInputStream in) throws IOException
+  {
+    int size = in.readInt();
+    if (size < 0)
+    {
+      return null;
+    }
+    Map<String, String> map = new HashMap<>();
+    for (int i = 0; i < size; i++)
+    {
+      map.put(readString(in), readString(in));
+    }
+    return map;
+  }
+
+  /**
+   * Write a string, which may be null or longer than {@link DataOutputStream#writeUTF(String)}
+   * allows.
+   */
+  private static void writeString(DataOutputStream out, String str) throws IOException
+  {
+    if (str == null)
+    {
+      out.writeInt(-1);
+      return;
+    }
+    byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException
+  {
+    int length = in.readInt();
+    if (length < 0)
+    {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
@@ -36,6 +36,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -62,6 +63,18 @@ public class LocalOverrideStorageStandardImpl implements LocalOverrideStorage
    */
   private static final String LOS_ONLY_MAGIC = "GEHORCHE DEM WOLLMUX!";
 
+  /**
+   * Endung, die an den Namen der Cache-Datei angehängt wird, um den Namen des Snapshots zu
+   * erhalten.
+   */
+  private static final String SNAPSHOT_SUFFIX = ".snapshot";
+
+  /**
+   * Endung, die an den Namen der Cache-Datei angehängt wird, um den Namen des Journals zu
+   * erhalten.
+   */
+  private static final String JOURNAL_SUFFIX = ".journal";
+
   /**
    * Liste aller LOSDJDatasets. Die Liste muss geordnet sein, damit Datensätze mit gleichem
    * Schlüssel über ihre Position in der Liste identifiziert werden können.
@@ -85,11 +98,60 @@ public class LocalOverrideStorageStandardImpl implements LocalOverrideStorage
   private long nextGeneratedKey = new Date().getTime();
 
   /**
-   * Versucht, den Cache und den LOS aus der Datei losCache (ConfigThingy) zu lesen. %includes in
+   * Speichert die Änderungen am LOS, siehe {@link #save(boolean)}.
+   */
+  private final LocalOverrideStorageJournal journal;
+
+  /**
+   * Versucht, den Cache und den LOS aus dem binären Snapshot und Journal neben der Datei losCache
+   * zu lesen. Gibt es keinen gültigen Snapshot oder ist losCache neuer (z.B. weil sie von einer
+   * älteren WollMux-Version geschrieben wurde), wird losCache (ConfigThingy) gelesen. %includes in
    * losCache werden relativ zu context aufgelöst.
    */
   public LocalOverrideStorageStandardImpl(File losCache, URL context)
   { // TESTED
+    journal = new LocalOverrideStorageJournal(new File(losCache.getPath() + SNAPSHOT_SUFFIX),
+        new File(losCache.getPath() + JOURNAL_SUFFIX));
+    if (losCache.lastModified() > journal.getSnapshotFile().lastModified() || !readSnapshot())
+    {
+      readCache(losCache, context);
+    }
+  }
+
+  /**
+   * Liest den LOS aus Snapshot und Journal.
+   *
+   * @return false, falls es keinen gültigen Snapshot gibt.
+   */
+  private boolean readSnapshot()
+  {
+    LocalOverrideStorageJournal.Content content = journal.load();
+    if (content == null)
+    {
+      return false;
+    }
+
+    losSchema = content.schema;
+    for (LocalOverrideStorageJournal.Entry entry : content.entries)
+    {
+      data.add(new LOSDJDataset(entry.cache, entry.override, losSchema, entry.key));
+    }
+    if (content.selected >= 0 && content.selected < data.size())
+    {
+      selectedDataset = data.get(content.selected);
+    } else if (!data.isEmpty())
+    {
+      selectedDataset = data.get(0);
+    }
+    LOGGER.debug("LOS aus Snapshot {} gelesen", journal.getSnapshotFile());
+    return true;
+  }
+
+  /**
+   * Liest den LOS aus der Cache-Datei losCache (ConfigThingy).
+   */
+  private void readCache(File losCache, URL context)
+  {
     String selectKey = "";
     String sameKeyIndex = "";
     if (losCache.canRead())
@@ -236,6 +298,7 @@ public class LocalOverrideStorageStandardImpl implements LocalOverrideStorage
     }
     LOSDJDataset ds = new LOSDJDataset(null, dsoverride, losSchema, generateKey());
     data.add(ds);
+    journal.add(toEntry(ds));
     if (selectedDataset == null)
     {
       selectedDataset = ds;
@@ -273,6 +336,7 @@ public class LocalOverrideStorageStandardImpl implements LocalOverrideStorage
     }
     LOSDJDataset newDs = new LOSDJDataset(dscache, dsoverride, losSchema, ds.getKey());
     data.add(newDs);
+    journal.add(toEntry(newDs));
     if (selectedDataset == null)
     {
       selectedDataset = newDs;
@@ -338,6 +402,7 @@ public class LocalOverrideStorageStandardImpl implements LocalOverrideStorage
      * neu erzeugten LOSDJDatasets weitergereicht werden.
      */
     this.setSchema(database.getSchema());
+    journal.invalidate();
 
     /*
      * Mappt Schlüssel auf Listen mit Datensätzen, die diese Schlüssel haben. Hier werden Listen
@@ -537,6 +602,7 @@ public class LocalOverrideStorageStandardImpl implements LocalOverrideStorage
     if (losSchema == null)
     {
       losSchema = new ArrayList<>(schema);
+      journal.invalidate();
       return;
     }
 
@@ -554,6 +620,7 @@ public class LocalOverrideStorageStandardImpl implements LocalOverrideStorage
       return;
 
     LOGGER.info("Das Datenbank-Schema wurde geändert. Der Cache wird angepasst.");
+    journal.invalidate();
 
     Iterator<LOSDJDataset> iter = data.iterator();
     while (iter.hasNext())
@@ -601,6 +668,55 @@ public class LocalOverrideStorageStandardImpl implements LocalOverrideStorage
     return data.isEmpty();
   }
 
+  /**
+   * Hängt die Änderungen seit dem letzten Speichern an das Journal an. Wurde der LOS als Ganzes
+   * geändert (z.B. durch {@link #refreshFromDatabase(Datasource)}) oder ist das Journal zu lang
+   * geworden, wird stattdessen ein neuer Snapshot geschrieben.
+   */
+  @Override
+  public void save(boolean compact) throws IOException
+  {
+    if (losSchema == null)
+    {
+      LOGGER.error("Kann Cache nicht speichern, weil nicht initialisiert.");
+      return;
+    }
+
+    if (compact || journal.isCompactionNeeded())
+    {
+      List<LocalOverrideStorageJournal.Entry> entries =
+          data.stream().map(this::toEntry).collect(Collectors.toList());
+      journal.compact(
+          new LocalOverrideStorageJournal.Content(losSchema, entries, indexOf(selectedDataset)));
+      LOGGER.debug("Snapshot {} geschrieben", journal.getSnapshotFile());
+    } else
+    {
+      journal.append(indexOf(selectedDataset));
+    }
+  }
+
+  private LocalOverrideStorageJournal.Entry toEntry(LOSDJDataset ds)
+  {
+    return new LocalOverrideStorageJournal.Entry(ds.getKey(), ds.getBS(), ds.getLOS());
+  }
+
+  /**
+   * Liefert die Position von ds in {@link #data} oder -1, falls ds nicht (mehr) im LOS ist.
+   */
+  private int indexOf(DJDataset ds)
+  {
+    int index = 0;
+    for (LOSDJDataset ds2 : data)
+    {
+      if (ds2 == ds)
+      {
+        return index;
+      }
+      ++index;
+    }
+    return -1;
+  }
+
   /**
    * Ein Datensatz im LOS bzw Cache.
    * 
@@ -675,6 +791,29 @@ public class LocalOverrideStorageStandardImpl implements LocalOverrideStorage
       return !losValue.equals(bsValue);
     }
 
+    @Override
+    public void set(String columnName, String newValue) throws ColumnNotFoundException
+    {
+      super.set(columnName, newValue);
+      int index = indexOf(this);
+      if (index >= 0)
+      {
+        journal.set(index, columnName, newValue);
+      }
+    }
+
+    @Override
+    public void discardLocalOverride(String columnName)
+        throws ColumnNotFoundException, NoBackingStoreException
+    {
+      super.discardLocalOverride(columnName);
+      int index = indexOf(this);
+      if (index >= 0)
+      {
+        journal.set(index, columnName, null);
+      }
+    }
+
     /**
      * Ändert die Referenz auf das Schema dieses Datensatzes. Eine Anpassung der im Datensatz
      * gespeicherten Werte geschieht nicht. Dafür muss drop() verwendet werden.
@@ -694,6 +833,7 @@ public class LocalOverrideStorageStandardImpl implements LocalOverrideStorage
           isFromLOS() ? new HashMap<>(this.myLOS) : new HashMap<String, String>(), this.schema,
           this.key);
       LocalOverrideStorageStandardImpl.this.data.add(newDS);
+      journal.add(toEntry(newDS));
       if (selectedDataset == null)
       {
         selectedDataset = newDS;
@@ -714,7 +854,13 @@ public class LocalOverrideStorageStandardImpl implements LocalOverrideStorage
         throw new UnsupportedOperationException(
             L.m("Versuch, einen Datensatz, der nicht aus dem LOS kommt zu entfernen"));
 
-      LocalOverrideStorageStandardImpl.this.data.remove(this);
+      int index = indexOf(this);
+      if (index < 0)
+      {
+        return;
+      }
+      LocalOverrideStorageStandardImpl.this.data.remove(index);
+      journal.remove(index);
       if (selectedDataset == this)
       {
         if (LocalOverrideStorageStandardImpl.this.data.isEmpty())
@@ -22,37 +22,52 @@
  */
 package de.muenchen.allg.itd51.wollmux.db;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.sun.star.sdb.CommandType;
+import com.sun.star.lang.DisposedException;
 import com.sun.star.sdb.XColumn;
 import com.sun.star.sdbc.SQLException;
+import com.sun.star.sdbc.XCloseable;
 import com.sun.star.sdbc.XColumnLocate;
 import com.sun.star.sdbc.XConnection;
 import com.sun.star.sdbc.XDataSource;
+import com.sun.star.sdbc.XParameters;
+import com.sun.star.sdbc.XPreparedStatement;
 import com.sun.star.sdbc.XResultSet;
 import com.sun.star.sdbc.XRow;
-import com.sun.star.sdbc.XRowSet;
 import com.sun.star.sdbcx.XColumnsSupplier;
 import com.sun.star.sdbcx.XKeysSupplier;
+import com.sun.star.uno.UnoRuntime;
 
 import de.muenchen.allg.afid.UNO;
 import de.muenchen.allg.afid.UnoDictionary;
 import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
 import de.muenchen.allg.itd51.wollmux.config.ConfigurationErrorException;
 import de.muenchen.allg.itd51.wollmux.util.L;
-import de.muenchen.allg.util.UnoComponent;
-import de.muenchen.allg.util.UnoProperty;
 
 /**
  * Stellt eine OOo-Datenquelle als WollMux-Datenquelle zur Verfügung.
@@ -68,6 +83,31 @@ public class OOoDatasource implements Datasource
    */
   private static final int LOGIN_TIMEOUT = 5;
 
+  /**
+   * Standardwert für CONNECTION_IDLE_TIMEOUT in Sekunden.
+   */
+  private static final long DEFAULT_IDLE_TIMEOUT = 60;
+
+  /**
+   * Standardwert für CONNECTIONS.
+   */
+  private static final int DEFAULT_CONNECTIONS = 2;
+
+  /**
+   * Standardwert für KEY_CHUNK_SIZE.
+   */
+  private static final int DEFAULT_KEY_CHUNK_SIZE = 100;
+
+  /**
+   * Maximale Anzahl vorbereiteter Statements pro Verbindung.
+   */
+  private static final int STATEMENT_CACHE_SIZE = 32;
+
+  /**
+   * Schließt Verbindungen, die länger als {@link #idleTimeout} nicht benutzt wurden.
+   */
+  private static ScheduledExecutorService connectionCloser;
+
   /**
    * Konstante für {@link #sqlSyntax}, die angibt, dass SQL Queries in Oracle-Syntax
    * abgesetzt werden sollen.
@@ -109,11 +149,15 @@ public class OOoDatasource implements Datasource
 
    o**** Datensätze zu vorgegebener Schlüsselliste finden *********
 
-  SELECT * FROM "<id>" WHERE ("<colId>"='<colVal>' AND "<colId>"='<colVal>' AND ...) OR (...) OR ...;
+  SELECT * FROM "<id>" WHERE ("<colId>"=? AND "<colId>"=? AND ...) OR (...) OR ...
+
+  Bei nur einer Schlüsselspalte:
+
+  SELECT * FROM "<id>" WHERE "<colId>" IN (?, ?, ...)
 
   In <id> und <colId> sind Doublequotes durch <doublequote symbol> ersetzt.
 
-  In <colVal> sind Quotes durch <quote symbol> ersetzt.
+  Die Werte werden als Parameter des PreparedStatements übergeben.
 
   o ***** Datensätze finden, die bestimmte Kriterien erfüllen ********
 
@@ -121,21 +165,27 @@ public class OOoDatasource implements Datasource
   Der String hinter ESCAPE muss genau ein Zeichen lang sein. Ansonsten gibt es eine Exception (387 Foundation, 8.5 General Rules 3b))
   _ und % sowie das ESCAPE-Zeichen selbst müssen im String-Ausdruck hinter LIKE escapet werden (durch Voranstellen des Escape-Zeichens). Andere Zeichen dürfen nicht escapet werden.
 
-  SELECT * FROM "<id>" WHERE (lower("<colId>") LIKE lower('<pattern>') ESCAPE '|') AND (...) AND ...;
+  SELECT * FROM "<id>" WHERE (lower("<colId>") LIKE lower(?) ESCAPE '|') AND (...) AND ...
   In <id> und <colId> sind Doublequotes durch <doublequote symbol> ersetzt.
-  In <pattern> sind "_",  "%" und "|" ersetzt durch "|_", "|%" und "||".
+
+  Werden nur bestimmte Spalten benötigt, werden statt * diese und die Schlüsselspalten abgerufen:
+
+  SELECT "<colId>", "<colId>", ... FROM "<id>" WHERE ...
+  Im Parameter <pattern> sind "_",  "%" und "|" ersetzt durch "|_", "|%" und "||".
 
    ***** Alle Datensätze auslesen ******
 
-  SELECT * FROM "<id>";
+  SELECT * FROM "<id>"
   In <id> sind Doublequotes durch <doublequote symbol> ersetzt.
 
    **** Oracle *****
-  Wie ANSI
+  Wie ANSI, aber bei mehreren Schlüsselspalten mit Row Value Constructor:
+
+  SELECT * FROM "<id>" WHERE ("<colId>", "<colId>", ...) IN ((?, ?, ...), (?, ?, ...), ...)
    ****** MySQL *******
-  Wie ANSI, aber mit lcase() statt lower()
+  Wie Oracle, aber mit lcase() statt lower()
    ****** PervasiveSQL *******
-  Wie ANSI, aber rechts vom LIKE dürfen nur einfache Konstanten (also kein lower oder lcase)
+  Wie ANSI, aber rechts vom LIKE dürfen nur einfache Parameter (also kein lower oder lcase)
   stehen. Außerdem wird "DATENBANK.TABELLE" nicht unterstützt. Nur "DATENBANK"."TABELLE",
   DATENBANK."TABELLE" oder "TABELLE".
    */
@@ -161,6 +211,12 @@ public class OOoDatasource implements Datasource
    */
   private List<String> schema;
 
+  /**
+   * Die Spalten der Datensätze, bei deren Suche alle Spalten abgerufen wurden. Wird von diesen
+   * Datensätzen gemeinsam verwendet.
+   */
+  private DatasetSchema datasetSchema;
+
   /**
    * Die Namen der Spalten, die den Primärschlüssel bilden.
    */
@@ -179,6 +235,37 @@ public class OOoDatasource implements Datasource
   @SuppressWarnings("squid:S2068")
   private String password = "";
 
+  /**
+   * Zeit in Sekunden, nach der eine unbenutzte Verbindung geschlossen wird. Bei 0 wird die
+   * Verbindung nach jeder Anfrage geschlossen.
+   */
+  private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+  /**
+   * Maximale Anzahl gleichzeitig offener Verbindungen zur Datenbank.
+   */
+  private int maxConnections = DEFAULT_CONNECTIONS;
+
+  /**
+   * Maximale Anzahl an Schlüsseln in einer Anfrage von {@link #getDatasetsByKey(Collection)}.
+   */
+  private int keyChunkSize = DEFAULT_KEY_CHUNK_SIZE;
+
+  /**
+   * Die offenen, gerade unbenutzten Verbindungen. Die zuletzt benutzte steht vorne.
+   */
+  private final Deque<OOoConnection> idleConnections = new ArrayDeque<>();
+
+  /**
+   * Anzahl aller offenen Verbindungen (benutzt und unbenutzt).
+   */
+  private int openConnections;
+
+  /**
+   * Schließt die Verbindungen, die {@link #idleTimeout} lang nicht benutzt wurden.
+   */
+  private ScheduledFuture<?> closeTask;
+
   /**
    * Wie {@link #OOoDatasource(Map, ConfigThingy, boolean)}, wobei noKey==false übergeben wird.
    */
@@ -223,6 +310,24 @@ public class OOoDatasource implements Datasource
     userName = sourceDesc.getString("USER", "");
     password = sourceDesc.getString("PASSWORD", "");
 
+    String idleTimeoutStr = sourceDesc.getString("CONNECTION_IDLE_TIMEOUT", null);
+    if (idleTimeoutStr != null)
+    {
+      try
+      {
+        idleTimeout = Long.parseLong(idleTimeoutStr);
+      } catch (NumberFormatException e)
+      {
+        idleTimeout = -1;
+      }
+      if (idleTimeout < 0)
+        throw new ConfigurationErrorException(L.m(
+            "Datenquelle \"%1\": CONNECTION_IDLE_TIMEOUT muss eine ganze Zahl größer oder gleich 0 sein",
+            datasourceName));
+    }
+    maxConnections = parsePositiveInt(sourceDesc, "CONNECTIONS", DEFAULT_CONNECTIONS);
+    keyChunkSize = parsePositiveInt(sourceDesc, "KEY_CHUNK_SIZE", DEFAULT_KEY_CHUNK_SIZE);
+
     String sqlSyntaxStr = sourceDesc.getString("SQL_SYNTAX", "");
 
     sqlSyntaxStr = sqlSyntaxStr == null || sqlSyntaxStr.isEmpty() ? "mysql" : sqlSyntaxStr;
@@ -276,12 +381,15 @@ public class OOoDatasource implements Datasource
       LOGGER.debug(L.m(
         "Schema der Datenquelle %1 nicht angegeben. Versuche, es von der Datenquelle zu erfragen.",
         datasourceName));
+      OOoConnection schemaConnection = null;
       try
       {
         XDataSource ds =
           UNO.XDataSource(UNO.dbContext.getRegisteredObject(oooDatasourceName));
         ds.setLoginTimeout(LOGIN_TIMEOUT);
         XConnection conn = ds.getConnection(userName, password);
+        schemaConnection = new OOoConnection(conn);
+        openConnections = 1;
 
         /*
          * Laut IDL-Doku zu "View" müssen hier auch die Views enthalten sein.
@@ -369,11 +477,48 @@ public class OOoDatasource implements Datasource
           "Konnte Schema der OOo-Datenquelle \"%1\" nicht auslesen.",
           oooDatasourceName), x);
       }
+      finally
+      {
+        if (schemaConnection != null)
+        {
+          releaseConnection(schemaConnection, false);
+        }
+      }
 
       if (keyColumns.length == 0)
         throw new ConfigurationErrorException(L.m(
           "Datenquelle \"%1\": Keine Schluessel-Spalten definiert", datasourceName));
     }
+    datasetSchema = new DatasetSchema(schema);
+  }
+
+  /**
+   * Liefert den Wert von key aus sourceDesc oder defaultValue, falls key nicht angegeben ist.
+   *
+   * @throws ConfigurationErrorException
+   *           falls der Wert keine positive ganze Zahl ist.
+   */
+  private int parsePositiveInt(ConfigThingy sourceDesc, String key, int defaultValue)
+  {
+    String value = sourceDesc.getString(key, null);
+    if (value == null)
+    {
+      return defaultValue;
+    }
+
+    try
+    {
+      int i = Integer.parseInt(value);
+      if (i > 0)
+      {
+        return i;
+      }
+    } catch (NumberFormatException e)
+    {
+      // Fehlermeldung folgt
+    }
+    throw new ConfigurationErrorException(L.m(
+        "Datenquelle \"%1\": %2 muss eine positive ganze Zahl sein", datasourceName, key));
   }
 
   /**
@@ -412,54 +557,240 @@ public class OOoDatasource implements Datasource
     return schema;
   }
 
+  /**
+   * Die Schlüssel werden nach ihren Spalten gruppiert und in Anfragen mit höchstens
+   * {@link #keyChunkSize} Schlüsseln aufgeteilt. Mehrere Anfragen werden gleichzeitig über bis zu
+   * {@link #maxConnections} Verbindungen abgesetzt.
+   */
   @Override
   public QueryResults getDatasetsByKey(Collection<String> keys)
   {
-    if (keys.isEmpty()) {
-      return new QueryResultsList(new ArrayList<Dataset>(0));
-    }
-
-    StringBuilder buffy =
-        new StringBuilder(SQLSelectCommand + sqlIdentifier(oooTableName) + " WHERE ");
-
-    Iterator<String> iter = keys.iterator();
-    boolean first = true;
-    while (iter.hasNext())
+    /*
+     * Ein Schlüssel enthält nur die Schlüsselspalten, die im Datensatz nicht null sind. Daher
+     * können Schlüssel mit unterschiedlichen Spalten vorkommen.
+     */
+    Map<List<String>, Set<List<String>>> keysByColumns = new LinkedHashMap<>();
+    for (String key : keys)
     {
-      if (!first) {
-        buffy.append(" OR ");
-      }
-      first = false;
-      String key = iter.next();
       String[] parts = key.split("#", -1);
-      buffy.append('(');
+      List<String> columns = new ArrayList<>();
+      List<String> values = new ArrayList<>();
       for (int i = 1; i < parts.length; i += 2)
       {
-        if (i > 1) {
-          buffy.append(" AND ");
+        columns.add(decode(parts[i - 1]));
+        values.add(decode(parts[i]));
+      }
+      if (!columns.isEmpty())
+      {
+        keysByColumns.computeIfAbsent(columns, c -> new LinkedHashSet<>()).add(values);
+      }
+    }
+
+    List<Supplier<QueryResults>> queries = new ArrayList<>();
+    for (Map.Entry<List<String>, Set<List<String>>> entry : keysByColumns.entrySet())
+    {
+      List<List<String>> values = new ArrayList<>(entry.getValue());
+      for (int start = 0; start < values.size(); start += keyChunkSize)
+      {
+        List<List<String>> chunk = new ArrayList<>(
+            values.subList(start, Math.min(start + keyChunkSize, values.size())));
+        /*
+         * Der letzte Teil wird mit dem letzten Schlüssel aufgefüllt, damit alle Teile das selbe
+         * vorbereitete Statement verwenden.
+         */
+        while (start > 0 && chunk.size() < keyChunkSize)
+        {
+          chunk.add(chunk.get(chunk.size() - 1));
         }
-        buffy.append(sqlIdentifier(decode(parts[i - 1])));
-        buffy.append('=');
-        buffy.append(sqlLiteral(decode(parts[i])));
+
+        StringBuilder buffy =
+            new StringBuilder(SQLSelectCommand + sqlIdentifier(oooTableName) + " WHERE ");
+        List<String> params = new ArrayList<>();
+        appendKeyCondition(buffy, params, entry.getKey(), chunk);
+        queries.add(() -> sqlQuery(buffy.toString(), params));
       }
-      buffy.append(')');
     }
 
-    buffy.append(';');
+    if (queries.isEmpty())
+    {
+      return new QueryResultsList(new ArrayList<Dataset>(0));
+    }
+    if (queries.size() == 1)
+    {
+      return queries.get(0).get();
+    }
+
+    List<CompletableFuture<QueryResults>> chunks = new ArrayList<>();
+    queries.forEach(query -> chunks.add(DatasourceExecutor.supply(query)));
+    List<Dataset> results = new ArrayList<>();
+    boolean complete = true;
+    for (CompletableFuture<QueryResults> chunk : chunks)
+    {
+      QueryResults res = DatasourceExecutor.await(chunk);
+      res.forEach(results::add);
+      complete = complete && res.isComplete();
+    }
+    return new QueryResultsList(results, complete);
+  }
+
+  /**
+   * Hängt die Bedingung an buffy an, die die Datensätze mit den Schlüsseln keys auswählt. Die Werte
+   * der Schlüssel werden an params angehängt.
+   *
+   * @param columns
+   *          Die Schlüsselspalten.
+   * @param keys
+   *          Die Werte der Schlüsselspalten jedes Schlüssels.
+   */
+  private void appendKeyCondition(StringBuilder buffy, List<String> params,
+      List<String> columns, List<List<String>> keys)
+  {
+    keys.forEach(params::addAll);
 
-    return sqlQuery(buffy.toString());
+    if (columns.size() == 1)
+    {
+      buffy.append(sqlIdentifier(columns.get(0)));
+      buffy.append(" IN (");
+      buffy.append(String.join(", ", Collections.nCopies(keys.size(), "?")));
+      buffy.append(')');
+    } else if (SQL_SYNTAX_ORACLE == sqlSyntax || SQL_SYNTAX_MYSQL == sqlSyntax)
+    {
+      List<String> identifiers = new ArrayList<>();
+      columns.forEach(column -> identifiers.add(sqlIdentifier(column)));
+      String row = "(" + String.join(", ", Collections.nCopies(columns.size(), "?")) + ")";
+      buffy.append('(');
+      buffy.append(String.join(", ", identifiers));
+      buffy.append(") IN (");
+      buffy.append(String.join(", ", Collections.nCopies(keys.size(), row)));
+      buffy.append(')');
+    } else
+    {
+      List<String> conditions = new ArrayList<>();
+      columns.forEach(column -> conditions.add(sqlIdentifier(column) + "=?"));
+      String row = "(" + String.join(" AND ", conditions) + ")";
+      buffy.append(String.join(" OR ", Collections.nCopies(keys.size(), row)));
+    }
   }
 
   @Override
   public QueryResults find(List<QueryPart> query)
+  {
+    return find(query, (Collection<String>) null);
+  }
+
+  /**
+   * Es werden nur die Spalten columns und die Schlüsselspalten abgerufen. Die übrigen Spalten lädt
+   * ein Datensatz beim ersten Zugriff mit {@link #getDatasetsByKey(Collection)} nach.
+   */
+  @Override
+  public QueryResults find(List<QueryPart> query, Collection<String> columns)
   {
     if (query.isEmpty()) {
       return new QueryResultsList(new Vector<Dataset>(0));
     }
 
+    List<String> projection = getProjection(columns);
+    StringBuilder buffy =
+        new StringBuilder(sqlSelect(projection) + sqlIdentifier(oooTableName) + " WHERE ");
+    List<String> params = new ArrayList<>();
+    appendConditions(buffy, params, query);
+    return sqlQuery(buffy.toString(), params, projection);
+  }
+
+  @Override
+  public void find(List<QueryPart> query, Collection<String> columns,
+      Consumer<QueryResults> pageConsumer)
+  {
+    QueryResults results = find(query, columns);
+    if (!results.isEmpty() || !results.isComplete())
+    {
+      pageConsumer.accept(results);
+    }
+  }
+
+  /**
+   * Liefert die Spalten, die abgerufen werden müssen, damit die Datensätze die Spalten columns
+   * und ihren Schlüssel liefern können. Die Spalten sind sortiert, damit für die selben Spalten
+   * immer das selbe vorbereitete Statement verwendet wird.
+   *
+   * @return null, falls alle Spalten abgerufen werden müssen.
+   */
+  private List<String> getProjection(Collection<String> columns)
+  {
+    if (columns == null)
+    {
+      return null;
+    }
+    Set<String> projection = new TreeSet<>(Arrays.asList(keyColumns));
+    for (String column : columns)
+    {
+      if (datasetSchema.contains(column))
+      {
+        projection.add(column);
+      }
+    }
+    if (projection.size() >= datasetSchema.size())
+    {
+      return null;
+    }
+    return new ArrayList<>(projection);
+  }
+
+  /**
+   * Liefert den Anfang einer SQL-Anfrage, die die Spalten projection abruft.
+   *
+   * @param projection
+   *          Die Spalten oder null für alle Spalten.
+   */
+  private String sqlSelect(List<String> projection)
+  {
+    if (projection == null)
+    {
+      return SQLSelectCommand;
+    }
+    List<String> identifiers = new ArrayList<>();
+    projection.forEach(column -> identifiers.add(sqlIdentifier(column)));
+    return "SELECT " + String.join(", ", identifiers) + " FROM ";
+  }
+
+  /**
+   * Fasst alle Abfragen mit OR zu einer einzigen SQL-Anfrage zusammen.
+   */
+  @Override
+  public QueryResults findAny(List<List<QueryPart>> queries)
+  {
     StringBuilder buffy =
         new StringBuilder(SQLSelectCommand + sqlIdentifier(oooTableName) + " WHERE ");
+    List<String> params = new ArrayList<>();
+
+    boolean first = true;
+    for (List<QueryPart> query : queries)
+    {
+      if (query.isEmpty()) {
+        continue;
+      }
+      if (!first) {
+        buffy.append(" OR ");
+      }
+      first = false;
+      buffy.append('(');
+      appendConditions(buffy, params, query);
+      buffy.append(')');
+    }
 
+    if (first) {
+      return new QueryResultsList(new ArrayList<Dataset>(0));
+    }
+
+    return sqlQuery(buffy.toString(), params);
+  }
+
+  /**
+   * Hängt die mit AND verknüpften Bedingungen aller {@link QueryPart}s aus query an buffy an. Die
+   * Suchmuster werden an params angehängt.
+   */
+  private void appendConditions(StringBuilder buffy, List<String> params, List<QueryPart> query)
+  {
     Iterator<QueryPart> iter = query.iterator();
     boolean first = true;
     while (iter.hasNext())
@@ -483,149 +814,411 @@ public class OOoDatasource implements Datasource
           // Die Inhalte der zu durchsuchenden Spalte können wiederum mit lcase/lower
           // behandelt werden. Somit ist sichergestellt, dass der durchsuchende und der zu
           // suchende String nur Kleinbuchstaben enthält.
-          buffy.append(sqlLiteral(sqlSearchPattern(part.getSearchString())).toLowerCase());
+          buffy.append('?');
+          params.add(sqlSearchPattern(part.getSearchString()).toLowerCase());
       } else {
         buffy.append(sqlLower());
-        buffy.append('(');
-        buffy.append(sqlLiteral(sqlSearchPattern(part.getSearchString())));
-        buffy.append(") ESCAPE '|'");
+        buffy.append("(?) ESCAPE '|'");
+        params.add(sqlSearchPattern(part.getSearchString()));
       }
 
       buffy.append(')');
     }
-
-    buffy.append(';');
-    return sqlQuery(buffy.toString());
   }
 
   @Override
   public QueryResults getContents()
   {
-    return sqlQuery(SQLSelectCommand + sqlIdentifier(oooTableName) + ";");
+    return sqlQuery(SQLSelectCommand + sqlIdentifier(oooTableName), List.of());
   }
 
   /**
-   * Setzt die SQL-Anfrage query an die Datenbank ab und liefert die Resultate.
+   * Setzt die SQL-Anfrage query mit den Parametern params an die Datenbank ab und liefert die
+   * Resultate. Schlägt die Anfrage fehl, weil die Verbindung unterbrochen ist (z.B. nach einem
+   * Neustart der Datenbank), werden die Verbindungen neu aufgebaut und die Anfrage einmal
+   * wiederholt. Bei anderen Fehlern (z.B. fehlerhafte Anfrage oder keine freie Verbindung
+   * innerhalb des Timeouts) und wenn auch die Wiederholung fehlschlägt, werden leere,
+   * unvollständige Ergebnisse (siehe {@link QueryResults#isComplete()}) geliefert.
    */
-  private QueryResults sqlQuery(String query)
+  private QueryResults sqlQuery(String query, List<String> params)
   {
-    LOGGER.debug("sqlQuery(\"{}\")", query);
+    return sqlQuery(query, params, null);
+  }
 
-    List<OOoDataset> datasets = new ArrayList<>();
+  /**
+   * Wie {@link #sqlQuery(String, List)}, die Anfrage liefert aber nur die Spalten projection.
+   *
+   * @param projection
+   *          Die abgerufenen Spalten oder null, falls die Anfrage alle Spalten liefert.
+   */
+  private QueryResults sqlQuery(String query, List<String> params, List<String> projection)
+  {
+    LOGGER.debug("sqlQuery(\"{}\", {})", query, params);
+
+    for (int attempt = 1;; ++attempt)
+    {
+      OOoConnection conn = null;
+      boolean broken = false;
+      try
+      {
+        conn = borrowConnection();
+        return conn.executeQuery(query, params, projection);
+      }
+      catch (InterruptedException x)
+      {
+        Thread.currentThread().interrupt();
+        LOGGER.error("Fehler beim Absetzen der Anfrage", x);
+        return new QueryResultsList(new ArrayList<Dataset>(0), false);
+      }
+      catch (TimeoutException x)
+      {
+        LOGGER.error("Fehler beim Absetzen der Anfrage", x);
+        return new QueryResultsList(new ArrayList<Dataset>(0), false);
+      }
+      catch (Exception x)
+      {
+        /*
+         * Konnte keine neue Verbindung aufgebaut werden (conn == null), hilft eine Wiederholung
+         * nicht.
+         */
+        broken = conn != null && isConnectionFailure(conn, x);
+        if (attempt > 1 || !broken)
+        {
+          LOGGER.error("Fehler beim Absetzen der Anfrage", x);
+          return new QueryResultsList(new ArrayList<Dataset>(0), false);
+        }
+        LOGGER.debug("Verbindung unterbrochen, baue Verbindungen neu auf", x);
+        closeIdleConnections(0);
+      }
+      finally
+      {
+        if (conn != null)
+        {
+          releaseConnection(conn, broken);
+        }
+      }
+    }
+  }
 
-    XRowSet results = null;
-    XConnection conn = null;
+  /**
+   * Liefert true, falls x auf eine unterbrochene Verbindung conn hindeutet (SQLState der Klasse 08,
+   * Verbindung geschlossen oder verworfen) und nicht nur auf eine fehlerhafte Anfrage.
+   */
+  private static boolean isConnectionFailure(OOoConnection conn, Exception x)
+  {
+    if (x instanceof DisposedException)
+    {
+      return true;
+    }
+    if (x instanceof SQLException)
+    {
+      String state = ((SQLException) x).SQLState;
+      if (state != null && state.startsWith("08"))
+      {
+        return true;
+      }
+    }
     try
     {
+      return conn.connection.isClosed();
+    }
+    catch (SQLException | RuntimeException e)
+    {
+      LOGGER.trace("", e);
+      return true;
+    }
+  }
 
-      try
+  /**
+   * Liefert eine unbenutzte Verbindung zur Datenbank. Gibt es keine und sind bereits
+   * {@link #maxConnections} Verbindungen offen, wird gewartet, bis eine Verbindung frei wird.
+   *
+   * @throws TimeoutException
+   *           falls innerhalb von {@link DatasourceJoinerFactory#getDatasourceTimeout()} keine
+   *           Verbindung frei wird.
+   */
+  private OOoConnection borrowConnection()
+      throws com.sun.star.uno.Exception, InterruptedException, TimeoutException
+  {
+    synchronized (this)
+    {
+      long deadline = System.currentTimeMillis() + DatasourceJoinerFactory.getDatasourceTimeout();
+      while (idleConnections.isEmpty() && openConnections >= maxConnections)
       {
-        XDataSource ds =
-          UNO.XDataSource(UNO.dbContext.getRegisteredObject(oooDatasourceName));
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0)
+        {
+          throw new TimeoutException(
+              L.m("Keine freie Verbindung zur Datenquelle \"%1\"", datasourceName));
+        }
+        wait(remaining);
+      }
+      if (!idleConnections.isEmpty())
+      {
+        return idleConnections.pop();
+      }
+      ++openConnections;
+    }
+
+    try
+    {
+      XDataSource ds =
+        UNO.XDataSource(UNO.dbContext.getRegisteredObject(oooDatasourceName));
 
-        ds.setLoginTimeout((int) DatasourceJoinerFactory.getDatasourceTimeout());
-        conn = ds.getConnection(userName, password);
+      ds.setLoginTimeout((int) DatasourceJoinerFactory.getDatasourceTimeout());
+      return new OOoConnection(ds.getConnection(userName, password));
+    }
+    catch (com.sun.star.uno.Exception | RuntimeException x)
+    {
+      synchronized (this)
+      {
+        --openConnections;
+        notifyAll();
       }
-      catch (SQLException x)
+      throw x;
+    }
+  }
+
+  /**
+   * Gibt eine Verbindung nach der Benutzung zurück. Fehlerhafte Verbindungen werden geschlossen.
+   */
+  private synchronized void releaseConnection(OOoConnection conn, boolean broken)
+  {
+    if (broken || idleTimeout == 0)
+    {
+      conn.close();
+      --openConnections;
+    } else
+    {
+      conn.lastUsed = System.currentTimeMillis();
+      idleConnections.push(conn);
+      if (closeTask == null)
       {
-        LOGGER.error("Kann keine Verbindung zur Datenquelle herstellen", x);
+        closeTask = connectionCloser().schedule(() -> closeIdleConnections(idleTimeout),
+            idleTimeout, TimeUnit.SECONDS);
       }
+    }
+    notifyAll();
+  }
 
-      results = UNO.XRowSet(UnoComponent.createComponentWithContext(UnoComponent.CSS_SDB_ROW_SET));
+  /**
+   * Schließt alle unbenutzten Verbindungen, die mindestens timeout Sekunden nicht benutzt wurden.
+   * Sind danach noch unbenutzte Verbindungen offen, wird die nächste Prüfung geplant.
+   */
+  private synchronized void closeIdleConnections(long timeout)
+  {
+    if (closeTask != null)
+    {
+      closeTask.cancel(false);
+      closeTask = null;
+    }
 
-      if (results == null)
-        throw new NullPointerException(L.m("Konnte kein RowSet erzeugen"));
+    long now = System.currentTimeMillis();
+    while (!idleConnections.isEmpty()
+        && idleConnections.peekLast().lastUsed + timeout * 1000 <= now)
+    {
+      idleConnections.pollLast().close();
+      --openConnections;
+      LOGGER.debug("Verbindung der Datenquelle \"{}\" geschlossen", datasourceName);
+    }
 
-      UnoProperty.setProperty(results, UnoProperty.ACTIVE_CONNECTION, conn);
+    if (!idleConnections.isEmpty())
+    {
+      long delay = idleConnections.peekLast().lastUsed + idleTimeout * 1000 - now;
+      closeTask = connectionCloser().schedule(() -> closeIdleConnections(idleTimeout),
+          Math.max(delay, 0), TimeUnit.MILLISECONDS);
+    }
+    notifyAll();
+  }
 
-      /*
-       * EscapeProcessing == false bedeutet, dass OOo die Query nicht selbst anfassen
-       * darf, sondern direkt an die Datenbank weiterleiten soll. Wird dies verwendet
-       * ist das Ergebnis (derzeit) immer read-only, da OOo keine Updates von
-       * Statements durchführen kann, die es nicht geparst hat. Siehe Kommentar zu
-       * http://qa.openoffice.org/issues/show_bug.cgi?id=78522 Entspricht dem Button
-       * SQL mit grünem Haken (SQL-Kommando direkt ausführen) im Base-Abfrageentwurf.
-       */
-      UnoProperty.setProperty(results, UnoProperty.ESCAPE_PROCESSING, Boolean.FALSE);
+  private static void closeQuietly(Object closeable)
+  {
+    try
+    {
+      XCloseable c = UnoRuntime.queryInterface(XCloseable.class, closeable);
+      if (c != null)
+      {
+        c.close();
+      }
+    }
+    catch (Exception e)
+    {
+      LOGGER.trace("", e);
+    }
+  }
 
-      UnoProperty.setProperty(results, UnoProperty.COMMAND_TYPE, CommandType.COMMAND);
-      UnoProperty.setProperty(results, UnoProperty.COMMAND, query);
+  private static synchronized ScheduledExecutorService connectionCloser()
+  {
+    if (connectionCloser == null)
+    {
+      connectionCloser = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "OOo-Datasource-Closer");
+        t.setDaemon(true);
+        return t;
+      });
+    }
+    return connectionCloser;
+  }
 
-      results.execute();
+  /**
+   * Eine offene Verbindung zur Datenbank mit ihren vorbereiteten Statements.
+   */
+  private class OOoConnection
+  {
+    private final XConnection connection;
 
-      Map<String, Integer> mapColumnNameToIndex = getColumnMapping(results);
-      XRow row = UNO.XRow(results);
+    /**
+     * Die vorbereiteten Statements, gespeichert unter ihrem SQL-Befehl. Der SQL-Befehl hängt nur
+     * von der Form der Anfrage ab (Spalten und Art der Bedingungen), die Suchwerte werden als
+     * Parameter übergeben. Das am längsten unbenutzte Statement wird geschlossen, wenn mehr als
+     * {@link #STATEMENT_CACHE_SIZE} Statements vorbereitet sind.
+     */
+    private final Map<String, XPreparedStatement> statements =
+      new LinkedHashMap<String, XPreparedStatement>(16, 0.75f, true)
+    {
+      private static final long serialVersionUID = 1L;
 
-      while (results.next())
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, XPreparedStatement> eldest)
       {
-        Map<String, String> data = new HashMap<>();
-        Iterator<Map.Entry<String, Integer>> iter =
-          mapColumnNameToIndex.entrySet().iterator();
-        while (iter.hasNext())
+        if (size() > STATEMENT_CACHE_SIZE)
         {
-          Map.Entry<String, Integer> entry = iter.next();
-          String column = entry.getKey();
-          int idx = entry.getValue().intValue();
-          String value = null;
-          if (idx > 0) {
-            value = row.getString(idx);
-          }
-          data.put(column, value);
+          closeQuietly(eldest.getValue());
+          return true;
         }
-        datasets.add(new OOoDataset(data));
+        return false;
       }
+    };
 
-    }
-    catch (Exception x)
+    /**
+     * Zeitpunkt der letzten Benutzung.
+     */
+    private long lastUsed;
+
+    OOoConnection(XConnection connection)
     {
-      LOGGER.error("Fehler beim Absetzen der Anfrage", x);
+      this.connection = connection;
     }
-    finally
+
+    QueryResults executeQuery(String query, List<String> params, List<String> projection)
+        throws com.sun.star.uno.Exception
     {
-      if (results != null) {
-        UNO.XComponent(results).dispose();
+      XPreparedStatement statement = getStatement(query);
+      XParameters parameters = UnoRuntime.queryInterface(XParameters.class, statement);
+      for (int i = 0; i < params.size(); ++i)
+      {
+        parameters.setString(i + 1, params.get(i));
       }
-      if (conn != null) {
-        try
-        {
-          conn.close();
-        }
-        catch (Exception e)
+
+      List<OOoDataset> datasets = new ArrayList<>();
+      XResultSet results = statement.executeQuery();
+      try
+      {
+        DatasetSchema columns =
+            projection == null ? datasetSchema : new DatasetSchema(projection);
+        int[] indexes = getColumnIndexes(results, columns.getColumns());
+        XRow row = UNO.XRow(results);
+
+        while (results.next())
         {
-          LOGGER.trace("", e);
+          String[] values = new String[indexes.length];
+          for (int i = 0; i < indexes.length; ++i)
+          {
+            if (indexes[i] > 0) {
+              values[i] = row.getString(indexes[i]);
+            }
+          }
+          datasets.add(new OOoDataset(new ArrayDataset(columns, createKey(columns, values), values)));
         }
       }
+      finally
+      {
+        closeQuietly(results);
+      }
+
+      return new QueryResultsList(datasets);
     }
 
-    return new QueryResultsList(datasets);
+    /**
+     * Liefert das vorbereitete Statement für query.
+     *
+     * Die Statements werden vom Treiber der Datenbank vorbereitet, OOo parst sie nicht selbst.
+     * Das entspricht dem Button SQL mit grünem Haken (SQL-Kommando direkt ausführen) im
+     * Base-Abfrageentwurf.
+     */
+    private XPreparedStatement getStatement(String query) throws com.sun.star.uno.Exception
+    {
+      XPreparedStatement statement = statements.get(query);
+      if (statement == null)
+      {
+        statement = connection.prepareStatement(query);
+        statements.put(query, statement);
+      }
+      return statement;
+    }
 
+    void close()
+    {
+      statements.values().forEach(OOoDatasource::closeQuietly);
+      statements.clear();
+      closeQuietly(connection);
+    }
   }
 
   /**
-   * Liefert eine Abbildung der Spaltennamen aus {@link #schema} auf Integer-Indizes,
-   * die die Spaltennummern für XRow(results)::getString() sind. Falls eine Spalte
+   * Liefert für jede Spalte aus columns an der selben Position den Integer-Index,
+   * der die Spaltennummer für XRow(results)::getString() ist. Falls eine Spalte
    * nicht existiert, ist ihr index <= 0.
    */
-  private Map<String, Integer> getColumnMapping(XResultSet results)
+  private int[] getColumnIndexes(XResultSet results, List<String> columns)
   {
-    Map<String, Integer> mapColumnNameToIndex = new HashMap<>();
+    int[] indexes = new int[columns.size()];
     XColumnLocate loc = UNO.XColumnLocate(results);
-    Iterator<String> iter = getSchema().iterator();
-    while (iter.hasNext())
+    for (int i = 0; i < indexes.length; ++i)
     {
-      String column = iter.next();
       int idx = -1;
       try
       {
-        idx = loc.findColumn(column);
+        idx = loc.findColumn(columns.get(i));
       }
       catch (SQLException x)
       {
         LOGGER.trace("", x);
       }
-      mapColumnNameToIndex.put(column, Integer.valueOf(idx));
+      indexes[i] = idx;
     }
-    return mapColumnNameToIndex;
+    return indexes;
+  }
+
+  /**
+   * Setzt aus den Werten der Schlüsselspalten den Schlüssel zusammen.
+   *
+   * @param columns
+   *          die Spalten der Werte
+   * @param values
+   *          die Werte eines Datensatzes
+   */
+  private String createKey(DatasetSchema columns, String[] values)
+  {
+    StringBuilder buffy = new StringBuilder();
+    for (String keyColumn : keyColumns)
+    {
+      int position = columns.indexOf(keyColumn);
+      String str = position < 0 ? null : values[position];
+      if (str != null)
+      {
+        buffy.append(encode(keyColumn));
+        buffy.append('#');
+        buffy.append(encode(str));
+        buffy.append('#');
+      }
+    }
+    return buffy.toString();
+  }
+
+  private static String encode(String str)
+  {
+    return str.replaceAll("%", "%%").replace("#", "%r");
   }
 
   /**
@@ -641,18 +1234,6 @@ public class OOoDatasource implements Datasource
     }
   }
 
-  /**
-   * Liefert str zurück, als String-Literal vorbereitet für das Einfügen in
-   * SQL-Statements.
-   *
-   * @param str
-   *          beginnt und endet immer mit einem Apostroph.
-   */
-  private static String sqlLiteral(String str)
-  {
-    return "'" + str.replaceAll("'", "''") + "'";
-  }
-
   /**
    * Liefert str zurück, als Identifier-Name vorbereitet für das Einfügen in
    * SQL-Statements.
@@ -688,58 +1269,54 @@ public class OOoDatasource implements Datasource
 
   private class OOoDataset implements Dataset
   {
-    private Map<String, String> data;
-
-    private String key;
+    /**
+     * Die Werte des Datensatzes. Wurden bei der Suche nicht alle Spalten abgerufen, werden die
+     * übrigen beim ersten Zugriff nachgeladen.
+     */
+    private volatile ArrayDataset data;
 
-    public OOoDataset(Map<String, String> data)
+    public OOoDataset(ArrayDataset data)
     {
       this.data = data;
-      initKey(keyColumns);
+    }
+
+    @Override
+    public String get(String columnName) throws ColumnNotFoundException
+    {
+      if (!datasetSchema.contains(columnName))
+        throw new ColumnNotFoundException(L.m("Spalte %1 existiert nicht!",
+          columnName));
+      if (!data.getSchema().contains(columnName))
+        load();
+      ArrayDataset current = data;
+      return current.getSchema().contains(columnName) ? current.get(columnName) : null;
     }
 
     /**
-     * Setzt aus den Werten der Schlüsselspalten den Schlüssel zusammen.
-     *
-     * @param keyCols
-     *          die Namen der Schlüsselspalten
+     * Lädt alle Spalten des Datensatzes über seinen Schlüssel nach. Gibt es mehrere Datensätze
+     * mit dem Schlüssel, wird der verwendet, der in den bereits abgerufenen Spalten
+     * übereinstimmt. Schlägt das Nachladen fehl, wird es beim nächsten Zugriff wiederholt.
      */
-    private void initKey(String[] keyCols)
+    private synchronized void load()
     {
-      StringBuilder buffy = new StringBuilder();
-      for (int i = 0; i < keyCols.length; ++i)
+      if (data.getSchema() == datasetSchema)
+        return;
+      for (Dataset ds : getDatasetsByKey(List.of(getKey())))
       {
-        String str = data.get(keyCols[i]);
-        if (str != null)
+        ArrayDataset fullData = ((OOoDataset) ds).data;
+        if (data.agreesWith(fullData))
         {
-          buffy.append(encode(keyCols[i]));
-          buffy.append('#');
-          buffy.append(encode(str));
-          buffy.append('#');
+          data = fullData;
+          return;
         }
       }
-
-      key = buffy.toString();
-    }
-
-    @Override
-    public String get(String columnName) throws ColumnNotFoundException
-    {
-      if (!schema.contains(columnName))
-        throw new ColumnNotFoundException(L.m("Spalte %1 existiert nicht!",
-          columnName));
-      return data.get(columnName);
+      LOGGER.debug("Datensatz mit Schlüssel \"{}\" konnte nicht nachgeladen werden", getKey());
     }
 
     @Override
     public String getKey()
     {
-      return key;
-    }
-
-    private String encode(String str)
-    {
-      return str.replaceAll("%", "%%").replace("#", "%r");
+      return data.getKey();
     }
   }
 
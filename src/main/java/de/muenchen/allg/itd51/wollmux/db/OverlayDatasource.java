@@ -366,7 +366,8 @@ public class OverlayDatasource implements Datasource
           finalResults.add(ds);
         }
 
-      return new QueryResultsList(finalResults);
+      return new QueryResultsList(finalResults,
+          results1.isComplete() && results2.isComplete() && results3.isComplete());
     }
   }
 
@@ -428,24 +429,15 @@ public class OverlayDatasource implements Datasource
   {
     List<Dataset> resultsWithOverlayments = new ArrayList<>(results.size());
 
+    BatchJoin join = new BatchJoin(source2, match1, match2);
+    join.fetch(results);
+
     Iterator<Dataset> iter = results.iterator();
     while (iter.hasNext())
     {
       Dataset ds = iter.next();
 
-      List<QueryPart> query = new ArrayList<>(match1.length);
-      for (int i = 0; i < match1.length; ++i)
-      {
-        try
-        {
-          query.add(new QueryPart(match2[i], ds.get(match1[i])));
-        } catch (ColumnNotFoundException x)
-        {
-          LOGGER.error("", x);
-        }
-      }
-
-      QueryResults appendix = source2.find(query);
+      QueryResults appendix = join.find(ds);
 
       Dataset newDataset;
 
@@ -471,28 +463,19 @@ public class OverlayDatasource implements Datasource
       }
     }
 
-    return new QueryResultsList(resultsWithOverlayments);
+    return new QueryResultsList(resultsWithOverlayments, results.isComplete());
   }
 
   private QueryResults overlayColumnsReversed(QueryResults results, Predicate<Dataset> filter)
   {
     List<ConcatDataset> resultsWithOverlayments = new ArrayList<>(results.size());
 
+    BatchJoin join = new BatchJoin(source1, match2, match1);
+    join.fetch(results);
+
     for (Dataset ds : results)
     {
-      List<QueryPart> query = new ArrayList<>(match1.length);
-      for (int i = 0; i < match1.length; ++i)
-      {
-        try
-        {
-          query.add(new QueryPart(match1[i], ds.get(match2[i])));
-        } catch (ColumnNotFoundException x)
-        {
-          LOGGER.error("", x);
-        }
-      }
-
-      QueryResults prependix = source1.find(query);
+      QueryResults prependix = join.find(ds);
 
       for (Dataset prepend : prependix)
       {
@@ -504,7 +487,7 @@ public class OverlayDatasource implements Datasource
       }
     }
 
-    return new QueryResultsList(resultsWithOverlayments);
+    return new QueryResultsList(resultsWithOverlayments, results.isComplete());
   }
 
   private class ConcatDataset implements Dataset
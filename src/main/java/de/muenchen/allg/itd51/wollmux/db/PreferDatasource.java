@@ -33,6 +33,7 @@ import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
 
 import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
 import de.muenchen.allg.itd51.wollmux.config.ConfigurationErrorException;
@@ -149,8 +150,19 @@ public class PreferDatasource implements Datasource
   @Override
   public QueryResults getDatasetsByKey(Collection<String> keys)
   {
-    return new QueryResultsOverride(source2.getDatasetsByKey(keys), source1.getDatasetsByKey(keys),
-        source1);
+    return DatasourceExecutor
+        .await(prefer(source2.getDatasetsByKeyAsync(keys), source1.getDatasetsByKeyAsync(keys),
+            false));
+  }
+
+  /**
+   * Fragt beide Datenquellen gleichzeitig ab. Erst danach wird nach verdeckten Datensätzen gesucht.
+   * Eine Datenquelle, die nicht rechtzeitig antwortet, liefert keine Ergebnisse.
+   */
+  @Override
+  public CompletableFuture<QueryResults> getDatasetsByKeyAsync(Collection<String> keys)
+  {
+    return prefer(source2.getDatasetsByKeyAsync(keys), source1.getDatasetsByKeyAsync(keys), true);
   }
 
   @Override
@@ -162,7 +174,18 @@ public class PreferDatasource implements Datasource
   @Override
   public QueryResults find(List<QueryPart> query)
   {
-    return new QueryResultsOverride(source2.find(query), source1.find(query), source1);
+    return DatasourceExecutor.await(prefer(source2.findAsync(query), source1.findAsync(query),
+        false));
+  }
+
+  /**
+   * Fragt beide Datenquellen gleichzeitig ab. Erst danach wird nach verdeckten Datensätzen gesucht.
+   * Eine Datenquelle, die nicht rechtzeitig antwortet, liefert keine Ergebnisse.
+   */
+  @Override
+  public CompletableFuture<QueryResults> findAsync(List<QueryPart> query)
+  {
+    return prefer(source2.findAsync(query), source1.findAsync(query), true);
   }
 
   @Override
@@ -171,6 +194,18 @@ public class PreferDatasource implements Datasource
     return name;
   }
 
+  /**
+   * Verdeckt die Ergebnisse von source2 durch die von source1, sobald beide vorliegen. Falls
+   * dropOnTimeout false ist, wird auf die vollständigen Ergebnisse beider Datenquellen gewartet.
+   */
+  private CompletableFuture<QueryResults> prefer(CompletableFuture<QueryResults> results2,
+      CompletableFuture<QueryResults> results1, boolean dropOnTimeout)
+  {
+    return DatasourceExecutor.withTimeout(results2, source2Name, dropOnTimeout).thenCombineAsync(
+        DatasourceExecutor.withTimeout(results1, source1Name, dropOnTimeout),
+        (r2, r1) -> new QueryResultsOverride(r2, r1, source1), DatasourceExecutor.get());
+  }
+
   private static class QueryResultsOverride implements QueryResults
   {
     private int size;
@@ -181,6 +216,8 @@ public class PreferDatasource implements Datasource
 
     private QueryResults results;
 
+    private boolean complete;
+
     public QueryResultsOverride(QueryResults results, QueryResults overrideResults,
         Datasource override)
     {
@@ -212,6 +249,8 @@ public class PreferDatasource implements Datasource
           override.getDatasetsByKey(keyToCount.keySet());
 
       size += overrideResults.size();
+      complete = results.isComplete() && overrideResults.isComplete()
+          && blacklistResults.isComplete();
 
       QueryResults[] oResults = new QueryResults[] {
         overrideResults, blacklistResults };
@@ -253,6 +292,12 @@ public class PreferDatasource implements Datasource
       return size == 0;
     }
 
+    @Override
+    public boolean isComplete()
+    {
+      return complete;
+    }
+
     private class MyIterator implements Iterator<Dataset>
     {
       private Iterator<Dataset> iter;
@@ -22,6 +22,7 @@
  */
 package de.muenchen.allg.itd51.wollmux.db;
 
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Vector;
@@ -41,6 +42,11 @@ public class Query implements Iterable<QueryPart>
    */
   private String dbName;
   
+  /**
+   * Die Spalten, die von den Ergebnissen benötigt werden, oder null, falls alle benötigt werden.
+   */
+  private Collection<String> columns;
+  
   /**
    * Erzeugt eine neue Query.
    * @param dbName der Name die Datenquelle auf der die Suche erfolgen soll.
@@ -53,11 +59,31 @@ public class Query implements Iterable<QueryPart>
     this.dbName = dbName;
   }
   
+  /**
+   * Erzeugt eine neue Query, deren Ergebnisse nur die Spalten columns liefern müssen (siehe
+   * {@link Datasource#find(List, Collection)}).
+   * @param dbName der Name die Datenquelle auf der die Suche erfolgen soll.
+   * @param listOfQueryParts Liste von QueryParts, die die eigentliche Query 
+   *        beschreiben. ACHTUNG! Wird als Referenz eingebunden.
+   * @param columns die benötigten Spalten oder null, falls alle benötigt werden.
+   */
+  public Query(String dbName, List<QueryPart> listOfQueryParts, Collection<String> columns)
+  {
+    this(dbName, listOfQueryParts);
+    this.columns = columns;
+  }
+  
   /**
    * Liefert den Namen der Datenquelle auf der die Suche erfolgen soll.
    */
   public String getDatasourceName() {return dbName;}
   
+  /**
+   * Liefert die Spalten, die von den Ergebnissen benötigt werden, oder null, falls alle
+   * benötigt werden.
+   */
+  public Collection<String> getColumns() {return columns;}
+  
   /**
    * Iteriert über die QueryParts, die diese Suchanfrage ausmachen.
    */
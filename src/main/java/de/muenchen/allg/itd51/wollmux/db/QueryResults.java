@@ -36,4 +36,14 @@ public interface QueryResults extends Iterable<Dataset>
    * Liefert true, falls es keine Ergebnisse gibt.
    */
   public boolean isEmpty();
+
+  /**
+   * Liefert false, falls die Anfrage nicht vollständig ausgeführt werden konnte (z.B. Fehler beim
+   * Zugriff auf die Datenbank oder Zeitüberschreitung) und daher Ergebnisse fehlen können. Solche
+   * Ergebnisse dürfen nicht zwischengespeichert werden (siehe {@link CachingDatasource}).
+   */
+  public default boolean isComplete()
+  {
+    return true;
+  }
 }
@@ -37,6 +37,11 @@ public class QueryResultsList implements QueryResults
    * Die Liste der Datasets.
    */
   private List<? extends Dataset> data;
+
+  /**
+   * Siehe {@link #isComplete()}.
+   */
+  private boolean complete = true;
   
   /**
    * Erzeugt eine neue QueryResultsList, die die Elemente enthält 
@@ -62,6 +67,16 @@ public class QueryResultsList implements QueryResults
   {
     data = datasets;
   }
+
+  /**
+   * Wie {@link #QueryResultsList(List)}. Ist complete false, sind die Ergebnisse unvollständig
+   * (siehe {@link QueryResults#isComplete()}).
+   */
+  public QueryResultsList(List<? extends Dataset> datasets, boolean complete)
+  {
+    data = datasets;
+    this.complete = complete;
+  }
   
   @Override
   public int size() { return data.size();}
@@ -80,4 +95,7 @@ public class QueryResultsList implements QueryResults
   
   @Override
   public boolean isEmpty() { return data.isEmpty(); }
+
+  @Override
+  public boolean isComplete() { return complete; }
 }
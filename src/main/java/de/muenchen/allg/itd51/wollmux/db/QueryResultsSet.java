@@ -23,9 +23,12 @@
 package de.muenchen.allg.itd51.wollmux.db;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Stellt die Vereinigung mehrerer QueryResults dar.
@@ -40,12 +43,28 @@ public class QueryResultsSet implements QueryResults
    */
   private final List<Dataset> results = new ArrayList<>();
   /**
-   * Anhand dieses Comparators wird die Gleichheit zweiter Datasets erkannt.
+   * Anhand dieses Comparators wird die Gleichheit zweiter Datasets erkannt. Ist er null, werden
+   * Datasets anhand von Klasse und Schlüssel unterschieden.
    */
   private final Comparator<Dataset> comparator;
 
   /**
-   * Erstellt eine leere Menge.
+   * Klasse und Schlüssel aller enthaltenen Datasets, falls kein Comparator verwendet wird.
+   */
+  private final Set<List<Object>> keys = new HashSet<>();
+
+  /**
+   * Erstellt eine leere Menge, die Datensätze anhand ihrer Klasse und ihres Schlüssels
+   * unterscheidet. Das Hinzufügen benötigt unabhängig von der Größe der Menge konstante Zeit.
+   */
+  public QueryResultsSet()
+  {
+    this.comparator = null;
+  }
+
+  /**
+   * Erstellt eine leere Menge. Beim Hinzufügen wird jeder Datensatz mit allen enthaltenen
+   * verglichen.
    * @param comparator Der Comparator, der beim Hinzufügen für Vergleiche verwendet wird.
    */
   public QueryResultsSet(Comparator<Dataset> comparator)
@@ -67,9 +86,20 @@ public class QueryResultsSet implements QueryResults
   /**
    * Fügt einen neuen Datensatz hinzu, solange er noch nicht enthalten ist.
    * @param dataset Der neue Datensatz.
+   * @return true, falls der Datensatz hinzugefügt wurde, false, falls er schon enthalten war.
    */
-  public void add(Dataset dataset)
+  public boolean add(Dataset dataset)
   {
+    if (comparator == null)
+    {
+      if (keys.add(Arrays.asList(dataset.getClass(), dataset.getKey())))
+      {
+        results.add(dataset);
+        return true;
+      }
+      return false;
+    }
+
     boolean present = false;
     for (Dataset ds : results)
     {
@@ -83,6 +113,7 @@ public class QueryResultsSet implements QueryResults
     {
       results.add(dataset);
     }
+    return !present;
   }
 
   /**
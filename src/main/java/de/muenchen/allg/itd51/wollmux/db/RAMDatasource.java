@@ -23,9 +23,13 @@
 package de.muenchen.allg.itd51.wollmux.db;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.Iterator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
 import java.util.Vector;
 import java.util.function.Predicate;
 
@@ -49,6 +53,16 @@ public class RAMDatasource implements Datasource
    */
   private String name;
 
+  /**
+   * Bildet die Schlüssel auf die Positionen der Datensätze in {@link #data} ab.
+   */
+  private Map<String, int[]> keyIndex;
+
+  /**
+   * Die Indizes der Spalten, für die ein Index angelegt wurde.
+   */
+  private Map<String, ColumnIndex> indexes;
+
   /**
    * Erzeugt eine neue RAMDatasource mit Namen name. data und schema werden direkt als Referenz
    * eingebunden, nicht kopiert.
@@ -65,6 +79,25 @@ public class RAMDatasource implements Datasource
     init(name, schema, data);
   }
 
+  /**
+   * Erzeugt eine neue RAMDatasource mit Namen name, die für die Spalten aus indexes einen Index
+   * anlegt. data und schema werden direkt als Referenz eingebunden, nicht kopiert.
+   * 
+   * @param name
+   *          der Name der Datenquelle
+   * @param schema
+   *          das Schema der Datenquelle
+   * @param data
+   *          die Datensätze der Datenquelle
+   * @param indexes
+   *          bildet Spaltennamen auf die Art des Index für diese Spalte ab.
+   */
+  public RAMDatasource(String name, List<String> schema, List<Dataset> data,
+      Map<String, ColumnIndex.Type> indexes)
+  {
+    init(name, schema, data, indexes);
+  }
+
   /**
    * Erzeugt eine uninitialisierte RAMDatasource. Eine abgeleitete Klasse, die diesen Konstruktor
    * verwendet sollte init() aufrufen, um die nötigen Initialisierungen zu erledigen.
@@ -79,10 +112,34 @@ public class RAMDatasource implements Datasource
    * Argumente verwenden.
    */
   protected void init(String name, List<String> schema, List<Dataset> data)
+  {
+    init(name, schema, data, Map.of());
+  }
+
+  /**
+   * Wie {@link #init(String, List, List)}, legt aber zusätzlich für die Spalten aus indexes einen
+   * Index an. Listen ohne wahlfreien Zugriff werden dafür in eine {@link ArrayList} kopiert.
+   */
+  protected void init(String name, List<String> schema, List<Dataset> data,
+      Map<String, ColumnIndex.Type> indexes)
   {
     this.schema = schema;
-    this.data = data;
+    this.data = data instanceof RandomAccess ? data : new ArrayList<>(data);
     this.name = name;
+
+    keyIndex = new HashMap<>();
+    for (int row = 0; row < this.data.size(); row++)
+    {
+      keyIndex.merge(this.data.get(row).getKey(), new int[] { row }, (rows, newRow) -> {
+        int[] merged = Arrays.copyOf(rows, rows.length + 1);
+        merged[rows.length] = newRow[0];
+        return merged;
+      });
+    }
+
+    this.indexes = new HashMap<>();
+    indexes.forEach((column, type) -> this.indexes.put(column,
+        ColumnIndex.create(type, column, this.data)));
   }
 
   @Override
@@ -94,17 +151,21 @@ public class RAMDatasource implements Datasource
   @Override
   public QueryResults getDatasetsByKey(Collection<String> keys)
   {
-    List<Dataset> res = new ArrayList<>();
-    Iterator<Dataset> iter = data.iterator();
-    while (iter.hasNext())
+    BitSet rows = new BitSet(data.size());
+    for (String key : keys)
     {
-      Dataset ds = iter.next();
-      if (keys.contains(ds.getKey()))
+      int[] found = keyIndex.get(key);
+      if (found != null)
       {
-        res.add(ds);
+        for (int row : found)
+        {
+          rows.set(row);
+        }
       }
     }
 
+    List<Dataset> res = new ArrayList<>(rows.cardinality());
+    rows.stream().forEach(row -> res.add(data.get(row)));
     return new QueryResultsList(res);
   }
 
@@ -125,16 +186,53 @@ public class RAMDatasource implements Datasource
 
     List<Dataset> results = new ArrayList<>();
 
-    data.forEach(ds -> {
-      if (pred.test(ds))
+    int[] candidates = findCandidates(query);
+    if (candidates == null)
+    {
+      data.forEach(ds -> {
+        if (pred.test(ds))
+        {
+          results.add(ds);
+        }
+      });
+    } else
+    {
+      for (int row : candidates)
       {
-        results.add(ds);
+        Dataset ds = data.get(row);
+        if (pred.test(ds))
+        {
+          results.add(ds);
+        }
       }
-    });
+    }
 
     return new QueryResultsList(results);
   }
 
+  /**
+   * Bestimmt mit Hilfe der Indizes die Datensätze, die für die Suche in Frage kommen.
+   * 
+   * @param query
+   *          die Suchanfrage
+   * @return die aufsteigend sortierten Positionen der Datensätze des kleinsten passenden Index oder
+   *         null, falls kein Index die Suche einschränken kann.
+   */
+  private int[] findCandidates(List<QueryPart> query)
+  {
+    int[] candidates = null;
+    for (QueryPart part : query)
+    {
+      ColumnIndex index = indexes.get(part.getColumnName());
+      int[] rows = index == null ? null : index.lookup(part);
+      if (rows != null && (candidates == null || rows.length < candidates.length))
+      {
+        candidates = rows;
+      }
+    }
+    return candidates;
+  }
+
   @Override
   public QueryResults getContents()
   {
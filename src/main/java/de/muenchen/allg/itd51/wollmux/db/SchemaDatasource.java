@@ -242,7 +242,7 @@ public class SchemaDatasource implements Datasource
     while (iter.hasNext())
       wrappedRes.add(new RenameDataset(iter.next()));
 
-    return new QueryResultsList(wrappedRes);
+    return new QueryResultsList(wrappedRes, res.isComplete());
   }
 
   private class RenameDataset implements Dataset
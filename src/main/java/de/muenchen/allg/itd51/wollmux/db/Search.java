@@ -24,15 +24,28 @@ package de.muenchen.allg.itd51.wollmux.db;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Stream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
+import de.muenchen.allg.itd51.wollmux.util.L;
 
 /**
  * Diese Klasse stellt Methoden zur Verfügung um in Datenquellen Suchen durchzuführen.
@@ -41,6 +54,17 @@ public class Search
 {
   private static final Logger LOGGER = LoggerFactory.getLogger(Search.class);
 
+  /**
+   * Maximale Anzahl an Suchanfragen einer Suchstrategie, die gleichzeitig ausgeführt werden.
+   */
+  private static final int SEARCH_THREADS = 4;
+
+  /**
+   * Thread-Pool zum Ausführen der Suchanfragen. Wird erst bei der ersten Suche mit mehreren
+   * Anfragen erzeugt.
+   */
+  private static ExecutorService searchExecutor;
+
   private Search()
   {
     // hide implicit public constructor
@@ -50,7 +74,10 @@ public class Search
    * Führt die übergebene Suchanfrage gemäß der übergebenen Suchstrategie aus und liefert die
    * Ergebnisse in einem {@link QueryResults}-Objekt zurück. Falls einer der übergebenen Parameter
    * <code>null</code> ist oder falls der queryString leer ist, wird <code>null</code>
-   * zurückgeliefert.
+   * zurückgeliefert. Erzeugt die Suchstrategie mehrere Anfragen, werden diese gleichzeitig
+   * ausgeführt. Anfragen, die nicht innerhalb von
+   * {@link DatasourceJoinerFactory#getDatasourceTimeout()} beantwortet werden, werden abgebrochen
+   * und liefern keine Ergebnisse.
    * 
    * @param queryString
    *          die Suchanfrage
@@ -77,22 +104,213 @@ public class Search
 
     List<Query> queries = parseQuery(searchStrategy, queryString);
 
-    QueryResults results = null;
-    List<QueryResults> listOfQueryResultsList = new ArrayList<>();
+    List<QueryResults> listOfQueryResultsList;
+    if (queries.size() > 1)
+    {
+      listOfQueryResultsList = searchParallel(queries,
+          query -> search(query, dj, useDjMainDatasource));
+    } else
+    {
+      listOfQueryResultsList = new ArrayList<>();
+      for (Query query : queries)
+      {
+        listOfQueryResultsList.add(search(query, dj, useDjMainDatasource));
+      }
+    }
+    return mergeListOfQueryResultsList(listOfQueryResultsList);
+  }
 
-    for (Query query : queries)
+  /**
+   * Wie {@link #search(String, SearchStrategy, DatasourceJoiner, boolean)} in den Datenquellen der
+   * Suchstrategie, die Ergebnisse werden aber in Teilen an pageConsumer übergeben, sobald eine
+   * Datenquelle sie liefert (siehe {@link Datasource#find(List, Consumer)}). Mehrfache Ergebnisse
+   * werden herausgefiltert. pageConsumer wird nie gleichzeitig, aber evtl. aus verschiedenen
+   * Threads aufgerufen. Die Methode kehrt zurück, wenn alle Anfragen beantwortet oder abgebrochen
+   * sind. Danach wird pageConsumer nicht mehr aufgerufen.
+   * 
+   * @param queryString
+   *          die Suchanfrage
+   * @param searchStrategy
+   *          die zu verwendende Suchstrategie
+   * @param dj
+   *          die virtuelle Datenbank (siehe {@link DatasourceJoiner}), in der gesucht werden soll
+   * @param pageConsumer
+   *          erhält die neuen Ergebnisse
+   * @throws IllegalArgumentException
+   *           falls eine Datenquelle, in der gesucht werden soll, nicht existiert
+   */
+  public static void search(String queryString, SearchStrategy searchStrategy,
+      DatasourceJoiner dj, Consumer<QueryResults> pageConsumer)
+  {
+    search(queryString, searchStrategy, dj, null, pageConsumer);
+  }
+
+  /**
+   * Wie {@link #search(String, SearchStrategy, DatasourceJoiner, Consumer)}, die Datenquellen müssen
+   * aber nur die Spalten columns abrufen (siehe {@link Datasource#find(List, Collection)}). Die
+   * übrigen Spalten werden erst nachgeladen, wenn auf sie zugegriffen wird.
+   * 
+   * @param queryString
+   *          die Suchanfrage
+   * @param searchStrategy
+   *          die zu verwendende Suchstrategie
+   * @param dj
+   *          die virtuelle Datenbank (siehe {@link DatasourceJoiner}), in der gesucht werden soll
+   * @param columns
+   *          die Spalten, die von den Ergebnissen benötigt werden, oder null für alle Spalten
+   * @param pageConsumer
+   *          erhält die neuen Ergebnisse
+   * @throws IllegalArgumentException
+   *           falls eine Datenquelle, in der gesucht werden soll, nicht existiert
+   */
+  public static void search(String queryString, SearchStrategy searchStrategy,
+      DatasourceJoiner dj, Collection<String> columns, Consumer<QueryResults> pageConsumer)
+  {
+    if (queryString == null || searchStrategy == null || dj == null)
+    {
+      return;
+    }
+
+    List<Query> queries = new ArrayList<>();
+    for (Query query : parseQuery(searchStrategy, queryString))
     {
+      queries.add(new Query(query.getDatasourceName(), query.getQueryParts(), columns));
+    }
+
+    QueryResultsSet delivered = new QueryResultsSet();
+    AtomicBoolean finished = new AtomicBoolean();
+    Consumer<QueryResults> newResults = page -> {
+      synchronized (delivered)
+      {
+        if (finished.get())
+        {
+          return;
+        }
+        List<Dataset> fresh = new ArrayList<>();
+        for (Dataset ds : page)
+        {
+          if (delivered.add(ds))
+          {
+            fresh.add(ds);
+          }
+        }
+        if (!fresh.isEmpty())
+        {
+          pageConsumer.accept(new QueryResultsList(fresh));
+        }
+      }
+    };
+    Function<Query, QueryResults> search = query -> {
       if (query.numberOfQueryParts() == 0)
       {
-        results = (useDjMainDatasource ? dj.getContentsOfMainDatasource()
-            : dj.getContentsOf(query.getDatasourceName()));
+        newResults.accept(dj.getContentsOf(query.getDatasourceName()));
       } else
       {
-        results = (useDjMainDatasource ? dj.find(query.getQueryParts()) : dj.find(query));
+        dj.find(query, newResults);
+      }
+      return new QueryResultsList(new ArrayList<Dataset>(0));
+    };
+
+    try
+    {
+      if (queries.size() > 1)
+      {
+        searchParallel(queries, search);
+      } else
+      {
+        queries.forEach(search::apply);
+      }
+    } finally
+    {
+      synchronized (delivered)
+      {
+        finished.set(true);
       }
-      listOfQueryResultsList.add(results);
     }
-    return mergeListOfQueryResultsList(listOfQueryResultsList);
+  }
+
+  /**
+   * Führt eine einzelne Anfrage einer Suchstrategie aus.
+   */
+  private static QueryResults search(Query query, DatasourceJoiner dj,
+      boolean useDjMainDatasource)
+  {
+    if (query.numberOfQueryParts() == 0)
+    {
+      return (useDjMainDatasource ? dj.getContentsOfMainDatasource()
+          : dj.getContentsOf(query.getDatasourceName()));
+    } else
+    {
+      return (useDjMainDatasource ? dj.find(query.getQueryParts()) : dj.find(query));
+    }
+  }
+
+  /**
+   * Führt die Anfragen gleichzeitig aus.
+   * 
+   * @return die Ergebnisse in der Reihenfolge der Anfragen. Für abgebrochene Anfragen wird eine
+   *         leere Ergebnisliste geliefert.
+   */
+  private static List<QueryResults> searchParallel(List<Query> queries,
+      Function<Query, QueryResults> search)
+  {
+    List<Future<QueryResults>> futures = new ArrayList<>(queries.size());
+    for (Query query : queries)
+    {
+      futures.add(searchExecutor().submit(() -> search.apply(query)));
+    }
+
+    long deadline = System.nanoTime()
+        + TimeUnit.MILLISECONDS.toNanos(DatasourceJoinerFactory.getDatasourceTimeout());
+
+    List<QueryResults> listOfQueryResultsList = new ArrayList<>(queries.size());
+    try
+    {
+      for (int i = 0; i < futures.size(); i++)
+      {
+        try
+        {
+          listOfQueryResultsList
+              .add(futures.get(i).get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS));
+        } catch (TimeoutException e)
+        {
+          LOGGER.error(L.m("Zeitüberschreitung bei der Suche in Datenquelle \"%1\"",
+              queries.get(i).getDatasourceName()));
+          listOfQueryResultsList.add(new QueryResultsList(new ArrayList<Dataset>(0)));
+        }
+      }
+    } catch (ExecutionException e)
+    {
+      if (e.getCause() instanceof Error)
+      {
+        throw (Error) e.getCause();
+      }
+      throw (RuntimeException) e.getCause();
+    } catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    } finally
+    {
+      futures.forEach(future -> future.cancel(true));
+    }
+    return listOfQueryResultsList;
+  }
+
+  /**
+   * Liefert den Thread-Pool zum Ausführen der Suchanfragen.
+   */
+  private static synchronized ExecutorService searchExecutor()
+  {
+    if (searchExecutor == null)
+    {
+      AtomicInteger threadCount = new AtomicInteger();
+      searchExecutor = Executors.newFixedThreadPool(SEARCH_THREADS, r -> {
+        Thread t = new Thread(r, "Search-" + threadCount.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      });
+    }
+    return searchExecutor;
   }
 
   /**
@@ -108,6 +326,28 @@ public class Search
    * @return Results as an Iterable of Dataset as {@link QueryResults}
    */
   public static QueryResults search(Map<String, String> query, DatasourceJoiner dj)
+  {
+    return dj.find(toQueryParts(query));
+  }
+
+  /**
+   * Asynchrone Variante von {@link #search(Map, DatasourceJoiner)}. Die Hauptdatenquelle ruft
+   * dabei nur die Spalten für die Anzeige der Ergebnisse ab (siehe
+   * {@link DatasourceJoiner#DISPLAY_COLUMNS}), die übrigen werden beim Zugriff nachgeladen.
+   * 
+   * @param query
+   *          die Suchanfrage
+   * @param dj
+   *          die virtuelle Datenbank (siehe {@link DatasourceJoiner}), in der gesucht werden soll
+   * @return Future results as {@link QueryResults}
+   */
+  public static CompletableFuture<QueryResults> searchAsync(Map<String, String> query,
+      DatasourceJoiner dj)
+  {
+    return dj.findAsync(toQueryParts(query), DatasourceJoiner.DISPLAY_COLUMNS);
+  }
+
+  private static List<QueryPart> toQueryParts(Map<String, String> query)
   {
     List<QueryPart> parts = new ArrayList<>();
 
@@ -117,7 +357,7 @@ public class Search
       parts.add(qp);
     }
 
-    return dj.find(parts);
+    return parts;
   }
 
   /**
@@ -169,13 +409,7 @@ public class Search
    */
   private static QueryResults mergeListOfQueryResultsList(List<QueryResults> listOfQueryResultsList)
   {
-    QueryResultsSet results = new QueryResultsSet((o1, o2) -> {
-      if (o1.getClass() == o2.getClass() && o1.getKey() == o2.getKey())
-      {
-        return 0;
-      }
-      return 1;
-    });
+    QueryResultsSet results = new QueryResultsSet();
 
     if (listOfQueryResultsList.size() == 1)
     {
@@ -48,6 +48,8 @@ public class ThingyDatasource extends RAMDatasource
 
   private static final Pattern SPALTENNAME = Pattern.compile("^[a-zA-Z_][a-zA-Z_0-9]*$");
 
+  private static final String KEY_SEPARATOR = "£#%&|";
+
   /**
    * Erzeugt eine neue ThingyDatasource.
    * 
@@ -95,10 +97,11 @@ public class ThingyDatasource extends RAMDatasource
       }
 
       String[] keyCols = parseKeys(sourceDesc, name, schema);
+      Map<String, ColumnIndex.Type> indexes = parseIndexes(sourceDesc, name, schema);
       List<Dataset> data = parseData(conf, name, schema, schemaOrdered,
           keyCols);
 
-      init(name, schema, data);
+      init(name, schema, data, indexes);
     }
     catch (NodeNotFoundException x)
     {
@@ -124,13 +127,14 @@ public class ThingyDatasource extends RAMDatasource
       String[] schemaOrdered, String[] keyCols)
   {
     List<Dataset> data = new ArrayList<>();
+    DatasetSchema columns = new DatasetSchema(schema);
     try
     {
       ConfigThingy daten = dataDesc.get("Daten");
 
       for (ConfigThingy dsDesc : daten)
       {
-        data.add(createDataset(dsDesc, schema, schemaOrdered, keyCols));
+        data.add(createDataset(dsDesc, columns, schemaOrdered, keyCols));
       }
     }
     catch (ConfigurationErrorException x)
@@ -171,13 +175,50 @@ public class ThingyDatasource extends RAMDatasource
   }
 
   /**
-   * Erzeugt ein neues MyDataset aus der Beschreibung dsDesc. Die Methode
+   * Liest die optionalen Index-Abschnitte der Form Index(Spalte1 "EXACT" Spalte2 "PREFIX" Spalte3
+   * "INFIX"). Eine Spalte ohne Angabe der Art wie in Index("Spalte") erhält einen Index für exakte
+   * Suchen.
+   * 
+   * @return bildet die Spaltennamen auf die Art des Index ab.
+   * @throws ConfigurationErrorException
+   *           falls eine Spalte nicht im Schema aufgeführt ist oder die Art des Index unbekannt ist.
+   */
+  private Map<String, ColumnIndex.Type> parseIndexes(ConfigThingy sourceDesc, String name,
+      List<String> schema)
+  {
+    Map<String, ColumnIndex.Type> indexes = new HashMap<>();
+    for (ConfigThingy indexDesc : sourceDesc.query("Index", 1))
+    {
+      for (ConfigThingy index : indexDesc)
+      {
+        String spalte = index.getName();
+        if (!schema.contains(spalte))
+        {
+          throw new ConfigurationErrorException(
+              L.m("Fehler in Definition von Datenquelle %1: Index-Spalte \"%2\" ist nicht im Schema aufgeführt", name, spalte));
+        }
+        String type = index.count() == 0 ? ColumnIndex.Type.EXACT.name() : index.toString();
+        try
+        {
+          indexes.put(spalte, ColumnIndex.Type.valueOf(type.toUpperCase()));
+        } catch (IllegalArgumentException x)
+        {
+          throw new ConfigurationErrorException(
+              L.m("Fehler in Definition von Datenquelle %1: Unbekannte Index-Art \"%2\" für Spalte \"%3\"", name, type, spalte), x);
+        }
+      }
+    }
+    return indexes;
+  }
+
+  /**
+   * Erzeugt ein neues {@link ArrayDataset} aus der Beschreibung dsDesc. Die Methode
    * erkennt automatisch, ob die Beschreibung in der Form ("Spaltenwert1",
    * "Spaltenwert2",...) oder der Form (Spalte1 "Wert1" Spalte2 "Wert2" ...)
    * ist.
    * 
-   * @param schema
-   *          das Datenbankschema
+   * @param columns
+   *          das Datenbankschema, das sich alle Datensätze teilen
    * @param schemaOrdered
    *          das Datenbankschema mit erhaltener Spaltenreihenfolge entsprechend
    *          Schema-Sektion.
@@ -186,21 +227,21 @@ public class ThingyDatasource extends RAMDatasource
    * @throws ConfigurationErrorException
    *           im Falle von Verstössen gegen diverse Regeln.
    */
-  private Dataset createDataset(ConfigThingy dsDesc, List<String> schema, String[] schemaOrdered,
+  private Dataset createDataset(ConfigThingy dsDesc, DatasetSchema columns, String[] schemaOrdered,
       String[] keyCols)
   { // TESTED
     if (!dsDesc.getName().isEmpty())
       throw new ConfigurationErrorException(L.m("Öffnende Klammer erwartet vor \"%1\"", dsDesc.getName()));
     if (dsDesc.count() == 0)
     {
-      return new MyDataset(schema, keyCols);
+      return createDataset(columns, new String[columns.size()], keyCols);
     }
     try
     {
       if (dsDesc.getFirstChild().count() == 0)
-        return createDatasetOrdered(dsDesc, schema, schemaOrdered, keyCols);
+        return createDatasetOrdered(dsDesc, columns, schemaOrdered, keyCols);
       else
-        return createDatasetUnordered(dsDesc, schema, keyCols);
+        return createDatasetUnordered(dsDesc, columns, keyCols);
     } catch (NodeNotFoundException e)
     {
       LOGGER.error("", e);
@@ -209,115 +250,75 @@ public class ThingyDatasource extends RAMDatasource
   }
 
   /**
-   * Erzeugt ein neues MyDataset aus der Beschreibung dsDesc. dsDesc muss in der
+   * Erzeugt ein neues {@link ArrayDataset} aus der Beschreibung dsDesc. dsDesc muss in der
    * Form (Spalte1 "Spaltenwert1" Spalte2 "Spaltenwert2 ...) sein.
    * 
    * @throws ConfigurationErrorException
    *           bei verstössen gegen diverse Regeln
    */
-  private Dataset createDatasetUnordered(ConfigThingy dsDesc, List<String> schema, String[] keyCols)
+  private Dataset createDatasetUnordered(ConfigThingy dsDesc, DatasetSchema columns,
+      String[] keyCols)
   { // TESTED
-    Map<String, String> data = new HashMap<>();
+    String[] values = new String[columns.size()];
     Iterator<ConfigThingy> iter = dsDesc.iterator();
     while (iter.hasNext())
     {
       ConfigThingy spaltenDaten = iter.next();
       String spalte = spaltenDaten.getName();
-      if (!schema.contains(spalte))
+      int position = columns.indexOf(spalte);
+      if (position < 0)
         throw new ConfigurationErrorException(L.m("Datensatz hat Spalte \"%1\", die nicht im Schema aufgeführt ist", spalte));
-      String wert = spaltenDaten.toString();
-      data.put(spalte, wert);
+      values[position] = spaltenDaten.toString();
     }
-    return new MyDataset(schema, data, keyCols);
+    return createDataset(columns, values, keyCols);
   }
 
   /**
-   * Erzeugt ein neues MyDataset aus der Beschreibung dsDesc. dsDesc muss in der
+   * Erzeugt ein neues {@link ArrayDataset} aus der Beschreibung dsDesc. dsDesc muss in der
    * Form ("Spaltenwert1" "Spaltenwert2 ...) sein.
    * 
    * @throws ConfigurationErrorException
    *           bei verstössen gegen diverse Regeln
    */
-  private Dataset createDatasetOrdered(ConfigThingy dsDesc, List<String> schema,
+  private Dataset createDatasetOrdered(ConfigThingy dsDesc, DatasetSchema columns,
       String[] schemaOrdered, String[] keyCols)
   { // TESTED
     if (dsDesc.count() > schemaOrdered.length)
       throw new ConfigurationErrorException(L.m("Datensatz hat mehr Felder als das Schema"));
 
-    Map<String, String> data = new HashMap<>();
+    String[] values = new String[columns.size()];
     int i = 0;
     Iterator<ConfigThingy> iter = dsDesc.iterator();
     while (iter.hasNext())
     {
-      String spalte = schemaOrdered[i];
-      String wert = iter.next().toString();
-      data.put(spalte, wert);
+      values[columns.indexOf(schemaOrdered[i])] = iter.next().toString();
       ++i;
     }
-    return new MyDataset(schema, data, keyCols);
+    return createDataset(columns, values, keyCols);
   }
 
-  private static class MyDataset implements Dataset
-  {
-    private static final String KEY_SEPARATOR = "£#%&|";
-
-    private Map<String, String> data;
-
-    private String key;
-
-    private List<String> schema;
-
-    public MyDataset(List<String> schema, String[] keyCols)
+  /**
+   * Erzeugt ein {@link ArrayDataset} mit den Werten values, dessen Schlüssel aus den Werten
+   * der Schlüsselspalten separiert durch KEY_SEPARATOR zusammengesetzt wird.
+   * 
+   * @param keyCols
+   *          die Namen der Schlüsselspalten
+   */
+  private static Dataset createDataset(DatasetSchema columns, String[] values, String[] keyCols)
+  { // TESTED
+    StringBuilder buffy = new StringBuilder();
+    for (int i = 0; i < keyCols.length; ++i)
     {
-      this.schema = schema;
-      data = new HashMap<>();
-      initKey(keyCols);
-    }
-
-    public MyDataset(List<String> schema, Map<String, String> data, String[] keyCols)
-    { // TESTED
-      this.schema = schema;
-      this.data = data;
-      initKey(keyCols);
-    }
-
-    /**
-     * Setzt aus den Werten der Schlüsselspalten separiert durch KEY_SEPARATOR
-     * den Schlüssel zusammen.
-     * 
-     * @param keyCols
-     *          die Namen der Schlüsselspalten
-     */
-    private void initKey(String[] keyCols)
-    { // TESTED
-      StringBuilder buffy = new StringBuilder();
-      for (int i = 0; i < keyCols.length; ++i)
+      String str = values[columns.indexOf(keyCols[i])];
+      if (str != null)
       {
-        String str = data.get(keyCols[i]);
-        if (str != null)
-        {
-          buffy.append(str);
-        }
-        if (i + 1 < keyCols.length)
-        {
-          buffy.append(KEY_SEPARATOR);
-        }
+        buffy.append(str);
+      }
+      if (i + 1 < keyCols.length)
+      {
+        buffy.append(KEY_SEPARATOR);
       }
-      key = buffy.toString();
-    }
-
-    @Override
-    public String get(String columnName) throws ColumnNotFoundException
-    {
-      if (!schema.contains(columnName))
-        throw new ColumnNotFoundException(L.m("Spalte %1 existiert nicht!", columnName));
-      return data.get(columnName);
-    }
-
-    @Override
-    public String getKey()
-    { // TESTED
-      return key;
     }
+    return new ArrayDataset(columns, buffy.toString(), values);
   }
 }
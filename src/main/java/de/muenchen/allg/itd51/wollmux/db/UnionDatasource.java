@@ -31,6 +31,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.commons.collections4.CollectionUtils;
 
@@ -142,8 +143,26 @@ public class UnionDatasource implements Datasource
   @Override
   public QueryResults getDatasetsByKey(Collection<String> keys)
   {
-    Collection<Dataset> result = CollectionUtils.union(source1.getDatasetsByKey(keys), source2.getDatasetsByKey(keys));
-    return new QueryResultsList(result.iterator(), 0);
+    return DatasourceExecutor.await(getDatasetsByKeyAsync(keys, false));
+  }
+
+  /**
+   * Fragt beide Datenquellen gleichzeitig ab. Eine Datenquelle, die nicht rechtzeitig antwortet,
+   * liefert keine Ergebnisse.
+   */
+  @Override
+  public CompletableFuture<QueryResults> getDatasetsByKeyAsync(Collection<String> keys)
+  {
+    return getDatasetsByKeyAsync(keys, true);
+  }
+
+  private CompletableFuture<QueryResults> getDatasetsByKeyAsync(Collection<String> keys,
+      boolean dropOnTimeout)
+  {
+    return DatasourceExecutor
+        .withTimeout(source1.getDatasetsByKeyAsync(keys), source1Name, dropOnTimeout)
+        .thenCombine(DatasourceExecutor.withTimeout(source2.getDatasetsByKeyAsync(keys),
+            source2Name, dropOnTimeout), UnionDatasource::union);
   }
 
   @Override
@@ -155,8 +174,25 @@ public class UnionDatasource implements Datasource
   @Override
   public QueryResults find(List<QueryPart> query)
   {
-    Collection<Dataset> result = CollectionUtils.union(source1.find(query), source2.find(query));
-    return new QueryResultsList(result.iterator(), 0);
+    return DatasourceExecutor.await(findAsync(query, false));
+  }
+
+  /**
+   * Fragt beide Datenquellen gleichzeitig ab. Eine Datenquelle, die nicht rechtzeitig antwortet,
+   * liefert keine Ergebnisse.
+   */
+  @Override
+  public CompletableFuture<QueryResults> findAsync(List<QueryPart> query)
+  {
+    return findAsync(query, true);
+  }
+
+  private CompletableFuture<QueryResults> findAsync(List<QueryPart> query, boolean dropOnTimeout)
+  {
+    return DatasourceExecutor.withTimeout(source1.findAsync(query), source1Name, dropOnTimeout)
+        .thenCombine(
+            DatasourceExecutor.withTimeout(source2.findAsync(query), source2Name, dropOnTimeout),
+            UnionDatasource::union);
   }
 
   @Override
@@ -165,4 +201,11 @@ public class UnionDatasource implements Datasource
     return name;
   }
 
+  private static QueryResults union(QueryResults results1, QueryResults results2)
+  {
+    Collection<Dataset> result = CollectionUtils.union(results1, results2);
+    return new QueryResultsList(new ArrayList<>(result),
+        results1.isComplete() && results2.isComplete());
+  }
+
 }
@@ -34,6 +34,8 @@ import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -94,6 +96,11 @@ public class DatasourceSearchDialog implements Dialog
 
   private static final String ABORT = "abort";
 
+  /**
+   * Pattern of the variables {@code ${SPALTENNAME}} in the display template of the search results.
+   */
+  private static final Pattern VARIABLE = Pattern.compile("\\$\\{([a-zA-Z_][a-zA-Z_0-9]*)\\}");
+
   /**
    * The description of the dialog.
    */
@@ -391,6 +398,11 @@ public class DatasourceSearchDialog implements Dialog
      */
     Map<String, Dataset> datasets = new TreeMap<>();
 
+    /**
+     * Number of the latest search. Results of older searches are discarded.
+     */
+    private final AtomicInteger searchGeneration = new AtomicInteger();
+
     /**
      * Create a new tab.
      *
@@ -644,6 +656,17 @@ public class DatasourceSearchDialog implements Dialog
     private void setListElements(QueryResults data)
     {
       datasets.clear();
+      addListElements(data);
+    }
+
+    /**
+     * Add further search results to the control {@link #resultsList}.
+     *
+     * @param data
+     *          The additional results of the search
+     */
+    private void addListElements(QueryResults data)
+    {
       if (resultsList == null)
       {
         return;
@@ -685,7 +708,9 @@ public class DatasourceSearchDialog implements Dialog
     }
 
     /**
-     * Start the query and update the result list.
+     * Start the query and update the result list. The first results are shown as soon as they are
+     * available, further results are added as they arrive. Results of a previous search, which
+     * arrive after a new search has been started, are ignored.
      */
     private void search()
     {
@@ -694,11 +719,18 @@ public class DatasourceSearchDialog implements Dialog
         return;
       }
 
-      CompletableFuture.supplyAsync(() -> {
-        QueryResults r = null;
+      int generation = searchGeneration.incrementAndGet();
+      CompletableFuture.runAsync(() -> {
+        AtomicBoolean first = new AtomicBoolean(true);
         try
         {
-          r = Search.search(query.getText(), searchStrategy, dj, false);
+          Search.search(query.getText(), searchStrategy, dj, getDisplayColumns(),
+              page -> showResults(generation, columnTransformer.transform(page),
+                  first.getAndSet(false)));
+          if (first.get())
+          {
+            showResults(generation, null, true);
+          }
         } catch (IllegalArgumentException x)
         {
           LOGGER.error("", x);
@@ -708,15 +740,51 @@ public class DatasourceSearchDialog implements Dialog
                   + "Suchbegriff, der auf zu viele Ergebnisse zutrifft.\n"
                   + "Bitte versuchen Sie eine andere, präzisere Suchanfrage."));
         }
-        return r;
-      }).thenAcceptAsync(r -> {
-        if (r != null && resultsList != null)
-        {
-          setListElements(columnTransformer.transform(r));
-        }
       });
     }
 
+    /**
+     * Get the columns of the data sources, which are needed to show the search results with
+     * {@link #displayTemplate}. The other columns are only loaded if a data set is selected.
+     *
+     * @return The names of the columns.
+     */
+    private Set<String> getDisplayColumns()
+    {
+      Set<String> columns = new HashSet<>();
+      Matcher m = VARIABLE.matcher(displayTemplate);
+      while (m.find())
+      {
+        columns.add(m.group(1));
+      }
+      return columnTransformer.getSourceColumns(columns);
+    }
+
+    /**
+     * Show the results of a search, if no other search has been started since.
+     *
+     * @param generation
+     *          The number of the search.
+     * @param data
+     *          The results.
+     * @param replace
+     *          If true, the results replace the current list, otherwise they are added.
+     */
+    private synchronized void showResults(int generation, QueryResults data, boolean replace)
+    {
+      if (generation != searchGeneration.get())
+      {
+        return;
+      }
+      if (replace)
+      {
+        setListElements(data);
+      } else
+      {
+        addListElements(data);
+      }
+    }
+
     /**
      * Process the actions of the buttons.
      *
@@ -771,9 +839,8 @@ public class DatasourceSearchDialog implements Dialog
      */
     private String substituteVars(Dataset ds)
     {
-      Pattern p = Pattern.compile("\\$\\{([a-zA-Z_][a-zA-Z_0-9]*)\\}");
       String display = displayTemplate;
-      Matcher m = p.matcher(display);
+      Matcher m = VARIABLE.matcher(display);
       while (m.find())
       {
         String spalte = m.group(1);
@@ -791,7 +858,7 @@ public class DatasourceSearchDialog implements Dialog
               L.m("Fehler beim Auflösen des Platzhalters \"${%1}\": Spalte für den Datensatz nicht definiert", spalte));
         }
         display = display.substring(0, m.start()) + wert + display.substring(m.end());
-        m = p.matcher(display);
+        m = VARIABLE.matcher(display);
       }
       return display;
     }
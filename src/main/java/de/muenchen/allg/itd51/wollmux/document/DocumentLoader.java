@@ -22,6 +22,7 @@
  */
 package de.muenchen.allg.itd51.wollmux.document;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
@@ -45,6 +46,8 @@ import com.sun.star.uno.Exception;
 
 import de.muenchen.allg.afid.UNO;
 import de.muenchen.allg.afid.UnoHelperException;
+import de.muenchen.allg.itd51.wollmux.WollMuxFiles;
+import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
 import de.muenchen.allg.itd51.wollmux.util.L;
 
 /**
@@ -56,9 +59,25 @@ public class DocumentLoader
   private static final Logger LOGGER = LoggerFactory
     .getLogger(DocumentLoader.class);
 
+  /**
+   * Maximale Größe des lokalen Caches in MB, 0 schaltet ihn ab.
+   */
+  private static final String FRAGMENT_CACHE_SIZE = "FRAGMENT_CACHE_SIZE";
+
+  /**
+   * Zeit in Sekunden, die ein Dokument aus dem lokalen Cache verwendet wird, ohne
+   * beim Server nachzufragen, ob es sich geändert hat.
+   */
+  private static final String FRAGMENT_CACHE_MAX_STALENESS = "FRAGMENT_CACHE_MAX_STALENESS";
+
   private static DocumentLoader instance;
   private LoadingCache<String, ByteBuffer> cache;
 
+  /**
+   * Der lokale Cache oder null, falls er abgeschaltet ist.
+   */
+  private FragmentCache fragmentCache;
+
   /**
    * Zugriff auf den DocumentLoader als Singleton.
    *
@@ -75,6 +94,7 @@ public class DocumentLoader
 
   private DocumentLoader()
   {
+    fragmentCache = createFragmentCache(WollMuxFiles.getWollmuxConf());
     cache = CacheBuilder.newBuilder()
       .maximumSize(50)
       .expireAfterAccess(8, TimeUnit.HOURS)
@@ -88,12 +108,41 @@ public class DocumentLoader
       });
   }
 
+  private static FragmentCache createFragmentCache(ConfigThingy conf)
+  {
+    try
+    {
+      long size = Long.parseLong(conf.getString(FRAGMENT_CACHE_SIZE, "100"));
+      long staleness = Long.parseLong(conf.getString(FRAGMENT_CACHE_MAX_STALENESS, "300"));
+      if (size <= 0)
+      {
+        return null;
+      }
+      return new FragmentCache(new File(WollMuxFiles.getWollMuxDir(), "fragments"),
+          size * 1024 * 1024, TimeUnit.SECONDS.toMillis(staleness));
+    } catch (NumberFormatException e)
+    {
+      LOGGER.error(L.m("%1 und %2 müssen ganze Zahlen sein", FRAGMENT_CACHE_SIZE,
+          FRAGMENT_CACHE_MAX_STALENESS), e);
+      return null;
+    }
+  }
+
   private ByteBuffer downloadDocument(String url)
   {
     byte[] buf = null;
-    try (InputStream in = new URL(url).openStream())
+    try
     {
-      buf = IOUtils.toByteArray(in);
+      if (fragmentCache != null)
+      {
+        buf = fragmentCache.get(new URL(url));
+      } else
+      {
+        try (InputStream in = new URL(url).openStream())
+        {
+          buf = IOUtils.toByteArray(in);
+        }
+      }
     } catch (IOException e)
     {
       LOGGER.error(
@@ -0,0 +1,448 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2020 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.document;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A local on-disk cache for documents loaded from URLs, e.g. text fragments.
+ *
+ * Entries are stored by the hash of their URL. An entry of an HTTP URL is used without
+ * asking the server as long as it has been validated within the maximum staleness.
+ * Afterwards it's revalidated with a conditional request (ETag and Last-Modified).
+ * Entries of file URLs are revalidated on every access by comparing modification time
+ * and length, because checking a file is cheap. If the total size of the entries
+ * exceeds the maximum size, the least recently used entries are removed. An entry
+ * removed while it's read is loaded again.
+ *
+ * Other URLs aren't cached. If a document can't be loaded, an exception is thrown even
+ * if there's a cached copy, so callers can try other URLs as before.
+ */
+public class FragmentCache
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(FragmentCache.class);
+
+  private static final String DATA = ".data";
+
+  private static final String META = ".properties";
+
+  private static final String TMP = ".tmp";
+
+  private static final String URL_KEY = "url";
+
+  private static final String VALIDATED = "validated";
+
+  private static final String ETAG = "etag";
+
+  private static final String LAST_MODIFIED = "lastModified";
+
+  private static final String LENGTH = "length";
+
+  private final File dir;
+
+  private final long maxSize;
+
+  private final long maxStaleness;
+
+  /**
+   * The size of the entries by key in the order of their last access.
+   */
+  private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+  private long size;
+
+  /**
+   * Create a cache.
+   *
+   * @param dir
+   *          The directory of the cache. It's created if necessary.
+   * @param maxSize
+   *          The maximum total size of the entries in bytes.
+   * @param maxStaleness
+   *          The time in milliseconds an entry of an HTTP URL is used without
+   *          revalidation.
+   */
+  public FragmentCache(File dir, long maxSize, long maxStaleness)
+  {
+    this.dir = dir;
+    this.maxSize = maxSize;
+    this.maxStaleness = maxStaleness;
+    dir.mkdirs();
+    scan();
+  }
+
+  /**
+   * Get the content of a document.
+   *
+   * @param url
+   *          The URL of the document.
+   * @return The content.
+   * @throws IOException
+   *           The document can't be loaded.
+   */
+  public byte[] get(URL url) throws IOException
+  {
+    String protocol = url.getProtocol().toLowerCase();
+    boolean isFile = "file".equals(protocol);
+    if (!isFile && !"http".equals(protocol) && !"https".equals(protocol))
+    {
+      try (InputStream in = url.openStream())
+      {
+        return IOUtils.toByteArray(in);
+      }
+    }
+
+    String key = key(url);
+    Properties meta = readMeta(key, url);
+    long now = System.currentTimeMillis();
+    if (!isFile && meta != null
+        && now - Long.parseLong(meta.getProperty(VALIDATED, "0")) < maxStaleness)
+    {
+      byte[] content = hit(key);
+      if (content != null)
+      {
+        LOGGER.trace("{} aus dem Cache geladen", url);
+        return content;
+      }
+      meta = null;
+    }
+
+    return isFile ? getFile(url, key, meta, now) : getHttp(url, key, meta, now);
+  }
+
+  private byte[] getFile(URL url, String key, Properties meta, long now) throws IOException
+  {
+    File file;
+    try
+    {
+      file = Paths.get(url.toURI()).toFile();
+    } catch (URISyntaxException | IllegalArgumentException e)
+    {
+      throw new IOException(e);
+    }
+
+    String lastModified = Long.toString(file.lastModified());
+    String length = Long.toString(file.length());
+    if (meta != null && lastModified.equals(meta.getProperty(LAST_MODIFIED))
+        && length.equals(meta.getProperty(LENGTH)))
+    {
+      byte[] content = hit(key);
+      if (content != null)
+      {
+        return content;
+      }
+    }
+
+    byte[] content = Files.readAllBytes(file.toPath());
+    Properties fresh = new Properties();
+    fresh.setProperty(LAST_MODIFIED, lastModified);
+    fresh.setProperty(LENGTH, length);
+    store(key, url, content, fresh, now);
+    return content;
+  }
+
+  private byte[] getHttp(URL url, String key, Properties meta, long now) throws IOException
+  {
+    URLConnection connection = url.openConnection();
+    if (meta != null)
+    {
+      if (meta.getProperty(ETAG) != null)
+      {
+        connection.setRequestProperty("If-None-Match", meta.getProperty(ETAG));
+      }
+      if (meta.getProperty(LAST_MODIFIED) != null)
+      {
+        connection.setRequestProperty("If-Modified-Since", meta.getProperty(LAST_MODIFIED));
+      }
+    }
+
+    if (meta != null && connection instanceof HttpURLConnection
+        && ((HttpURLConnection) connection).getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED)
+    {
+      LOGGER.trace("{} ist unverändert", url);
+      byte[] content = hit(key);
+      if (content != null)
+      {
+        validated(key, meta, now);
+        return content;
+      }
+      // removed in the meantime, so load it unconditionally
+      return getHttp(url, key, null, now);
+    }
+
+    byte[] content;
+    try (InputStream in = connection.getInputStream())
+    {
+      content = IOUtils.toByteArray(in);
+    }
+    Properties fresh = new Properties();
+    if (connection.getHeaderField("ETag") != null)
+    {
+      fresh.setProperty(ETAG, connection.getHeaderField("ETag"));
+    }
+    if (connection.getHeaderField("Last-Modified") != null)
+    {
+      fresh.setProperty(LAST_MODIFIED, connection.getHeaderField("Last-Modified"));
+    }
+    if (fresh.isEmpty())
+    {
+      // can't be revalidated, so it's only used within the maximum staleness
+      LOGGER.debug("{} liefert weder ETag noch Last-Modified", url);
+    }
+    store(key, url, content, fresh, now);
+    return content;
+  }
+
+  /**
+   * Read the content of an entry.
+   *
+   * @return The content or null if the entry has been removed or can't be read.
+   */
+  private byte[] hit(String key)
+  {
+    File data = new File(dir, key + DATA);
+    try
+    {
+      byte[] content = Files.readAllBytes(data.toPath());
+      data.setLastModified(System.currentTimeMillis());
+      synchronized (this)
+      {
+        entries.get(key);
+      }
+      return content;
+    } catch (NoSuchFileException e)
+    {
+      LOGGER.trace("Cache-Eintrag {} wurde entfernt", data);
+      return null;
+    } catch (IOException e)
+    {
+      LOGGER.debug("Cache-Eintrag {} ist nicht lesbar", data, e);
+      remove(key);
+      return null;
+    }
+  }
+
+  private Properties readMeta(String key, URL url)
+  {
+    File meta = new File(dir, key + META);
+    if (!meta.isFile() || !new File(dir, key + DATA).isFile())
+    {
+      return null;
+    }
+
+    Properties properties = new Properties();
+    try (Reader reader = Files.newBufferedReader(meta.toPath(), StandardCharsets.UTF_8))
+    {
+      properties.load(reader);
+    } catch (IOException | IllegalArgumentException e)
+    {
+      LOGGER.debug("Cache-Eintrag {} ist nicht lesbar", meta, e);
+      return null;
+    }
+    return url.toExternalForm().equals(properties.getProperty(URL_KEY)) ? properties : null;
+  }
+
+  private void validated(String key, Properties meta, long now)
+  {
+    meta.setProperty(VALIDATED, Long.toString(now));
+    try
+    {
+      writeMeta(key, meta);
+    } catch (IOException e)
+    {
+      LOGGER.debug("Cache-Eintrag für {} konnte nicht aktualisiert werden", meta.get(URL_KEY), e);
+    }
+  }
+
+  private void store(String key, URL url, byte[] content, Properties meta, long now)
+  {
+    if (content.length > maxSize)
+    {
+      remove(key);
+      return;
+    }
+
+    meta.setProperty(URL_KEY, url.toExternalForm());
+    meta.setProperty(VALIDATED, Long.toString(now));
+    try
+    {
+      Files.deleteIfExists(new File(dir, key + META).toPath());
+      Path tmp = Files.createTempFile(dir.toPath(), key, TMP);
+      Files.write(tmp, content);
+      move(tmp, new File(dir, key + DATA).toPath());
+      writeMeta(key, meta);
+    } catch (IOException e)
+    {
+      LOGGER.error("{} konnte nicht im Cache gespeichert werden", url, e);
+      remove(key);
+      return;
+    }
+
+    synchronized (this)
+    {
+      Long old = entries.put(key, (long) content.length);
+      size += content.length - (old == null ? 0 : old);
+      evict();
+    }
+  }
+
+  private void writeMeta(String key, Properties meta) throws IOException
+  {
+    Path tmp = Files.createTempFile(dir.toPath(), key, TMP);
+    try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8))
+    {
+      meta.store(writer, null);
+    }
+    move(tmp, new File(dir, key + META).toPath());
+  }
+
+  private static void move(Path source, Path target) throws IOException
+  {
+    try
+    {
+      Files.move(source, target, StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException e)
+    {
+      Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  private synchronized void evict()
+  {
+    Iterator<Map.Entry<String, Long>> iter = entries.entrySet().iterator();
+    while (size > maxSize && iter.hasNext())
+    {
+      Map.Entry<String, Long> eldest = iter.next();
+      iter.remove();
+      size -= eldest.getValue();
+      delete(eldest.getKey());
+    }
+  }
+
+  private synchronized void remove(String key)
+  {
+    Long old = entries.remove(key);
+    if (old != null)
+    {
+      size -= old;
+    }
+    delete(key);
+  }
+
+  private void delete(String key)
+  {
+    for (String suffix : new String[] { META, DATA })
+    {
+      try
+      {
+        Files.deleteIfExists(new File(dir, key + suffix).toPath());
+      } catch (IOException e)
+      {
+        LOGGER.debug("", e);
+      }
+    }
+  }
+
+  /**
+   * Read the existing entries. The modification time of the data files is the time of
+   * the last access.
+   */
+  private synchronized void scan()
+  {
+    File[] files = dir.listFiles();
+    if (files == null)
+    {
+      return;
+    }
+
+    Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+    for (File file : files)
+    {
+      String name = file.getName();
+      if (name.endsWith(TMP))
+      {
+        file.delete();
+      } else if (name.endsWith(DATA))
+      {
+        entries.put(name.substring(0, name.length() - DATA.length()), file.length());
+        size += file.length();
+      }
+    }
+    for (File file : files)
+    {
+      String name = file.getName();
+      if (name.endsWith(META)
+          && !entries.containsKey(name.substring(0, name.length() - META.length())))
+      {
+        file.delete();
+      }
+    }
+    evict();
+  }
+
+  private static String key(URL url)
+  {
+    try
+    {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      byte[] hash = digest.digest(url.toExternalForm().getBytes(StandardCharsets.UTF_8));
+      StringBuilder key = new StringBuilder();
+      for (byte b : hash)
+      {
+        key.append(String.format("%02x", b));
+      }
+      return key.toString();
+    } catch (NoSuchAlgorithmException e)
+    {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -22,14 +22,20 @@
  */
 package de.muenchen.allg.itd51.wollmux.document;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,6 +52,9 @@ import de.muenchen.allg.itd51.wollmux.util.L;
  * und um die Beachtung der Vorrangregelung: Immer das zuletzt definierte
  * Textfragment oder die zuletzt definierte Variable gewinnt.
  *
+ * Die Abschnitte werden nur einmal pro Konfiguration ausgewertet. Nach einer
+ * Änderung der Konfiguration muss {@link #invalidate()} aufgerufen werden.
+ *
  * @author Christoph Lutz (D-III-ITD 5.1)
  *
  */
@@ -59,49 +68,64 @@ public class VisibleTextFragmentList
    */
   private static final int MAXCOUNT = 100;
 
+  private static final Pattern VARIABLE = Pattern.compile("\\$\\{([^\\}]*)\\}");
+
+  /**
+   * FRAG_IDs, die keine regulären Ausdrücke mit Sonderzeichen sind und daher nur
+   * sich selbst matchen.
+   */
+  private static final Pattern LITERAL = Pattern.compile("[A-Za-z0-9_]+");
+
+  /**
+   * Wird bei jeder Änderung der Konfiguration erhöht.
+   */
+  private static final AtomicLong generation = new AtomicLong();
+
+  /**
+   * Der zuletzt verwendete Index.
+   */
+  private static volatile Index index;
+
   private VisibleTextFragmentList() {}
 
+  /**
+   * Verwirft die ausgewerteten Textfragmente, so dass sie beim nächsten Aufruf von
+   * {@link #getURLsByID(ConfigThingy, String)} neu aus der Konfiguration gelesen
+   * werden.
+   */
+  public static void invalidate()
+  {
+    generation.incrementAndGet();
+  }
+
   /**
    * Ersetzen der zu dem Block gehörende Variable VAR durch den Wert VALUE
    *
    * @param node
-   *          Knoten der die Url enthält die benötigt wird um die Variable zu
-   *          bestimmen die von ihm aus sichtbar ist.
-   * @param root
-   *          das ConfigThingy das die gesamte Configuration enthält
+   *          Knoten der die Url enthält.
+   * @param variables
+   *          die von node aus sichtbaren Variablen.
    * @return Das ConfigThingy als String ohne Variablen.
    * @throws EndlessLoopException
    */
-  private static String expandVariable(ConfigThingy node, ConfigThingy root)
-      throws EndlessLoopException
+  private static String expandVariable(ConfigThingy node,
+      Map<String, String> variables) throws EndlessLoopException
   {
-    // Map der sichtbaren Variablen erzeugen:
-    Map<String, String> variables = new HashMap<>();
-
-    for (ConfigThingy var : ConfigThingy.getNodesVisibleAt(node, "VAR", root))
+    // Debug-Ausgabe:
+    if (LOGGER.isTraceEnabled())
     {
-      String name = var.getString("NAME");
-      String value = var.getString("VALUE");
+      LOGGER.trace(L.m("Variablenset an Knoten %1 '%2':", node.getName(),
+        node.toString()));
 
-      if (name != null && value != null)
+      for (Map.Entry<String, String> ent : variables.entrySet())
       {
-        variables.put(name, value);
+        LOGGER.trace("  {}=\"{}\"", ent.getKey(), ent.getValue());
       }
     }
 
-    // Debug-Ausgabe:
-    LOGGER.trace(L.m("Variablenset an Knoten %1 '%2':", node.getName(),
-      node.toString()));
-
-    for (Map.Entry<String, String> ent : variables.entrySet())
-    {
-      LOGGER.trace("  {}=\"{}\"", ent.getKey(), ent.getValue());
-    }
-
     // Matcher zum Finden der Variablen ersetzen:
     String string = node.toString();
-    Pattern var = Pattern.compile("\\$\\{([^\\}]*)\\}");
-    Matcher m = var.matcher(string);
+    Matcher m = VARIABLE.matcher(string);
 
     // Variablen so lange ersetzen, bis keine Variable mehr gefunden wird.
     // Vermeidung von möglichen Endlosloops durch Abbruch nach MAXCOUNT
@@ -117,7 +141,7 @@ public class VisibleTextFragmentList
             + string.substring(m.end());
         LOGGER.trace(L.m("  Ersetzen der Variable %1 --> %2", m.group(0), string));
         // Nach jeder Ersetzung wieder von vorne anfangen.
-        m = var.matcher(string);
+        m = VARIABLE.matcher(string);
       }
       else
       {
@@ -135,6 +159,54 @@ public class VisibleTextFragmentList
     return string;
   }
 
+  /**
+   * Sammelt für alle Knoten aus nodes die von ihnen aus sichtbaren Variablen
+   * (siehe {@link ConfigThingy#getNodesVisibleAt(ConfigThingy, String, ConfigThingy)})
+   * in einem einzigen Durchlauf durch root.
+   *
+   * @param scopes
+   *          die VAR-Knoten der Vorfahren von root, der innerste zuoberst.
+   */
+  private static void collectVariables(ConfigThingy root,
+      Deque<List<ConfigThingy>> scopes, Set<ConfigThingy> nodes,
+      Map<ConfigThingy, Map<String, String>> result)
+  {
+    if (nodes.contains(root) && !result.containsKey(root))
+    {
+      Map<String, String> variables = new HashMap<>();
+      for (List<ConfigThingy> scope : scopes)
+      {
+        for (ConfigThingy var : scope)
+        {
+          String name = var.getString("NAME");
+          String value = var.getString("VALUE");
+
+          if (name != null && value != null)
+          {
+            variables.put(name, value);
+          }
+        }
+      }
+      result.put(root, variables);
+    }
+
+    List<ConfigThingy> vars = new ArrayList<>();
+    for (ConfigThingy child : root)
+    {
+      if (child.getName().equals("VAR"))
+      {
+        vars.add(child);
+      }
+    }
+
+    scopes.push(vars);
+    for (ConfigThingy child : root)
+    {
+      collectVariables(child, scopes, nodes, result);
+    }
+    scopes.pop();
+  }
+
   /**
    * Gibt die URLs des unter der frag_id definierten Textfragmente zurück.
    *
@@ -148,76 +220,210 @@ public class VisibleTextFragmentList
   {
     ConfigThingy.checkIdentifier(fragId);
 
-    LinkedList<ConfigThingy> tfListe = new LinkedList<>();
-    ConfigThingy tfConf = conf.query("Textfragmente");
-    Iterator<ConfigThingy> iter = tfConf.iterator();
-    while (iter.hasNext())
+    long current = generation.get();
+    Index idx = index;
+    if (idx == null || idx.conf != conf || idx.generation != current)
     {
-      ConfigThingy confTextfragmente = iter.next();
-      tfListe.addFirst(confTextfragmente);
+      idx = new Index(conf, current);
+      index = idx;
     }
+    return new ArrayList<>(idx.getURLs(fragId));
+  }
 
-    Iterator<ConfigThingy> iterTbListe = tfListe.iterator();
-    List<String> urls = new ArrayList<>();
-    while (iterTbListe.hasNext())
-    {
-      ConfigThingy textfragmente = iterTbListe.next();
+  /**
+   * Die ausgewerteten Textfragmente einer Konfiguration.
+   */
+  private static final class Index
+  {
+    private final ConfigThingy conf;
+
+    private final long generation;
 
-      ConfigThingy mappingsConf = textfragmente.queryByChild("FRAG_ID");
+    /**
+     * Einträge, deren FRAG_ID keine Sonderzeichen enthält, nach FRAG_ID.
+     */
+    private final Map<String, List<Mapping>> literals = new HashMap<>();
 
-      for (ConfigThingy mappingConf : mappingsConf)
+    /**
+     * Alle anderen Einträge.
+     */
+    private final List<Mapping> patterns = new ArrayList<>();
+
+    /**
+     * Die bereits ermittelten URLs nach FRAG_ID.
+     */
+    private final Map<String, List<String>> urls = new ConcurrentHashMap<>();
+
+    private Index(ConfigThingy conf, long generation)
+    {
+      this.conf = conf;
+      this.generation = generation;
+
+      // Der zuletzt definierte Abschnitt gewinnt.
+      List<ConfigThingy> sections = new ArrayList<>();
+      for (ConfigThingy textfragmente : conf.query("Textfragmente"))
       {
+        sections.add(textfragmente);
+      }
+      Collections.reverse(sections);
 
-        String fragIdConf = null;
-        try
+      List<ConfigThingy> mappings = new ArrayList<>();
+      Set<ConfigThingy> urlNodes = Collections.newSetFromMap(new IdentityHashMap<>());
+      for (ConfigThingy textfragmente : sections)
+      {
+        for (ConfigThingy mappingConf : textfragmente.queryByChild("FRAG_ID"))
         {
-          fragIdConf = mappingConf.get("FRAG_ID").toString();
-          // Typischen Konfigurationsfehler korrigieren
-          if (".*".equals(fragIdConf)) {
-            fragIdConf = ".+";
+          mappings.add(mappingConf);
+          for (ConfigThingy url : mappingConf.query("URL", 1))
+          {
+            for (ConfigThingy urlNext : url)
+            {
+              urlNodes.add(urlNext);
+            }
           }
         }
-        catch (NodeNotFoundException e)
+      }
+
+      Map<ConfigThingy, Map<String, String>> variables = new IdentityHashMap<>();
+      collectVariables(conf, new ArrayDeque<>(), urlNodes, variables);
+
+      for (int i = 0; i < mappings.size(); i++)
+      {
+        Mapping mapping = createMapping(mappings.get(i), i, variables);
+        if (mapping == null)
         {
-          LOGGER.error(L.m("FRAG_ID Angabe fehlt in %1",
-            mappingConf.stringRepresentation()), e);
           continue;
         }
+        if (LITERAL.matcher(mapping.pattern.pattern()).matches())
+        {
+          literals.computeIfAbsent(mapping.pattern.pattern(), k -> new ArrayList<>())
+              .add(mapping);
+        } else
+        {
+          patterns.add(mapping);
+        }
+      }
+    }
+
+    private static Mapping createMapping(ConfigThingy mappingConf, int position,
+        Map<ConfigThingy, Map<String, String>> variables)
+    {
+      String fragIdConf = null;
+      try
+      {
+        fragIdConf = mappingConf.get("FRAG_ID").toString();
+        // Typischen Konfigurationsfehler korrigieren
+        if (".*".equals(fragIdConf)) {
+          fragIdConf = ".+";
+        }
+      }
+      catch (NodeNotFoundException e)
+      {
+        LOGGER.error(L.m("FRAG_ID Angabe fehlt in %1",
+          mappingConf.stringRepresentation()), e);
+        return null;
+      }
 
-        ConfigThingy url = null;
+      ConfigThingy url = null;
+      try
+      {
+        url = mappingConf.get("URL");
+      }
+      catch (NodeNotFoundException e)
+      {
+        LOGGER.trace("", e);
+        // kommt nicht vor, da obiger queryByChild immer URL liefert
+        return null;
+      }
+
+      Pattern pattern;
+      try
+      {
+        pattern = Pattern.compile(fragIdConf);
+      }
+      catch (PatternSyntaxException e)
+      {
+        LOGGER.error(L.m("Die FRAG_ID '%1' ist kein gültiger regulärer Ausdruck.",
+          fragIdConf), e);
+        return null;
+      }
+
+      List<String> urlStrs = new ArrayList<>();
+      for (ConfigThingy urlNext : url)
+      {
         try
         {
-          url = mappingConf.get("URL");
+          urlStrs.add(expandVariable(urlNext,
+            variables.getOrDefault(urlNext, Collections.emptyMap())));
         }
-        catch (NodeNotFoundException e)
+        catch (EndlessLoopException e)
         {
-          LOGGER.trace("", e);
-          // kommt nicht vor, da obiger queryByChild immer URL liefert
-          continue;
+          LOGGER.error(
+            L.m(
+              "Die URL zum Textfragment '%1' mit der FRAG_ID '%2' ist fehlerhaft.",
+              mappingConf.stringRepresentation(), fragIdConf), e);
         }
+      }
+      return new Mapping(position, pattern, urlStrs);
+    }
+
+    private List<String> getURLs(String fragId)
+    {
+      return urls.computeIfAbsent(fragId, this::lookup);
+    }
 
-        if (fragId.matches(fragIdConf))
+    /**
+     * Wendet alle Einträge, deren FRAG_ID auf fragId passt, in der Reihenfolge
+     * der Konfiguration an.
+     */
+    private List<String> lookup(String fragId)
+    {
+      List<Mapping> matching = new ArrayList<>(
+          literals.getOrDefault(fragId, Collections.emptyList()));
+      for (Mapping mapping : patterns)
+      {
+        if (mapping.pattern.matcher(fragId).matches())
         {
-          for (ConfigThingy urlNext : url)
-          {
-            try
-            {
-              String urlStr = expandVariable(urlNext, conf);
-              urlStr = fragId.replaceAll(fragIdConf, urlStr);
-              urls.add(urlStr);
-            }
-            catch (EndlessLoopException e)
-            {
-              LOGGER.error(
-                L.m(
-                  "Die URL zum Textfragment '%1' mit der FRAG_ID '%2' ist fehlerhaft.",
-                  mappingConf.stringRepresentation(), fragId), e);
-            }
-          }
+          matching.add(mapping);
         }
       }
+      matching.sort((a, b) -> Integer.compare(a.position, b.position));
+
+      List<String> result = new ArrayList<>();
+      for (Mapping mapping : matching)
+      {
+        for (String urlStr : mapping.urls)
+        {
+          result.add(mapping.pattern.matcher(fragId).replaceAll(urlStr));
+        }
+      }
+      return Collections.unmodifiableList(result);
+    }
+  }
+
+  /**
+   * Ein Eintrag eines Textfragmente-Abschnitts.
+   */
+  private static final class Mapping
+  {
+    /**
+     * Die Position des Eintrags in der Reihenfolge der Auswertung.
+     */
+    private final int position;
+
+    private final Pattern pattern;
+
+    /**
+     * Die URLs mit ersetzten Variablen.
+     */
+    private final List<String> urls;
+
+    private Mapping(int position, Pattern pattern, List<String> urls)
+    {
+      this.position = position;
+      this.pattern = pattern;
+      this.urls = urls;
     }
-    return urls;
   }
 
 }
@@ -30,6 +30,7 @@ import de.muenchen.allg.itd51.wollmux.event.handlers.OnAddPALChangeEventListener
 import de.muenchen.allg.itd51.wollmux.event.handlers.OnCloseAndOpenExt;
 import de.muenchen.allg.itd51.wollmux.event.handlers.OnCloseTextDocument;
 import de.muenchen.allg.itd51.wollmux.event.handlers.OnCollectNonWollMuxFormFieldsViaPrintModel;
+import de.muenchen.allg.itd51.wollmux.event.handlers.OnConfigChanged;
 import de.muenchen.allg.itd51.wollmux.event.handlers.OnDumpInfo;
 import de.muenchen.allg.itd51.wollmux.event.handlers.OnExecutePrintFunction;
 import de.muenchen.allg.itd51.wollmux.event.handlers.OnFocusFormField;
@@ -228,6 +229,18 @@ public class WollMuxEventListenerImpl implements WollMuxEventListener
     event.process();
   }
 
+  /**
+   * Execute the event
+   *
+   * @param event
+   *          The event.
+   */
+  @Subscribe
+  public void onConfigChanged(OnConfigChanged event)
+  {
+    event.process();
+  }
+
   /**
    * Execute the event
    *
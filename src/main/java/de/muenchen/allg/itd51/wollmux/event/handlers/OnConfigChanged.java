@@ -0,0 +1,75 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2020 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.event.handlers;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import de.muenchen.allg.itd51.wollmux.db.DatasourceJoinerFactory;
+import de.muenchen.allg.itd51.wollmux.document.VisibleTextFragmentList;
+
+/**
+ * Event for notification that the configuration has been changed while WollMux is
+ * running.
+ *
+ * The text fragments and datasources are read again from the new configuration. Other
+ * components can subscribe to this event to update themselves.
+ */
+public class OnConfigChanged extends WollMuxEvent
+{
+  private final List<URL> changedFiles;
+
+  /**
+   * Create the event.
+   *
+   * @param changedFiles
+   *          The changed configuration files.
+   */
+  public OnConfigChanged(Collection<URL> changedFiles)
+  {
+    this.changedFiles = Collections.unmodifiableList(new ArrayList<>(changedFiles));
+  }
+
+  public List<URL> getChangedFiles()
+  {
+    return changedFiles;
+  }
+
+  @Override
+  protected void doit()
+  {
+    VisibleTextFragmentList.invalidate();
+    DatasourceJoinerFactory.reset();
+    // updates the sender lists with the new datasource joiner
+    new OnPALChangedNotify().emit();
+  }
+
+  @Override
+  public String toString()
+  {
+    return this.getClass().getSimpleName() + "(" + changedFiles + ")";
+  }
+}
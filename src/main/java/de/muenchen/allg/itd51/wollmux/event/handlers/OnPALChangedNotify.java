@@ -30,9 +30,7 @@ import org.slf4j.LoggerFactory;
 import com.sun.star.lang.EventObject;
 
 import de.muenchen.allg.itd51.wollmux.PersoenlicheAbsenderliste;
-import de.muenchen.allg.itd51.wollmux.WollMuxFiles;
 import de.muenchen.allg.itd51.wollmux.XPALChangeEventListener;
-import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
 import de.muenchen.allg.itd51.wollmux.db.DatasourceJoinerFactory;
 import de.muenchen.allg.itd51.wollmux.db.LocalOverrideStorage;
 
@@ -54,11 +52,9 @@ public class OnPALChangedNotify extends WollMuxEvent
       listener.updateContent(new EventObject());
     }
 
-    ConfigThingy cache = DatasourceJoinerFactory.getDatasourceJoiner()
-        .saveCacheAndLOS(WollMuxFiles.getLosCacheFile());
     try
     {
-      WollMuxFiles.writeConfToFile(WollMuxFiles.getLosCacheFile(), cache);
+      DatasourceJoinerFactory.getDatasourceJoiner().saveLOS(false);
     } catch (IOException e)
     {
       LOGGER.error("Cache konnte nicht gespeichert werden.", e);
@@ -37,6 +37,7 @@ import java.util.UUID;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.eventbus.Subscribe;
 import com.sun.star.accessibility.XAccessible;
 import com.sun.star.awt.FocusEvent;
 import com.sun.star.awt.InvalidateStyle;
@@ -98,7 +99,9 @@ import de.muenchen.allg.itd51.wollmux.db.DatasourceJoinerFactory;
 import de.muenchen.allg.itd51.wollmux.dialog.InfoDialog;
 import de.muenchen.allg.itd51.wollmux.dialog.UIElementConfig;
 import de.muenchen.allg.itd51.wollmux.dialog.UIElementType;
+import de.muenchen.allg.itd51.wollmux.event.WollMuxEventHandler;
 import de.muenchen.allg.itd51.wollmux.event.handlers.OnAbout;
+import de.muenchen.allg.itd51.wollmux.event.handlers.OnConfigChanged;
 import de.muenchen.allg.itd51.wollmux.event.handlers.OnDumpInfo;
 import de.muenchen.allg.itd51.wollmux.event.handlers.OnKill;
 import de.muenchen.allg.itd51.wollmux.event.handlers.OnOpenDocument;
@@ -285,6 +288,7 @@ public class WollMuxSidebarContent extends ComponentBase implements XToolPanel,
       {
         readWollMuxBarConf(allowUserConfig, conf);
         createWollMuxBar(context, xMCF, conf);
+        WollMuxEventHandler.getInstance().registerListener(this);
       }
     } catch (Exception ex)
     {
@@ -292,6 +296,37 @@ public class WollMuxSidebarContent extends ComponentBase implements XToolPanel,
     }
   }
 
+  @Override
+  public void dispose()
+  {
+    WollMuxEventHandler.getInstance().unregisterListener(this);
+    super.dispose();
+  }
+
+  /**
+   * Rebuild the menu tree after the configuration has changed. Buttons, sender box and
+   * search box aren't changed.
+   *
+   * @param event
+   *          The event.
+   */
+  @Subscribe
+  public void onConfigChanged(OnConfigChanged event)
+  {
+    try
+    {
+      menus = new HashMap<>();
+      actions = new HashMap<>();
+      XMutableTreeNode root = dataModel.createNode("Vorlagen", false);
+      dataModel.setRoot(root);
+      createMenuTree(WollMuxFiles.getWollmuxConf(), true);
+      tree.expandNode(root);
+    } catch (NodeNotFoundException | ExpandVetoException ex)
+    {
+      LOGGER.error("", ex);
+    }
+  }
+
   @Override
   public XAccessible createAccessible(XAccessible arg0)
   {
@@ -392,23 +427,38 @@ public class WollMuxSidebarContent extends ComponentBase implements XToolPanel,
     controlContainer.addControl("line", line);
     layout.addControl(line, 1);
 
+    createMenuTree(conf, false);
+
+    tree.expandNode(root);
+  }
+
+  /**
+   * Create the menu entries and buttons of the WollMux Bar.
+   *
+   * @param conf
+   *          The configuration.
+   * @param treeOnly
+   *          If true, only the entries of the menu tree are created.
+   * @throws NodeNotFoundException
+   *           A menu entry for an unknown menu should be created.
+   */
+  private void createMenuTree(ConfigThingy conf, boolean treeOnly) throws NodeNotFoundException
+  {
     ConfigThingy menubar = conf.query("Menueleiste");
     ConfigThingy menuConf = conf.query("Menues");
 
     if (menubar.count() > 0)
     {
-      createUIElements(null, menubar.getLastChild(), false);
+      createUIElements(null, menubar.getLastChild(), false, treeOnly);
 
       for (ConfigThingy menuDef : menuConf.getLastChild())
       {
-        createUIElements(menuDef, menuDef.getLastChild(), true);
+        createUIElements(menuDef, menuDef.getLastChild(), true, treeOnly);
       }
     }
 
     ConfigThingy bkl = conf.query("Symbolleisten").query("Briefkopfleiste");
-    createUIElements(menuConf, bkl.getLastChild(), false);
-
-    tree.expandNode(root);
+    createUIElements(menuConf, bkl.getLastChild(), false, treeOnly);
   }
 
   /**
@@ -475,8 +525,11 @@ public class WollMuxSidebarContent extends ComponentBase implements XToolPanel,
    *          buttons otherwise menu entries.
    * @param parentEntry
    *          The parent menu entry.
+   * @param treeOnly
+   *          If true, only entries of the menu tree are created.
    */
-  private void createControl(UIElementConfig element, boolean isMenu, String parentEntry)
+  private void createControl(UIElementConfig element, boolean isMenu, String parentEntry,
+      boolean treeOnly)
   {
     if (element == null)
     {
@@ -484,6 +537,13 @@ public class WollMuxSidebarContent extends ComponentBase implements XToolPanel,
       return;
     }
 
+    boolean isTreeNode = element.getType() == UIElementType.MENU || (isMenu
+        && (element.getType() == UIElementType.MENUITEM || element.getType() == UIElementType.BUTTON));
+    if (treeOnly && !isTreeNode)
+    {
+      return;
+    }
+
     try
     {
       if (!isMenu && (element.getType() == UIElementType.MENUITEM || element.getType() == UIElementType.BUTTON))
@@ -832,9 +892,11 @@ public class WollMuxSidebarContent extends ComponentBase implements XToolPanel,
    * @param isMenu
    *          If false {@link UIElementType#MENUITEM} and {@link UIElementType#BUTTON} create
    *          buttons otherwise menu entries.
+   * @param treeOnly
+   *          If true, only entries of the menu tree are created.
    */
   private void createUIElements(ConfigThingy menuConf, ConfigThingy elementParent,
-      boolean isMenu)
+      boolean isMenu, boolean treeOnly)
   {
     for (ConfigThingy uiElementDesc : elementParent)
     {
@@ -847,10 +909,10 @@ public class WollMuxSidebarContent extends ComponentBase implements XToolPanel,
 
       if (isMenu)
       {
-        createControl(config, isMenu, menuConf.getName());
+        createControl(config, isMenu, menuConf.getName(), treeOnly);
       } else
       {
-        createControl(config, isMenu, null);
+        createControl(config, isMenu, null, treeOnly);
       }
     }
   }
@@ -0,0 +1,93 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2020 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ConfigSnapshotTest
+{
+
+  @TempDir
+  Path tmp;
+
+  private File createFile(String name, String content) throws Exception
+  {
+    File file = tmp.resolve(name).toFile();
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    file.setLastModified(System.currentTimeMillis() - 60000);
+    return file;
+  }
+
+  @Test
+  void testSnapshot() throws Exception
+  {
+    File main = createFile("main.conf", "A \"a\"\n%include \"inc.conf\"\nC(\"a\", \"b\")");
+    File inc = createFile("inc.conf", "B(X \"a\" Y \"Ümläut\")");
+    File snapshot = tmp.resolve("snapshot").toFile();
+    URL url = main.toURI().toURL();
+
+    ConfigThingy conf = ConfigSnapshot.load("", url, snapshot);
+    assertTrue(snapshot.isFile());
+
+    ConfigThingy cached = ConfigSnapshot.read(snapshot, "", url);
+    assertNotNull(cached);
+    assertEquals(conf.stringRepresentation(), cached.stringRepresentation());
+    assertEquals("Ümläut", cached.getString("Y"));
+    assertNull(ConfigSnapshot.read(snapshot, "other", url));
+    assertNull(ConfigSnapshot.read(snapshot, "", inc.toURI().toURL()));
+
+    inc.setLastModified(inc.lastModified() + 1000);
+    assertNull(ConfigSnapshot.read(snapshot, "", url));
+  }
+
+  @Test
+  void testNoSnapshotOfModifiedFiles() throws Exception
+  {
+    File main = createFile("main.conf", "A \"a\"");
+    URL url = main.toURI().toURL();
+    List<URL> sources = new ArrayList<>();
+    ConfigThingy conf = new ConfigThingy("", url, sources);
+    File snapshot = tmp.resolve("snapshot").toFile();
+
+    assertFalse(ConfigSnapshot.write(snapshot, conf, url, sources, main.lastModified() - 1));
+    assertFalse(snapshot.exists());
+    assertTrue(ConfigSnapshot.write(snapshot, conf, url, sources, main.lastModified()));
+    assertNotNull(ConfigSnapshot.read(snapshot, "", url));
+  }
+
+}
@@ -0,0 +1,124 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2020 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the old parser ({@link LegacyConfigParser}) with the streaming parser of
+ * {@link ConfigThingy} on the same configuration. Both read the data from memory, so only parsing
+ * is measured.
+ *
+ * Run with {@link #main(String[])} from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ConfigThingyParserBenchmark
+{
+  private URL url;
+
+  private String data;
+
+  /**
+   * Read the configuration into memory.
+   *
+   * @throws IOException
+   *           Couldn't read the configuration.
+   */
+  @Setup
+  public void setup() throws IOException
+  {
+    url = ConfigThingyParserBenchmark.class.getResource("performance.conf");
+    try (InputStream in = url.openStream())
+    {
+      data = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+
+  /**
+   * Parse with the old parser.
+   *
+   * @return The configuration.
+   * @throws IOException
+   *           Couldn't read the configuration.
+   * @throws SyntaxErrorException
+   *           The configuration is invalid.
+   */
+  @Benchmark
+  public ConfigThingy legacy() throws IOException, SyntaxErrorException
+  {
+    return LegacyConfigParser.parse("performance", url, new StringReader(data));
+  }
+
+  /**
+   * Parse with the streaming parser.
+   *
+   * @return The configuration.
+   * @throws IOException
+   *           Couldn't read the configuration.
+   * @throws SyntaxErrorException
+   *           The configuration is invalid.
+   */
+  @Benchmark
+  public ConfigThingy streaming() throws IOException, SyntaxErrorException
+  {
+    return new ConfigThingy("performance", url, new StringReader(data));
+  }
+
+  /**
+   * Run the benchmark.
+   *
+   * @param args
+   *          Unused.
+   * @throws RunnerException
+   *           The benchmark failed.
+   */
+  public static void main(String[] args) throws RunnerException
+  {
+    new Runner(new OptionsBuilder().include(ConfigThingyParserBenchmark.class.getSimpleName())
+        .build()).run();
+  }
+}
@@ -0,0 +1,222 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2020 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ConfigThingyTest
+{
+
+  @TempDir
+  Path tmp;
+
+  private URL createFile(String name, String content) throws IOException
+  {
+    File file = tmp.resolve(name).toFile();
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    return file.toURI().toURL();
+  }
+
+  @Test
+  void testParse() throws Exception
+  {
+    ConfigThingy conf = new ConfigThingy("root",
+        "A 'X''Y'\r\nB \"%n%%%u0041%\"; C(\"1\", '2') # Kommentar\n(D 'x')");
+    assertEquals(4, conf.count());
+    assertEquals("X'Y", conf.getString("A"));
+    assertEquals("\n%A%", conf.getString("B"));
+    assertEquals(2, conf.get("C").count());
+    assertEquals("x", conf.getString("D"));
+  }
+
+  @Test
+  void testSyntaxError()
+  {
+    SyntaxErrorException ex = assertThrows(SyntaxErrorException.class,
+        () -> new ConfigThingy("root", "A 'x'\r\n\rB $foo"));
+    assertEquals("null: Syntaxfehler in Zeile 3 bei Zeichen 3, Text an Fehlerstelle: \"$foo\"",
+        ex.getMessage());
+
+    ex = assertThrows(SyntaxErrorException.class, () -> new ConfigThingy("root", "A \"%u00\""));
+    assertEquals("null: Syntaxfehler in Zeile 1 bei Zeichen 3, Text an Fehlerstelle: \"\"%u00\"\"",
+        ex.getMessage());
+
+    ex = assertThrows(SyntaxErrorException.class, () -> new ConfigThingy("root", "A(\n"));
+    assertEquals("null: 1 schließende Klammern fehlen", ex.getMessage());
+  }
+
+  @Test
+  void testInclude() throws Exception
+  {
+    URL main = createFile("main.conf",
+        "A \"1\"\n%include \"b.conf\"\nX(%include \"c.conf\" Y \"2\")\n%include \"b.conf\"");
+    URL b = createFile("b.conf", "B \"b\"\n%include \"c.conf\"");
+    URL c = createFile("c.conf", "C(D \"d\")");
+
+    List<URL> sources = new ArrayList<>();
+    ConfigThingy conf = new ConfigThingy("root", main, sources);
+    assertEquals("A \"1\"\nB \"b\"\nC(D \"d\")\n\n\nX(\n  C(D \"d\")\n  Y \"2\"\n)\n\n"
+        + "B \"b\"\nC(D \"d\")\n\n", conf.stringRepresentation(true, '"'));
+    assertEquals(main.toExternalForm(), sources.get(0).toExternalForm());
+    assertEquals(b.toExternalForm(), sources.get(1).toExternalForm());
+    assertEquals(c.toExternalForm(), sources.get(2).toExternalForm());
+
+    // repeated includes don't share nodes
+    ConfigThingy first = conf.query("C", 1).getFirstChild();
+    ConfigThingy last = conf.query("C", 1).getLastChild();
+    assertNotSame(first, last);
+    assertNotSame(first.getFirstChild(), last.getFirstChild());
+  }
+
+  @Test
+  void testIncludeError() throws Exception
+  {
+    URL missing = createFile("missing.conf", "A \"1\"\n%include \"notthere.conf\"");
+    IOException iox = assertThrows(IOException.class, () -> new ConfigThingy("root", missing));
+    assertEquals(missing + " in Zeile 2 bei Zeichen 10: %include fehlgeschlagen: ",
+        iox.getMessage());
+
+    createFile("bad.conf", "B(\"x\"");
+    URL bad = createFile("syntax.conf", "%include \"bad.conf\"");
+    SyntaxErrorException ex = assertThrows(SyntaxErrorException.class,
+        () -> new ConfigThingy("root", bad));
+    URL badUrl = tmp.resolve("bad.conf").toFile().toURI().toURL();
+    assertEquals(badUrl + ": 1 schließende Klammern fehlen", ex.getMessage());
+
+    URL cycle = createFile("cycle.conf", "A \"1\"\n%include \"cycle.conf\"");
+    assertThrows(IOException.class, () -> new ConfigThingy("root", cycle));
+  }
+
+  @Test
+  void testQueryAfterModification() throws Exception
+  {
+    ConfigThingy conf = new ConfigThingy("root");
+    for (int i = 0; i < 100; i++)
+    {
+      ConfigThingy entry = conf.add("Entry");
+      entry.add("ID").add(Integer.toString(i));
+    }
+    ConfigThingy first = conf.getFirstChild();
+
+    // repeated queries use the index
+    for (int i = 0; i < 3; i++)
+    {
+      assertEquals(100, conf.query("ID").count());
+      assertEquals(100, conf.queryByChild("ID").count());
+      assertSame(first, conf.queryByChild("ID").getFirstChild());
+      assertEquals(0, conf.query("FOO").count());
+    }
+
+    conf.add("FOO").add("bar");
+    assertEquals("bar", conf.getString("FOO"));
+    assertEquals(1, conf.queryAll("FOO", 5, true).count());
+
+    first.getFirstChild().setName("FOO");
+    assertEquals(1, conf.query("FOO").count());
+    assertEquals(2, conf.queryAll("FOO", 5, false).count());
+
+    Iterator<ConfigThingy> iter = conf.iterator();
+    iter.next();
+    iter.remove();
+    assertEquals(99, conf.query("ID").count());
+    assertEquals(1, conf.queryAll("FOO", 5, false).count());
+  }
+
+  @Test
+  void testQueryAfterModificationOfSharedNode() throws Exception
+  {
+    ConfigThingy shared = new ConfigThingy("Shared");
+    ConfigThingy deep = shared.add("Level1").add("Level2");
+    ConfigThingy a = new ConfigThingy("a");
+    ConfigThingy b = new ConfigThingy("b");
+    for (int i = 0; i < 100; i++)
+    {
+      a.add("A").add(Integer.toString(i));
+      b.add("B").add(Integer.toString(i));
+    }
+    a.addChild(shared);
+    b.addChild(shared);
+
+    for (int i = 0; i < 3; i++)
+    {
+      assertEquals(0, a.query("X").count());
+      assertEquals(0, b.query("X").count());
+    }
+
+    deep.add("X");
+    assertEquals(1, a.query("X").count());
+    assertEquals(1, b.query("X").count());
+
+    // a modification of another tree keeps the results
+    b.add("Y");
+    assertEquals(0, a.query("Y").count());
+    assertEquals(1, a.query("X").count());
+    assertEquals(1, b.query("Y").count());
+
+    deep.getFirstChild().setName("Y");
+    assertEquals(0, a.query("X").count());
+    assertEquals(1, a.query("Y").count());
+    assertEquals(2, b.queryAll("Y", 10, false).count());
+  }
+
+  @Test
+  void testCompactNodes() throws Exception
+  {
+    ConfigThingy conf = new ConfigThingy("root", "A(B \"x\") C(B \"x\") D()");
+
+    // names and values are shared within one parse
+    ConfigThingy first = conf.get("A").getFirstChild();
+    ConfigThingy second = conf.get("C").getFirstChild();
+    assertSame(first.getName(), second.getName());
+    assertSame(first.getFirstChild().getName(), second.getFirstChild().getName());
+
+    // leaves and single children can still be modified
+    ConfigThingy d = conf.get("D");
+    d.add("E");
+    d.add("F");
+    assertEquals(2, d.count());
+    Iterator<ConfigThingy> iter = first.iterator();
+    iter.next();
+    iter.remove();
+    assertEquals(0, first.count());
+    first.add("y");
+    assertEquals("y", conf.get("A").getString("B"));
+  }
+
+}
@@ -0,0 +1,200 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2020 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ConfigWatcherTest
+{
+
+  @TempDir
+  Path tmp;
+
+  private URL createFile(String name, String content) throws Exception
+  {
+    Path file = tmp.resolve(name);
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    return file.toUri().toURL();
+  }
+
+  @Test
+  void testReloadInclude() throws Exception
+  {
+    URL main = createFile("main.conf",
+        "A \"a\"\n%include \"b.conf\"\nX(%include \"e.conf\" Y \"y\")\nZ(%include \"b.conf\")");
+    URL b = createFile("b.conf", "B \"b\"\nC(D \"d\" %include \"e.conf\")");
+    URL e = createFile("e.conf", "");
+    List<URL> sources = new ArrayList<>();
+    ConfigThingy conf = new ConfigThingy("", main, sources);
+    ConfigWatcher watcher = new ConfigWatcher(conf, main, sources);
+
+    // the first reload re-reads everything
+    createFile("b.conf", "B \"b2\"\nC(D \"d\" %include \"e.conf\")");
+    assertTrue(watcher.reload(List.of(b)));
+    assertEquals("b2", conf.getString("B"));
+    assertEquals("b2", conf.get("Z").getString("B"));
+
+    ConfigThingy x = conf.get("X");
+    ConfigThingy y = x.get("Y");
+    ConfigThingy a = conf.get("A");
+    createFile("e.conf", "E \"e\"\nF(G \"g\")");
+    assertTrue(watcher.reload(List.of(e)));
+    assertEquals(new ConfigThingy("", main).stringRepresentation(), conf.stringRepresentation());
+    assertEquals("e", x.getString("E"));
+    assertEquals("e", conf.get("Z").get("C").getString("E"));
+    assertSame(a, conf.get("A"));
+    assertSame(x, conf.get("X"));
+    assertSame(y, x.get("Y"));
+
+    createFile("e.conf", "");
+    assertTrue(watcher.reload(List.of(e)));
+    assertEquals(new ConfigThingy("", main).stringRepresentation(), conf.stringRepresentation());
+
+    createFile("e.conf", "H \"h\"");
+    assertTrue(watcher.reload(List.of(e)));
+    assertEquals(new ConfigThingy("", main).stringRepresentation(), conf.stringRepresentation());
+    assertEquals("h", conf.get("Z").get("C").getString("H"));
+
+    assertFalse(watcher.reload(List.of(createFile("other.conf", ""))));
+  }
+
+  @Test
+  void testReloadWithError() throws Exception
+  {
+    URL main = createFile("main.conf", "A \"a\"\nX(%include \"e.conf\")");
+    URL e = createFile("e.conf", "E \"e\"");
+    List<URL> sources = new ArrayList<>();
+    ConfigThingy conf = new ConfigThingy("", main, sources);
+    ConfigWatcher watcher = new ConfigWatcher(conf, main, sources);
+    String expected = conf.stringRepresentation();
+
+    createFile("e.conf", "E (");
+    assertThrows(SyntaxErrorException.class, () -> watcher.reload(List.of(e)));
+    assertEquals(expected, conf.stringRepresentation());
+
+    createFile("e.conf", "E \"e\"");
+    assertTrue(watcher.reload(List.of(main)));
+    createFile("e.conf", "E (F \"f\"");
+    assertThrows(SyntaxErrorException.class, () -> watcher.reload(List.of(e)));
+    assertEquals(expected, conf.stringRepresentation());
+  }
+
+  @Test
+  void testReloadWithCycle() throws Exception
+  {
+    URL main = createFile("main.conf", "A \"a\"\nX(%include \"e.conf\")");
+    URL e = createFile("e.conf", "E \"e\"");
+    List<URL> sources = new ArrayList<>();
+    ConfigThingy conf = new ConfigThingy("", main, sources);
+    ConfigWatcher watcher = new ConfigWatcher(conf, main, sources);
+    String expected = conf.stringRepresentation();
+
+    createFile("e.conf", "E \"e\"\n%include \"f.conf\"");
+    createFile("f.conf", "F(%include \"e.conf\")");
+    assertThrows(IOException.class, () -> watcher.reload(List.of(e)));
+    assertEquals(expected, conf.stringRepresentation());
+    assertIncludesFinish();
+
+    // the same for a single included file after a complete reload
+    createFile("e.conf", "E \"e\"");
+    assertTrue(watcher.reload(List.of(main)));
+    createFile("e.conf", "E \"e\"\n%include \"e.conf\"");
+    assertThrows(IOException.class, () -> watcher.reload(List.of(e)));
+    assertEquals(expected, conf.stringRepresentation());
+    assertIncludesFinish();
+  }
+
+  /**
+   * Included files are read in the background, so a cycle must not start new reads
+   * after the reload has failed.
+   */
+  private static void assertIncludesFinish() throws InterruptedException
+  {
+    for (int i = 0; i < 50; i++)
+    {
+      boolean busy = Thread.getAllStackTraces().keySet().stream()
+          .anyMatch(t -> t.getName().startsWith("ConfigThingy-Include-")
+              && t.getState() == Thread.State.RUNNABLE);
+      if (!busy)
+      {
+        return;
+      }
+      Thread.sleep(100);
+    }
+    fail("Includes are still read");
+  }
+
+  @Test
+  void testSnapshotAfterReload() throws Exception
+  {
+    URL main = createFile("main.conf", "A \"a\"\nX(%include \"e.conf\")");
+    URL e = createFile("e.conf", "E \"e\"");
+    File snapshot = tmp.resolve("main.conf.snapshot").toFile();
+    List<URL> sources = new ArrayList<>();
+    ConfigThingy conf = new ConfigThingy("", main, sources);
+    ConfigWatcher watcher = new ConfigWatcher(conf, main, sources, snapshot);
+    assertFalse(watcher.writeSnapshot());
+
+    createFile("e.conf", "E \"e2\"");
+    assertTrue(watcher.reload(List.of(e)));
+    // files modified just now aren't snapshotted
+    assertFalse(watcher.writeSnapshot());
+    assertNull(ConfigSnapshot.read(snapshot, "", main));
+
+    createFile("e.conf", "E \"e3\"");
+    assertTrue(watcher.reload(List.of(e)));
+    FileTime past = FileTime.fromMillis(System.currentTimeMillis() - 10000);
+    Files.setLastModifiedTime(tmp.resolve("main.conf"), past);
+    Files.setLastModifiedTime(tmp.resolve("e.conf"), past);
+    assertTrue(watcher.writeSnapshot());
+    assertEquals(conf.stringRepresentation(),
+        ConfigSnapshot.read(snapshot, "", main).stringRepresentation());
+    assertEquals("e3", ConfigSnapshot.read(snapshot, "", main).get("X").getString("E"));
+
+    createFile("e.conf", "E \"e4\"");
+    assertTrue(watcher.reload(List.of(e)));
+    Files.setLastModifiedTime(tmp.resolve("e.conf"), past);
+    assertTrue(watcher.writeSnapshot());
+    assertEquals("e4", ConfigSnapshot.read(snapshot, "", main).get("X").getString("E"));
+    assertFalse(watcher.writeSnapshot());
+  }
+}
@@ -0,0 +1,368 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2020 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.config;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The parser of {@link ConfigThingy} as it was before tokens were streamed to the parser. The
+ * input is split into a list of all tokens with a regular expression per token and
+ * line.substring() after each token, then the tree is built from the list.
+ *
+ * Only used as reference in benchmarks.
+ */
+final class LegacyConfigParser
+{
+  private static final Pattern WHITESPACE = Pattern.compile("^(\\p{Space}|\\u00A0|,|;|\\uFEFF)+");
+
+  private static final Pattern KEY = Pattern.compile("^([a-zA-Z_][a-zA-Z_0-9]*)");
+
+  private static final String INCLUDE = "%include";
+
+  private enum TokenType
+  {
+    KEY,
+    STRING,
+    OPENPAREN,
+    CLOSEPAREN,
+    END,
+    INCLUDE;
+  }
+
+  private static final class Token
+  {
+    private final TokenType type;
+
+    private final String content;
+
+    private final URL url;
+
+    private final int line;
+
+    private final int position;
+
+    private Token(TokenType type, String content, URL url, int line, int position)
+    {
+      this.type = type;
+      this.content = content;
+      this.url = url;
+      this.line = line;
+      this.position = position;
+    }
+  }
+
+  private LegacyConfigParser()
+  {
+    // nothing to initialize
+  }
+
+  /**
+   * Parse the data of read in the context of url.
+   *
+   * @param name
+   *          The name of the root node.
+   * @param url
+   *          The context of %include statements.
+   * @param read
+   *          The data.
+   * @return The configuration.
+   * @throws IOException
+   *           The data or an included file can't be read.
+   * @throws SyntaxErrorException
+   *           The data is invalid.
+   */
+  static ConfigThingy parse(String name, URL url, Reader read)
+      throws IOException, SyntaxErrorException
+  {
+    ConfigThingy root = new ConfigThingy(name);
+    childrenFromUrl(root, url, read);
+    return root;
+  }
+
+  private static void childrenFromUrl(ConfigThingy root, URL url, Reader read)
+      throws IOException, SyntaxErrorException
+  {
+    try (Reader in = read)
+    {
+      Deque<ConfigThingy> stack = new ArrayDeque<>();
+      stack.push(root);
+      Iterator<Token> liter = tokenize(url, in).iterator();
+      Token token1;
+      Token token2;
+      do
+      {
+        token1 = liter.next();
+        ConfigThingy child;
+        switch (token1.type)
+        {
+        case INCLUDE:
+          token2 = liter.next();
+          if (token2.type != TokenType.STRING || token2.content.isEmpty())
+          {
+            throw new SyntaxErrorException(token2.url
+                + ": URL-String (umschlossen von Gänsefüßchen) erwartet in Zeile " + token2.line
+                + " bei Zeichen " + token2.position);
+          }
+          URL includeURL = new URL(url, ConfigThingy.urlEncode(token2.content));
+          childrenFromUrl(stack.peek(), includeURL,
+              new InputStreamReader(includeURL.openStream(), ConfigThingy.CHARSET));
+          break;
+
+        case KEY:
+          token2 = liter.next();
+          switch (token2.type)
+          {
+          case OPENPAREN:
+            child = new ConfigThingy(token1.content);
+            stack.peek().addChild(child);
+            stack.push(child);
+            break;
+          case STRING:
+            child = new ConfigThingy(token1.content);
+            child.addChild(new ConfigThingy(token2.content));
+            stack.peek().addChild(child);
+            break;
+          default:
+            throw new SyntaxErrorException(token2.url + ": Syntaxfehler in Zeile " + token2.line
+                + " bei Zeichen " + token2.position);
+          }
+          break;
+
+        case STRING:
+          stack.peek().addChild(new ConfigThingy(token1.content));
+          break;
+
+        case CLOSEPAREN:
+          if (stack.size() <= 1)
+            throw new SyntaxErrorException(token1.url
+                + ": Klammer ')' ohne passende Klammer '(' in Zeile " + token1.line
+                + " bei Zeichen " + token1.position);
+          stack.pop();
+          break;
+
+        case OPENPAREN:
+          child = new ConfigThingy("");
+          stack.peek().addChild(child);
+          stack.push(child);
+          break;
+
+        default:
+          break;
+        }
+      } while (token1.type != TokenType.END);
+
+      if (stack.size() > 1)
+      {
+        throw new SyntaxErrorException(
+            token1.url + ": " + (stack.size() - 1) + " schließende Klammern fehlen");
+      }
+    }
+  }
+
+  private static List<Token> tokenize(URL url, Reader read)
+      throws IOException, SyntaxErrorException
+  {
+    List<Token> tokens = new ArrayList<>();
+    BufferedReader in = new BufferedReader(read);
+    String line;
+    int lineNo = 0;
+    while (null != (line = in.readLine()))
+    {
+      ++lineNo;
+      int pos = 0;
+      while (line.length() > 0)
+      {
+        Matcher wsm = WHITESPACE.matcher(line);
+        if (wsm.find())
+        {
+          pos += wsm.end();
+          line = line.substring(wsm.end());
+          if (line.length() == 0)
+          {
+            continue;
+          }
+        }
+
+        int tokenLength;
+        try
+        {
+          Matcher km = KEY.matcher(line);
+          if (km.find())
+          {
+            tokenLength = km.end();
+            tokens.add(new Token(TokenType.KEY, km.group(1), url, lineNo, pos + 1));
+          } else if (0 != (tokenLength = stringAtStartOf(line)))
+          {
+            tokens.add(new Token(TokenType.STRING, parseString(line, tokenLength), url, lineNo,
+                pos + 1));
+          } else if (line.startsWith("("))
+          {
+            tokenLength = 1;
+            tokens.add(new Token(TokenType.OPENPAREN, "(", url, lineNo, pos + 1));
+          } else if (line.startsWith(")"))
+          {
+            tokenLength = 1;
+            tokens.add(new Token(TokenType.CLOSEPAREN, ")", url, lineNo, pos + 1));
+          } else if (line.startsWith(INCLUDE))
+          {
+            tokenLength = INCLUDE.length();
+            tokens.add(new Token(TokenType.INCLUDE, INCLUDE, url, lineNo, pos + 1));
+          } else if (line.startsWith("#"))
+          {
+            tokenLength = line.length();
+          } else
+          {
+            throw new SyntaxErrorException(url + ": Syntaxfehler in Zeile " + lineNo
+                + " bei Zeichen " + (pos + 1) + ", Text an Fehlerstelle: \"" + line + "\"");
+          }
+        } catch (IllegalArgumentException x)
+        {
+          throw new SyntaxErrorException(url + ": Syntaxfehler in Zeile " + lineNo
+              + " bei Zeichen " + (pos + 1) + ", Text an Fehlerstelle: \"" + line + "\"", x);
+        }
+
+        pos += tokenLength;
+        line = line.substring(tokenLength);
+      }
+    }
+
+    ++lineNo;
+    for (int i = 0; i < 7; ++i)
+    {
+      tokens.add(new Token(TokenType.END, "", url, lineNo, 0));
+    }
+    return tokens;
+  }
+
+  private static int stringAtStartOf(String str)
+  {
+    if (str.length() < 2)
+    {
+      return 0;
+    }
+    char quote = str.charAt(0);
+    if (quote != '"' && quote != '\'')
+    {
+      return 0;
+    }
+    int idx = 1;
+    while (true)
+    {
+      idx = str.indexOf(quote, idx);
+      if (idx < 0)
+      {
+        return 0;
+      }
+      ++idx;
+      if (idx >= str.length() || str.charAt(idx) != quote)
+      {
+        return idx;
+      }
+      ++idx;
+    }
+  }
+
+  /**
+   * Evaluate %-escapes and doubled quotes of the string token at the start of tokenData.
+   */
+  private static String parseString(String tokenData, int len)
+  {
+    char quote = tokenData.charAt(0);
+    StringBuilder buffy = new StringBuilder(tokenData.substring(1, len - 1));
+    String quoteStr = Character.toString(quote);
+    int startidx = 0;
+    int idx;
+    while (true)
+    {
+      idx = buffy.indexOf("%", startidx);
+      int idx2 = buffy.indexOf(quoteStr, startidx);
+      if (idx < 0 && idx2 < 0)
+      {
+        break;
+      }
+
+      String repstr;
+      int replen;
+      if (idx < 0 || (idx2 >= 0 && idx2 < idx))
+      {
+        idx = idx2;
+        replen = 2;
+        repstr = quoteStr;
+      } else
+      {
+        if (idx + 1 >= buffy.length())
+        {
+          break;
+        }
+        repstr = Character.toString(buffy.charAt(idx));
+        replen = 1;
+        switch (buffy.charAt(idx + 1))
+        {
+        case 'n':
+          repstr = "\n";
+          replen = 2;
+          break;
+        case '%':
+          repstr = "%";
+          replen = 2;
+          break;
+        case 'u':
+          repstr = parseUnicode(buffy, idx + 2);
+          replen = 6;
+          break;
+        default:
+          break;
+        }
+      }
+      buffy.replace(idx, idx + replen, repstr);
+      startidx = idx + repstr.length();
+    }
+    return buffy.toString();
+  }
+
+  private static String parseUnicode(StringBuilder str, int idx)
+  {
+    if (idx + 4 > str.length())
+      throw new IllegalArgumentException("Incomplete %u escape!");
+    String code = str.substring(idx, idx + 4);
+    try
+    {
+      return Character.toString((char) Integer.parseInt(code, 16));
+    } catch (NumberFormatException x)
+    {
+      throw new IllegalArgumentException(
+          "Incorrect hex number in %u escape: \"%u" + code + "\"");
+    }
+  }
+}
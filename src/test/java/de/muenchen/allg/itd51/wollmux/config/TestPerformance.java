@@ -22,9 +22,14 @@
  */
 package de.muenchen.allg.itd51.wollmux.config;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
 
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
@@ -59,4 +64,42 @@ public class TestPerformance
     assertTrue(time < 1000, "Performance is bad: " + time + " millis");
   }
 
+  /**
+   * Parse a large configuration with {@link LegacyConfigParser} and {@link ConfigThingy}. Both
+   * parsers have to produce the same result and the streaming parser has to be faster. Use
+   * {@link ConfigThingyParserBenchmark} for reliable numbers.
+   *
+   * @throws IOException
+   *           Couldn't read the configuration.
+   * @throws SyntaxErrorException
+   *           The configuration is invalid.
+   */
+  @Test
+  public void configThingyPerformance() throws IOException, SyntaxErrorException
+  {
+    final URL url = getClass().getResource("performance.conf");
+    final String data;
+    try (InputStream in = url.openStream())
+    {
+      data = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+    assertEquals(
+        LegacyConfigParser.parse("performance", url, new StringReader(data)).stringRepresentation(),
+        new ConfigThingy("performance", url, new StringReader(data)).stringRepresentation());
+    // warm up
+    for (int i = 0; i < 5; i++)
+    {
+      LegacyConfigParser.parse("performance", url, new StringReader(data));
+      new ConfigThingy("performance", url, new StringReader(data));
+    }
+    long start = System.currentTimeMillis();
+    LegacyConfigParser.parse("performance", url, new StringReader(data));
+    final long legacy = System.currentTimeMillis() - start;
+    start = System.currentTimeMillis();
+    new ConfigThingy("performance", url, new StringReader(data));
+    final long streaming = System.currentTimeMillis() - start;
+    assertTrue(streaming < legacy,
+        "Performance is bad: " + streaming + " millis (legacy " + legacy + " millis)");
+  }
+
 }
@@ -26,10 +26,13 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.util.HashMap;
@@ -39,6 +42,7 @@ import java.util.Map.Entry;
 import javax.xml.XMLConstants;
 import javax.xml.transform.Source;
 import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamSource;
 import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
 import javax.xml.validation.Validator;
@@ -169,4 +173,46 @@ public class TestWithInclude
     }
   }
 
+  /**
+   * Generate a configuration out of a configuration without creating a XML-document in memory.
+   * The result has to be the same as with a XML-document.
+   *
+   * @throws XMLGeneratorException
+   *           Generator problems.
+   * @throws SAXException
+   *           Malformed XML-document generated.
+   * @throws IOException
+   *           Couldn't read or write.
+   * @throws URISyntaxException
+   */
+  @Test
+  public void streamWithInclude() throws XMLGeneratorException, SAXException, IOException,
+      URISyntaxException
+  {
+    final File in = new File(getClass().getResource("scannerTest.conf").toURI());
+    final File out = new File(in.getParentFile(), "tmp.conf");
+    final File in2 = new File(getClass().getResource("scannerTest2.conf").toURI());
+    final File out2 = new File(in2.getParentFile(), "tmp2.conf");
+    Files.copy(in.toPath(), out.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    Files.copy(in2.toPath(), out2.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    final Map<String, String> expected = new ConfGenerator(
+        new XMLGenerator(out2.toURI().toURL()).generateXML()).generateConfMap("UTF-8");
+
+    final ByteArrayOutputStream xml = new ByteArrayOutputStream();
+    new XMLGenerator(out2.toURI().toURL()).generateXML(xml);
+    final SchemaFactory schemaFactory = SchemaFactory
+        .newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+    final Schema schema = schemaFactory.newSchema(new File("src/main/resources/configuration.xsd"));
+    schema.newValidator().validate(new StreamSource(new ByteArrayInputStream(xml.toByteArray())));
+
+    ConfGenerator.generateConf(new ByteArrayInputStream(xml.toByteArray()));
+    assertEquals(2, expected.size(), "Different number of files");
+    for (Entry<String, String> entry : expected.entrySet())
+    {
+      assertEquals(entry.getValue(),
+          new String(Files.readAllBytes(new File(entry.getKey()).toPath()), StandardCharsets.UTF_8),
+          "Different content");
+    }
+  }
+
 }
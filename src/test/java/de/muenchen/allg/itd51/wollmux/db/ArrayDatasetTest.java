@@ -0,0 +1,89 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2020 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class ArrayDatasetTest
+{
+
+  @Test
+  void testDatasetSchema()
+  {
+    DatasetSchema schema = new DatasetSchema(List.of("column", "column2", "column"));
+    assertEquals(2, schema.size());
+    assertEquals(List.of("column", "column2"), schema.getColumns());
+    assertEquals(0, schema.indexOf("column"));
+    assertEquals(1, schema.indexOf("column2"));
+    assertEquals(-1, schema.indexOf("column3"));
+    assertTrue(schema.contains("column2"));
+    assertFalse(schema.contains("column3"));
+  }
+
+  @Test
+  void testArrayDataset() throws Exception
+  {
+    DatasetSchema schema = new DatasetSchema(List.of("column", "column2", "column3"));
+    ArrayDataset dataset = new ArrayDataset(schema, "Test", new String[] { "value", "", null });
+
+    assertEquals("Test", dataset.getKey());
+    assertEquals(schema, dataset.getSchema());
+    assertEquals("value", dataset.get("column"));
+    assertEquals("", dataset.get("column2"));
+    assertNull(dataset.get("column3"));
+    assertThrows(ColumnNotFoundException.class, () -> dataset.get("column4"));
+    assertThrows(IllegalArgumentException.class,
+        () -> new ArrayDataset(schema, "Test", new String[] { "value" }));
+
+    Dataset dataset2 = new ArrayDataset(schema, "Test",
+        Map.of("column", "value", "column4", "value4"));
+    assertEquals("value", dataset2.get("column"));
+    assertNull(dataset2.get("column2"));
+    assertThrows(ColumnNotFoundException.class, () -> dataset2.get("column4"));
+  }
+
+  @Test
+  void testAgreesWith()
+  {
+    DatasetSchema schema = new DatasetSchema(List.of("column", "column2", "column3"));
+    ArrayDataset full = new ArrayDataset(schema, "Test", new String[] { "value", "value2", null });
+
+    DatasetSchema projection = new DatasetSchema(List.of("column3", "column"));
+    assertTrue(
+        new ArrayDataset(projection, "Test", new String[] { null, "value" }).agreesWith(full));
+    assertFalse(
+        new ArrayDataset(projection, "Test", new String[] { "", "value" }).agreesWith(full));
+    assertFalse(full.agreesWith(
+        new ArrayDataset(projection, "Test", new String[] { null, "value" })));
+  }
+
+}
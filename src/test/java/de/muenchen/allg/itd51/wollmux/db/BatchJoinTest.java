@@ -0,0 +1,146 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2020 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import de.muenchen.allg.itd51.wollmux.db.mock.MockDataset;
+
+class BatchJoinTest
+{
+
+  private int finds;
+
+  private final AtomicInteger findAnys = new AtomicInteger();
+
+  @Test
+  void testBatchJoin() throws Exception
+  {
+    List<Dataset> left = new ArrayList<>();
+    for (int i = 0; i < 250; i++)
+    {
+      left.add(new MockDataset("left" + i, Map.of("id", "id" + (i % 130), "nr", "" + (i % 2))));
+    }
+    left.add(new MockDataset("empty", Map.of("id", "", "nr", "0")));
+    left.add(new MockDataset("star", Map.of("id", "id1*", "nr", "0")));
+
+    List<Dataset> rightData = new ArrayList<>();
+    for (int i = 0; i < 120; i++)
+    {
+      rightData.add(new MockDataset("right" + i, Map.of("ID", "ID" + i, "NR", "" + (i % 2))));
+      rightData.add(new MockDataset("other" + i, Map.of("ID", "id" + i, "NR", "2")));
+    }
+    Datasource right = new RAMDatasource("right", List.of("ID", "NR"), rightData)
+    {
+      @Override
+      public QueryResults find(List<QueryPart> query)
+      {
+        finds++;
+        return super.find(query);
+      }
+
+      @Override
+      public QueryResults findAny(List<List<QueryPart>> queries)
+      {
+        findAnys.incrementAndGet();
+        List<Dataset> results = new ArrayList<>();
+        for (List<QueryPart> query : queries)
+        {
+          super.find(query).forEach(results::add);
+        }
+        return new QueryResultsList(results);
+      }
+    };
+
+    BatchJoin join = new BatchJoin(right, new String[] { "id", "nr" }, new String[] { "ID", "NR" });
+    join.fetch(new QueryResultsList(left.subList(0, 250)));
+    assertEquals(2, findAnys.get());
+    assertEquals(0, finds);
+
+    for (Dataset ds : left)
+    {
+      List<String> expected = new ArrayList<>();
+      right.find(List.of(new QueryPart("ID", ds.get("id")), new QueryPart("NR", ds.get("nr"))))
+          .forEach(found -> expected.add(found.getKey()));
+      List<String> actual = new ArrayList<>();
+      join.find(ds).forEach(found -> actual.add(found.getKey()));
+      assertEquals(expected, actual, ds.getKey());
+    }
+    assertEquals(254, finds);
+  }
+
+  @Test
+  void testUnmappedResults() throws Exception
+  {
+    List<Dataset> left = List.of(new MockDataset("left1", Map.of("id", "id1")),
+        new MockDataset("left2", Map.of("id", "id2")), new MockDataset("left3", Map.of("id", "id3")));
+    Dataset alias = new MockDataset("alias", Map.of("ID", "other"));
+    Datasource right = new RAMDatasource("right", List.of("ID"),
+        List.of(new MockDataset("right1", Map.of("ID", "id1")), alias))
+    {
+      // the server finds alias by another value of a multi-valued attribute
+      @Override
+      public QueryResults find(List<QueryPart> query)
+      {
+        finds++;
+        if (query.get(0).getSearchString().equals("id2"))
+        {
+          return new QueryResultsList(List.of(alias));
+        }
+        return super.find(query);
+      }
+
+      @Override
+      public QueryResults findAny(List<List<QueryPart>> queries)
+      {
+        findAnys.incrementAndGet();
+        List<Dataset> results = new ArrayList<>();
+        for (List<QueryPart> query : queries)
+        {
+          find(query).forEach(results::add);
+        }
+        return new QueryResultsList(results);
+      }
+    };
+
+    BatchJoin join = new BatchJoin(right, new String[] { "id" }, new String[] { "ID" });
+    join.fetch(left);
+    assertEquals(1, findAnys.get());
+    finds = 0;
+
+    assertEquals("right1", join.find(left.get(0)).iterator().next().getKey());
+    assertEquals(0, finds);
+    assertEquals("alias", join.find(left.get(1)).iterator().next().getKey());
+    assertEquals(1, finds);
+    assertEquals(0, join.find(left.get(2)).size());
+    assertEquals(2, finds);
+  }
+
+}
@@ -0,0 +1,141 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2020 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import de.muenchen.allg.itd51.wollmux.db.mock.MockDatasource;
+
+class CachingDatasourceTest
+{
+
+  @Test
+  void testFind() throws Exception
+  {
+    CachingDatasource ds = new CachingDatasource(new MockDatasource(), 60, 10);
+    assertEquals("mock", ds.getName());
+    assertEquals(List.of("column"), ds.getSchema());
+
+    assertEquals(1, ds.find(List.of(new QueryPart("column", "value2"))).size());
+    assertEquals(1, ds.find(List.of(new QueryPart("column", "VALUE2"))).size());
+    assertEquals(1, ds.findAsync(List.of(new QueryPart("column", "value2"))).get().size());
+    List<QueryResults> pages = new ArrayList<>();
+    ds.find(List.of(new QueryPart("column", "value2")), pages::add);
+    assertEquals(1, pages.size());
+    assertEquals(1, ds.getFindStats().missCount());
+    assertEquals(3, ds.getFindStats().hitCount());
+
+    assertEquals(0, ds.find(List.of(new QueryPart("column", "value3"))).size());
+    assertEquals(2, ds.getFindStats().missCount());
+  }
+
+  @Test
+  void testFindColumns() throws Exception
+  {
+    CachingDatasource ds = new CachingDatasource(new MockDatasource(), 60, 10);
+    assertEquals(1, ds.find(List.of(new QueryPart("column", "value2")), List.of("column")).size());
+    assertEquals(1, ds.find(List.of(new QueryPart("column", "value2")), List.of("column")).size());
+    assertEquals(1, ds.getFindStats().hitCount());
+
+    // full results are used for projections
+    ds.find(List.of(new QueryPart("column", "value")));
+    List<QueryResults> pages = new ArrayList<>();
+    ds.find(List.of(new QueryPart("column", "value")), List.of("column"), pages::add);
+    assertEquals(1, pages.size());
+    assertEquals(4, ds.getFindStats().missCount());
+    assertEquals(2, ds.getFindStats().hitCount());
+  }
+
+  @Test
+  void testGetDatasetsByKey() throws Exception
+  {
+    CachingDatasource ds = new CachingDatasource(new MockDatasource(), 60, 10);
+    assertEquals(2, ds.getDatasetsByKey(List.of("ds", "ds2")).size());
+    assertEquals(2, ds.getDatasetsByKey(List.of("ds2", "ds")).size());
+    assertEquals(2, ds.getDatasetsByKeyAsync(List.of("ds", "ds2")).get().size());
+    assertEquals(1, ds.getKeyStats().missCount());
+    assertEquals(2, ds.getKeyStats().hitCount());
+  }
+
+  @Test
+  void testInvalidate() throws Exception
+  {
+    CachingDatasource ds = new CachingDatasource(new MockDatasource(), 60, 10);
+    ds.find(List.of(new QueryPart("column", "value2")));
+    ds.getDatasetsByKey(List.of("ds"));
+    ds.invalidate();
+    ds.find(List.of(new QueryPart("column", "value2")));
+    ds.getDatasetsByKey(List.of("ds"));
+    assertEquals(2, ds.getFindStats().missCount());
+    assertEquals(2, ds.getKeyStats().missCount());
+  }
+
+  @Test
+  void testIncomplete() throws Exception
+  {
+    CachingDatasource ds = new CachingDatasource(new MockDatasource()
+    {
+      @Override
+      public QueryResults getDatasetsByKey(Collection<String> keys)
+      {
+        return new QueryResultsList(new ArrayList<Dataset>(0), false);
+      }
+
+      @Override
+      public QueryResults find(List<QueryPart> query)
+      {
+        return new QueryResultsList(new ArrayList<Dataset>(0), false);
+      }
+    }, 60, 10);
+    ds.find(List.of(new QueryPart("column", "value2")));
+    ds.find(List.of(new QueryPart("column", "value2")));
+    ds.findAsync(List.of(new QueryPart("column", "value2"))).get();
+    List<QueryResults> pages = new ArrayList<>();
+    ds.find(List.of(new QueryPart("column", "value2")), pages::add);
+    assertEquals(1, pages.size());
+    assertFalse(pages.get(0).isComplete());
+    assertEquals(4, ds.getFindStats().missCount());
+    assertEquals(0, ds.getFindStats().hitCount());
+
+    ds.getDatasetsByKey(List.of("ds"));
+    ds.getDatasetsByKeyAsync(List.of("ds")).get();
+    assertEquals(2, ds.getKeyStats().missCount());
+    assertEquals(0, ds.getKeyStats().hitCount());
+  }
+
+  @Test
+  void testTtl() throws Exception
+  {
+    CachingDatasource ds = new CachingDatasource(new MockDatasource(), 0, 10);
+    ds.find(List.of(new QueryPart("column", "value2")));
+    ds.find(List.of(new QueryPart("column", "value2")));
+    assertEquals(2, ds.getFindStats().missCount());
+  }
+}
@@ -0,0 +1,111 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2020 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import de.muenchen.allg.itd51.wollmux.db.mock.MockDataset;
+
+class ColumnIndexTest
+{
+
+  private static final List<String> VALUES = List.of("Müller", "MÜLLER", "Mueller", "Maier",
+      "Meier", "Meyer", "Müller-Lüdenscheidt", "Schmidt", "Schmitt", "", "a", "ab", "ba");
+
+  private static final List<String> SEARCHES = List.of("müller", "Müller*", "*müller", "*ÜLL*",
+      "M*", "*er", "*ei*", "*idt", "Schm*", "*-*", "a", "a*", "*a", "*a*", "ab*", "*ab*", "*b",
+      "Maier", "Meyer*", "unbekannt", "*unbekannt*", "*", "");
+
+  private final List<Dataset> data = createData();
+
+  private List<Dataset> createData()
+  {
+    List<Dataset> datasets = new ArrayList<>();
+    for (int i = 0; i < VALUES.size(); i++)
+    {
+      datasets.add(new MockDataset("ds" + i, "column", VALUES.get(i)));
+    }
+    datasets.add(new MockDataset("null", "column", null));
+    datasets.add(new MockDataset("other", "other", "Müller"));
+    return datasets;
+  }
+
+  @Test
+  void testIndexes()
+  {
+    RAMDatasource scan = new RAMDatasource("scan", List.of("column"), data);
+    for (ColumnIndex.Type type : ColumnIndex.Type.values())
+    {
+      RAMDatasource indexed = new RAMDatasource("indexed", List.of("column"), data,
+          Map.of("column", type));
+      for (String search : SEARCHES)
+      {
+        List<QueryPart> query = List.of(new QueryPart("column", search));
+        assertEquals(keys(scan.find(query)), keys(indexed.find(query)), type + " " + search);
+      }
+    }
+  }
+
+  @Test
+  void testLookup()
+  {
+    ColumnIndex exact = ColumnIndex.create(ColumnIndex.Type.EXACT, "column", data);
+    assertEquals(2, exact.lookup(new QueryPart("column", "müller")).length);
+    assertEquals(null, exact.lookup(new QueryPart("column", "Müller*")));
+
+    ColumnIndex prefix = ColumnIndex.create(ColumnIndex.Type.PREFIX, "column", data);
+    assertEquals(3, prefix.lookup(new QueryPart("column", "müller*")).length);
+    assertEquals(null, prefix.lookup(new QueryPart("column", "*müller")));
+
+    ColumnIndex infix = ColumnIndex.create(ColumnIndex.Type.INFIX, "column", data);
+    assertEquals(2, infix.lookup(new QueryPart("column", "*Schm*")).length);
+    assertEquals(0, infix.lookup(new QueryPart("column", "*xyz*")).length);
+    assertEquals(null, infix.lookup(new QueryPart("column", "*ab*")));
+    assertEquals(1, infix.lookup(new QueryPart("column", "ab")).length);
+  }
+
+  @Test
+  void testGetDatasetsByKey()
+  {
+    List<Dataset> datasets = new ArrayList<>(data);
+    datasets.add(new MockDataset("ds1", "column", "duplicate"));
+    RAMDatasource ds = new RAMDatasource("ram", List.of("column"), datasets);
+
+    assertEquals(List.of("ds1", "ds3", "ds1"), keys(ds.getDatasetsByKey(List.of("ds3", "ds1", "ds3"))));
+    assertEquals(List.of(), keys(ds.getDatasetsByKey(List.of("unknown"))));
+  }
+
+  private static List<String> keys(QueryResults results)
+  {
+    List<String> keys = new ArrayList<>();
+    results.forEach(ds -> keys.add(ds.getKey()));
+    return keys;
+  }
+
+}
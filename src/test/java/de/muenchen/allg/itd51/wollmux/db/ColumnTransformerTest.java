@@ -30,7 +30,9 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.junit.jupiter.api.Test;
 
@@ -38,6 +40,7 @@ import de.muenchen.allg.itd51.wollmux.db.mock.MockDataset;
 import de.muenchen.allg.itd51.wollmux.db.mock.MockQueryResults;
 import de.muenchen.allg.itd51.wollmux.func.Function;
 import de.muenchen.allg.itd51.wollmux.func.StringLiteralFunction;
+import de.muenchen.allg.itd51.wollmux.func.ValueFunction;
 import de.muenchen.allg.itd51.wollmux.func.Values;
 
 class ColumnTransformerTest
@@ -51,8 +54,11 @@ class ColumnTransformerTest
 
     Map<String, Function> map = new HashMap<>();
     map.put("trafo", new StringLiteralFunction("transformed"));
+    map.put("trafo2", new ValueFunction("column"));
     transformer = new ColumnTransformer(map);
     assertTrue(transformer.hasPseudoColumn("trafo"));
+    assertEquals(Set.of("column", "other"),
+        transformer.getSourceColumns(List.of("trafo", "trafo2", "other")));
 
     assertEquals("transformed", transformer.get("trafo", new MockDataset()));
     assertEquals("value", transformer.get("column", new MockDataset()));
@@ -172,4 +172,58 @@ public class DatasetPredicateTest
     assertEquals(3, count, "Given datasets have a wrong match count with given QueryParts:");
   }
 
+  @Test
+  public void wildcards() throws Exception
+  {
+    Dataset ds = new SimpleDataset("Test", Map.of("Vorname", "Sheldon"));
+
+    assertTrue(test(ds, "Vorname", "Shel*"));
+    assertTrue(test(ds, "Vorname", "*don"));
+    assertTrue(test(ds, "Vorname", "*eld*"));
+    assertTrue(test(ds, "Vorname", "*Sheldon*"));
+    assertFalse(test(ds, "Vorname", "Shel"));
+    assertFalse(test(ds, "Vorname", "*Shel"));
+    assertFalse(test(ds, "Vorname", "don*"));
+    assertFalse(test(ds, "Vorname", "*Leonard*"));
+    assertFalse(test(ds, "Vorname", "SheldonCooper*"));
+  }
+
+  @Test
+  public void caseInsensitive() throws Exception
+  {
+    Dataset ds = new SimpleDataset("Test", Map.of("Vorname", "Sheldon"));
+
+    assertTrue(test(ds, "Vorname", "sheldon"));
+    assertTrue(test(ds, "Vorname", "SHEL*"));
+    assertTrue(test(ds, "Vorname", "*DON"));
+    assertTrue(test(ds, "Vorname", "*eLd*"));
+  }
+
+  @Test
+  public void noRegex() throws Exception
+  {
+    Dataset ds = new SimpleDataset("Test", Map.of("Titel", "Dr. (med.)"));
+
+    assertTrue(test(ds, "Titel", "Dr. (med.)"));
+    assertTrue(test(ds, "Titel", "*(med*"));
+    assertFalse(test(ds, "Titel", "Dr.*med.*"));
+    assertFalse(test(new SimpleDataset("Test", Map.of("Titel", "Drx (med)")), "Titel", "Dr. (med)"));
+  }
+
+  @Test
+  public void nullValue() throws Exception
+  {
+    Map<String, String> testMap = new HashMap<>();
+    testMap.put("Vorname", null);
+    Dataset ds = new SimpleDataset("Test", testMap);
+
+    assertFalse(test(ds, "Vorname", "Sheldon"));
+    assertFalse(test(ds, "Vorname", "*Sheldon*"));
+  }
+
+  private boolean test(Dataset ds, String column, String search)
+  {
+    return DatasetPredicate.makePredicate(List.of(new QueryPart(column, search))).test(ds);
+  }
+
 }
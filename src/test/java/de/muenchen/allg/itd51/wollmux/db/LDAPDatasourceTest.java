@@ -26,6 +26,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.junit.jupiter.api.AfterAll;
@@ -37,6 +38,7 @@ import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
 import com.unboundid.ldap.listener.InMemoryListenerConfig;
 
 import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
+import de.muenchen.allg.itd51.wollmux.config.ConfigurationErrorException;
 
 class LDAPDatasourceTest
 {
@@ -118,4 +120,55 @@ class LDAPDatasourceTest
     assertEquals(1, results.size());
   }
 
+  @Test
+  void testLDAPDatasourceColumns() throws Exception
+  {
+    String url = "ldap://localhost:" + server.getListenPort();
+    Datasource ds = new LDAPDatasource(null, new ConfigThingy("", "NAME \"ldap\" URL \"" + url + "\" BASE_DN \""
+        + BASE_DN
+        + "\" OBJECT_CLASS \"person\" Spalten ((DB_SPALTE \"column\" PATH \"0:sn\") (DB_SPALTE \"column2\" PATH \"-1:ou\") (DB_SPALTE \"column3\" PATH \"0:cn\")) Schluessel (\"column\")"),
+        null);
+
+    QueryResults results = ds.find(List.of(new QueryPart("column", "Ldap")), List.of("column3"));
+    assertEquals(1, results.size());
+    Dataset data = results.iterator().next();
+    assertEquals("(&(sn=Ldap))==%§%==", data.getKey());
+    assertEquals("Test1 Ldap", data.get("column3"));
+    assertEquals(0, ((LDAPDatasource) ds).getAttributeCacheStats().requestCount());
+    // column2 is loaded on first access
+    assertEquals("Users", data.get("column2"));
+    assertEquals(1, ((LDAPDatasource) ds).getAttributeCacheStats().requestCount());
+  }
+
+  @Test
+  void testLDAPDatasourcePool() throws Exception
+  {
+    String url = "ldap://localhost:" + server.getListenPort();
+    Datasource ds = new LDAPDatasource(null, new ConfigThingy("", "NAME \"ldap\" URL \"" + url + "\" BASE_DN \""
+        + BASE_DN
+        + "\" OBJECT_CLASS \"person\" POOL_SIZE \"1\" POOL_IDLE_TIMEOUT \"10\" PAGE_SIZE \"1\" Spalten ((DB_SPALTE \"column\" PATH \"0:sn\") (DB_SPALTE \"column2\" PATH \"-1:ou\")) Schluessel (\"column\")"),
+        null);
+    for (int i = 0; i < 3; i++)
+    {
+      QueryResults results = ds.find(List.of(new QueryPart("column", "Ldap")));
+      assertEquals(1, results.size());
+      assertEquals("Users", results.iterator().next().get("column2"));
+    }
+
+    LDAPDatasource pooled = (LDAPDatasource) ds;
+    // relative attribute fetched once, then cached across searches
+    assertEquals(1, pooled.getAttributeCacheStats().missCount());
+    assertEquals(2, pooled.getAttributeCacheStats().hitCount());
+
+    List<QueryResults> pages = new ArrayList<>();
+    ds.find(List.of(new QueryPart("column", "L*")), pages::add);
+    assertEquals(1, pages.size());
+    assertEquals(1, pages.get(0).size());
+
+    assertThrows(ConfigurationErrorException.class, () -> new LDAPDatasource(null,
+        new ConfigThingy("", "NAME \"ldap\" URL \"" + url + "\" BASE_DN \"" + BASE_DN
+            + "\" OBJECT_CLASS \"person\" POOL_SIZE \"0\" Spalten ((DB_SPALTE \"column\" PATH \"0:sn\")) Schluessel (\"column\")"),
+        null));
+  }
+
 }
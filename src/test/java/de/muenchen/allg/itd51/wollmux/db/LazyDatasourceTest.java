@@ -0,0 +1,125 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2020 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
+import de.muenchen.allg.itd51.wollmux.config.ConfigurationErrorException;
+import de.muenchen.allg.itd51.wollmux.db.mock.MockDatasource;
+
+class LazyDatasourceTest
+{
+
+  @Test
+  void testLazyDatasource() throws Exception
+  {
+    AtomicInteger created = new AtomicInteger();
+    LazyDatasource ds = new LazyDatasource("mock", "mock", () -> {
+      created.incrementAndGet();
+      return new MockDatasource();
+    });
+    assertEquals("mock", ds.getName());
+    assertFalse(ds.isInitialized());
+    assertEquals(0, created.get());
+
+    assertEquals(List.of("column"), ds.getSchema());
+    assertTrue(ds.isInitialized());
+    assertEquals(1, ds.find(List.of(new QueryPart("column", "value2"))).size());
+    assertEquals(1, ds.getDatasetsByKey(List.of("ds")).size());
+    assertEquals(2, ds.getContents().size());
+    assertEquals(1, created.get());
+  }
+
+  @Test
+  void testLazyDatasourceAsync() throws Exception
+  {
+    LazyDatasource ds = new LazyDatasource("mock", "mock", MockDatasource::new);
+    assertEquals(1, ds.findAsync(List.of(new QueryPart("column", "value2"))).get().size());
+    assertTrue(ds.isInitialized());
+    assertEquals(2, ds.getContentsAsync().get().size());
+  }
+
+  @Test
+  void testLazyDatasourceError() throws Exception
+  {
+    AtomicInteger created = new AtomicInteger();
+    LazyDatasource ds = new LazyDatasource("mock", "mock", () -> {
+      created.incrementAndGet();
+      throw new ConfigurationErrorException("error");
+    });
+    assertThrows(ConfigurationErrorException.class, ds::getSchema);
+    assertThrows(ConfigurationErrorException.class, ds::getSchema);
+    assertThrows(ConfigurationErrorException.class, () -> ds.getDatasetsByKey(List.of("ds")));
+    // no retry
+    assertEquals(1, created.get());
+  }
+
+  @Test
+  void testLazyDependencies() throws Exception
+  {
+    AtomicInteger created = new AtomicInteger();
+    Map<String, Datasource> nameToDatasource = new HashMap<>();
+    LazyDatasource mock = new LazyDatasource("mock", "mock", () -> {
+      created.incrementAndGet();
+      return new MockDatasource();
+    });
+    nameToDatasource.put("mock", mock);
+    nameToDatasource.put("mock2", new LazyDatasource("mock2", "mock", () -> {
+      created.incrementAndGet();
+      return new MockDatasource("mock2", List.of("column"), List.of());
+    }));
+    LazyDatasource union = new LazyDatasource("union", "union",
+        () -> new UnionDatasource(nameToDatasource,
+            new ConfigThingy("", "NAME \"union\" SOURCE1 \"mock\" SOURCE2 \"mock2\""), null));
+    assertEquals(0, created.get());
+
+    assertEquals(List.of("column"), union.getSchema());
+    assertTrue(mock.isInitialized());
+    assertEquals(2, created.get());
+    assertEquals(1, union.find(List.of(new QueryPart("column", "value2"))).size());
+  }
+
+  @Test
+  void testLazyDependencyError() throws Exception
+  {
+    Map<String, Datasource> nameToDatasource = new HashMap<>();
+    nameToDatasource.put("mock", new LazyDatasource("mock", "mock", MockDatasource::new));
+    nameToDatasource.put("mock2", new LazyDatasource("mock2", "mock", () -> null));
+    LazyDatasource union = new LazyDatasource("union", "union",
+        () -> new UnionDatasource(nameToDatasource,
+            new ConfigThingy("", "NAME \"union\" SOURCE1 \"mock\" SOURCE2 \"mock2\""), null));
+    assertThrows(ConfigurationErrorException.class, union::getSchema);
+    assertThrows(ConfigurationErrorException.class, () -> union.find(List.of()));
+  }
+}
@@ -0,0 +1,156 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2020 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.Hashtable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.naming.CommunicationException;
+import javax.naming.Context;
+import javax.naming.NamingException;
+import javax.naming.directory.DirContext;
+import javax.naming.ldap.LdapContext;
+import javax.naming.spi.InitialContextFactory;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class LdapContextPoolTest
+{
+  private static final AtomicInteger created = new AtomicInteger();
+
+  private static final AtomicInteger closed = new AtomicInteger();
+
+  private Hashtable<String, Object> environment;
+
+  @BeforeEach
+  public void setup()
+  {
+    created.set(0);
+    closed.set(0);
+    environment = new Hashtable<>();
+    environment.put(Context.INITIAL_CONTEXT_FACTORY, CountingContextFactory.class.getName());
+  }
+
+  @Test
+  void testReuse() throws Exception
+  {
+    LdapContextPool pool = new LdapContextPool(environment, 2, 60000);
+    LdapContext ctx = pool.borrow(100);
+    pool.release(ctx, false);
+    assertSame(ctx, pool.borrow(100));
+    LdapContext ctx2 = pool.borrow(100);
+    assertNotSame(ctx, ctx2);
+    assertEquals(2, created.get());
+    assertEquals(2, pool.size());
+    pool.release(ctx, false);
+    pool.release(ctx2, false);
+    assertEquals(2, pool.idleSize());
+    // most recently released context first
+    assertSame(ctx2, pool.borrow(100));
+  }
+
+  @Test
+  void testMaxSize() throws Exception
+  {
+    LdapContextPool pool = new LdapContextPool(environment, 1, 60000);
+    LdapContext ctx = pool.borrow(100);
+    assertThrows(NamingException.class, () -> pool.borrow(50));
+
+    CompletableFuture<LdapContext> waiting = CompletableFuture.supplyAsync(() -> {
+      try
+      {
+        return pool.borrow(5000);
+      } catch (NamingException e)
+      {
+        throw new IllegalStateException(e);
+      }
+    });
+    Thread.sleep(50);
+    pool.release(ctx, false);
+    assertSame(ctx, waiting.get());
+    assertEquals(1, created.get());
+  }
+
+  @Test
+  void testBroken() throws Exception
+  {
+    LdapContextPool pool = new LdapContextPool(environment, 1, 60000);
+    LdapContext ctx = pool.borrow(100);
+    pool.release(ctx, true);
+    assertEquals(0, pool.size());
+    assertEquals(1, closed.get());
+    assertNotSame(ctx, pool.borrow(100));
+    assertEquals(2, created.get());
+
+    assertTrue(LdapContextPool.isBroken(new CommunicationException()));
+    assertFalse(LdapContextPool.isBroken(new NamingException()));
+  }
+
+  @Test
+  void testEvictIdle() throws Exception
+  {
+    LdapContextPool pool = new LdapContextPool(environment, 2, 20);
+    LdapContext ctx = pool.borrow(100);
+    LdapContext ctx2 = pool.borrow(100);
+    pool.release(ctx, false);
+    Thread.sleep(50);
+    pool.evictIdle();
+    assertEquals(1, pool.size());
+    assertEquals(0, pool.idleSize());
+    assertEquals(1, closed.get());
+    pool.release(ctx2, false);
+    pool.evictIdle();
+    // not idle long enough
+    assertEquals(1, pool.idleSize());
+  }
+
+  /**
+   * Creates contexts which count how often they are created and closed.
+   */
+  public static class CountingContextFactory implements InitialContextFactory
+  {
+    @Override
+    public Context getInitialContext(Hashtable<?, ?> environment)
+    {
+      created.incrementAndGet();
+      return (Context) Proxy.newProxyInstance(DirContext.class.getClassLoader(),
+          new Class<?>[] { DirContext.class }, (proxy, method, args) -> {
+            if ("close".equals(method.getName()))
+            {
+              closed.incrementAndGet();
+            }
+            return null;
+          });
+    }
+  }
+}
@@ -27,12 +27,19 @@ import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.File;
+import java.io.RandomAccessFile;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
 import de.muenchen.allg.itd51.wollmux.db.LocalOverrideStorageStandardImpl.LOSDJDataset;
@@ -44,6 +51,9 @@ class LocalOverrideStorageStandardImplTest
   URL cache = LocalOverrideStorageStandardImplTest.class.getResource("cache.conf");
   LocalOverrideStorage los;
 
+  @TempDir
+  Path tmp;
+
   @BeforeEach
   void setup() throws Exception
   {
@@ -95,6 +105,83 @@ class LocalOverrideStorageStandardImplTest
     assertEquals(List.of("dummy"), los.getSchema());
   }
 
+  @Test
+  void testSave() throws Exception
+  {
+    File cacheFile = tmp.resolve("cache.conf").toFile();
+    Files.copy(Paths.get(cache.toURI()), cacheFile.toPath());
+    assertTrue(cacheFile.setLastModified(System.currentTimeMillis() - 10000));
+    byte[] legacy = Files.readAllBytes(cacheFile.toPath());
+
+    // import of cache.conf and first snapshot
+    LocalOverrideStorage storage = new LocalOverrideStorageStandardImpl(cacheFile, null);
+    storage.save(false);
+    File snapshot = tmp.resolve("cache.conf.snapshot").toFile();
+    File journal = tmp.resolve("cache.conf.journal").toFile();
+    assertTrue(snapshot.isFile());
+    assertEquals(16, journal.length());
+
+    // changes are appended to the journal
+    DJDataset ds = storage.getSelectedDataset();
+    ds.set("column", "changed");
+    ds.copy();
+    DJDataset newDs = storage.newDataset();
+    newDs.set("column2", "new");
+    newDs.select();
+    storage.save(false);
+    assertTrue(journal.length() > 16);
+    assertEquals(new String(legacy), new String(Files.readAllBytes(cacheFile.toPath())));
+    assertEquals(dump(storage), dump(new LocalOverrideStorageStandardImpl(cacheFile, null)));
+
+    // an incomplete record is ignored
+    LocalOverrideStorage loaded = new LocalOverrideStorageStandardImpl(cacheFile, null);
+    assertEquals(3, loaded.size());
+    assertEquals("new", loaded.getSelectedDataset().get("column2"));
+    List<Dataset> datasets = new ArrayList<>();
+    loaded.forEach(datasets::add);
+    ((DJDataset) datasets.get(1)).discardLocalOverride("column");
+    loaded.save(false);
+    String expected = dump(loaded);
+    ((DJDataset) datasets.get(0)).remove();
+    loaded.getSelectedDataset().set("column2", "lost");
+    loaded.save(false);
+    try (RandomAccessFile file = new RandomAccessFile(journal, "rw"))
+    {
+      file.setLength(file.length() - 3);
+    }
+    loaded = new LocalOverrideStorageStandardImpl(cacheFile, null);
+    assertEquals(expected, dump(loaded));
+    Iterator<Dataset> iter = loaded.iterator();
+    iter.next();
+    assertEquals("value1", iter.next().get("column"));
+
+    // compaction starts a new journal
+    loaded.save(true);
+    assertEquals(16, journal.length());
+    assertEquals(expected, dump(new LocalOverrideStorageStandardImpl(cacheFile, null)));
+
+    // a newer cache.conf is imported
+    assertTrue(cacheFile.setLastModified(snapshot.lastModified() + 10000));
+    assertEquals(dump(los), dump(new LocalOverrideStorageStandardImpl(cacheFile, null)));
+  }
+
+  private String dump(LocalOverrideStorage storage) throws Exception
+  {
+    StringBuilder dump = new StringBuilder();
+    for (Dataset dataset : storage)
+    {
+      DJDataset ds = (DJDataset) dataset;
+      dump.append(ds.getKey()).append(ds.hasBackingStore());
+      for (String column : storage.getSchema())
+      {
+        dump.append(',').append(ds.get(column)).append(ds.hasLocalOverride(column));
+      }
+      dump.append('\n');
+    }
+    return dump.append(storage.getSelectedDataset().getKey())
+        .append(storage.getSelectedDatasetSameKeyIndex()).toString();
+  }
+
   @Test
   void testRefreshFromDatabase() throws Exception
   {
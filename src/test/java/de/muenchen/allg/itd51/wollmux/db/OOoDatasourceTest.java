@@ -26,11 +26,15 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.junit.jupiter.api.Test;
 
 import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
+import de.muenchen.allg.itd51.wollmux.config.ConfigurationErrorException;
 import de.muenchen.allg.itd51.wollmux.test.OfficeTest;
 
 class OOoDatasourceTest extends OfficeTest
@@ -55,6 +59,62 @@ class OOoDatasourceTest extends OfficeTest
 
     results = ds.find(List.of(new QueryPart("Author", "Gris, Myriam")));
     assertEquals(5, results.size());
+    // same statement on the same connection
+    results = ds.find(List.of(new QueryPart("Author", "GRIS, MYRIAM")));
+    assertEquals(5, results.size());
+    results = ds.find(List.of(new QueryPart("Author", "O'Gris")));
+    assertEquals(0, results.size());
+  }
+
+  @Test
+  void testOOoDatasourceWithoutIdleConnection() throws Exception
+  {
+    Datasource ds = new OOoDatasource(null, new ConfigThingy("",
+        "NAME \"ooo\" SOURCE \"Bibliography\" TABLE \"biblio\" Schluessel (\"Identifier\") CONNECTION_IDLE_TIMEOUT \"0\""));
+    assertEquals(1, ds.getDatasetsByKey(List.of("Identifier#ARJ00#")).size());
+    assertEquals(1, ds.getDatasetsByKey(List.of("Identifier#ARJ00#")).size());
+  }
+
+  @Test
+  void testOOoDatasourceKeyChunks() throws Exception
+  {
+    Datasource ds = new OOoDatasource(null, new ConfigThingy("",
+        "NAME \"ooo\" SOURCE \"Bibliography\" TABLE \"biblio\" Schluessel (\"Identifier\") KEY_CHUNK_SIZE \"2\" CONNECTIONS \"2\""));
+    List<String> keys = new ArrayList<>();
+    for (Dataset data : ds.getContents())
+    {
+      if (keys.size() < 5)
+      {
+        keys.add(data.getKey());
+      }
+    }
+    QueryResults results = ds.getDatasetsByKey(keys);
+    assertEquals(5, results.size());
+    Set<String> found = new HashSet<>();
+    results.forEach(data -> found.add(data.getKey()));
+    assertEquals(new HashSet<>(keys), found);
+  }
+
+  @Test
+  void testOOoDatasourceColumns() throws Exception
+  {
+    Datasource ds = new OOoDatasource(null,
+        new ConfigThingy("", "NAME \"ooo\" SOURCE \"Bibliography\" TABLE \"biblio\" Schluessel (\"Identifier\")"));
+    QueryResults results = ds.find(List.of(new QueryPart("Identifier", "ARJ00")), List.of("Author"));
+    assertEquals(1, results.size());
+    Dataset data = results.iterator().next();
+    assertEquals("Identifier#ARJ00#", data.getKey());
+    Dataset full = ds.getDatasetsByKey(List.of("Identifier#ARJ00#")).iterator().next();
+    assertEquals(full.get("Author"), data.get("Author"));
+    // not fetched by the search, loaded on first access
+    assertEquals("99", data.get("Pages"));
+  }
+
+  @Test
+  void testOOoDatasourceInvalidIdleTimeout() throws Exception
+  {
+    assertThrows(ConfigurationErrorException.class, () -> new OOoDatasource(null, new ConfigThingy("",
+        "NAME \"ooo\" SOURCE \"Bibliography\" TABLE \"biblio\" Schluessel (\"Identifier\") CONNECTION_IDLE_TIMEOUT \"-1\"")));
   }
 
 }
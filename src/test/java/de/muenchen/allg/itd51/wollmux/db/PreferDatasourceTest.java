@@ -64,6 +64,50 @@ class PreferDatasourceTest
     assertEquals(1, results.size());
   }
 
+  @Test
+  void testConcurrentSources() throws Exception
+  {
+    Map<String, Datasource> nameToDatasource = new HashMap<>();
+    nameToDatasource.put("mock", new UnionDatasourceTest.SlowDatasource("mock",
+        List.of(new MockDataset("ds", "column", "value2"))));
+    nameToDatasource.put("mock2", new UnionDatasourceTest.SlowDatasource("mock2",
+        List.of(new MockDataset("ds", "column", "value"), new MockDataset("ds3", "column", "value"))));
+    Datasource ds = new PreferDatasource(nameToDatasource,
+        new ConfigThingy("", "NAME \"prefer\" SOURCE \"mock\" OVER \"mock2\""), null);
+
+    long start = System.currentTimeMillis();
+    // both sources concurrently, then the lookup of hidden datasets (ds)
+    QueryResults results = ds.find(List.of(new QueryPart("column", "value")));
+    assertTrue(System.currentTimeMillis() - start < 3 * UnionDatasourceTest.SlowDatasource.DELAY);
+    assertEquals(1, results.size());
+    assertEquals("ds3", results.iterator().next().getKey());
+  }
+
+  @Test
+  void testTimeout() throws Exception
+  {
+    Map<String, Datasource> nameToDatasource = new HashMap<>();
+    nameToDatasource.put("mock", new UnionDatasourceTest.SlowDatasource("mock",
+        List.of(new MockDataset("ds", "column", "value"))));
+    nameToDatasource.put("mock2", new MockDatasource("mock2", List.of("column"),
+        List.of(new MockDataset("ds3", "column", "value"))));
+    Datasource ds = new PreferDatasource(nameToDatasource,
+        new ConfigThingy("", "NAME \"prefer\" SOURCE \"mock\" OVER \"mock2\""), null);
+
+    long timeout = UnionDatasourceTest
+        .setDatasourceTimeout(UnionDatasourceTest.SlowDatasource.DELAY / 3);
+    try
+    {
+      // only asynchronous queries drop slow sources
+      assertEquals(1, ds.findAsync(List.of(new QueryPart("column", "value"))).get().size());
+      assertEquals(2, ds.find(List.of(new QueryPart("column", "value"))).size());
+      assertEquals(2, ds.getDatasetsByKey(List.of("ds", "ds3")).size());
+    } finally
+    {
+      UnionDatasourceTest.setDatasourceTimeout(timeout);
+    }
+  }
+
   @Test
   void testInvalidPreferDatasource() throws Exception
   {
@@ -26,7 +26,10 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
 
 import org.junit.jupiter.api.Test;
 
@@ -64,4 +67,24 @@ class QueryResultsSetTest
     assertEquals(2, res.size());
   }
 
+  @Test
+  void testQueryResultsSetByKey() throws Exception
+  {
+    QueryResultsSet res = new QueryResultsSet();
+    assertTrue(res.isEmpty());
+
+    res.addAll(new MockQueryResults(new MockDataset("ds1", "column", "value"),
+        new MockDataset(new String("ds2"), "column", "value2"), new MockDataset("ds1", "column", "value3")));
+    assertFalse(res.add(new MockDataset(new String("ds2"), "column", "value4")));
+    assertTrue(res.add(new SimpleDataset("ds1", Map.of("column", "value5"))));
+    assertTrue(res.add(new MockDataset("ds3", "column", "value6")));
+
+    List<String> values = new ArrayList<>();
+    for (Dataset ds : res)
+    {
+      values.add(ds.get("column"));
+    }
+    assertEquals(List.of("value", "value2", "value5", "value6"), values);
+  }
+
 }
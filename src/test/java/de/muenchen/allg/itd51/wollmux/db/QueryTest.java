@@ -23,6 +23,7 @@
 package de.muenchen.allg.itd51.wollmux.db;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.List;
@@ -40,6 +41,10 @@ class QueryTest
     assertEquals(1, query.numberOfQueryParts());
     assertTrue(query.iterator().hasNext());
     assertEquals(1, query.getQueryParts().size());
+    assertNull(query.getColumns());
+
+    query = new Query("ds", List.of(new QueryPart("column", "search")), List.of("column"));
+    assertEquals(List.of("column"), query.getColumns());
   }
 
 }
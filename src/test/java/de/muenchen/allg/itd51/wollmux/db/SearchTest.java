@@ -25,11 +25,14 @@ package de.muenchen.allg.itd51.wollmux.db;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import org.junit.jupiter.api.Test;
 
@@ -80,6 +83,72 @@ class SearchTest
     assertEquals(2, results.size());
   }
 
+  @Test
+  void testParallelSearch() throws Exception
+  {
+    SearchStrategy strategy = SearchStrategy.parse(new ConfigThingy("",
+        "Suchstrategie(test (column \"${suchanfrage1}\") test (column \"${suchanfrage1}2\") "
+            + "test (column \"${suchanfrage1}*\") test (column \"${suchanfrage1}\"))"));
+    Datasource slow = new MockDatasource()
+    {
+      @Override
+      public QueryResults find(List<QueryPart> query)
+      {
+        try
+        {
+          Thread.sleep(300);
+        } catch (InterruptedException e)
+        {
+          Thread.currentThread().interrupt();
+        }
+        return super.find(query);
+      }
+    };
+    DatasourceJoiner dsJoiner = new DatasourceJoiner(Map.of("test", slow), "test",
+        new LocalOverrideStorageDummyImpl());
+    long start = System.currentTimeMillis();
+    QueryResults results = Search.search("value", strategy, dsJoiner, false);
+    assertTrue(System.currentTimeMillis() - start < 4 * 300);
+    List<String> keys = new ArrayList<>();
+    results.forEach(ds -> keys.add(ds.getKey()));
+    assertEquals(List.of("ds", "ds2"), keys);
+
+    SearchStrategy unknown = SearchStrategy.parse(new ConfigThingy("",
+        "Suchstrategie(test (column \"${suchanfrage1}\") unknown (column \"${suchanfrage1}\"))"));
+    assertThrows(IllegalArgumentException.class, () -> Search.search("value", unknown, dsJoiner, false));
+  }
+
+  @Test
+  void testPagedSearch() throws Exception
+  {
+    SearchStrategy strategy = SearchStrategy.parse(new ConfigThingy("",
+        "Suchstrategie(test (column \"${suchanfrage1}\") test (column \"${suchanfrage1}2\") "
+            + "test (column \"${suchanfrage1}*\") test (column \"${suchanfrage1}\"))"));
+    Datasource paged = new MockDatasource()
+    {
+      @Override
+      public void find(List<QueryPart> query, Consumer<QueryResults> pageConsumer)
+      {
+        for (Dataset ds : find(query))
+        {
+          pageConsumer.accept(new QueryResultsList(List.of(ds)));
+        }
+      }
+    };
+    DatasourceJoiner dsJoiner = new DatasourceJoiner(Map.of("test", paged), "test",
+        new LocalOverrideStorageDummyImpl());
+    List<String> keys = new ArrayList<>();
+    Search.search("value", strategy, dsJoiner, page -> page.forEach(ds -> keys.add(ds.getKey())));
+    Collections.sort(keys);
+    assertEquals(List.of("ds", "ds2"), keys);
+
+    keys.clear();
+    SearchStrategy single = SearchStrategy.parse(
+        new ConfigThingy("", "Suchstrategie(test (column \"${suchanfrage1}2\"))"));
+    Search.search("value", single, dsJoiner, page -> page.forEach(ds -> keys.add(ds.getKey())));
+    assertEquals(List.of("ds2"), keys);
+  }
+
   @Test
   void testSearch() throws Exception
   {
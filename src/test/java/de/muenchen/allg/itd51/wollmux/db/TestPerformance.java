@@ -0,0 +1,146 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2020 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+
+/**
+ * A Test class to verify that the search in large datasources is fast enough.
+ */
+@Disabled
+public class TestPerformance
+{
+
+  private static final int ROWS = 100000;
+
+  private static final List<String> SCHEMA = List.of("Vorname", "Nachname", "Mail", "OrgaKurz");
+
+  /**
+   * Search a {@link RAMDatasource} with 100.000 datasets with exact, prefix, suffix and substring
+   * queries.
+   */
+  @Test
+  public void ramDatasourcePerformance()
+  {
+    search(new RAMDatasource("performance", SCHEMA, createData()), 200);
+  }
+
+  /**
+   * Search a {@link RAMDatasource} with 100.000 datasets and indexes on all searched columns.
+   */
+  @Test
+  public void ramDatasourceIndexPerformance()
+  {
+    search(new RAMDatasource("performance", SCHEMA, createData(),
+        Map.of("Nachname", ColumnIndex.Type.EXACT, "Vorname", ColumnIndex.Type.PREFIX, "Mail",
+            ColumnIndex.Type.INFIX)),
+        20);
+  }
+
+  /**
+   * Compare the memory used by 100.000 {@link SimpleDataset}s and {@link ArrayDataset}s with the
+   * same values.
+   */
+  @Test
+  public void datasetMemory()
+  {
+    long mapMemory = usedMemory(this::createData);
+    long arrayMemory = usedMemory(this::createArrayData);
+    assertTrue(arrayMemory < mapMemory,
+        "Memory usage is bad: " + arrayMemory + " bytes vs. " + mapMemory + " bytes");
+  }
+
+  private long usedMemory(Supplier<List<Dataset>> factory)
+  {
+    Runtime runtime = Runtime.getRuntime();
+    System.gc();
+    long before = runtime.totalMemory() - runtime.freeMemory();
+    List<Dataset> data = factory.get();
+    System.gc();
+    long used = runtime.totalMemory() - runtime.freeMemory() - before;
+    assertEquals(ROWS, data.size());
+    return used;
+  }
+
+  private List<Dataset> createArrayData()
+  {
+    DatasetSchema schema = new DatasetSchema(SCHEMA);
+    List<Dataset> data = new ArrayList<>(ROWS);
+    for (int i = 0; i < ROWS; i++)
+    {
+      String[] values = { "Vorname" + i, "Nachname" + (i % 1000),
+          "vorname" + i + ".nachname@muenchen.de", "RAW-" + (i % 50) };
+      data.add(new ArrayDataset(schema, "key" + i, values));
+    }
+    return data;
+  }
+
+  private List<Dataset> createData()
+  {
+    List<Dataset> data = new ArrayList<>(ROWS);
+    for (int i = 0; i < ROWS; i++)
+    {
+      Map<String, String> values = new HashMap<>();
+      values.put("Vorname", "Vorname" + i);
+      values.put("Nachname", "Nachname" + (i % 1000));
+      values.put("Mail", "vorname" + i + ".nachname@muenchen.de");
+      values.put("OrgaKurz", "RAW-" + (i % 50));
+      data.add(new SimpleDataset("key" + i, values));
+    }
+    return data;
+  }
+
+  private void search(RAMDatasource ds, long maxTime)
+  {
+    List<List<QueryPart>> queries = List.of(
+        List.of(new QueryPart("Nachname", "nachname42")),
+        List.of(new QueryPart("Vorname", "Vorname4242*")),
+        List.of(new QueryPart("Mail", "*42.nachname@muenchen.de")),
+        List.of(new QueryPart("Mail", "*4242*"), new QueryPart("OrgaKurz", "raw-*")));
+    // warm up
+    for (int i = 0; i < 5; i++)
+    {
+      queries.forEach(ds::find);
+    }
+    final long start = System.currentTimeMillis();
+    int count = 0;
+    for (List<QueryPart> query : queries)
+    {
+      count += ds.find(query).size();
+    }
+    final long time = System.currentTimeMillis() - start;
+    assertEquals(100 + 11 + 1000 + 20, count);
+    assertTrue(time < maxTime, "Performance is bad: " + time + " millis");
+  }
+
+}
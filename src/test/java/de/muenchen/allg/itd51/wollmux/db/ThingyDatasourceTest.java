@@ -32,6 +32,7 @@ import java.util.List;
 import org.junit.jupiter.api.Test;
 
 import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
+import de.muenchen.allg.itd51.wollmux.config.ConfigurationErrorException;
 
 class ThingyDatasourceTest
 {
@@ -48,4 +49,20 @@ class ThingyDatasourceTest
     assertThrows(ColumnNotFoundException.class, () -> data.get("unknown"));
   }
 
+  @Test
+  void testThingyDatasourceWithIndex() throws Exception
+  {
+    Datasource ds = new ThingyDatasource(null, new ConfigThingy("", "NAME \"conf\" URL \"" + file
+        + "\" Schluessel(\"column\") Index(column \"prefix\" column2 \"exact\")"), null);
+    assertEquals(1, ds.find(List.of(new QueryPart("column", "VALUE3"))).size());
+    assertEquals(2, ds.find(List.of(new QueryPart("column", "val*"))).size());
+    assertEquals("value3", ds.find(List.of(new QueryPart("column2", "value4"))).iterator().next().get("column"));
+    assertEquals(1, ds.getDatasetsByKey(List.of("value1")).size());
+
+    assertThrows(ConfigurationErrorException.class, () -> new ThingyDatasource(null,
+        new ConfigThingy("", "NAME \"conf\" URL \"" + file + "\" Schluessel(\"column\") Index(unknown \"exact\")"), null));
+    assertThrows(ConfigurationErrorException.class, () -> new ThingyDatasource(null,
+        new ConfigThingy("", "NAME \"conf\" URL \"" + file + "\" Schluessel(\"column\") Index(column \"hash\")"), null));
+  }
+
 }
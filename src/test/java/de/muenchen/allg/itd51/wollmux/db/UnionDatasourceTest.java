@@ -24,7 +24,10 @@ package de.muenchen.allg.itd51.wollmux.db;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.lang.reflect.Field;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -60,6 +63,114 @@ class UnionDatasourceTest
     assertEquals(1, results.size());
   }
 
+  @Test
+  void testConcurrentSources() throws Exception
+  {
+    Map<String, Datasource> nameToDatasource = new HashMap<>();
+    nameToDatasource.put("mock", new SlowDatasource("mock",
+        List.of(new MockDataset("ds", "column", "value"), new MockDataset("ds2", "column", "value2"))));
+    nameToDatasource.put("mock2", new SlowDatasource("mock2", List.of(new MockDataset("ds3", "column", "value"))));
+    Datasource ds = new UnionDatasource(nameToDatasource,
+        new ConfigThingy("", "NAME \"union\" SOURCE1 \"mock\" SOURCE2 \"mock2\""), null);
+
+    long start = System.currentTimeMillis();
+    assertEquals(2, ds.find(List.of(new QueryPart("column", "value"))).size());
+    assertEquals(2, ds.getDatasetsByKey(List.of("ds2", "ds3")).size());
+    assertTrue(System.currentTimeMillis() - start < 4 * SlowDatasource.DELAY);
+
+    assertEquals(2, ds.findAsync(List.of(new QueryPart("column", "value"))).get().size());
+
+    nameToDatasource.put("mock2", new MockDatasource("mock2", List.of("column"), List.of())
+    {
+      @Override
+      public QueryResults find(List<QueryPart> query)
+      {
+        throw new IllegalArgumentException();
+      }
+    });
+    Datasource failing = new UnionDatasource(nameToDatasource,
+        new ConfigThingy("", "NAME \"union\" SOURCE1 \"mock\" SOURCE2 \"mock2\""), null);
+    assertThrows(IllegalArgumentException.class,
+        () -> failing.find(List.of(new QueryPart("column", "value"))));
+  }
+
+  @Test
+  void testTimeout() throws Exception
+  {
+    Map<String, Datasource> nameToDatasource = new HashMap<>();
+    nameToDatasource.put("mock", new SlowDatasource("mock",
+        List.of(new MockDataset("ds", "column", "value"))));
+    nameToDatasource.put("mock2", new MockDatasource("mock2", List.of("column"),
+        List.of(new MockDataset("ds3", "column", "value"))));
+    Datasource ds = new UnionDatasource(nameToDatasource,
+        new ConfigThingy("", "NAME \"union\" SOURCE1 \"mock\" SOURCE2 \"mock2\""), null);
+
+    long timeout = setDatasourceTimeout(SlowDatasource.DELAY / 3);
+    try
+    {
+      // only asynchronous queries drop slow sources
+      assertEquals(1, ds.findAsync(List.of(new QueryPart("column", "value"))).get().size());
+      assertEquals(1, ds.getDatasetsByKeyAsync(List.of("ds", "ds3")).get().size());
+      assertEquals(2, ds.find(List.of(new QueryPart("column", "value"))).size());
+      assertEquals(2, ds.getDatasetsByKey(List.of("ds", "ds3")).size());
+    } finally
+    {
+      setDatasourceTimeout(timeout);
+    }
+  }
+
+  /**
+   * Change the timeout of datasources.
+   *
+   * @return The previous timeout.
+   */
+  static long setDatasourceTimeout(long timeout) throws Exception
+  {
+    Field field = DatasourceJoinerFactory.class.getDeclaredField("datasourceTimeout");
+    field.setAccessible(true);
+    long previous = field.getLong(null);
+    field.setLong(null, timeout);
+    return previous;
+  }
+
+  /**
+   * A datasource which needs some time to answer.
+   */
+  static class SlowDatasource extends MockDatasource
+  {
+    static final long DELAY = 300;
+
+    SlowDatasource(String name, List<Dataset> datasets)
+    {
+      super(name, List.of("column"), datasets);
+    }
+
+    @Override
+    public QueryResults find(List<QueryPart> query)
+    {
+      sleep();
+      return super.find(query);
+    }
+
+    @Override
+    public QueryResults getDatasetsByKey(Collection<String> keys)
+    {
+      sleep();
+      return super.getDatasetsByKey(keys);
+    }
+
+    private void sleep()
+    {
+      try
+      {
+        Thread.sleep(DELAY);
+      } catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
   @Test
   void testInvalidUnionDatasource() throws Exception
   {
@@ -0,0 +1,257 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2020 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.document;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.sun.net.httpserver.HttpServer;
+
+class FragmentCacheTest
+{
+
+  @TempDir
+  Path tmp;
+
+  private HttpServer server;
+
+  /**
+   * The documents of the server by path.
+   */
+  private final Map<String, String> documents = new ConcurrentHashMap<>();
+
+  /**
+   * The requests to the server as path and If-None-Match header.
+   */
+  private final List<String> requests = new ArrayList<>();
+
+  /**
+   * Called by the server before answering a request.
+   */
+  private volatile Runnable onRequest = () -> {
+  };
+
+  @BeforeEach
+  void startServer() throws IOException
+  {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/", exchange -> {
+      String path = exchange.getRequestURI().getPath();
+      String etag = exchange.getRequestHeaders().getFirst("If-None-Match");
+      synchronized (requests)
+      {
+        requests.add(path + " " + etag);
+      }
+      onRequest.run();
+      String content = documents.get(path);
+      if (content == null)
+      {
+        exchange.sendResponseHeaders(404, -1);
+      } else if (("\"" + content.hashCode() + "\"").equals(etag))
+      {
+        exchange.sendResponseHeaders(304, -1);
+      } else
+      {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("ETag", "\"" + content.hashCode() + "\"");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody())
+        {
+          out.write(bytes);
+        }
+      }
+      exchange.close();
+    });
+    server.start();
+  }
+
+  @AfterEach
+  void stopServer()
+  {
+    server.stop(0);
+  }
+
+  private URL url(String path) throws IOException
+  {
+    return new URL("http://localhost:" + server.getAddress().getPort() + path);
+  }
+
+  private static String get(FragmentCache cache, URL url) throws IOException
+  {
+    return new String(cache.get(url), StandardCharsets.UTF_8);
+  }
+
+  @Test
+  void testRevalidate() throws Exception
+  {
+    FragmentCache cache = new FragmentCache(tmp.toFile(), 1024, 0);
+    documents.put("/a.odt", "a1");
+    assertEquals("a1", get(cache, url("/a.odt")));
+    assertEquals("a1", get(cache, url("/a.odt")));
+    assertEquals(List.of("/a.odt null", "/a.odt \"" + "a1".hashCode() + "\""), requests);
+
+    documents.put("/a.odt", "a2");
+    assertEquals("a2", get(cache, url("/a.odt")));
+
+    // entries survive a restart
+    requests.clear();
+    cache = new FragmentCache(tmp.toFile(), 1024, 0);
+    assertEquals("a2", get(cache, url("/a.odt")));
+    assertEquals(List.of("/a.odt \"" + "a2".hashCode() + "\""), requests);
+  }
+
+  @Test
+  void testMaxStaleness() throws Exception
+  {
+    FragmentCache cache = new FragmentCache(tmp.toFile(), 1024, 60000);
+    documents.put("/a.odt", "a1");
+    assertEquals("a1", get(cache, url("/a.odt")));
+    documents.put("/a.odt", "a2");
+    assertEquals("a1", get(cache, url("/a.odt")));
+    assertEquals(1, requests.size());
+  }
+
+  @Test
+  void testRemovedEntry() throws Exception
+  {
+    FragmentCache cache = new FragmentCache(tmp.toFile(), 1024, 60000);
+    documents.put("/a.odt", "a1");
+    assertEquals("a1", get(cache, url("/a.odt")));
+    deleteData();
+    assertEquals("a1", get(cache, url("/a.odt")));
+    assertEquals(List.of("/a.odt null", "/a.odt null"), requests);
+
+    // not modified, but removed before it's read
+    requests.clear();
+    FragmentCache revalidating = new FragmentCache(tmp.toFile(), 1024, 0);
+    documents.put("/b.odt", "b1");
+    assertEquals("b1", get(revalidating, url("/b.odt")));
+    onRequest = this::deleteData;
+    assertEquals("b1", get(revalidating, url("/b.odt")));
+    assertEquals(List.of("/b.odt null", "/b.odt \"" + "b1".hashCode() + "\"", "/b.odt null"),
+        requests);
+  }
+
+  private void deleteData()
+  {
+    for (File data : tmp.toFile().listFiles((dir, name) -> name.endsWith(".data")))
+    {
+      assertTrue(data.delete());
+    }
+  }
+
+  @Test
+  void testMiss() throws Exception
+  {
+    FragmentCache cache = new FragmentCache(tmp.toFile(), 1024, 0);
+    assertThrows(IOException.class, () -> cache.get(url("/missing.odt")));
+
+    // a cached copy isn't used if the document is gone
+    documents.put("/a.odt", "a1");
+    get(cache, url("/a.odt"));
+    documents.remove("/a.odt");
+    assertThrows(IOException.class, () -> cache.get(url("/a.odt")));
+  }
+
+  @Test
+  void testEviction() throws Exception
+  {
+    FragmentCache cache = new FragmentCache(tmp.toFile(), 10, 60000);
+    documents.put("/a.odt", "aaaa");
+    documents.put("/b.odt", "bbbb");
+    documents.put("/c.odt", "cccc");
+    get(cache, url("/a.odt"));
+    get(cache, url("/b.odt"));
+    get(cache, url("/a.odt"));
+    get(cache, url("/c.odt"));
+    assertEquals(3, requests.size());
+
+    // b has been used least recently
+    get(cache, url("/a.odt"));
+    get(cache, url("/c.odt"));
+    assertEquals(3, requests.size());
+    get(cache, url("/b.odt"));
+    assertEquals(4, requests.size());
+
+    File[] files = tmp.toFile().listFiles((dir, name) -> name.endsWith(".data"));
+    assertEquals(2, files.length);
+
+    documents.put("/big.odt", "0123456789abc");
+    assertEquals("0123456789abc", get(cache, url("/big.odt")));
+    assertEquals(2, tmp.toFile().listFiles((dir, name) -> name.endsWith(".data")).length);
+  }
+
+  @Test
+  void testFile() throws Exception
+  {
+    File cacheDir = tmp.resolve("cache").toFile();
+    FragmentCache cache = new FragmentCache(cacheDir, 1024, 0);
+    File file = tmp.resolve("frag.odt").toFile();
+    Files.write(file.toPath(), "f1".getBytes(StandardCharsets.UTF_8));
+    URL url = file.toURI().toURL();
+    assertEquals("f1", get(cache, url));
+
+    Files.write(file.toPath(), "f22".getBytes(StandardCharsets.UTF_8));
+    file.setLastModified(file.lastModified() + 2000);
+    assertEquals("f22", get(cache, url));
+    assertArrayEquals("f22".getBytes(StandardCharsets.UTF_8), cache.get(url));
+
+    assertTrue(file.delete());
+    assertThrows(IOException.class, () -> cache.get(url));
+    assertEquals(0, cacheDir.listFiles((dir, name) -> name.endsWith(".tmp")).length);
+  }
+
+  @Test
+  void testFileIgnoresMaxStaleness() throws Exception
+  {
+    FragmentCache cache = new FragmentCache(tmp.resolve("cache").toFile(), 1024, 60000);
+    File file = tmp.resolve("frag.odt").toFile();
+    Files.write(file.toPath(), "f1".getBytes(StandardCharsets.UTF_8));
+    URL url = file.toURI().toURL();
+    assertEquals("f1", get(cache, url));
+
+    Files.write(file.toPath(), "f22".getBytes(StandardCharsets.UTF_8));
+    file.setLastModified(file.lastModified() + 2000);
+    assertEquals("f22", get(cache, url));
+  }
+}
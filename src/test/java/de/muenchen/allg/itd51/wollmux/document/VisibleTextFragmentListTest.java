@@ -0,0 +1,76 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2020 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.document;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
+import de.muenchen.allg.itd51.wollmux.config.InvalidIdentifierException;
+
+class VisibleTextFragmentListTest
+{
+
+  private static final String CONF = "VAR(NAME \"base\" VALUE \"file:/root\")\n"
+      + "Textfragmente(\n"
+      + "  VAR(NAME \"dir\" VALUE \"${base}/d\")\n"
+      + "  (FRAG_ID \"Hallo\" URL(\"${dir}/hallo.odt\" \"${dir}/hallo2.odt\"))\n"
+      + "  (FRAG_ID \"A_.*\" URL \"${dir}/$0.odt\")\n"
+      + "  (FRAG_ID \"Loop\" URL \"${loop}\" VAR(NAME \"loop\" VALUE \"${loop}\"))\n"
+      + ")\n"
+      + "Textfragmente((FRAG_ID \"Hallo\" URL \"${base}/later.odt\"))\n"
+      + "VAR(NAME \"base\" VALUE \"file:/override\")\n";
+
+  @Test
+  void testGetURLsByID() throws Exception
+  {
+    ConfigThingy conf = new ConfigThingy("", CONF);
+    assertEquals(List.of("file:/override/later.odt", "file:/override/d/hallo.odt",
+        "file:/override/d/hallo2.odt"), VisibleTextFragmentList.getURLsByID(conf, "Hallo"));
+    assertEquals(List.of("file:/override/d/A_b.odt"),
+        VisibleTextFragmentList.getURLsByID(conf, "A_b"));
+    assertTrue(VisibleTextFragmentList.getURLsByID(conf, "Loop").isEmpty());
+    assertTrue(VisibleTextFragmentList.getURLsByID(conf, "Unknown").isEmpty());
+    assertThrows(InvalidIdentifierException.class,
+        () -> VisibleTextFragmentList.getURLsByID(conf, "no id"));
+  }
+
+  @Test
+  void testInvalidate() throws Exception
+  {
+    ConfigThingy conf = new ConfigThingy("", CONF);
+    assertEquals(3, VisibleTextFragmentList.getURLsByID(conf, "Hallo").size());
+
+    conf.query("Textfragmente").getLastChild()
+        .addChild(new ConfigThingy("", "FRAG_ID \"Neu\" URL \"neu.odt\""));
+    assertTrue(VisibleTextFragmentList.getURLsByID(conf, "Neu").isEmpty());
+
+    VisibleTextFragmentList.invalidate();
+    assertEquals(List.of("neu.odt"), VisibleTextFragmentList.getURLsByID(conf, "Neu"));
+  }
+}